@@ -1,7 +1,7 @@
 //package com.paradoxwebsolutions.identity.prototype;
 
-import com.paradoxwebsolutions.assistant.Action;
 import com.paradoxwebsolutions.assistant.Assistant;
+import com.paradoxwebsolutions.assistant.AsyncAction;
 import com.paradoxwebsolutions.assistant.ClientSession;
 import com.paradoxwebsolutions.assistant.ClientResponse;
 
@@ -10,36 +10,34 @@ import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.concurrent.CompletionStage;
 
 
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
-public class ActionJoke implements Action {
+public class ActionJoke implements AsyncAction {
 
-    public void perform(Assistant assistant, ClientSession session, ClientResponse clientResponse) {
+    /* The HTTP client is thread safe, so is shared by all requests */
 
-        /* Make a call to the joke API */
+    private static final HttpClient client = HttpClient.newHttpClient();
 
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create("https://v2.jokeapi.dev/joke/Any?safe-mode&format=json"))
-                    .method("GET", HttpRequest.BodyPublishers.noBody())
-                    .build();
-            HttpResponse<String> response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofString());
+    private static final HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create("https://v2.jokeapi.dev/joke/Any?safe-mode&format=json"))
+            .method("GET", HttpRequest.BodyPublishers.noBody())
+            .build();
 
 
-            /* Parse out the response and get the joke */
+    public CompletionStage<Void> performAsync(Assistant assistant, ClientSession session, ClientResponse clientResponse) {
 
+        /* Make a call to the joke API, and parse out the response to get the joke */
+
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenAccept((response) -> {
             JsonObject joke = JsonParser.parseString(response.body()).getAsJsonObject();
             if (joke.has("joke"))
                 clientResponse.utter(joke.get("joke").getAsString());
             else
                 clientResponse.utter(joke.get("setup").getAsString() + "\n" + joke.get("delivery").getAsString());
-        }
-        catch (Exception x) {
-            clientResponse.utter("I can't seem to find my joke book today");
-        }
-
+        });
     }
-}
\ No newline at end of file
+}
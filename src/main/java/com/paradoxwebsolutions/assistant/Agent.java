@@ -16,6 +16,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 
 /**
@@ -59,6 +61,11 @@ public class Agent {
     private GenericMap config;
 
 
+    /** The identity archive the assistant was loaded from (also the owner of any shared models) */
+
+    private IdentityArchive archive;
+
+
 
     /**
      * Creates an agent instance.
@@ -80,7 +87,7 @@ public class Agent {
 
         /* Set up the identity archive so we can load data from it */
 
-        IdentityArchive archive = new IdentityArchive(identityDir + File.separator + identity + ".zip");
+        archive = new IdentityArchive(identityDir + File.separator + identity + ".zip");
 
 
         /*
@@ -137,14 +144,30 @@ public class Agent {
      * @throws ApplicationError on error
      */
     public ClientResponse processChatInput(ClientSession session, String input) throws ApplicationError {
-        session.info(String.format("Received input: %s", input));
+        return AsyncAction.await(processChatInputAsync(session, input));
+    }
+
+
+
+    /**
+     * Process a chat input message, without waiting for any asynchronous actions to complete.
+     * <p>The input is interpreted and matched against the stories by the calling thread. The
+     * returned stage completes when the resulting action completes.
+     *
+     * @param session  the current client session
+     * @param input    the new client input message
+     * @return         a stage completing with the response to be returned to the client
+     * @throws ApplicationError on error processing the input (action errors complete the stage exceptionally)
+     */
+    public CompletionStage<ClientResponse> processChatInputAsync(ClientSession session, String input) throws ApplicationError {
+        session.info("Received input: %s", input);
 
         IntentData userIntent = this.interpreter.getIntent(session, input);
         if (userIntent == null)  {
             /* If no intent could be recognized, default */
 
             userIntent = new IntentData(assistant.getDefaultIntent());
-            session.debug(String.format("Defaulting to '%s' intent", userIntent.getName()));
+            session.debug("Defaulting to '%s' intent", userIntent.getName());
         }
 
         /* Set the slots to a copy of the current slot state (it must be immutable) */
@@ -165,7 +188,8 @@ public class Agent {
 
 
         while (history.size() > 0) {
-            session.info(String.format("History: [%s]", String.join(",", history.stream().map((h) -> h.name).toArray(String[]::new))));
+            final List<IntentData> current = history;
+            session.info(() -> String.format("History: [%s]", String.join(",", current.stream().map((h) -> h.name).toArray(String[]::new))));
             session.debug("Testing narrative against stories");
 
             Narrative bestNarrative = null;
@@ -184,13 +208,13 @@ public class Agent {
                      * If we consumed any of the narrative, check the path length and score to see if this
                      * is a new 'best'.
                      */
-                    session.debug(String.format("Story '%s' matches with path length %d and score %f", entry.getKey(), narrative.getIndex(), narrative.getScore()));
+                    session.debug("Story '%s' matches with path length %d and score %f", entry.getKey(), narrative.getIndex(), narrative.getScore());
 
                     if (bestNarrative == null || narrative.getIndex() > bestNarrative.getIndex() || 
                             (narrative.getIndex() == bestNarrative.getIndex() && narrative.getScore() > bestNarrative.getScore())) {
                         bestNarrative = narrative;
                         bestComplete = isComplete;
-                        session.debug(String.format("Found new best story '%s'", entry.getKey()));
+                        session.debug("Found new best story '%s'", entry.getKey());
                     }
                 }
             }            
@@ -200,7 +224,7 @@ public class Agent {
              * been designed properly, as there should be a 'catch all' story. Ideally, the trainer should be
              * able to verify this.
              */
-            if (bestNarrative == null) return null;
+            if (bestNarrative == null) return CompletableFuture.completedFuture(null);
 
 
             /*
@@ -215,7 +239,7 @@ public class Agent {
                  * If we have a previously matched story, we throw away the previous story and rematch,
                  * just in case there is a continuation of that story.
                  */
-                session.debug(String.format("Discarding matched narrative segment for story '%s'", bestNarrative.getName()));
+                session.debug("Discarding matched narrative segment for story '%s'", bestNarrative.getName());
                 historyChanged = true;
 
                 if (narratives.size() > 0) {
@@ -238,7 +262,7 @@ public class Agent {
         }
 
 
-        session.info(String.format("Narrative: %s",
+        session.info(() -> String.format("Narrative: %s",
             String.join(",",
                 narratives.stream().map(
                     (n) -> n.getName() + "[" + String.join(",", n.getUsed().stream().map((h) -> h.name).toArray(String[]::new)) + "]"
@@ -272,6 +296,18 @@ public class Agent {
      * @throws ApplicationError on error
      */
     public ClientResponse doWelcome(ClientSession session) throws ApplicationError {
+        return AsyncAction.await(doWelcomeAsync(session));
+    }
+
+
+
+    /**
+     * Execute any configured welcome actions, without waiting for them to complete.
+     *
+     * @param session  the newly establish client session
+     * @return         a stage completing with the response to be returned to the client
+     */
+    public CompletionStage<ClientResponse> doWelcomeAsync(ClientSession session) {
         return executeAction(session, assistant.getWelcomeAction());
     }
 
@@ -287,6 +323,18 @@ public class Agent {
      * @throws ApplicationError on error
      */
     public ClientResponse doWelcomeBack(ClientSession session) throws ApplicationError {
+        return AsyncAction.await(doWelcomeBackAsync(session));
+    }
+
+
+
+    /**
+     * Execute any configured welcome back actions, without waiting for them to complete.
+     *
+     * @param session  the newly establish client session
+     * @return         a stage completing with the response to be returned to the client
+     */
+    public CompletionStage<ClientResponse> doWelcomeBackAsync(ClientSession session) {
         return executeAction(session, assistant.getWelcomeBackAction());
     }
 
@@ -294,16 +342,18 @@ public class Agent {
 
     /**
      * Executes a given action in the context of a client session.
+     * <p>Asynchronous actions are composed rather than waited on, so the calling thread is not
+     * blocked by actions waiting on external resources.
      * 
      * @param session  the client session
      * @param action   the action to execute
-     * @return         a response object to be returned to the client
-     * @throws ApplicationError on error
+     * @return         a stage completing with the response to be returned to the client
      */
-    private ClientResponse executeAction(ClientSession session, Action action) throws ApplicationError {
+    private CompletionStage<ClientResponse> executeAction(ClientSession session, Action action) {
         ClientResponse response = new ClientResponse();
-        if (action != null) action.perform(assistant, session, response);
-        return response;
+        if (action == null) return CompletableFuture.completedFuture(response);
+
+        return AsyncAction.performAsync(action, assistant, session, response).thenApply((v) -> response);
     }
 
 
@@ -339,6 +389,17 @@ public class Agent {
         return this.config.getString("lang", "en");
     }
 
+
+
+    /**
+     * Releases any shared resources held by this agent.
+     * <p>This should be called when an agent is being replaced (e.g. on refresh). Requests already
+     * being processed by the agent are not affected.
+     */
+    public void release() {
+        ModelRegistry.release(archive);
+    }
+
 }
 
 
@@ -9,6 +9,7 @@ import java.io.FileReader;
 import java.lang.reflect.Type;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 
 import com.google.gson.JsonDeserializationContext;
@@ -35,6 +36,11 @@ public class AssistantFactory extends ObjectFactory {
     private ClassLoader classLoader;
 
 
+    /** Loaded component classes, keyed by class name */
+
+    private Map<String, Class<?>> classes = new ConcurrentHashMap<String, Class<?>>();
+
+
 
     /**
      * Creates an assistant factory instance with a given class loader.
@@ -106,7 +112,11 @@ public class AssistantFactory extends ObjectFactory {
 
             /* Load the appropriate class and deserialize into it */
 
-            Class<?> cls = classLoader.loadClass(className);
+            Class<?> cls = classes.get(className);
+            if (cls == null) {
+                cls = classLoader.loadClass(className);
+                classes.put(className, cls);
+            }
             return context.deserialize(jsonObject, cls);
         }
     }
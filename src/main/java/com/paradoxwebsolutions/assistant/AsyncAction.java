@@ -0,0 +1,98 @@
+package com.paradoxwebsolutions.assistant;
+
+import com.paradoxwebsolutions.core.ApplicationError;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+
+
+/**
+ * Interface for Actions that complete asynchronously.
+ * <p>Actions that wait on external resources (web services, databases, etc) should implement this
+ * interface rather than blocking the request processing thread in {@link Action#perform}. The
+ * action starts its task and returns a stage that completes when the task (including any updates
+ * to the client response) is done. An action that fails should complete the stage exceptionally,
+ * preferably with an {@link ApplicationError}.
+ * <p>Synchronous callers can still invoke {@link #perform}, which waits for the action to complete.
+ *
+ * @author Peter Smith
+ * @see Action
+ * @see com.paradoxwebsolutions.assistant.actions.ActionTimeout
+ */
+public interface AsyncAction extends Action {
+    /**
+     * Asynchronous action execution method.
+     *
+     * @param assistant  the assistant configuration object
+     * @param session    the user (client) session
+     * @param response   the user response instance (used to determine what will be returned to the client)
+     * @return           a stage that completes when the action is complete
+     */
+    public CompletionStage<Void> performAsync(Assistant assistant, ClientSession session, ClientResponse response);
+
+
+
+    /**
+     * Performs the action, waiting for it to complete.
+     *
+     * @param assistant  the assistant configuration object
+     * @param session    the user (client) session
+     * @param response   the user response instance (used to determine what will be returned to the client)
+     * @throws ApplicationError on error
+     */
+    @Override
+    public default void perform(Assistant assistant, ClientSession session, ClientResponse response) throws ApplicationError {
+        await(performAsync(assistant, session, response));
+    }
+
+
+
+    /**
+     * Performs any action asynchronously.
+     * <p>Asynchronous actions are started via {@link #performAsync}. Other actions are performed
+     * synchronously, and a completed stage returned.
+     *
+     * @param action     the action to perform
+     * @param assistant  the assistant configuration object
+     * @param session    the user (client) session
+     * @param response   the user response instance
+     * @return           a stage that completes when the action is complete
+     */
+    public static CompletionStage<Void> performAsync(Action action, Assistant assistant, ClientSession session, ClientResponse response) {
+        try {
+            if (action instanceof AsyncAction) return ((AsyncAction) action).performAsync(assistant, session, response);
+
+            action.perform(assistant, session, response);
+            return CompletableFuture.completedFuture(null);
+        }
+        catch (Exception x) {
+            return CompletableFuture.failedFuture(x);
+        }
+    }
+
+
+
+    /**
+     * Waits for a stage to complete, returning its result.
+     *
+     * @param <T>    the result type
+     * @param stage  the stage to wait for
+     * @return       the stage result
+     * @throws ApplicationError if the stage completed exceptionally
+     */
+    public static <T> T await(CompletionStage<T> stage) throws ApplicationError {
+        try {
+            return stage.toCompletableFuture().join();
+        }
+        catch (CompletionException x) {
+            Throwable cause = x.getCause() != null ? x.getCause() : x;
+            if (cause instanceof ApplicationError) throw (ApplicationError) cause;
+            throw new ApplicationError(String.format("Action failed: %s", cause.getMessage()), cause instanceof Exception ? (Exception) cause : x);
+        }
+        catch (Exception x) {
+            throw new ApplicationError(String.format("Action failed: %s", x.getMessage()), x);
+        }
+    }
+}
@@ -5,6 +5,8 @@ import com.paradoxwebsolutions.assistant.ClientSession;
 import com.paradoxwebsolutions.core.ApplicationError;
 import com.paradoxwebsolutions.core.Config;
 
+import java.util.Set;
+
 
 
 /**
@@ -46,6 +48,21 @@ public abstract class Categorizer {
 
 
 
+    /**
+     * Returns the names of the pipeline data items used by this categorizer.
+     * <p>This is used to determine which preprocessing pipeline outputs are actually
+     * required at runtime. A null return value indicates that the inputs are not known,
+     * and that all pipeline outputs must therefore be generated. The default implementation
+     * returns null.
+     *
+     * @return the set of pipeline input names, or null if not known
+     */
+    public Set<String> getInputs() {
+        return null;
+    }
+
+
+
     /**
      * Returns a trainer (if required) for this categorizer.
      * <p>This method is only used during assistant setup (model training).
@@ -1,12 +1,13 @@
 package com.paradoxwebsolutions.assistant;
 
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 
 
 /**
  * Simple map wrapper for managing a named list of {@link Categorizer} instances.
+ * <p>Categorizers are kept in the order they are configured, which is the order they are run.
  *
  * @author Peter Smith
  * @see Categorizer
  */
-public class Categorizers extends HashMap<String, Categorizer> {};
+public class Categorizers extends LinkedHashMap<String, Categorizer> {};
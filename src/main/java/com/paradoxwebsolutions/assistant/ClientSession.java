@@ -7,6 +7,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 
 /**
  * Tracks the status of a client session.
@@ -42,7 +44,7 @@ public class ClientSession {
      * @param assistant  the chat assistant
      */
     public ClientSession(SessionData data, Assistant assistant) {
-        LOGGER = new Logger(data.getIdentity());
+        LOGGER = Logger.get(data.getIdentity());
         this.data = data;
         this.assistant = assistant;
         data.setTimestamp();
@@ -101,6 +103,18 @@ public class ClientSession {
 
 
 
+    /**
+     * Determines whether or not a log message at a given level would be output for this user.
+     *
+     * @param level  the log level to check
+     * @return       true if the message would be output, false otherwise
+     */
+    public boolean isLoggable(Level level) {
+        return LOGGER.isLoggable(level);
+    }
+
+
+
     /**
      * Logs an informational message to the log for this user.
      * <p>Log messages logged via this method are automatically prefixed
@@ -109,7 +123,30 @@ public class ClientSession {
      * @param message  the message to log
      */
     public void info(String message) {
-        LOGGER.info(this.data.getUserId() + ": " + message);
+        if (LOGGER.isLoggable(Logger.INFO)) LOGGER.info(this.data.getUserId() + ": " + message);
+    }
+
+
+
+    /**
+     * Logs an informational message to the log for this user, built only if it will be output.
+     *
+     * @param message  supplies the message to log
+     */
+    public void info(Supplier<String> message) {
+        if (LOGGER.isLoggable(Logger.INFO)) LOGGER.info(this.data.getUserId() + ": " + message.get());
+    }
+
+
+
+    /**
+     * Logs a formatted informational message to the log for this user, formatted only if it will be output.
+     *
+     * @param format  the message format string
+     * @param args    the message arguments
+     */
+    public void info(String format, Object... args) {
+        if (LOGGER.isLoggable(Logger.INFO)) LOGGER.info(this.data.getUserId() + ": " + String.format(format, args));
     }
 
 
@@ -122,6 +159,29 @@ public class ClientSession {
      * @param message  the message to log
      */
     public void debug(String message) {
-        LOGGER.debug(this.data.getUserId() + ": " + message);
+        if (LOGGER.isLoggable(Logger.DEBUG)) LOGGER.debug(this.data.getUserId() + ": " + message);
+    }
+
+
+
+    /**
+     * Logs a debug message to the log for this user, built only if it will be output.
+     *
+     * @param message  supplies the message to log
+     */
+    public void debug(Supplier<String> message) {
+        if (LOGGER.isLoggable(Logger.DEBUG)) LOGGER.debug(this.data.getUserId() + ": " + message.get());
+    }
+
+
+
+    /**
+     * Logs a formatted debug message to the log for this user, formatted only if it will be output.
+     *
+     * @param format  the message format string
+     * @param args    the message arguments
+     */
+    public void debug(String format, Object... args) {
+        if (LOGGER.isLoggable(Logger.DEBUG)) LOGGER.debug(this.data.getUserId() + ": " + String.format(format, args));
     }
-}
\ No newline at end of file
+}
@@ -3,24 +3,83 @@ package com.paradoxwebsolutions.assistant;
 import com.paradoxwebsolutions.core.ApplicationError;
 import com.paradoxwebsolutions.core.ResourceAPI;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
 
 
 
 
 /**
- * 
+ *
  * <p>Instances of this class are used to isolate identify specific class (e.g. custsom action classes)
  * from the rest of the system.
+ * <p>Two archive formats are supported, both of which are standard zip files. Version 1 archives
+ * are plain (compressed) zip files. Version 2 archives, as written by {@link Writer}, store model
+ * files uncompressed and aligned on page boundaries, and include a table of contents giving the
+ * location of each such file. Version 2 archives are memory mapped, and aligned files are read
+ * directly from the mapped archive rather than through the zip library.
+ * <p>The table of contents is checked against the zip directory when the archive is opened. If
+ * the archive has been modified since it was written (e.g. by <code>zip -u</code>), so that any
+ * file is no longer stored where the table of contents says, the archive is read as a version 1
+ * archive.
  *
  * @author Peter Smith
  */
 public class IdentityArchive implements ResourceAPI {
 
+    /** The name of the table of contents entry in version 2 archives */
+
+    public static final String TOC = "archive.toc";
+
+
+    /** The first line of a version 2 table of contents */
+
+    private static final String TOC_HEADER = "responsio-archive 2";
+
+
+    /** The alignment of uncompressed files in version 2 archives */
+
+    private static final int PAGE_SIZE = 4096;
+
+
+    /** The zip local file header signature */
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+
+
     private ZipFile zip;
 
+
+    /** The memory mapped archive (version 2 archives only) */
+
+    private ByteBuffer mapped = null;
+
+
+    /** The offset and length of each aligned file (version 2 archives only) */
+
+    private Map<String, long[]> toc = new HashMap<String, long[]>();
+
+
     public IdentityArchive(final String archiveName) throws ApplicationError {
         try {
             zip = new ZipFile(archiveName);
@@ -28,10 +87,95 @@ public class IdentityArchive implements ResourceAPI {
         catch (Exception x) {
             throw new ApplicationError(String.format("Unable to open zip archive '%s'", archiveName), x);
         }
+
+        ZipEntry entry = zip.getEntry(TOC);
+        if (entry != null) {
+            try (FileChannel channel = FileChannel.open(new File(archiveName).toPath(), StandardOpenOption.READ)) {
+
+                /* Very large archives cannot be mapped in a single buffer, so are read as version 1 archives */
+
+                if (channel.size() <= Integer.MAX_VALUE) {
+                    readTOC(zip.getInputStream(entry), channel.size());
+                    mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    if (!checkTOC()) throw new IOException("Table of contents does not match archive");
+                }
+            }
+            catch (IOException x) {
+                /* Invalid or out of date table of contents, so read as a version 1 archive */
+
+                toc.clear();
+                mapped = null;
+            }
+        }
+    }
+
+
+
+    /**
+     * Reads a version 2 archive table of contents.
+     *
+     * @param in    the table of contents
+     * @param size  the size of the archive
+     * @throws IOException if the table of contents is invalid
+     */
+    private void readTOC(final InputStream in, final long size) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (!TOC_HEADER.equals(line)) throw new IOException(String.format("Unsupported archive version '%s'", line));
+
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length != 3) throw new IOException(String.format("Invalid table of contents entry '%s'", line));
+
+                long offset = Long.parseLong(fields[1]);
+                long length = Long.parseLong(fields[2]);
+                if (offset < 0 || length < 0 || offset + length > size) throw new IOException(String.format("Invalid location for '%s'", fields[0]));
+
+                toc.put(fields[0], new long[] {offset, length});
+            }
+        }
     }
 
+
+
+    /**
+     * Checks that each file in the table of contents is stored, uncompressed, at the given location.
+     * <p>The zip directory entry must be uncompressed and of the same size, and the zip local
+     * header for the file must immediately precede the given location.
+     *
+     * @return true if the table of contents matches the archive, false otherwise
+     */
+    private boolean checkTOC() {
+        ByteBuffer data = mapped.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        for (Map.Entry<String, long[]> file : toc.entrySet()) {
+            ZipEntry entry = zip.getEntry(file.getKey());
+            long[] location = file.getValue();
+            if (entry == null || entry.getMethod() != ZipEntry.STORED || entry.getSize() != location[1]) return false;
+
+            byte[] name = file.getKey().getBytes(StandardCharsets.UTF_8);
+            int extra = entry.getExtra() == null ? 0 : entry.getExtra().length;
+            long header = location[0] - 30 - name.length - extra;
+
+            if (header < 0
+                    || data.getInt((int) header) != LOCAL_HEADER
+                    || (data.getShort((int) header + 26) & 0xffff) != name.length
+                    || (data.getShort((int) header + 28) & 0xffff) != extra) return false;
+
+            for (int i = 0; i < name.length; ++i) {
+                if (data.get((int) header + 30 + i) != name[i]) return false;
+            }
+        }
+        return true;
+    }
+
+
+
     @Override
     public InputStream getInputStream(final String filename) throws ApplicationError {
+        ByteBuffer buffer = getBuffer(filename);
+        if (buffer != null) return new ByteBufferInputStream(buffer);
+
         try {
             ZipEntry entry = zip.getEntry(filename);
             if (entry == null) throw new ApplicationError(String.format("File '%s' not found in archive", filename));
@@ -43,6 +187,25 @@ public class IdentityArchive implements ResourceAPI {
         }
     }
 
+
+
+    /**
+     * Returns a read only buffer for an archive file.
+     * <p>Only uncompressed files in version 2 archives are available as buffers. The returned
+     * buffer is a view of the memory mapped archive (no data is copied).
+     *
+     * @param filename  the name of the file
+     * @return the file content, or null if the file is not available as a buffer
+     */
+    public ByteBuffer getBuffer(final String filename) {
+        long[] location = toc.get(filename);
+        if (location == null || mapped == null) return null;
+
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position((int) location[0]).limit((int) (location[0] + location[1]));
+        return buffer.slice();
+    }
+
     public String[] getFiles() {
         return zip.stream().map((ze) -> ze.getName()).toArray(String[]::new);
     }
@@ -50,4 +213,189 @@ public class IdentityArchive implements ResourceAPI {
     public String[] getFiles(final String regex) {
         return zip.stream().map((ze) -> ze.getName()).filter((n) -> n.matches(regex)).toArray(String[]::new);
     }
+
+
+
+    /**
+     * Input stream reading from a byte buffer.
+     * <p>This is the stream returned for files that are available as buffers, so consumers that
+     * can use the buffer directly (see {@link ModelRegistry}) need not copy it.
+     */
+    public static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        /**
+         * Creates a stream reading the remaining content of a buffer.
+         *
+         * @param buffer  the buffer to read
+         */
+        public ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns the content remaining to be read, without affecting the stream.
+         *
+         * @return a read only view of the remaining content
+         */
+        public ByteBuffer getBuffer() {
+            return buffer.slice().asReadOnlyBuffer();
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (length == 0) return 0;
+            if (!buffer.hasRemaining()) return -1;
+
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long skip(final long n) {
+            int count = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+
+
+
+    /**
+     * Output stream that tracks the number of bytes written.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+        long count = 0;
+
+        CountingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            out.write(b);
+            ++count;
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+            out.write(bytes, offset, length);
+            count += length;
+        }
+    }
+
+
+
+    /**
+     * Writer for version 2 identity archives.
+     * <p>Model files (.bin) are stored uncompressed, with their content aligned on a page boundary
+     * (padding is added to the zip entry extra field). All other files are compressed as normal.
+     * The table of contents is written as the last entry when the writer is closed.
+     */
+    public static class Writer implements Closeable {
+
+        /** Zip extra field header ID used for alignment padding */
+
+        private static final int ALIGNMENT_ID = 0xD935;
+
+        private final CountingOutputStream out;
+        private final ZipOutputStream zip;
+        private final StringBuilder contents = new StringBuilder(TOC_HEADER).append('\n');
+
+
+        /**
+         * Creates an archive writer.
+         *
+         * @param archive  the archive file to create
+         * @throws IOException on error
+         */
+        public Writer(final File archive) throws IOException {
+            out = new CountingOutputStream(new BufferedOutputStream(new FileOutputStream(archive)));
+            zip = new ZipOutputStream(out);
+        }
+
+
+
+        /**
+         * Adds a directory entry to the archive.
+         *
+         * @param name  the directory name (ending in '/')
+         * @throws IOException on error
+         */
+        public void addDirectory(final String name) throws IOException {
+            zip.putNextEntry(new ZipEntry(name));
+            zip.closeEntry();
+        }
+
+
+
+        /**
+         * Adds a file to the archive.
+         *
+         * @param name  the name of the file in the archive
+         * @param file  the file to add
+         * @throws IOException on error
+         */
+        public void add(final String name, final File file) throws IOException {
+            ZipEntry entry = new ZipEntry(name);
+
+            if (!name.endsWith(".bin")) {
+                zip.putNextEntry(entry);
+                Files.copy(file.toPath(), zip);
+                zip.closeEntry();
+                return;
+            }
+
+            byte[] content = Files.readAllBytes(file.toPath());
+            CRC32 crc = new CRC32();
+            crc.update(content);
+
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+
+
+            /* Pad the extra field so that the content starts on a page boundary (local header is 30 bytes plus name and extra field) */
+
+            long start = out.count + 30 + name.getBytes(StandardCharsets.UTF_8).length + 4;
+            int padding = (int) (-start & (PAGE_SIZE - 1));
+            byte[] extra = new byte[4 + padding];
+            extra[0] = (byte) ALIGNMENT_ID;
+            extra[1] = (byte) (ALIGNMENT_ID >> 8);
+            extra[2] = (byte) padding;
+            extra[3] = (byte) (padding >> 8);
+            entry.setExtra(extra);
+
+            zip.putNextEntry(entry);
+            zip.flush();
+            if (out.count != start + padding) throw new IOException(String.format("Unable to align '%s' in archive", name));
+
+            zip.write(content);
+            zip.closeEntry();
+
+            contents.append(name).append('\t').append(start + padding).append('\t').append(content.length).append('\n');
+        }
+
+
+
+        @Override
+        public void close() throws IOException {
+            zip.putNextEntry(new ZipEntry(TOC));
+            zip.write(contents.toString().getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+            zip.close();
+        }
+    }
 }
@@ -0,0 +1,253 @@
+package com.paradoxwebsolutions.assistant;
+
+import com.paradoxwebsolutions.core.StringMap;
+import com.paradoxwebsolutions.expression.ExpressionContext;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+
+
+/**
+ * Read-only expression context view of an {@link IntentData} instance.
+ * <p>This gives intent matching expressions access to the intent and entity data without copying
+ * it into a new context for each evaluation. The following values are available:
+ * <ul>
+ * <li>intent - the name of the intent</li>
+ * <li>slots - the named entities extracted from the user input</li>
+ * <li>each entity value, by name</li>
+ * <li>the intent name itself, which evaluates to true</li>
+ * </ul>
+ * The 'intent' and 'slots' values are held in fixed slots (see {@link #VARIABLES}), so expressions
+ * parsed with these variables access them without a name lookup. The reserved names take
+ * precedence over entities of the same name.
+ * <p>The view reads the intent data each time a value is requested, so it always reflects the
+ * current entities. The rest of the map interface (size, key and entry sets, etc) works on a
+ * snapshot of the same values, and all methods that would modify the context throw
+ * UnsupportedOperationException.
+ *
+ * @author Peter Smith
+ * @see IntentData#getContext
+ */
+public class IntentContext extends ExpressionContext {
+
+    /** Slot number of the intent name */
+
+    private static final int INTENT = 0;
+
+
+    /** Slot number of the entities */
+
+    private static final int SLOTS = 1;
+
+
+    /** The variables held in fixed slots, in slot order (for use with {@link com.paradoxwebsolutions.expression.Parser#Parser(String...)}) */
+
+    public static final String[] VARIABLES = {"intent", "slots"};
+
+
+    /** The intent data this is a view of */
+
+    private final IntentData intent;
+
+
+
+    /**
+     * Creates a context view of intent data.
+     *
+     * @param intent  the intent data
+     */
+    public IntentContext(final IntentData intent) {
+        assert intent != null : "Null intent data";
+        this.intent = intent;
+    }
+
+
+
+    /**
+     * Returns a context value by slot number or name.
+     *
+     * @param slot  the slot number of the value, or -1 if the name was not resolved to a slot
+     * @param name  the name of the value
+     * @return the context value, or null if there is no such value
+     */
+    @Override
+    public Object get(final int slot, final String name) {
+        switch (slot) {
+            case INTENT: return intent.getName();
+            case SLOTS:  return intent.getEntities();
+            default:     return get(name);
+        }
+    }
+
+
+
+    /**
+     * Returns a context value by name.
+     *
+     * @param key  the name of the value
+     * @return the context value, or null if there is no such value
+     */
+    @Override
+    public Object get(final Object key) {
+        if (VARIABLES[INTENT].equals(key)) return intent.getName();
+        if (VARIABLES[SLOTS].equals(key)) return intent.getEntities();
+
+        StringMap entities = intent.getEntities();
+        String value = entities == null ? null : entities.get(key);
+        if (value != null) return value;
+
+        return key != null && key.equals(intent.getName()) ? Boolean.TRUE : null;
+    }
+
+
+
+    /**
+     * Checks if a named value exists in this context.
+     *
+     * @param key  the name of the value
+     * @return true if the value exists, false otherwise
+     */
+    @Override
+    public boolean containsKey(final Object key) {
+        return get(key) != null;
+    }
+
+
+
+    @Override
+    public Object getOrDefault(final Object key, final Object defaultValue) {
+        Object value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+
+
+    @Override
+    public int size() {
+        return snapshot().size();
+    }
+
+
+
+    @Override
+    public boolean isEmpty() {
+        return snapshot().isEmpty();
+    }
+
+
+
+    @Override
+    public boolean containsValue(final Object value) {
+        return snapshot().containsValue(value);
+    }
+
+
+
+    @Override
+    public Set<String> keySet() {
+        return snapshot().keySet();
+    }
+
+
+
+    @Override
+    public Collection<Object> values() {
+        return snapshot().values();
+    }
+
+
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+        return snapshot().entrySet();
+    }
+
+
+
+    @Override
+    public void forEach(final BiConsumer<? super String, ? super Object> action) {
+        snapshot().forEach(action);
+    }
+
+
+
+    /**
+     * Returns a modifiable copy of the values in this context.
+     *
+     * @return a new expression context holding the current values
+     */
+    @Override
+    public Object clone() {
+        ExpressionContext copy = new ExpressionContext();
+        for (Map.Entry<String, Object> entry : snapshot().entrySet()) copy.set(entry.getKey(), entry.getValue());
+        return copy;
+    }
+
+
+
+    /**
+     * Returns the values in this context, with the same precedence as {@link #get(Object)}.
+     *
+     * @return a read only map of the current values
+     */
+    private Map<String, Object> snapshot() {
+        Map<String, Object> values = new LinkedHashMap<String, Object>();
+
+        if (intent.getName() != null) values.put(intent.getName(), Boolean.TRUE);
+        if (intent.getEntities() != null) values.putAll(intent.getEntities());
+        values.put(VARIABLES[INTENT], intent.getName());
+        values.put(VARIABLES[SLOTS], intent.getEntities());
+        values.values().removeIf((v) -> v == null);
+
+        return Collections.unmodifiableMap(values);
+    }
+
+
+
+    /**
+     * Not supported - the context is read only.
+     *
+     * @return never returns
+     */
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Intent context is read only");
+    }
+
+
+
+    /**
+     * Not supported - the context is read only.
+     *
+     * @param key    the name of the value
+     * @param value  the value
+     * @return never returns
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public Object put(final String key, final Object value) {
+        throw readOnly();
+    }
+
+
+    /* The remaining modifiers are also not supported */
+
+    @Override public void putAll(final Map<? extends String, ? extends Object> values) {throw readOnly();}
+    @Override public Object putIfAbsent(final String key, final Object value) {throw readOnly();}
+    @Override public Object remove(final Object key) {throw readOnly();}
+    @Override public boolean remove(final Object key, final Object value) {throw readOnly();}
+    @Override public Object replace(final String key, final Object value) {throw readOnly();}
+    @Override public boolean replace(final String key, final Object oldValue, final Object newValue) {throw readOnly();}
+    @Override public void replaceAll(final BiFunction<? super String, ? super Object, ? extends Object> function) {throw readOnly();}
+    @Override public Object computeIfAbsent(final String key, final Function<? super String, ? extends Object> function) {throw readOnly();}
+    @Override public Object computeIfPresent(final String key, final BiFunction<? super String, ? super Object, ? extends Object> function) {throw readOnly();}
+    @Override public Object compute(final String key, final BiFunction<? super String, ? super Object, ? extends Object> function) {throw readOnly();}
+    @Override public Object merge(final String key, final Object value, final BiFunction<? super Object, ? super Object, ? extends Object> function) {throw readOnly();}
+    @Override public void clear() {throw readOnly();}
+}
@@ -27,6 +27,11 @@ public class IntentData {
     public GenericMap      slots;
 
 
+    /** Expression context view of this intent (created on demand) */
+
+    private transient IntentContext context;
+
+
 
     /**
      * Class constructor.
@@ -93,4 +98,19 @@ public class IntentData {
         return slots;
     }
 
+
+
+    /**
+     * Returns a read-only expression context view of this intent.
+     * <p>The view is created once and reused, so evaluating expressions against an intent does not
+     * copy its data.
+     *
+     * @return  the expression context view
+     * @see IntentContext
+     */
+    public IntentContext getContext() {
+        if (context == null) context = new IntentContext(this);
+        return context;
+    }
+
 }
\ No newline at end of file
@@ -59,13 +59,14 @@ public class Interpreter {
 
         /* Set up logging (the identity logger should already have been initialized) */
 
-        LOGGER = new Logger(this.identity);
+        LOGGER = Logger.get(this.identity);
         LOGGER.info("Initializing Interpreter");
 
 
         /* Get the input preprocessor pipeline */
 
-        this.preprocessor = new PreprocessPipeline(assistant, "chat");
+        this.preprocessor = new PreprocessPipeline(assistant, "chat", true);
+        this.preprocessor.setParallel(identityConfig.getBool("pipeline.parallel", false));
 
 
         /* Check intents */
@@ -93,14 +94,18 @@ public class Interpreter {
         Input input = this.preprocessor.preprocess(session, document);
 
 
-        /* Categorize it. We loop through the categorizers and capture the intent with the highest score. */
-
+        /*
+         * Categorize it. We loop through the categorizers (in configuration order) and capture the intent
+         * with the highest score. A certain match (a score of 1.0) cannot be beaten, so the remaining
+         * categorizers are skipped.
+         */
         Categorizers categorizers = this.assistant.getCategorizers();
         double bestScore = 0;
         String bestIntent = null;
 
         for (String name : categorizers.keySet()) {
-        
+            if (bestScore >= 1.0) break;
+
             IntentScores catScores = categorizers.get(name).getIntent(session, input);
             for (String intent : catScores.keySet()) {
                 double threshold = this.assistant.getIntent(intent).getConfidenceThreshold();
@@ -117,7 +122,7 @@ public class Interpreter {
 
         IntentData result = null;
         if (bestIntent != null) {
-            session.info("Intent: " + bestIntent);
+            session.info("Intent: %s", bestIntent);
 
             Intent intent = this.assistant.getIntent(bestIntent);
             result = new IntentData(bestIntent);
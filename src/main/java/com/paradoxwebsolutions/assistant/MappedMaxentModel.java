@@ -0,0 +1,559 @@
+package com.paradoxwebsolutions.assistant;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import opennlp.tools.doccat.DoccatFactory;
+import opennlp.tools.doccat.DoccatModel;
+import opennlp.tools.doccat.FeatureGenerator;
+import opennlp.tools.ml.maxent.GISModel;
+import opennlp.tools.ml.model.AbstractModel;
+import opennlp.tools.ml.model.Context;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.TokenNameFinderFactory;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.SequenceCodec;
+import opennlp.tools.util.ext.ExtensionLoader;
+
+
+/**
+ * A maximum entropy model with its parameters held in a single (optionally memory mapped) buffer.
+ * <p>OpenNLP maxent (GIS) models hold their parameters as a map of predicates to many small
+ * parameter arrays on the heap. This model compiles those parameters into one binary buffer,
+ * which is evaluated directly without copying. Compiled parameters are written to a cache
+ * directory (named by the hash of the model file they were compiled from) and memory mapped,
+ * so identical models loaded by different processes on the same host share the same pages of
+ * the OS page cache rather than each holding a copy on the heap.
+ * <p>The few other artifacts needed to recreate the OpenNLP model (language, feature generators,
+ * etc) are stored with the parameters, so once a model is cached it is loaded from the compiled
+ * file alone - the model file is not parsed at all. A cached file is only used if its header
+ * matches the model, otherwise it is compiled again. If no cache directory is configured, models
+ * are used as read (see {@link #loadCategorizer} and {@link #loadNameFinder}).
+ * <p>Evaluation produces the same results as the original GIS model. A mapped model cannot
+ * itself be serialized as an OpenNLP model, so it is only used for loading trained models.
+ * The binary layout is as follows:
+ *
+ * <pre>{@code
+ *
+ *  int       magic number
+ *  key       hash of the model file, as a short length followed by characters
+ *  int       total size of the compiled model
+ *  int       number of artifacts
+ *  artifact[] artifacts, each as a short length and characters (the name), an int length and bytes
+ *  int       number of outcomes
+ *  outcome[] outcome names, each as a short length followed by characters
+ *  int       hash table size (a power of two)
+ *  int[]     hash table of entry offsets (relative to the start of the entry data, -1 if empty)
+ *  entry[]   predicate entries, each as an int predicate hash, a short predicate length and
+ *            characters, an int number of active outcomes, the active outcome indexes (ints)
+ *            and the corresponding parameters (doubles)
+ *
+ * }</pre>
+ *
+ * @author Peter Smith
+ */
+public final class MappedMaxentModel extends AbstractModel {
+
+    /** Binary format identifier */
+
+    private static final int MAGIC = 0x4D584D33;
+
+
+    /* Artifact names */
+
+    private static final String LANGUAGE = "language";
+    private static final String FEATURE_GENERATORS = "featureGenerators";
+    private static final String BEAM_SIZE = "beamSize";
+    private static final String SEQUENCE_CODEC = "sequenceCodec";
+    private static final String GENERATOR = "generator";
+
+
+    /** The compiled model parameters */
+
+    private final ByteBuffer data;
+
+
+    /** The model artifacts stored with the parameters */
+
+    private final Map<String, byte[]> artifacts;
+
+
+    /** The hash table mask */
+
+    private final int mask;
+
+
+    /** The offset of the hash table */
+
+    private final int table;
+
+
+    /** The offset of the entry data */
+
+    private final int entries;
+
+
+    /** The uniform log prior for each outcome */
+
+    private final double prior;
+
+
+
+    /**
+     * Creates a model from compiled parameters.
+     *
+     * @param data       the compiled model parameters
+     * @param artifacts  the model artifacts stored with the parameters
+     * @param outcomes   the outcome names
+     * @param table      the offset of the hash table
+     */
+    private MappedMaxentModel(final ByteBuffer data, final Map<String, byte[]> artifacts, final String[] outcomes, final int table) {
+        super(new Context[0], new String[0], Collections.<String, Context>emptyMap(), outcomes);
+        this.modelType = ModelType.Maxent;
+
+        this.data = data;
+        this.artifacts = artifacts;
+        this.table = table + 4;
+        this.mask = data.getInt(table) - 1;
+        this.entries = this.table + data.getInt(table) * 4;
+        this.prior = Math.log(1.0 / outcomes.length);
+    }
+
+
+
+    /**
+     * Creates a model from compiled parameters, checking the header and reading the artifacts and outcome names.
+     *
+     * @param data  the compiled model parameters
+     * @param key   the hash of the model file the parameters must have been compiled from
+     * @return the model
+     * @throws IOException if the data is not a complete compiled model for the given key
+     */
+    private static MappedMaxentModel create(final ByteBuffer data, final String key) throws IOException {
+        try {
+            if (data.getInt(0) != MAGIC) throw new IOException("Invalid compiled maxent model");
+
+            int offset = 4;
+            int len = data.getShort(offset);
+            if (!getString(data, offset + 2, len).equals(key)) throw new IOException("Compiled maxent model is for a different model");
+            offset += 2 + len * 2;
+
+            if (data.getInt(offset) != data.limit()) throw new IOException("Compiled maxent model is incomplete");
+            offset += 4;
+
+            Map<String, byte[]> artifacts = new HashMap<String, byte[]>();
+            int count = data.getInt(offset);
+            offset += 4;
+
+            for (int i = 0; i < count; ++i) {
+                len = data.getShort(offset);
+                String name = getString(data, offset + 2, len);
+                offset += 2 + len * 2;
+
+                byte[] value = new byte[data.getInt(offset)];
+                ((ByteBuffer) data.duplicate().position(offset + 4)).get(value);
+                artifacts.put(name, value);
+                offset += 4 + value.length;
+            }
+
+            String[] outcomes = new String[data.getInt(offset)];
+            if (outcomes.length == 0) throw new IOException("Invalid compiled maxent model");
+            offset += 4;
+
+            for (int i = 0; i < outcomes.length; ++i) {
+                len = data.getShort(offset);
+                outcomes[i] = getString(data, offset + 2, len);
+                offset += 2 + len * 2;
+            }
+
+            int tableSize = data.getInt(offset);
+            if (Integer.bitCount(tableSize) != 1 || offset + 4L + tableSize * 4L > data.limit()) throw new IOException("Invalid compiled maxent model");
+
+            return new MappedMaxentModel(data, artifacts, outcomes, offset);
+        }
+        catch (IndexOutOfBoundsException | NegativeArraySizeException x) {
+            throw new IOException("Compiled maxent model is incomplete");
+        }
+    }
+
+
+
+    /**
+     * Loads a categorizer model.
+     * <p>If a cache directory is given and it holds a compiled file for the model content, the
+     * model is created from that file alone, without reading the model content. Otherwise, the
+     * model is read, and if it is a GIS model its compiled parameters are added to the cache.
+     * Without a cache directory, the model is returned as read.
+     *
+     * @param in        the model content (a serialized OpenNLP model)
+     * @param cacheDir  the directory for compiled models, or null if not cached
+     * @param name      the base name for the compiled model file
+     * @param key       the hash of the model content
+     * @return the categorizer model
+     * @throws IOException on error
+     */
+    public static DoccatModel loadCategorizer(final InputStream in, final File cacheDir, final String name, final String key) throws IOException {
+        if (cacheDir == null) return new DoccatModel(in);
+
+        MappedMaxentModel mapped = find(cacheDir, name, key);
+        if (mapped == null) {
+            DoccatModel model = new DoccatModel(in);
+            if (!(model.getMaxentModel() instanceof GISModel)) return model;
+
+            StringBuilder generators = new StringBuilder();
+            for (FeatureGenerator generator : model.getFactory().getFeatureGenerators()) {
+                if (generators.length() > 0) generators.append(',');
+                generators.append(generator.getClass().getName());
+            }
+
+            Map<String, byte[]> artifacts = new HashMap<String, byte[]>();
+            artifacts.put(LANGUAGE, model.getLanguage().getBytes(StandardCharsets.UTF_8));
+            artifacts.put(FEATURE_GENERATORS, generators.toString().getBytes(StandardCharsets.UTF_8));
+            mapped = store((GISModel) model.getMaxentModel(), artifacts, cacheDir, name, key);
+        }
+
+        String[] names = mapped.getArtifact(FEATURE_GENERATORS).split(",");
+        FeatureGenerator[] generators = new FeatureGenerator[names.length];
+        for (int i = 0; i < names.length; ++i) generators[i] = ExtensionLoader.instantiateExtension(FeatureGenerator.class, names[i]);
+
+        return new DoccatModel(mapped.getArtifact(LANGUAGE), mapped, null, new DoccatFactory(generators));
+    }
+
+
+
+    /**
+     * Loads a name finder model.
+     * <p>The cache is used in the same way as for {@link #loadCategorizer}.
+     *
+     * @param in        the model content (a serialized OpenNLP model)
+     * @param cacheDir  the directory for compiled models, or null if not cached
+     * @param name      the base name for the compiled model file
+     * @param key       the hash of the model content
+     * @return the name finder model
+     * @throws IOException on error
+     */
+    public static TokenNameFinderModel loadNameFinder(final InputStream in, final File cacheDir, final String name, final String key) throws IOException {
+        if (cacheDir == null) return new TokenNameFinderModel(in);
+
+        MappedMaxentModel mapped = find(cacheDir, name, key);
+        if (mapped == null) {
+            TokenNameFinderModel model = new TokenNameFinderModel(in);
+            Object maxent = model.getArtifact("nameFinder.model");
+            if (!(maxent instanceof GISModel)) return model;
+
+            String beamSize = model.getManifestProperty("BeamSize");
+            byte[] generator = model.getArtifact("generator.featuregen");
+
+            Map<String, byte[]> artifacts = new HashMap<String, byte[]>();
+            artifacts.put(LANGUAGE, model.getLanguage().getBytes(StandardCharsets.UTF_8));
+            artifacts.put(BEAM_SIZE, (beamSize == null ? String.valueOf(NameFinderME.DEFAULT_BEAM_SIZE) : beamSize).getBytes(StandardCharsets.UTF_8));
+            artifacts.put(SEQUENCE_CODEC, model.getSequenceCodec().getClass().getName().getBytes(StandardCharsets.UTF_8));
+            if (generator != null) artifacts.put(GENERATOR, generator);
+            mapped = store((GISModel) maxent, artifacts, cacheDir, name, key);
+        }
+
+        byte[] generator = mapped.artifacts.get(GENERATOR);
+        Map<String, Object> resources = Collections.<String, Object>emptyMap();
+
+        @SuppressWarnings("unchecked")
+        SequenceCodec<String> codec = ExtensionLoader.instantiateExtension(SequenceCodec.class, mapped.getArtifact(SEQUENCE_CODEC));
+
+        return new TokenNameFinderModel(
+            mapped.getArtifact(LANGUAGE),
+            mapped,
+            Integer.parseInt(mapped.getArtifact(BEAM_SIZE)),
+            generator,
+            resources,
+            null,
+            codec,
+            new TokenNameFinderFactory(generator, resources, codec));
+    }
+
+
+
+    /**
+     * Maps the compiled file for a model from a cache directory, if there is a valid one.
+     *
+     * @param cacheDir  the directory for compiled models
+     * @param name      the base name for the compiled model file
+     * @param key       the hash of the model content
+     * @return the compiled model, or null if not cached
+     */
+    private static MappedMaxentModel find(final File cacheDir, final String name, final String key) {
+        File file = new File(cacheDir, name + "-" + key + ".mxm");
+        if (!file.isFile()) return null;
+
+        try {
+            return mapFile(file, key);
+        }
+        catch (IOException x) {
+            /* Incomplete or mismatched file (e.g. left by an older version), so it is compiled again */
+
+            return null;
+        }
+    }
+
+
+
+    /**
+     * Compiles a GIS model into a cache directory, and maps the compiled file.
+     *
+     * @param model      the GIS model to compile
+     * @param artifacts  the model artifacts to store with the compiled parameters
+     * @param cacheDir   the directory for compiled models
+     * @param name       the base name for the compiled model file
+     * @param key        the hash of the model content
+     * @return the compiled model
+     * @throws IOException on error
+     */
+    private static MappedMaxentModel store(final GISModel model, final Map<String, byte[]> artifacts, final File cacheDir, final String name, final String key) throws IOException {
+        File file = new File(cacheDir, name + "-" + key + ".mxm");
+
+        /* Write to a temporary file first so that other processes never see a partial file */
+
+        ByteBuffer compiled = compile(model, artifacts, key);
+        Files.createDirectories(cacheDir.toPath());
+        File temp = File.createTempFile(name, ".tmp", cacheDir);
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+            while (compiled.hasRemaining()) channel.write(compiled);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        return mapFile(file, key);
+    }
+
+
+
+    /**
+     * Memory maps compiled parameters from a file.
+     *
+     * @param file  the compiled model file
+     * @param key   the hash of the model content the parameters must have been compiled from
+     * @return the model
+     * @throws IOException on error, or if the file is not a complete compiled model for the given key
+     */
+    private static MappedMaxentModel mapFile(final File file, final String key) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException("Invalid compiled maxent model");
+            return create(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), key);
+        }
+    }
+
+
+
+    /**
+     * Returns a string artifact stored with the compiled parameters.
+     *
+     * @param name  the artifact name
+     * @return the artifact value
+     * @throws IOException if the artifact is missing
+     */
+    private String getArtifact(final String name) throws IOException {
+        byte[] value = artifacts.get(name);
+        if (value == null) throw new IOException(String.format("Compiled maxent model has no '%s'", name));
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+
+
+    @Override
+    public double[] eval(final String[] context) {
+        return eval(context, null, new double[outcomeNames.length]);
+    }
+
+
+
+    @Override
+    public double[] eval(final String[] context, final float[] values) {
+        return eval(context, values, new double[outcomeNames.length]);
+    }
+
+
+
+    @Override
+    public double[] eval(final String[] context, final double[] probs) {
+        return eval(context, null, probs);
+    }
+
+
+
+    /**
+     * Evaluates a context, in the same way as a GIS model with a uniform prior.
+     *
+     * @param context  the predicates of the context
+     * @param values   the predicate values, or null if all are 1
+     * @param sums     the array to receive the outcome probabilities
+     * @return the outcome probabilities
+     */
+    private double[] eval(final String[] context, final float[] values, final double[] sums) {
+        for (int i = 0; i < outcomeNames.length; ++i) sums[i] = prior;
+
+        for (int i = 0; i < context.length; ++i) {
+            int offset = find(context[i]);
+            if (offset < 0) continue;
+
+            double value = values == null ? 1.0 : values[i];
+            int count = data.getInt(offset);
+            int outcomes = offset + 4;
+            int parameters = outcomes + count * 4;
+
+            for (int j = 0; j < count; ++j) {
+                sums[data.getInt(outcomes + j * 4)] += data.getDouble(parameters + j * 8) * value;
+            }
+        }
+
+        double normal = 0.0;
+        for (int i = 0; i < outcomeNames.length; ++i) {
+            sums[i] = StrictMath.exp(sums[i]);
+            normal += sums[i];
+        }
+        for (int i = 0; i < outcomeNames.length; ++i) sums[i] /= normal;
+
+        return sums;
+    }
+
+
+
+    /**
+     * Finds the parameters for a predicate.
+     *
+     * @param predicate  the predicate to look up
+     * @return the offset of the predicate's active outcome count, or -1 if not found
+     */
+    private int find(final String predicate) {
+        int hash = predicate.hashCode();
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = data.getInt(table + slot * 4);
+            if (entry < 0) return -1;
+
+            int offset = entries + entry;
+            if (data.getInt(offset) != hash) continue;
+
+            int len = data.getShort(offset + 4);
+            if (len != predicate.length()) continue;
+
+            boolean match = true;
+            for (int i = 0; i < len && match; ++i) match = data.getChar(offset + 6 + i * 2) == predicate.charAt(i);
+            if (match) return offset + 6 + len * 2;
+        }
+    }
+
+
+
+    /**
+     * Reads a string from a buffer.
+     *
+     * @param data    the buffer
+     * @param offset  the offset of the first character
+     * @param len     the number of characters
+     * @return the string
+     */
+    private static String getString(final ByteBuffer data, final int offset, final int len) {
+        char[] chars = new char[len];
+        for (int i = 0; i < len; ++i) chars[i] = data.getChar(offset + i * 2);
+        return new String(chars);
+    }
+
+
+
+    /**
+     * Compiles a GIS model into the binary format.
+     *
+     * @param model      the model to compile
+     * @param artifacts  the model artifacts to store with the parameters
+     * @param key        the hash of the model file the model was loaded from
+     * @return a buffer containing the compiled model parameters
+     * @throws IOException on error
+     */
+    private static ByteBuffer compile(final GISModel model, final Map<String, byte[]> artifacts, final String key) throws IOException {
+        Object[] structures = model.getDataStructures();
+        @SuppressWarnings("unchecked")
+        Map<String, Context> pmap = (Map<String, Context>) structures[1];
+        String[] outcomes = (String[]) structures[2];
+
+        /* Hash table of at most half full, so probe sequences stay short */
+
+        int tableSize = Integer.highestOneBit(Math.max(pmap.size(), 1) * 2) * 2;
+        if (tableSize < 0) throw new IOException("Maxent model too large to compile");
+
+
+        /* Work out the size of the compiled model */
+
+        long size = 22L + key.length() * 2 + tableSize * 4L;
+        for (Map.Entry<String, byte[]> artifact : artifacts.entrySet()) size += 6 + artifact.getKey().length() * 2 + artifact.getValue().length;
+        for (String outcome : outcomes) size += 2 + outcome.length() * 2;
+        for (Map.Entry<String, Context> entry : pmap.entrySet()) {
+            size += 10 + entry.getKey().length() * 2 + entry.getValue().getOutcomes().length * 12L;
+        }
+        if (size > Integer.MAX_VALUE) throw new IOException("Maxent model too large to compile");
+
+
+        /* Write the model */
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        buffer.putInt(MAGIC);
+        putString(buffer, key);
+        buffer.putInt((int) size);
+        buffer.putInt(artifacts.size());
+        for (Map.Entry<String, byte[]> artifact : artifacts.entrySet()) {
+            putString(buffer, artifact.getKey());
+            buffer.putInt(artifact.getValue().length);
+            buffer.put(artifact.getValue());
+        }
+        buffer.putInt(outcomes.length);
+        for (String outcome : outcomes) putString(buffer, outcome);
+
+        buffer.putInt(tableSize);
+        int table = buffer.position();
+        for (int i = 0; i < tableSize; ++i) buffer.putInt(-1);
+        int start = buffer.position();
+
+        for (Map.Entry<String, Context> entry : pmap.entrySet()) {
+            String predicate = entry.getKey();
+            int hash = predicate.hashCode();
+
+            int slot = hash & (tableSize - 1);
+            while (buffer.getInt(table + slot * 4) >= 0) slot = (slot + 1) & (tableSize - 1);
+            buffer.putInt(table + slot * 4, buffer.position() - start);
+
+            int[] active = entry.getValue().getOutcomes();
+            double[] parameters = entry.getValue().getParameters();
+
+            buffer.putInt(hash);
+            putString(buffer, predicate);
+            buffer.putInt(active.length);
+            for (int outcome : active) buffer.putInt(outcome);
+            for (int i = 0; i < active.length; ++i) buffer.putDouble(parameters[i]);
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+
+
+    /**
+     * Writes a length prefixed string to a buffer.
+     *
+     * @param buffer  the buffer to write to
+     * @param value   the string to write
+     * @throws IOException if the string is too long
+     */
+    private static void putString(final ByteBuffer buffer, final String value) throws IOException {
+        if (value.length() > Short.MAX_VALUE) throw new IOException("Maxent model string too long");
+
+        buffer.putShort((short) value.length());
+        for (int i = 0; i < value.length(); ++i) buffer.putChar(value.charAt(i));
+    }
+}
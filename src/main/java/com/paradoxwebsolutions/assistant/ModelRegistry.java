@@ -0,0 +1,243 @@
+package com.paradoxwebsolutions.assistant;
+
+import com.paradoxwebsolutions.core.ApplicationError;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * A process wide registry of shared models.
+ * <p>Models (for example, OpenNLP categorizer or NER models) are keyed by their type and a hash
+ * of their content, so identical model files loaded by different assistants share a single
+ * model instance. Each model is reference counted by owner - typically the {@link IdentityArchive}
+ * of the agent the model was loaded for. When an owner is released, any models no longer used by
+ * other owners are dropped from the registry.
+ * <p>Content read from a memory mapped identity archive (see {@link IdentityArchive.ByteBufferInputStream})
+ * is hashed and passed to the loader in place, rather than being copied on to the heap first.
+ * <p>Note that models must be immutable (thread safe) for sharing to be safe. This is the case for
+ * the OpenNLP model classes, but not for the tools (e.g. DocumentCategorizerME) built on them.
+ *
+ * @author Peter Smith
+ */
+public final class ModelRegistry {
+
+    /**
+     * Interface used for loading a model from its content.
+     *
+     * @param <T>  the type of model being loaded
+     */
+    @FunctionalInterface
+    public static interface Loader<T> {
+        /**
+         * Loads a model.
+         *
+         * @param in  the model content
+         * @return the loaded model
+         * @throws IOException on error
+         */
+        T load(InputStream in) throws IOException;
+    }
+
+
+    /**
+     * Interface used for loading a model from its content, given the content hash.
+     * <p>The hash identifies the model content, so it can be used to key anything derived
+     * from the model (such as compiled model files).
+     *
+     * @param <T>  the type of model being loaded
+     */
+    @FunctionalInterface
+    public static interface KeyedLoader<T> {
+        /**
+         * Loads a model.
+         *
+         * @param in    the model content
+         * @param hash  the SHA-256 hash (hex encoded) of the model content
+         * @return the loaded model
+         * @throws IOException on error
+         */
+        T load(InputStream in, String hash) throws IOException;
+    }
+
+
+    /** A registered model */
+
+    private static class Entry {
+        Object model = null;
+        int references = 0;
+    }
+
+
+    /** Registered models, keyed by type and content hash */
+
+    private static final Map<String, Entry> models = new HashMap<String, Entry>();
+
+
+    /** The keys of the models acquired by each owner */
+
+    private static final Map<Object, List<String>> owners = new IdentityHashMap<Object, List<String>>();
+
+
+
+    /** Prevent instantiation */
+
+    private ModelRegistry() {
+    }
+
+
+
+    /**
+     * Acquires a model, loading it only if an identical model is not already registered.
+     *
+     * @param <T>     the type of model
+     * @param owner   the owner of the model reference
+     * @param in      the model content
+     * @param type    the type of model
+     * @param loader  the model loader, used if the model is not already registered
+     * @return the shared model instance
+     * @throws ApplicationError if the model could not be read or loaded
+     */
+    public static <T> T acquire(final Object owner, final InputStream in, final Class<T> type, final Loader<T> loader) throws ApplicationError {
+        return acquire(owner, in, type, (content, hash) -> loader.load(content));
+    }
+
+
+
+    /**
+     * Acquires a model, loading it only if an identical model is not already registered.
+     * <p>This is the same as {@link #acquire(Object, InputStream, Class, Loader)}, but the loader
+     * is also given the hash of the model content.
+     *
+     * @param <T>     the type of model
+     * @param owner   the owner of the model reference
+     * @param in      the model content
+     * @param type    the type of model
+     * @param loader  the model loader, used if the model is not already registered
+     * @return the shared model instance
+     * @throws ApplicationError if the model could not be read or loaded
+     */
+    public static <T> T acquire(final Object owner, final InputStream in, final Class<T> type, final KeyedLoader<T> loader) throws ApplicationError {
+        assert owner != null : "Null owner passed to model registry";
+
+        if (in == null) throw new ApplicationError(String.format("Missing %s model content", type.getSimpleName()));
+
+        try {
+            ByteBuffer buffer = in instanceof IdentityArchive.ByteBufferInputStream ? ((IdentityArchive.ByteBufferInputStream) in).getBuffer() : null;
+            byte[] content = buffer == null ? in.readAllBytes() : null;
+            String hash = buffer == null ? hash(content) : hash(buffer.duplicate());
+            String key = type.getName() + ":" + hash;
+
+            Entry entry;
+            synchronized (ModelRegistry.class) {
+                entry = models.computeIfAbsent(key, (k) -> new Entry());
+                entry.references++;
+                owners.computeIfAbsent(owner, (o) -> new ArrayList<String>()).add(key);
+            }
+
+            /* Models are loaded outside the registry lock, so different models can be loaded concurrently */
+
+            try {
+                synchronized (entry) {
+                    if (entry.model == null) entry.model = loader.load(buffer == null ? new ByteArrayInputStream(content) : new IdentityArchive.ByteBufferInputStream(buffer.duplicate()), hash);
+                    return type.cast(entry.model);
+                }
+            }
+            catch (IOException | RuntimeException x) {
+                release(owner, key);
+                throw x;
+            }
+        }
+        catch (IOException x) {
+            throw new ApplicationError(String.format("Failed to load %s model", type.getSimpleName()), x);
+        }
+    }
+
+
+
+    /**
+     * Releases all model references held by an owner.
+     * <p>Models that are no longer referenced are removed from the registry (but remain usable
+     * by anything still holding them).
+     *
+     * @param owner  the owner to release
+     */
+    public static synchronized void release(final Object owner) {
+        List<String> keys = owners.remove(owner);
+        if (keys == null) return;
+
+        for (String key : keys) {
+            Entry entry = models.get(key);
+            if (entry != null && --entry.references <= 0) models.remove(key);
+        }
+    }
+
+
+
+    /**
+     * Releases a single model reference held by an owner.
+     *
+     * @param owner  the owner of the reference
+     * @param key    the model key
+     */
+    private static synchronized void release(final Object owner, final String key) {
+        List<String> keys = owners.get(owner);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) owners.remove(owner);
+
+        Entry entry = models.get(key);
+        if (entry != null && --entry.references <= 0) models.remove(key);
+    }
+
+
+
+    /**
+     * Returns the number of models currently registered.
+     *
+     * @return the number of registered models
+     */
+    public static synchronized int size() {
+        return models.size();
+    }
+
+
+
+    /**
+     * Returns a hex encoded SHA-256 hash of some content.
+     *
+     * @param content  the content to hash
+     * @return the hash value
+     */
+    public static String hash(final byte[] content) {
+        return hash(ByteBuffer.wrap(content));
+    }
+
+
+
+    /**
+     * Returns a hex encoded SHA-256 hash of the remaining content of a buffer.
+     *
+     * @param content  the content to hash (the buffer position is moved to its limit)
+     * @return the hash value
+     */
+    public static String hash(final ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content);
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) sb.append(String.format("%02x", b));
+            return sb.toString();
+        }
+        catch (Exception x) {
+            throw new IllegalStateException("SHA-256 not available", x);
+        }
+    }
+}
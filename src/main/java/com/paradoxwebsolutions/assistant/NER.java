@@ -6,6 +6,7 @@ import com.paradoxwebsolutions.core.ApplicationError;
 import com.paradoxwebsolutions.core.StringMap;
 
 import java.util.List;
+import java.util.Set;
 
 /**
  * Defines the interface for Named Entity Recognition instances.
@@ -36,6 +37,19 @@ public interface NER {
 
 
 
+    /**
+     * Returns the names of the pipeline data items used by this NER.
+     * <p>A null return value indicates that the inputs are not known, and that all
+     * pipeline outputs must therefore be generated.
+     *
+     * @return the set of pipeline input names, or null if not known
+     */
+    default Set<String> getInputs() {
+        return null;
+    }
+
+
+
     /**
      * Returns a trainer (if required) for this NER.
      *
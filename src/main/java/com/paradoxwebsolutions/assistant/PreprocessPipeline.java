@@ -1,13 +1,24 @@
 package com.paradoxwebsolutions.assistant;
 
 import com.paradoxwebsolutions.core.ApplicationError;
+import com.paradoxwebsolutions.core.GenericMap;
 import com.paradoxwebsolutions.core.Logger;
+import com.paradoxwebsolutions.assistant.preprocessors.PreprocessorBranch;
 import com.paradoxwebsolutions.assistant.preprocessors.PreprocessorDefault;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 
@@ -20,11 +31,64 @@ import java.util.stream.Collectors;
  */
 public class PreprocessPipeline {
 
+    /**
+     * A single step in a parallel preprocessing plan.
+     * <p>Each stage records the stages it depends on, and where each of its inputs
+     * comes from. Stages with unknown inputs or outputs act as barriers - they wait
+     * for all prior stages and are waited on by all subsequent stages.
+     */
+    private static class Stage {
+
+        /** The preprocessor for this stage */
+
+        final Preprocessor preprocessor;
+
+
+        /** Input name to producing stage index (-1 for the initial input), or null for a barrier */
+
+        final Map<String, Integer> sources;
+
+
+        /** The outputs of this stage, or null for a barrier */
+
+        final Set<String> outputs;
+
+
+        /** The indexes of the stages this stage must wait for */
+
+        final int[] dependencies;
+
+
+        /** The index of the last barrier stage prior to this one (-1 if none) */
+
+        final int barrier;
+
+
+        Stage(Preprocessor preprocessor, Map<String, Integer> sources, Set<String> outputs, Set<Integer> dependencies, int barrier) {
+            this.preprocessor = preprocessor;
+            this.sources = sources;
+            this.outputs = outputs;
+            this.dependencies = dependencies.stream().mapToInt(Integer::intValue).toArray();
+            this.barrier = barrier;
+        }
+    }
+
+
     /** A list of preprocesssors to be used in processing inputs */
 
     private List<Preprocessor>    preprocessors;
 
 
+    /** The parallel execution plan (null if preprocessing is sequential) */
+
+    private Stage[] stages = null;
+
+
+    /** The executor used for running parallel stages */
+
+    private Executor executor = ForkJoinPool.commonPool();
+
+
     /** Logger */
     
     private Logger LOGGER = null;
@@ -38,15 +102,207 @@ public class PreprocessPipeline {
      * @throws ApplicationError on error
      */
     public PreprocessPipeline(final Assistant assistant, final String pipeline) throws ApplicationError {
+        this(assistant, pipeline, false);
+    }
+
+
+
+    /**
+     * Creates a PreprocessPipeline instance, optionally removing unused preprocessors.
+     * <p>If pruning is requested, the pipeline inputs required by the assistant categorizers
+     * and NERs are used to determine which preprocessors actually contribute to the final
+     * pipeline output. Those that do not are dropped from the pipeline. Pruning should only
+     * be requested for runtime pipelines since training typically uses different inputs.
+     *
+     * @param assistant  the {@link Assistant} instance to process input for
+     * @param pipeline   the name of the preprocessing pipeline to use
+     * @param prune      true if unused preprocessors should be removed, false otherwise
+     * @throws ApplicationError on error
+     */
+    public PreprocessPipeline(final Assistant assistant, final String pipeline, final boolean prune) throws ApplicationError {
         String identity = assistant.getIdentity();
         assert identity != null : "Invalid processing pipeline configuration - no identity";
 
-        LOGGER = new Logger(identity);
+        LOGGER = Logger.get(identity);
         LOGGER.info(String.format("Initializing PreprocessPipeline for '%s'", pipeline));
 
-        /* Get the preprocessor configuration and filter for the pipeline */
+        /* Get the preprocessor configuration and filter for the pipeline (including the steps within language branches) */
 
-        this.preprocessors = assistant.getPreprocessors().stream().filter((p) -> p.forPipeline(pipeline)).collect(Collectors.toList());
+        this.preprocessors = assistant.getPreprocessors().stream()
+            .filter((p) -> p.forPipeline(pipeline))
+            .map((p) -> p instanceof PreprocessorBranch ? ((PreprocessorBranch) p).forPipelineSteps(pipeline) : p)
+            .collect(Collectors.toList());
+
+        if (prune) {
+            Set<String> required = getRequiredInputs(assistant);
+            if (required != null) this.preprocessors = prune(this.preprocessors, required);
+        }
+    }
+
+
+
+    /**
+     * Enables or disables parallel preprocessing.
+     * <p>In parallel mode, a dependency graph is built from the declared inputs and
+     * outputs of each preprocessor, and preprocessors that do not depend on each other
+     * are run concurrently. Each preprocessor sees the same data it would have seen had
+     * the pipeline been run sequentially, so the results are identical (this relies on
+     * preprocessors not modifying their input values in place - see
+     * {@link Preprocessor#preprocess(ClientSession, GenericMap)}). Since running
+     * a preprocessor on another thread has a cost of its own, this is best suited to
+     * pipelines with expensive (model based) preprocessors.
+     *
+     * @param parallel  true to enable parallel preprocessing, false for sequential
+     */
+    public void setParallel(final boolean parallel) {
+        this.stages = parallel ? plan(this.preprocessors) : null;
+    }
+
+
+
+    /**
+     * Builds a parallel execution plan for a list of preprocessors.
+     * <p>Only read-after-write dependencies need to be honored since each stage is given
+     * its own copy of its inputs, taken from the stage that produced them.
+     *
+     * @param preprocessors  the pipeline preprocessors
+     * @return the execution plan
+     */
+    private Stage[] plan(final List<Preprocessor> preprocessors) {
+        Stage[] stages = new Stage[preprocessors.size()];
+        Map<String, Integer> writers = new HashMap<String, Integer>();
+        int barrier = -1;
+
+        for (int i = 0; i < stages.length; ++i) {
+            Preprocessor preproc = preprocessors.get(i);
+            Set<String> inputs = preproc.getInputs();
+            Set<String> outputs = preproc.getOutputs();
+            Set<Integer> dependencies = new TreeSet<Integer>();
+
+            if (barrier >= 0) dependencies.add(barrier);
+
+            if (inputs == null || outputs == null) {
+                for (int j = barrier + 1; j < i; ++j) dependencies.add(j);
+
+                stages[i] = new Stage(preproc, null, null, dependencies, barrier);
+                writers.clear();
+                barrier = i;
+            }
+            else {
+                Map<String, Integer> sources = new HashMap<String, Integer>();
+                for (String name : inputs) {
+                    int source = writers.getOrDefault(name, barrier);
+                    sources.put(name, source);
+                    if (source >= 0) dependencies.add(source);
+                }
+
+                stages[i] = new Stage(preproc, sources, outputs, dependencies, barrier);
+                for (String name : outputs) writers.put(name, i);
+            }
+
+            LOGGER.debug(String.format("Parallel preprocessing stage %d (%s) depends on %s",
+                i, preproc.getClass().getSimpleName(), dependencies.toString()));
+        }
+
+        return stages;
+    }
+
+
+
+    /**
+     * Returns the stages a stage of the parallel execution plan waits for.
+     *
+     * @param index  the index of the stage
+     * @return the indexes of the stages it depends on
+     */
+    int[] getDependencies(final int index) {
+        return stages[index].dependencies.clone();
+    }
+
+
+
+    /**
+     * Returns the set of pipeline outputs required by the assistant categorizers and NERs.
+     * <p>Note that intent matchers operate on intent data rather than pipeline output, and
+     * so do not contribute to the required set. The session language is always considered
+     * to be required since it is used by categorizers, NERs, and actions.
+     *
+     * @param assistant  the assistant to get the required inputs for
+     * @return the set of required pipeline output names, or null if they cannot be determined
+     */
+    private Set<String> getRequiredInputs(final Assistant assistant) {
+        Set<String> required = new HashSet<String>();
+        required.add(Preprocessor.SESSION_LANGUAGE);
+
+        for (Categorizer categorizer : assistant.getCategorizers().values()) {
+            Set<String> inputs = categorizer.getInputs();
+            if (inputs == null) {
+                LOGGER.info(String.format("Pipeline pruning disabled - inputs unknown for %s", categorizer.getClass().getSimpleName()));
+                return null;
+            }
+            required.addAll(inputs);
+        }
+
+        for (Intent intent : assistant.getIntents().values()) {
+            if (intent.getNers() == null) continue;
+
+            for (NER ner : intent.getNers().values()) {
+                Set<String> inputs = ner.getInputs();
+                if (inputs == null) {
+                    LOGGER.info(String.format("Pipeline pruning disabled - inputs unknown for %s", ner.getClass().getSimpleName()));
+                    return null;
+                }
+                required.addAll(inputs);
+            }
+        }
+
+        return required;
+    }
+
+
+
+    /**
+     * Removes preprocessors whose outputs are never used.
+     * <p>This works backwards through the pipeline, tracking the set of data items that
+     * are still needed. A preprocessor is kept if it writes any needed item (or if its
+     * outputs are unknown), in which case the items it writes are satisfied and the items
+     * it reads become needed. If the inputs of a kept preprocessor are unknown, all prior
+     * preprocessors are kept.
+     *
+     * @param preprocessors  the pipeline preprocessors
+     * @param required       the set of data items required from the pipeline
+     * @return the list of preprocessors that contribute to the required output
+     */
+    private List<Preprocessor> prune(final List<Preprocessor> preprocessors, final Set<String> required) {
+        List<Preprocessor> kept = new ArrayList<Preprocessor>();
+        Set<String> needed = new HashSet<String>(required);
+        int i = preprocessors.size() - 1;
+
+        for (; i >= 0; --i) {
+            Preprocessor preproc = preprocessors.get(i);
+            Set<String> outputs = preproc.getOutputs();
+
+            if (outputs != null && Collections.disjoint(outputs, needed)) {
+                LOGGER.info(String.format("Pruning unused preprocessor %s (outputs: %s)",
+                    preproc.getClass().getSimpleName(),
+                    String.join(", ", outputs)));
+                continue;
+            }
+
+            kept.add(0, preproc);
+
+            Set<String> inputs = preproc.getInputs();
+            if (inputs == null) break;
+
+            if (outputs != null) needed.removeAll(outputs);
+            needed.addAll(inputs);
+        }
+
+        /* Anything before a preprocessor with unknown inputs is kept */
+
+        if (i > 0) kept.addAll(0, preprocessors.subList(0, i));
+
+        return kept;
     }
 
 
@@ -64,25 +320,143 @@ public class PreprocessPipeline {
         String prefix = session.getSessionData().getUserId();
         Input input = new Input(document);
 
+        if (this.stages != null) {
+            preprocessParallel(session, input);
+
+            /* Debugging info */
+
+            if (LOGGER.isLoggable(Logger.TRACE)) trace(prefix, "parallel", input);
+
+            return input;
+        }
+
         for (Preprocessor preproc : this.preprocessors) {            
             preproc.preprocess(session, input);
 
             /* Debugging info */
 
-            if (LOGGER.isLoggable(Logger.TRACE)) {
-                String name = preproc.getClass().getSimpleName();
-                
-                for (String key : input.keySet()) {
-                    Object value = input.get(key);
-                    if (value.getClass().isArray())
-                        LOGGER.trace(String.format("%s: Preprocessing pipeline (%s): %s [%s]", prefix, name, key, String.join(", ", (String[]) value)));
-                    else
-                        LOGGER.trace(String.format("%s: Preprocessing pipeline (%s): %s [%s]", prefix, name, key, value.toString()));
+            if (LOGGER.isLoggable(Logger.TRACE)) trace(prefix, preproc.getClass().getSimpleName(), input);
+        }
+
+        return input;
+    }
+
+
+
+    /**
+     * Runs the parallel execution plan on client input.
+     *
+     * @param session  the client session
+     * @param input    the client input, which is updated with the pipeline results
+     * @throws ApplicationError on error
+     */
+    private void preprocessParallel(final ClientSession session, final Input input) throws ApplicationError {
+        final GenericMap[] results = new GenericMap[stages.length];
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[stages.length];
+
+        for (int i = 0; i < stages.length; ++i) {
+            final int index = i;
+            final Stage stage = stages[i];
+
+            CompletableFuture<?> ready = stage.dependencies.length == 0
+                ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.allOf(Arrays.stream(stage.dependencies).mapToObj((d) -> futures[d]).toArray(CompletableFuture[]::new));
+
+            futures[i] = ready.thenRunAsync(() -> {
+                GenericMap data = getStageInput(stage, index, input, results);
+                try {
+                    stage.preprocessor.preprocess(session, data);
+                }
+                catch (ApplicationError x) {
+                    throw new CompletionException(x);
                 }
+                results[index] = data;
+            }, executor);
+        }
+
+        try {
+            CompletableFuture.allOf(futures).join();
+        }
+        catch (CompletionException x) {
+            Throwable cause = x.getCause();
+            if (cause instanceof ApplicationError) throw (ApplicationError) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ApplicationError("Parallel preprocessing failed", (Exception) cause);
+        }
+
+        /* Gather the final results in pipeline order */
+
+        GenericMap data = collect(stages.length, input, results);
+        input.clear();
+        input.putAll(data);
+    }
+
+
+
+    /**
+     * Creates the input data for a parallel stage.
+     * <p>The data map is a new map for the stage, but the values in it are shared with
+     * other stages, which is safe because preprocessors do not modify their inputs.
+     *
+     * @param stage    the stage to create the input data for
+     * @param index    the index of the stage
+     * @param input    the initial pipeline input
+     * @param results  the results of completed stages
+     * @return the input data for the stage
+     */
+    private GenericMap getStageInput(final Stage stage, final int index, final Input input, final GenericMap[] results) {
+        if (stage.sources == null) return collect(index, input, results);
+
+        GenericMap data = new GenericMap();
+        for (Map.Entry<String, Integer> source : stage.sources.entrySet()) {
+            Object value = (source.getValue() < 0 ? input : results[source.getValue()]).get(source.getKey());
+            if (value != null) data.put(source.getKey(), value);
+        }
+        return data;
+    }
+
+
+
+    /**
+     * Collects the complete pipeline data as it would be prior to a given stage in sequential processing.
+     *
+     * @param end      the index of the stage to collect data for
+     * @param input    the initial pipeline input
+     * @param results  the results of completed stages
+     * @return the complete pipeline data
+     */
+    private GenericMap collect(final int end, final Input input, final GenericMap[] results) {
+        int barrier = -1;
+        if (end < stages.length) barrier = stages[end].barrier;
+        else if (end > 0) barrier = stages[end - 1].sources == null ? end - 1 : stages[end - 1].barrier;
+
+        GenericMap data = new GenericMap(barrier < 0 ? input : results[barrier]);
+        for (int i = barrier + 1; i < end; ++i) {
+            for (String name : stages[i].outputs) {
+                if (results[i].containsKey(name)) data.put(name, results[i].get(name));
             }
         }
+        return data;
+    }
 
-        return input;
+
+
+    /**
+     * Dumps the current pipeline data to the trace log.
+     *
+     * @param prefix  the log message prefix
+     * @param name    the name of the preprocessing stage
+     * @param input   the pipeline data
+     */
+    private void trace(final String prefix, final String name, final GenericMap input) {
+        for (String key : input.keySet()) {
+            Object value = input.get(key);
+            if (value.getClass().isArray())
+                LOGGER.trace(String.format("%s: Preprocessing pipeline (%s): %s [%s]", prefix, name, key, String.join(", ", (String[]) value)));
+            else
+                LOGGER.trace(String.format("%s: Preprocessing pipeline (%s): %s [%s]", prefix, name, key, value.toString()));
+        }
     }
 
 
@@ -17,6 +17,16 @@ import java.util.Set;
  */
 public abstract class Preprocessor {
 
+    /**
+     * Name used to represent the client session language in preprocessor input and
+     * output declarations.
+     * <p>This is not an actual pipeline data key. It is used to declare a dependency
+     * on (or an update to) the session language, which is read by some preprocessors
+     * as well as by categorizers, NERs, and actions.
+     */
+    public static final String SESSION_LANGUAGE = "@language";
+
+
     /** The set of named pipelines that this preprocessor applies to */
 
     private Set<String>     pipelines;
@@ -40,6 +50,9 @@ public abstract class Preprocessor {
 
     /**
      * Performs this preprocessing step on the given user input.
+     * <p>Implementations must not modify the values they read (such as token arrays) in
+     * place - results are always written as new values. Input values may be shared with
+     * other preprocessors, which in a parallel pipeline may be running at the same time.
      *
      * @param session  the current user session
      * @param input    the user input, which may contain the results of prior
@@ -47,4 +60,31 @@ public abstract class Preprocessor {
      * @throws ApplicationError on error
      */
     public abstract void preprocess(ClientSession session, GenericMap input) throws ApplicationError;
-}
+
+
+
+    /**
+     * Returns the names of the pipeline data items read by this preprocessor.
+     * <p>This is used to work out the data flow through a pipeline. A null return value
+     * indicates that the inputs are not known, and the pipeline will make no assumptions
+     * about them. The default implementation returns null.
+     *
+     * @return the set of input names, or null if not known
+     */
+    public Set<String> getInputs() {
+        return null;
+    }
+
+
+
+    /**
+     * Returns the names of the pipeline data items written by this preprocessor.
+     * <p>A null return value indicates that the outputs are not known, in which case
+     * the preprocessor is always run. The default implementation returns null.
+     *
+     * @return the set of output names, or null if not known
+     */
+    public Set<String> getOutputs() {
+        return null;
+    }
+}
\ No newline at end of file
@@ -30,6 +30,11 @@ public class SessionData {
     private String language = "en";
 
 
+    /** The number of consecutive confident detections of the current language */
+
+    private int languageDetections = 0;
+
+
     /** State cache */
 
     private GenericMap slots = new GenericMap();
@@ -124,6 +129,28 @@ public class SessionData {
 
 
 
+    /**
+     * Returns the number of consecutive confident detections of the current language.
+     *
+     * @return the number of consecutive language detections
+     */
+    public int getLanguageDetections() {
+        return this.languageDetections;
+    }
+
+
+
+    /**
+     * Sets the number of consecutive confident detections of the current language.
+     *
+     * @param languageDetections  the number of consecutive language detections
+     */
+    public void setLanguageDetections(int languageDetections) {
+        this.languageDetections = languageDetections;
+    }
+
+
+
     /**
      * Add an intent (including slot data) to the history. We must clone
      * the slot data so it doesn't get modified externally.
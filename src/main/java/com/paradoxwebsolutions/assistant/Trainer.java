@@ -69,6 +69,21 @@ public interface Trainer {
         public Config       config;
 
 
+        /** The directory containing the identity source data (for trainers that read additional data files) */
+
+        public String       dataDir;
+
+
+        /** The pipeline used to preprocess the training data (may be null) */
+
+        public PreprocessPipeline pipeline;
+
+
+        /** The client session used for preprocessing (the session language is the language being trained) */
+
+        public ClientSession session;
+
+
         /** Returned list of generated files */
 
         public List<String> files;
@@ -2,31 +2,58 @@ package com.paradoxwebsolutions.assistant.actions;
 
 import com.paradoxwebsolutions.assistant.Action;
 import com.paradoxwebsolutions.assistant.Assistant;
+import com.paradoxwebsolutions.assistant.AsyncAction;
 import com.paradoxwebsolutions.assistant.ClientSession;
 import com.paradoxwebsolutions.assistant.ClientResponse;
-import com.paradoxwebsolutions.core.ApplicationError;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 
 
 /**
  * Action that wraps a list of other actions.
  * <p>This Action class simply passes the Action invocation through to each Action in
- * its list, in order, one at a time.
+ * its list, in order, one at a time. Asynchronous actions in the list are composed rather
+ * than waited on, so each action starts when the previous one completes.
  *
  * @author Peter Smith
  * @see Action
+ * @see AsyncAction
  */
-public class ActionList implements Action {
+public class ActionList implements AsyncAction {
 
     /** The list of actions to invoke */
 
     private Action[] actions;
 
 
+    /**
+     * Class constructor.
+     */
+    public ActionList() {
+    }
+
+
+    /**
+     * Class constructor.
+     *
+     * @param actions  the actions to invoke, in order
+     */
+    public ActionList(final Action... actions) {
+        this.actions = actions;
+    }
+
+
     @Override
-    public void perform(Assistant assistant, ClientSession session, ClientResponse response) throws ApplicationError {
+    public CompletionStage<Void> performAsync(Assistant assistant, ClientSession session, ClientResponse response) {
+        CompletionStage<Void> stage = CompletableFuture.completedFuture(null);
+
         if (actions != null) {
-            for (Action action : actions) action.perform(assistant, session, response);
+            for (Action action : actions) {
+                stage = stage.thenCompose((v) -> AsyncAction.performAsync(action, assistant, session, response));
+            }
         }
+        return stage;
     }
-}
\ No newline at end of file
+}
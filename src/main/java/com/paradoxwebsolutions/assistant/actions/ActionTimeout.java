@@ -0,0 +1,114 @@
+package com.paradoxwebsolutions.assistant.actions;
+
+import com.paradoxwebsolutions.assistant.Action;
+import com.paradoxwebsolutions.assistant.Assistant;
+import com.paradoxwebsolutions.assistant.AsyncAction;
+import com.paradoxwebsolutions.assistant.ClientSession;
+import com.paradoxwebsolutions.assistant.ClientResponse;
+import com.paradoxwebsolutions.core.ApplicationError;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+
+/**
+ * Action that limits the time another action may take, with an optional fallback.
+ * <p>The wrapped action writes to a private response, which is only added to the client response
+ * if the action completes within the timeout. If the action fails or times out, the fallback action
+ * (if any) is performed instead - for example, an utterance apologizing that the information is
+ * not available. Without a fallback, the failure is passed on.
+ * <p>Note that a timed out action is not cancelled, so any slot changes it makes may still be
+ * applied to the session. Only asynchronous actions (see {@link AsyncAction}) can time out - a
+ * synchronous action is performed inline, so it has always completed before the timeout starts.
+ * <p>Completion is handled on the executor (by default the common pool) rather than on the thread
+ * that completed the action or signalled the timeout, so neither the fallback nor any stages that
+ * follow this action run on the JDK's internal timeout thread.
+ *
+ * @author Peter Smith
+ * @see AsyncAction
+ */
+public class ActionTimeout implements AsyncAction {
+
+    /** The action to perform */
+
+    private Action action;
+
+
+    /** The maximum time to wait for the action to complete, in milliseconds */
+
+    private long timeout = 5000;
+
+
+    /** The action to perform if the action fails or times out (optional) */
+
+    private Action fallback;
+
+
+    /** The executor used for handling completion of the action */
+
+    private transient Executor executor = ForkJoinPool.commonPool();
+
+
+
+    /**
+     * Class constructor.
+     */
+    public ActionTimeout() {
+    }
+
+
+    /**
+     * Class constructor.
+     *
+     * @param action    the action to perform
+     * @param timeout   the maximum time to wait for the action to complete, in milliseconds
+     * @param fallback  the action to perform if the action fails or times out (may be null)
+     */
+    public ActionTimeout(final Action action, final long timeout, final Action fallback) {
+        this.action = action;
+        this.timeout = timeout;
+        this.fallback = fallback;
+    }
+
+
+
+    @Override
+    public CompletionStage<Void> performAsync(Assistant assistant, ClientSession session, ClientResponse response) {
+        if (action == null) return CompletableFuture.completedFuture(null);
+
+
+        /* Complete a separate future, so the action's own stage is not affected by the timeout */
+
+        ClientResponse actionResponse = new ClientResponse();
+        CompletableFuture<Void> result = new CompletableFuture<Void>();
+
+        AsyncAction.performAsync(action, assistant, session, actionResponse).whenComplete((v, x) -> {
+            if (x == null) result.complete(null);
+            else result.completeExceptionally(x);
+        });
+
+        return result.orTimeout(timeout, TimeUnit.MILLISECONDS)
+            .handleAsync((v, x) -> x, executor)
+            .thenCompose((x) -> {
+                if (x == null) {
+                    response.append(actionResponse);
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                Throwable cause = x instanceof CompletionException && x.getCause() != null ? x.getCause() : x;
+                String reason = cause instanceof TimeoutException ? String.format("timed out after %dms", timeout) : String.valueOf(cause.getMessage());
+                session.info("Action %s %s", action.getClass().getSimpleName(), reason);
+
+                if (fallback == null) {
+                    return CompletableFuture.failedFuture(new ApplicationError(String.format("Action %s %s", action.getClass().getSimpleName(), reason)));
+                }
+                return AsyncAction.performAsync(fallback, assistant, session, response);
+            });
+    }
+}
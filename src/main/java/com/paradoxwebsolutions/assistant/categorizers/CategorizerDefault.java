@@ -6,6 +6,8 @@ import com.paradoxwebsolutions.assistant.Categorizer;
 import com.paradoxwebsolutions.assistant.ClientSession;
 import com.paradoxwebsolutions.assistant.Input;
 import com.paradoxwebsolutions.assistant.IntentScores;
+import com.paradoxwebsolutions.assistant.MappedMaxentModel;
+import com.paradoxwebsolutions.assistant.ModelRegistry;
 import com.paradoxwebsolutions.assistant.Trainer;
 import com.paradoxwebsolutions.assistant.categorizers.trainers.CategorizerDefaultTrainer;
 import com.paradoxwebsolutions.core.ApplicationError;
@@ -18,6 +20,7 @@ import com.paradoxwebsolutions.core.annotations.Init;
 import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import opennlp.tools.doccat.DoccatModel;
@@ -53,9 +56,30 @@ public class CategorizerDefault extends Categorizer {
     private StringMap models = new StringMap();
 
 
-    /** The categorizers for supported langauges */
+    /** The categorizers for supported langauges (set once all models are loaded) */
 
-    private transient Map<String, DocumentCategorizerME> categorizers = new HashMap<String, DocumentCategorizerME>();
+    private transient volatile Map<String, DocumentCategorizerME> categorizers = new HashMap<String, DocumentCategorizerME>();
+
+
+    /** The directory for compiled (memory mapped) models, or null if models are not mapped */
+
+    private static File cacheDir = null;
+
+
+
+    /**
+     * Service level initialization.
+     * <p>If a model cache directory is configured, model parameters are compiled into it
+     * and memory mapped, so they are shared by all processes using the same cache.
+     *
+     * @param config  the service configuration
+     * @throws ApplicationError on error
+     */
+    @Init
+    public static void init(Config config) throws ApplicationError {
+        String cache = config.getString("opennlp.models.cache");
+        cacheDir = cache == null ? null : new File(cache);
+    }
 
 
 
@@ -67,23 +91,27 @@ public class CategorizerDefault extends Categorizer {
      * @param logger     the identity specific logger for outputting messages
      * @throws ApplicationError on error
      */
-    @Init
+    @Init(concurrent = true)
     public void init(Assistant assistant, ResourceAPI resource, Logger logger) throws ApplicationError {
 
         /* Loop through configured languages and load categorizer models */
 
+        Map<String, DocumentCategorizerME> categorizers = new HashMap<String, DocumentCategorizerME>();
         for (String language : models.keySet()) {
             String filename = models.get(language);
             logger.info(String.format("Loading categorizer model '%s", filename));
 
             try {
-                DoccatModel model = new DoccatModel(resource.getInputStream(filename));
-                this.categorizers.put(language, new DocumentCategorizerME(model));
+                String name = filename.replaceFirst("\\.bin$", "");
+                DoccatModel model = ModelRegistry.acquire(resource, resource.getInputStream(filename), DoccatModel.class,
+                    (in, hash) -> MappedMaxentModel.loadCategorizer(in, cacheDir, name, hash));
+                categorizers.put(language, new DocumentCategorizerME(model));
             }
             catch (Exception x) {
                 throw new ApplicationError(String.format("Failed to load categorizer model '%s'", filename, x));
             }
         }
+        this.categorizers = categorizers;
     }
 
 
@@ -99,7 +127,7 @@ public class CategorizerDefault extends Categorizer {
     public IntentScores getIntent(final ClientSession session, final Input input) throws ApplicationError {
 
         String[] tokens = (String[]) input.get(this.input);
-        session.debug("CategorizerDefault categorizing: " + String.join(",", tokens));
+        session.debug(() -> "CategorizerDefault categorizing: " + String.join(",", tokens));
 
 
         /* Get the cateogizer for the selected language */
@@ -114,7 +142,7 @@ public class CategorizerDefault extends Categorizer {
         synchronized(categorizer) {
             catScores = categorizer.scoreMap(tokens);
         }
-        session.debug("CategorizerDefault scores: " + String.join(":", catScores.entrySet().stream().map(e -> e.getKey() + "(" + e.getValue() + ")").collect(Collectors.toList())));
+        session.debug(() -> "CategorizerDefault scores: " + String.join(":", catScores.entrySet().stream().map(e -> e.getKey() + "(" + e.getValue() + ")").collect(Collectors.toList())));
 
 
         /* Discard anything that doesn't meet our threshold */
@@ -141,6 +169,13 @@ public class CategorizerDefault extends Categorizer {
 
 
 
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(input);
+    }
+
+
+
     /**
      * Returns a trainer (if required) for this categorizer.
      *
@@ -0,0 +1,166 @@
+package com.paradoxwebsolutions.assistant.categorizers;
+
+
+import com.paradoxwebsolutions.assistant.Categorizer;
+import com.paradoxwebsolutions.assistant.ClientSession;
+import com.paradoxwebsolutions.assistant.Input;
+import com.paradoxwebsolutions.assistant.IntentScores;
+import com.paradoxwebsolutions.assistant.ModelRegistry;
+import com.paradoxwebsolutions.assistant.Trainer;
+import com.paradoxwebsolutions.assistant.categorizers.trainers.CategorizerLookupTrainer;
+import com.paradoxwebsolutions.core.ApplicationError;
+import com.paradoxwebsolutions.core.Logger;
+import com.paradoxwebsolutions.core.ResourceAPI;
+import com.paradoxwebsolutions.core.StringMap;
+import com.paradoxwebsolutions.core.annotations.Init;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+
+
+/**
+ * An exact match implementation of an intent categorizer.
+ * <p>The training documents for each intent are normalized (see {@link #key}) and compiled into a
+ * {@link LookupTable}. Input that normalizes to a training document is categorized with a score of
+ * 1.0, with a single hash lookup. Anything else is left to the other categorizers.
+ * <p>Since a certain match ends categorization, this is intended to be listed first in the
+ * categorizer configuration, so that the (more expensive) statistical categorizers only see input
+ * that does not appear in the training data.
+ *
+ * @author Peter Smith
+ */
+public class CategorizerLookup extends Categorizer {
+
+    /** The pipeline input to use for categorization */
+
+    private String input = "tokens";
+
+
+    /** The pipeline input to use for training */
+
+    private String trainingInput = "tokens";
+
+
+    /** Set if documents are matched regardless of case */
+
+    private boolean ignoreCase = true;
+
+
+    /** The supported languages and lookup table files */
+
+    private StringMap models = new StringMap();
+
+
+    /** The lookup tables for supported languages (set once all tables are loaded) */
+
+    private transient volatile Map<String, LookupTable> tables = new HashMap<String, LookupTable>();
+
+
+
+    /**
+     * Custom initialization (called after deserialization is complete).
+     * <p>Lookup tables are immutable, so identical tables loaded by different assistants are shared.
+     *
+     * @param resource  resource API for loading data files
+     * @param logger    the identity specific logger for outputting messages
+     * @throws ApplicationError on error
+     */
+    @Init(concurrent = true)
+    public void init(ResourceAPI resource, Logger logger) throws ApplicationError {
+        Map<String, LookupTable> tables = new HashMap<String, LookupTable>();
+        for (String language : models.keySet()) {
+            String filename = models.get(language);
+
+            LookupTable table = ModelRegistry.acquire(resource, resource.getInputStream(filename), LookupTable.class,
+                (in) -> LookupTable.load(new DataInputStream(new BufferedInputStream(in))));
+            tables.put(language, table);
+
+            logger.info(String.format("Loaded lookup table '%s' for language %s (%d documents)", filename, language, table.size()));
+        }
+        this.tables = tables;
+    }
+
+
+
+    /**
+     * Identifies the intent of the client input.
+     *
+     * @param session  the client session
+     * @param input    the preprocessed client input
+     * @return         An IntentScores instance containing the matching intent (with a score of 1.0), if any
+     * @throws         ApplicationError on error
+     */
+    public IntentScores getIntent(final ClientSession session, final Input input) throws ApplicationError {
+        IntentScores scores = new IntentScores();
+
+        LookupTable table = tables.get(session.getSessionData().getLanguage());
+        if (table == null) return scores;
+
+        String intent = table.get(key(input.get(this.input)));
+        if (intent != null) {
+            session.debug("CategorizerLookup matched: %s", intent);
+            scores.put(intent, 1.0);
+        }
+        return scores;
+    }
+
+
+
+    /**
+     * Normalizes a document to a lookup key.
+     * <p>Token streams are joined with single spaces, and documents have their whitespace collapsed
+     * to single spaces, so a token stream and the equivalent document give the same key. If matching
+     * ignores case, the key is lower cased.
+     *
+     * @param data  the document (a string) or token stream (a string array)
+     * @return the lookup key
+     * @throws ApplicationError if the data is not a document or token stream
+     */
+    public String key(final Object data) throws ApplicationError {
+        String key;
+
+        if (data instanceof String[])
+            key = String.join(" ", (String[]) data);
+        else if (data instanceof String)
+            key = ((String) data).trim().replaceAll("\\s+", " ");
+        else
+            throw new ApplicationError("Unsupported input type for CategorizerLookup");
+
+        return ignoreCase ? key.toLowerCase(Locale.ROOT) : key;
+    }
+
+
+
+    /**
+     * Sets the name of the lookup table file for a given language.
+     *
+     * @param language  the language to set the table file for
+     * @param model     the name of the table file for the language
+     */
+    public void setModel(final String language, final String model) {
+        this.models.put(language, model);
+    }
+
+
+
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(input);
+    }
+
+
+
+    /**
+     * Returns a trainer for this categorizer.
+     *
+     * @return a trainer instance for this categorizer
+     */
+    public Trainer getTrainer() {
+        return new CategorizerLookupTrainer(this, trainingInput);
+    }
+}
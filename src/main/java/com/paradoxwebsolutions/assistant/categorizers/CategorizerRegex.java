@@ -14,16 +14,18 @@ import com.paradoxwebsolutions.core.Logger;
 import com.paradoxwebsolutions.core.ObjectFactory;
 import com.paradoxwebsolutions.core.annotations.Init;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 
 /**
  * A regular expression implementation of an intent categorizer.
+ * <p>An intent is matched if any of its regular expressions matches the start of the input. The
+ * expressions for each language are compiled into a single automaton (see {@link PatternAutomaton}),
+ * so all matching intents are found in one scan of the input.
  *
  * @author Peter Smith
  */
@@ -34,11 +36,6 @@ public class CategorizerRegex extends Categorizer {
     public static class RegexMap extends HashMap<String, String[]> {};
 
 
-    /** Utility class for storing intent to pattern mappings */
-
-    public static class PatternMap extends HashMap<String, Pattern[]> {};
-
-
     /** The pipeline input to use for categorization */
 
     private String input = "document";
@@ -54,9 +51,9 @@ public class CategorizerRegex extends Categorizer {
     private Map<String, RegexMap> regex = new HashMap<String, RegexMap>();
 
 
-    /** The compiled regex patterns (one per supported language) */
+    /** The compiled regex patterns (one automaton per supported language) */
 
-    private transient Map<String, PatternMap> patterns = new HashMap<String, PatternMap>();
+    private transient Map<String, PatternAutomaton> patterns = new HashMap<String, PatternAutomaton>();
 
 
 
@@ -70,16 +67,10 @@ public class CategorizerRegex extends Categorizer {
     @Init
     public void init(Assistant assistant, Config config) throws ApplicationError {
 
-        /* Compile all the regular expressions into patterns */
+        /* Compile all the regular expressions for each language into a single automaton */
 
         for (String lang : regex.keySet()) {
-            RegexMap   regexMap = regex.get(lang);
-            PatternMap patternMap = new PatternMap();
-            patterns.put(lang, patternMap);
-
-            for (String intent : regexMap.keySet()) {
-                patternMap.put(intent, Arrays.stream(regexMap.get(intent)).map((regex) -> Pattern.compile(regex)).toArray(Pattern[]::new));
-            }
+            patterns.put(lang, new PatternAutomaton(regex.get(lang)));
         }
 
     }
@@ -97,24 +88,17 @@ public class CategorizerRegex extends Categorizer {
     public IntentScores getIntent(final ClientSession session, final Input input) throws ApplicationError {
 
         String doc = input.get(this.input).toString();
-        session.debug("CategorizerRegex categorizing: " + doc);
+        session.debug("CategorizerRegex categorizing: %s", doc);
 
         IntentScores scores = new IntentScores();
 
         final String language = session.getLanguage();
-        final PatternMap map = patterns.get(language);
-
-        if (map != null) {
-            for (String intent :  map.keySet()) {
-                for (Pattern pattern : map.get(intent)) {
-                    if (pattern.matcher(doc).lookingAt()) {
-                        scores.put(intent, 1.0);
-                        break;
-                    }
-                }
-            }
+        final PatternAutomaton automaton = patterns.get(language);
+
+        if (automaton != null) {
+            for (String intent : automaton.match(doc)) scores.put(intent, 1.0);
         }
-        session.debug("CategorizerRegex scores: " + String.join(":", scores.entrySet().stream().map(e -> e.getKey() + "(" + e.getValue() + ")").collect(Collectors.toList())));
+        session.debug(() -> "CategorizerRegex scores: " + String.join(":", scores.entrySet().stream().map(e -> e.getKey() + "(" + e.getValue() + ")").collect(Collectors.toList())));
 
         return scores;
     }
@@ -136,6 +120,13 @@ public class CategorizerRegex extends Categorizer {
 
 
 
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(input);
+    }
+
+
+
     /**
      * Returns a trainer (if required) for this categorizer.
      *
@@ -0,0 +1,221 @@
+package com.paradoxwebsolutions.assistant.categorizers;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+
+/**
+ * An immutable exact match table of documents to intents.
+ * <p>Documents (normalized to a single string key) are held in an open addressing hash table -
+ * an array of keys and a parallel array of intent indexes - so a lookup is a hash and (usually)
+ * a single string comparison. Tables are compiled at train time and written in the following
+ * binary layout:
+ *
+ * <pre>{@code
+ *
+ *  int       magic number
+ *  int       number of intents
+ *  utf[]     intent names
+ *  int       number of keys
+ *  per key:  utf key, int intent index
+ *
+ * }</pre>
+ *
+ * @author Peter Smith
+ */
+public final class LookupTable {
+
+    /** Binary format identifier */
+
+    private static final int MAGIC = 0x4C4B5431;
+
+
+    /** The intent names */
+
+    private final String[] intents;
+
+
+    /** The keys (null for empty slots) */
+
+    private final String[] keys;
+
+
+    /** The intent index for each key */
+
+    private final int[] values;
+
+
+    /** The number of keys */
+
+    private final int size;
+
+
+
+    /**
+     * Creates a table from its keys and intent indexes.
+     */
+    private LookupTable(final String[] intents, final String[] keys, final int[] values) {
+        this.intents = intents;
+        this.size = keys.length;
+
+        int capacity = Integer.highestOneBit(Math.max(keys.length, 1) * 2 - 1) << 1;
+        this.keys = new String[capacity];
+        this.values = new int[capacity];
+
+        for (int i = 0; i < keys.length; ++i) {
+            int slot = slot(keys[i]);
+            this.keys[slot] = keys[i];
+            this.values[slot] = values[i];
+        }
+    }
+
+
+
+    /**
+     * Loads a compiled table.
+     *
+     * @param in  the compiled table data
+     * @return the table
+     * @throws IOException on error, or if the data is not a compiled table
+     */
+    public static LookupTable load(final DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a compiled lookup table");
+
+        String[] intents = new String[in.readInt()];
+        for (int i = 0; i < intents.length; ++i) intents[i] = in.readUTF();
+
+        String[] keys = new String[in.readInt()];
+        int[] values = new int[keys.length];
+        for (int i = 0; i < keys.length; ++i) {
+            keys[i] = in.readUTF();
+            values[i] = in.readInt();
+            if (values[i] < 0 || values[i] >= intents.length) throw new IOException("Invalid intent index in lookup table");
+        }
+
+        return new LookupTable(intents, keys, values);
+    }
+
+
+
+    /**
+     * Looks up the intent for a key.
+     *
+     * @param key  the normalized document
+     * @return the intent name, or null if the key is not in the table
+     */
+    public String get(final String key) {
+        int slot = slot(key);
+        return keys[slot] == null ? null : intents[values[slot]];
+    }
+
+
+
+    /**
+     * Returns the number of keys in the table.
+     *
+     * @return the number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+
+
+    /**
+     * Returns the slot for a key - either the slot holding it, or the empty slot it would go in.
+     */
+    private int slot(final String key) {
+        int mask = keys.length - 1;
+        int h = key.hashCode() * 0x9E3779B9;
+        int slot = (h ^ (h >>> 16)) & mask;
+
+        while (keys[slot] != null && !keys[slot].equals(key)) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+
+
+    /**
+     * Builds (compiles) a lookup table.
+     * <p>This is used at train time. A key added for more than one intent is ambiguous, so it is
+     * left out of the table (and reported by {@link #getConflicts}).
+     */
+    public static final class Builder {
+
+        /** The intent for each key */
+
+        private final Map<String, String> entries = new LinkedHashMap<String, String>();
+
+
+        /** Keys added for more than one intent */
+
+        private final Set<String> conflicts = new HashSet<String>();
+
+
+
+        /**
+         * Adds a key.
+         *
+         * @param key     the normalized document
+         * @param intent  the intent name
+         */
+        public void add(final String key, final String intent) {
+            String existing = entries.putIfAbsent(key, intent);
+            if (existing != null && !existing.equals(intent)) conflicts.add(key);
+        }
+
+
+
+        /**
+         * Returns the keys that were added for more than one intent.
+         *
+         * @return the conflicting keys
+         */
+        public Set<String> getConflicts() {
+            return conflicts;
+        }
+
+
+
+        /**
+         * Returns the number of keys in the table (excluding conflicts).
+         *
+         * @return the number of keys
+         */
+        public int size() {
+            return entries.size() - conflicts.size();
+        }
+
+
+
+        /**
+         * Writes out the table.
+         *
+         * @param out  the output stream
+         * @throws IOException on error
+         */
+        public void write(final DataOutputStream out) throws IOException {
+            Map<String, Integer> intents = new LinkedHashMap<String, Integer>();
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if (!conflicts.contains(entry.getKey())) intents.putIfAbsent(entry.getValue(), intents.size());
+            }
+
+            out.writeInt(MAGIC);
+            out.writeInt(intents.size());
+            for (String intent : intents.keySet()) out.writeUTF(intent);
+
+            out.writeInt(size());
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                if (conflicts.contains(entry.getKey())) continue;
+                out.writeUTF(entry.getKey());
+                out.writeInt(intents.get(entry.getValue()));
+            }
+            out.flush();
+        }
+    }
+}
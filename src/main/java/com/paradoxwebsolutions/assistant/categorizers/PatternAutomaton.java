@@ -0,0 +1,689 @@
+package com.paradoxwebsolutions.assistant.categorizers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
+import java.util.regex.Pattern;
+
+
+
+/**
+ * A set of named regular expressions compiled into a single automaton.
+ * <p>The automaton checks which of the expressions match the start of an input string (as with
+ * {@link java.util.regex.Matcher#lookingAt}) in a single scan of the input, rather than trying
+ * each expression in turn. The expressions are compiled into one non-deterministic automaton, which
+ * is converted to a deterministic automaton lazily as inputs are matched - each deterministic
+ * state and transition is built the first time it is needed, then cached. The number of cached
+ * states is bounded, so unusual inputs cannot use unlimited memory.
+ * <p>Only the regular subset of the Java pattern syntax is compiled - literals, escapes, character
+ * classes, groups, alternation, greedy and lazy quantifiers, and the '^' anchor (plus '$' at the end
+ * of a pattern). Expressions that use anything else (back references, look-around, flags, word
+ * boundaries, etc) are kept as {@link Pattern} instances and matched individually, after the scan.
+ * <p>Instances are thread safe once constructed.
+ *
+ * @author Peter Smith
+ */
+class PatternAutomaton {
+
+    /** Maximum number of deterministic states cached */
+
+    private static final int MAX_STATES = 10000;
+
+
+    /** Maximum repeat count of a bounded quantifier (larger repeats are not compiled) */
+
+    private static final int MAX_REPEAT = 100;
+
+
+    /* Automaton state types */
+
+    private static final int MATCH  = 0;
+    private static final int SPLIT  = 1;
+    private static final int START  = 2;
+    private static final int ACCEPT = 3;
+
+
+    /* Predefined character classes */
+
+    private static final IntPredicate DIGIT = (c) -> c >= '0' && c <= '9';
+    private static final IntPredicate WORD  = (c) -> (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    private static final IntPredicate SPACE = (c) -> c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    private static final IntPredicate DOT   = (c) -> !isLineTerminator(c);
+
+
+    /** The names the expressions were added under (results are reported by index into this array) */
+
+    private final String[] names;
+
+
+    /** All states of the non-deterministic automaton, by id */
+
+    private final List<State> states = new ArrayList<State>();
+
+
+    /** Expressions that could not be compiled into the automaton, by name index */
+
+    private final Map<Integer, List<Pattern>> fallback = new HashMap<Integer, List<Pattern>>();
+
+
+    /** Cache of deterministic states */
+
+    private final Map<DState, DState> dstates = new ConcurrentHashMap<DState, DState>();
+
+
+    /** The initial deterministic state */
+
+    private final DState initial;
+
+
+
+    /**
+     * Compiles a set of named regular expressions.
+     *
+     * @param expressions  the regular expressions to compile, by name
+     * @throws java.util.regex.PatternSyntaxException if any expression is invalid
+     */
+    PatternAutomaton(final Map<String, String[]> expressions) {
+        names = expressions.keySet().toArray(new String[expressions.size()]);
+
+        List<State> starts = new ArrayList<State>();
+        for (int i = 0; i < names.length; ++i) {
+            for (String regex : expressions.get(names[i])) {
+                Pattern pattern = Pattern.compile(regex);
+
+                try {
+                    starts.add(new RegexParser(regex).compile(i));
+                }
+                catch (UnsupportedException x) {
+                    fallback.computeIfAbsent(i, (k) -> new ArrayList<Pattern>()).add(pattern);
+                }
+            }
+        }
+
+        State root = state(SPLIT);
+        root.outs = starts.toArray(new State[starts.size()]);
+        initial = intern(closure(new State[] {root}, true));
+    }
+
+
+
+    /**
+     * Finds the names of all expressions that match the start of an input string.
+     *
+     * @param input  the input string
+     * @return the names of the matching expressions
+     */
+    List<String> match(final String input) {
+        boolean[] matched = new boolean[names.length];
+        int length = input.length();
+        int position = 0;
+
+        DState state = initial;
+        while (true) {
+            for (int result : state.accepts) matched[result] = true;
+            if (state.endAccepts.length > 0 && atEnd(input, position)) {
+                for (int result : state.endAccepts) matched[result] = true;
+            }
+            if (state.matchers.length == 0 || position >= length) break;
+
+            int c = input.codePointAt(position);
+            position += Character.charCount(c);
+            state = next(state, c);
+        }
+
+
+        /* Check any expressions that are not part of the automaton */
+
+        for (Map.Entry<Integer, List<Pattern>> entry : fallback.entrySet()) {
+            int result = entry.getKey();
+            for (int i = 0; !matched[result] && i < entry.getValue().size(); ++i) {
+                matched[result] = entry.getValue().get(i).matcher(input).lookingAt();
+            }
+        }
+
+        List<String> results = new ArrayList<String>();
+        for (int i = 0; i < matched.length; ++i) {
+            if (matched[i]) results.add(names[i]);
+        }
+        return results;
+    }
+
+
+
+    /**
+     * Returns the deterministic state following a character, building it if it is not cached.
+     *
+     * @param state  the current state
+     * @param c      the input character (code point)
+     * @return the next state
+     */
+    private DState next(final DState state, final int c) {
+        DState next = c < 128 ? state.ascii[c] : state.other.get(c);
+        if (next != null) return next;
+
+        List<State> targets = new ArrayList<State>();
+        for (State s : state.matchers) {
+            if (s.match.test(c)) targets.add(s.out);
+        }
+        next = intern(closure(targets.toArray(new State[targets.size()]), false));
+
+        /* Only link to cached states, so the cache stays bounded */
+
+        if (next.cached) {
+            if (c < 128)
+                state.ascii[c] = next;
+            else
+                state.other.put(c, next);
+        }
+        return next;
+    }
+
+
+
+    /**
+     * Returns the cached instance of a deterministic state, caching it if there is space.
+     *
+     * @param state  the state
+     * @return the cached state, or the state itself if the cache is full
+     */
+    private DState intern(final DState state) {
+        DState cached = dstates.get(state);
+        if (cached != null) return cached;
+        if (dstates.size() >= MAX_STATES) return state;
+
+        state.cached = true;
+        cached = dstates.putIfAbsent(state, state);
+        return cached != null ? cached : state;
+    }
+
+
+
+    /**
+     * Builds the deterministic state for the closure of a set of automaton states.
+     * <p>The closure follows all empty transitions (splits, and start anchors at the start of the
+     * input) to the states that match characters or accept.
+     *
+     * @param from     the states to start from
+     * @param atStart  set if this is the start of the input
+     * @return the deterministic state
+     */
+    private DState closure(final State[] from, final boolean atStart) {
+        BitSet seen = new BitSet(states.size());
+        Deque<State> pending = new ArrayDeque<State>(Arrays.asList(from));
+        List<State> matchers = new ArrayList<State>();
+        List<Integer> accepts = new ArrayList<Integer>();
+        List<Integer> endAccepts = new ArrayList<Integer>();
+        BitSet key = new BitSet(states.size());
+
+        while (!pending.isEmpty()) {
+            State s = pending.pop();
+            if (seen.get(s.id)) continue;
+            seen.set(s.id);
+
+            switch (s.type) {
+                case MATCH:  matchers.add(s); key.set(s.id); break;
+                case SPLIT:  for (int i = s.outs.length - 1; i >= 0; --i) pending.push(s.outs[i]); break;
+                case START:  if (atStart) pending.push(s.out); break;
+                case ACCEPT: (s.endAnchored ? endAccepts : accepts).add(s.result); key.set(s.id); break;
+            }
+        }
+
+        return new DState(key, matchers, accepts, endAccepts);
+    }
+
+
+
+    /**
+     * Creates a new automaton state.
+     *
+     * @param type  the state type
+     * @return the new state
+     */
+    private State state(final int type) {
+        State state = new State(type, states.size());
+        states.add(state);
+        return state;
+    }
+
+
+
+    /**
+     * Checks if a position is at the end of the input, as for the '$' anchor (the end of the input,
+     * or before a line terminator at the end of the input).
+     *
+     * @param input     the input string
+     * @param position  the position
+     * @return true if at the end of the input
+     */
+    private static boolean atEnd(final String input, final int position) {
+        int remaining = input.length() - position;
+
+        if (remaining == 0) return true;
+        if (remaining == 1) return isLineTerminator(input.charAt(position));
+        return remaining == 2 && input.charAt(position) == '\r' && input.charAt(position + 1) == '\n';
+    }
+
+
+
+    /**
+     * Checks for a line terminator character.
+     *
+     * @param c  the character
+     * @return true if the character is a line terminator
+     */
+    private static boolean isLineTerminator(final int c) {
+        return c == '\n' || c == '\r' || c == 0x85 || c == 0x2028 || c == 0x2029;
+    }
+
+
+
+    /**
+     * A state of the non-deterministic automaton.
+     */
+    private static final class State {
+        final int type;
+        final int id;
+        IntPredicate match;
+        State out;
+        State[] outs;
+        int result;
+        boolean endAnchored;
+
+        State(final int type, final int id) {
+            this.type = type;
+            this.id = id;
+        }
+    }
+
+
+
+    /**
+     * A state of the deterministic automaton - a set of non-deterministic states, with cached
+     * transitions to the following states.
+     */
+    private static final class DState {
+        final BitSet ids;
+        final State[] matchers;
+        final int[] accepts;
+        final int[] endAccepts;
+        final DState[] ascii = new DState[128];
+        final Map<Integer, DState> other = new ConcurrentHashMap<Integer, DState>();
+        volatile boolean cached = false;
+
+        DState(final BitSet ids, final List<State> matchers, final List<Integer> accepts, final List<Integer> endAccepts) {
+            this.ids = ids;
+            this.matchers = matchers.toArray(new State[matchers.size()]);
+            this.accepts = accepts.stream().mapToInt(Integer::intValue).toArray();
+            this.endAccepts = endAccepts.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof DState && ids.equals(((DState) o).ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return ids.hashCode();
+        }
+    }
+
+
+
+    /**
+     * Thrown when an expression uses syntax that is not compiled into the automaton.
+     */
+    private static final class UnsupportedException extends Exception {
+        UnsupportedException() {
+            super(null, null, false, false);
+        }
+    }
+
+
+
+    /**
+     * A parsed expression element.
+     * <p>Nodes are compiled back to front - each node is given the state that follows it, and
+     * returns its own first state.
+     */
+    private static interface Node {
+        State compile(State next);
+    }
+
+
+
+    /**
+     * Parser for the supported regular expression syntax.
+     * <p>The expression has already been validated by {@link Pattern#compile}, so the parser only
+     * needs to recognize valid syntax.
+     */
+    private final class RegexParser {
+        private final String regex;
+        private int pos = 0;
+
+        /** The literal code point of the last escape parsed (or -1 if it was a class) */
+        private int escapedLiteral;
+
+        RegexParser(final String regex) {
+            this.regex = regex;
+        }
+
+
+        /**
+         * Compiles the expression into the automaton, returning its start state.
+         */
+        State compile(final int result) throws UnsupportedException {
+            List<Node> branches = new ArrayList<Node>();
+            List<Boolean> anchored = new ArrayList<Boolean>();
+
+            while (true) {
+                boolean[] endAnchored = new boolean[1];
+                branches.add(parseSequence(0, endAnchored));
+                anchored.add(endAnchored[0]);
+
+                if (pos >= regex.length() || regex.charAt(pos) != '|') break;
+                ++pos;
+            }
+            if (pos < regex.length()) throw new UnsupportedException();
+
+
+            /* The whole expression is parsed, so it can now be added to the automaton */
+
+            State split = state(SPLIT);
+            split.outs = new State[branches.size()];
+            for (int i = 0; i < branches.size(); ++i) {
+                State accept = state(ACCEPT);
+                accept.result = result;
+                accept.endAnchored = anchored.get(i);
+                split.outs[i] = branches.get(i).compile(accept);
+            }
+            return split;
+        }
+
+
+        /**
+         * Parses alternatives, up to a closing parenthesis.
+         */
+        private Node parseAlternation(final int depth) throws UnsupportedException {
+            List<Node> branches = new ArrayList<Node>();
+            branches.add(parseSequence(depth, null));
+            while (pos < regex.length() && regex.charAt(pos) == '|') {
+                ++pos;
+                branches.add(parseSequence(depth, null));
+            }
+
+            if (branches.size() == 1) return branches.get(0);
+            return (next) -> {
+                State split = state(SPLIT);
+                split.outs = new State[branches.size()];
+                for (int i = 0; i < branches.size(); ++i) split.outs[i] = branches.get(i).compile(next);
+                return split;
+            };
+        }
+
+
+        /**
+         * Parses a sequence of (possibly quantified) atoms, up to an alternation or closing parenthesis.
+         * A '$' is only accepted at the end of a top level sequence.
+         */
+        private Node parseSequence(final int depth, final boolean[] endAnchored) throws UnsupportedException {
+            List<Node> nodes = new ArrayList<Node>();
+
+            while (pos < regex.length()) {
+                char c = regex.charAt(pos);
+                if (c == '|' || c == ')') break;
+
+                if (c == '$') {
+                    ++pos;
+                    if (endAnchored == null || (pos < regex.length() && regex.charAt(pos) != '|')) throw new UnsupportedException();
+                    endAnchored[0] = true;
+                    break;
+                }
+
+                boolean anchor = c == '^';
+                Node atom = parseAtom(depth);
+                nodes.add(parseQuantifier(atom, anchor));
+            }
+
+            return (next) -> {
+                State state = next;
+                for (int i = nodes.size() - 1; i >= 0; --i) state = nodes.get(i).compile(state);
+                return state;
+            };
+        }
+
+
+        /**
+         * Parses a single atom - a character, character class, group or anchor.
+         */
+        private Node parseAtom(final int depth) throws UnsupportedException {
+            char c = regex.charAt(pos);
+
+            switch (c) {
+                case '(': {
+                    if (regex.startsWith("(?:", pos)) {
+                        pos += 3;
+                    }
+                    else if (regex.startsWith("(?<", pos) && pos + 3 < regex.length() && Character.isLetter(regex.charAt(pos + 3))) {
+                        pos = regex.indexOf('>', pos) + 1;
+                    }
+                    else if (regex.startsWith("(?", pos)) {
+                        throw new UnsupportedException();
+                    }
+                    else {
+                        ++pos;
+                    }
+
+                    Node group = parseAlternation(depth + 1);
+                    if (pos >= regex.length() || regex.charAt(pos) != ')') throw new UnsupportedException();
+                    ++pos;
+                    return group;
+                }
+
+                case '^':
+                    ++pos;
+                    return (next) -> {
+                        State start = state(START);
+                        start.out = next;
+                        return start;
+                    };
+
+                case '[':
+                    ++pos;
+                    return matcher(parseClass());
+
+                case '.':
+                    ++pos;
+                    return matcher(DOT);
+
+                case '\\': {
+                    ++pos;
+                    IntPredicate escape = parseEscape(false);
+                    return matcher(escape);
+                }
+
+                case '*': case '+': case '?': case '{':
+                    throw new UnsupportedException();
+
+                default: {
+                    int literal = regex.codePointAt(pos);
+                    pos += Character.charCount(literal);
+                    return matcher((x) -> x == literal);
+                }
+            }
+        }
+
+
+        /**
+         * Parses an optional quantifier following an atom.
+         */
+        private Node parseQuantifier(final Node atom, final boolean anchor) throws UnsupportedException {
+            if (pos >= regex.length()) return atom;
+
+            int min, max;
+            switch (regex.charAt(pos)) {
+                case '*': min = 0; max = -1; ++pos; break;
+                case '+': min = 1; max = -1; ++pos; break;
+                case '?': min = 0; max = 1; ++pos; break;
+                case '{': {
+                    int close = regex.indexOf('}', pos);
+                    if (close < 0) throw new UnsupportedException();
+                    String[] bounds = regex.substring(pos + 1, close).split(",", -1);
+                    try {
+                        min = Integer.parseInt(bounds[0].trim());
+                        max = bounds.length == 1 ? min : bounds[1].trim().isEmpty() ? -1 : Integer.parseInt(bounds[1].trim());
+                    }
+                    catch (NumberFormatException x) {
+                        throw new UnsupportedException();
+                    }
+                    pos = close + 1;
+                    break;
+                }
+                default:
+                    return atom;
+            }
+
+            if (anchor || min > MAX_REPEAT || max > MAX_REPEAT) throw new UnsupportedException();
+
+
+            /* Lazy quantifiers match the same strings, possessive quantifiers do not */
+
+            if (pos < regex.length() && regex.charAt(pos) == '?') ++pos;
+            else if (pos < regex.length() && regex.charAt(pos) == '+') throw new UnsupportedException();
+
+            final int repeatMin = min;
+            final int repeatMax = max;
+            return (next) -> {
+                State state = next;
+
+                if (repeatMax < 0) {
+                    State loop = state(SPLIT);
+                    loop.outs = new State[] {atom.compile(loop), next};
+                    state = loop;
+                }
+                else {
+                    for (int i = repeatMin; i < repeatMax; ++i) {
+                        State optional = state(SPLIT);
+                        optional.outs = new State[] {atom.compile(state), next};
+                        state = optional;
+                    }
+                }
+
+                for (int i = 0; i < repeatMin; ++i) state = atom.compile(state);
+                return state;
+            };
+        }
+
+
+        /**
+         * Parses a character class, following the opening bracket.
+         */
+        private IntPredicate parseClass() throws UnsupportedException {
+            boolean negate = pos < regex.length() && regex.charAt(pos) == '^';
+            if (negate) ++pos;
+
+            IntPredicate set = null;
+            while (true) {
+                if (pos >= regex.length()) throw new UnsupportedException();
+
+                char c = regex.charAt(pos);
+                if (c == ']' && set != null) {
+                    ++pos;
+                    break;
+                }
+                if (c == ']' || c == '[' || regex.startsWith("&&", pos)) throw new UnsupportedException();
+
+                IntPredicate item;
+                int low = -1;
+                if (c == '\\') {
+                    ++pos;
+                    item = parseEscape(true);
+                    low = escapedLiteral;
+                }
+                else {
+                    low = regex.codePointAt(pos);
+                    pos += Character.charCount(low);
+                    item = null;
+                }
+
+                if (low >= 0 && pos + 1 < regex.length() && regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+                    ++pos;
+                    int high;
+                    if (regex.charAt(pos) == '\\') {
+                        ++pos;
+                        parseEscape(true);
+                        high = escapedLiteral;
+                        if (high < 0) throw new UnsupportedException();
+                    }
+                    else {
+                        high = regex.codePointAt(pos);
+                        pos += Character.charCount(high);
+                    }
+                    final int from = low;
+                    item = (x) -> x >= from && x <= high;
+                }
+                else if (low >= 0) {
+                    final int literal = low;
+                    item = (x) -> x == literal;
+                }
+
+                set = set == null ? item : set.or(item);
+            }
+
+            return negate ? set.negate() : set;
+        }
+
+
+        /**
+         * Parses an escape sequence, following the backslash.
+         */
+        private IntPredicate parseEscape(final boolean inClass) throws UnsupportedException {
+            if (pos >= regex.length()) throw new UnsupportedException();
+
+            int c = regex.codePointAt(pos);
+            pos += Character.charCount(c);
+            escapedLiteral = -1;
+
+            switch (c) {
+                case 'd': return DIGIT;
+                case 'D': return DIGIT.negate();
+                case 'w': return WORD;
+                case 'W': return WORD.negate();
+                case 's': return SPACE;
+                case 'S': return SPACE.negate();
+                case 't': escapedLiteral = '\t'; break;
+                case 'n': escapedLiteral = '\n'; break;
+                case 'r': escapedLiteral = '\r'; break;
+                case 'f': escapedLiteral = '\f'; break;
+                case 'a': escapedLiteral = 0x07; break;
+                case 'e': escapedLiteral = 0x1B; break;
+                default:
+                    if (Character.isLetterOrDigit(c)) throw new UnsupportedException();
+                    escapedLiteral = c;
+            }
+
+            final int literal = escapedLiteral;
+            return (x) -> x == literal;
+        }
+
+
+        /**
+         * Returns a node that matches a single character.
+         */
+        private Node matcher(final IntPredicate predicate) {
+            return (next) -> {
+                State state = state(MATCH);
+                state.match = predicate;
+                state.out = next;
+                return state;
+            };
+        }
+    }
+}
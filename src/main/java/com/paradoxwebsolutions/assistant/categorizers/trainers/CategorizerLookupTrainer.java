@@ -0,0 +1,98 @@
+package com.paradoxwebsolutions.assistant.categorizers.trainers;
+
+import com.paradoxwebsolutions.assistant.Input;
+import com.paradoxwebsolutions.assistant.Trainer;
+import com.paradoxwebsolutions.assistant.categorizers.CategorizerLookup;
+import com.paradoxwebsolutions.assistant.categorizers.LookupTable;
+import com.paradoxwebsolutions.core.ApplicationError;
+import com.paradoxwebsolutions.core.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+
+/**
+ * Trainer for the lookup categorizer.
+ * <p>This normalizes the training documents for each intent and compiles them into a
+ * {@link LookupTable} for each language. Documents that appear in the training data for more
+ * than one intent are ambiguous, and are left out of the table.
+ *
+ * @author Peter Smith
+ */
+public class CategorizerLookupTrainer implements Trainer {
+
+    /** The categorizer that needs to be configured/trained */
+
+    private CategorizerLookup categorizer;
+
+
+    /** The pipeline input to use for training */
+
+    private String input;
+
+
+    /** The table builders, by language */
+
+    private Map<String, LookupTable.Builder> builders = new HashMap<String, LookupTable.Builder>();
+
+
+
+    /**
+     * Creates a trainer instance.
+     *
+     * @param categorizer  the categorizer being trained.
+     * @param input        the name of the training data in the preprocessing pipeline
+     */
+    public CategorizerLookupTrainer(CategorizerLookup categorizer, String input) {
+        this.categorizer = categorizer;
+        this.input = input;
+    }
+
+
+
+    @Override
+    public void train(final Context context, final String language, final String intent, final List<Input> docs) throws ApplicationError {
+        LookupTable.Builder builder = builders.computeIfAbsent(language, (l) -> new LookupTable.Builder());
+
+        for (Input doc : docs) {
+            builder.add(categorizer.key(doc.get(input)), intent);
+        }
+    }
+
+
+
+    @Override
+    public void train(final Context context) throws ApplicationError {
+        final Logger logger = context.logger;
+
+        for (Map.Entry<String, LookupTable.Builder> entry : builders.entrySet()) {
+            String language = entry.getKey();
+            LookupTable.Builder builder = entry.getValue();
+
+            for (String conflict : builder.getConflicts()) {
+                logger.warning(String.format("Document '%s' is trained for more than one intent - excluded from lookup table", conflict));
+            }
+
+
+            /* Save the table and configure the categorizer with it */
+
+            File modelFile = new File(context.modelDir + File.separator + language + "-categorizer-lookup.bin");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(modelFile)))) {
+                builder.write(out);
+            }
+            catch (Exception x) {
+                throw new ApplicationError(String.format("Failed to write lookup table '%s'", modelFile.getName()), x);
+            }
+            logger.info(String.format("Created lookup table '%s' (%d documents)", modelFile.getName(), builder.size()));
+
+            categorizer.setModel(language, modelFile.getName());
+            context.files.add(modelFile.getName());
+        }
+    }
+}
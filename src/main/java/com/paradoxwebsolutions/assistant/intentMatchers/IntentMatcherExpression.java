@@ -2,11 +2,13 @@ package com.paradoxwebsolutions.assistant.intentMatchers;
 
 import com.paradoxwebsolutions.assistant.Assistant;
 import com.paradoxwebsolutions.assistant.IntentMatcher;
+import com.paradoxwebsolutions.assistant.IntentContext;
 import com.paradoxwebsolutions.assistant.IntentData;
 import com.paradoxwebsolutions.core.ApplicationError;
 import com.paradoxwebsolutions.core.GenericMap;
 import com.paradoxwebsolutions.core.Logger;
 import com.paradoxwebsolutions.core.annotations.Init;
+import com.paradoxwebsolutions.expression.CompiledExpression;
 import com.paradoxwebsolutions.expression.Expression;
 import com.paradoxwebsolutions.expression.ExpressionContext;
 import com.paradoxwebsolutions.expression.Functions;
@@ -17,9 +19,9 @@ import com.paradoxwebsolutions.expression.Parser;
 /**
  * Expression based implementation of an intent matcher.
  * <p>This intent matcher can match on intent name as well as NER values by using 
- * expressions. The intent (as determined by the categorizer) and any entity values
- * are set up in the expression context prior to evaluation, allowing expressions to
- * access the intent name and entity values directly. e.g.
+ * expressions. Expressions are evaluated against a read-only view of the intent (see
+ * {@link IntentContext}), allowing expressions to access the intent name and entity
+ * values directly. e.g.
  * <pre>
  *        intent == "greeting" and !empty(slots.name)
  * </pre>
@@ -33,9 +35,9 @@ import com.paradoxwebsolutions.expression.Parser;
  */
 public class IntentMatcherExpression implements IntentMatcher {
 
-    /** Expression parser (we only need one since it is thread safe) */
+    /** Expression parser (we only need one since it is thread safe), resolving the intent context variables to slots */
 
-    private static Parser parser = new Parser();
+    private static Parser parser = new Parser(IntentContext.VARIABLES);
 
 
     /**
@@ -62,11 +64,21 @@ public class IntentMatcherExpression implements IntentMatcher {
     private String expression;
 
 
+    /** Set if the parsed expression should be compiled (see {@link CompiledExpression}) */
+
+    private boolean compile = true;
+
+
     /** The compiled expression */
 
     private transient Expression compiledExpr;
 
 
+    /** The compiled expression, if compilation is enabled */
+
+    private transient CompiledExpression optimizedExpr;
+
+
 
     /**
      * Sets the itent matching expression.
@@ -89,6 +101,7 @@ public class IntentMatcherExpression implements IntentMatcher {
     public void init() throws ApplicationError {
         try {
             compiledExpr = parser.parse(expression);
+            if (compile) optimizedExpr = CompiledExpression.compile(compiledExpr);
         }
         catch(Exception x) {
             throw new ApplicationError(String.format("Failed to parse intent matcher expression '%s': %s", expression, x.getMessage()));
@@ -102,21 +115,8 @@ public class IntentMatcherExpression implements IntentMatcher {
     @Override
     public boolean match(IntentData intent) throws ApplicationError {
         try {
-            double score = 0;
-
-            /* Set the intent and the slots in the expression context */
-
-            ExpressionContext context = new ExpressionContext();
-            context.set(intent.getName(), true);
-            context.set("intent", intent.getName());
-            context.set("slots", intent.getEntities());
-
-            /* Entities are mapped directly by name */
-            
-            for (String key : intent.getEntities().keySet())
-                context.set(key, intent.getEntities().get(key));
-
-            return Operators.toBoolean(compiledExpr.eval(context));
+            ExpressionContext context = intent.getContext();
+            return optimizedExpr != null ? optimizedExpr.test(context) : Operators.toBoolean(compiledExpr.eval(context));
         }
         catch(Exception x) {
             throw new ApplicationError(String.format("Failed evaluate expression '%s': %s", expression, x.getMessage()), x);
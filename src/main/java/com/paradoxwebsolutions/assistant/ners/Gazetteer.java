@@ -0,0 +1,486 @@
+package com.paradoxwebsolutions.assistant.ners;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * A compiled gazetteer (dictionary of named entity values).
+ * <p>Entries are sequences of tokens, compiled into a token level Aho-Corasick automaton - a trie
+ * of entry tokens with failure links - so all entries in an input are found in a single pass,
+ * in time linear in the input length (plus the number of matches) regardless of the number of
+ * entries. Matches are resolved leftmost-longest, so where entries overlap (e.g. 'new york' and
+ * 'new york city') the earliest, then longest, entry is used.
+ * <p>The automaton is held in a handful of int arrays rather than as node objects, so large
+ * gazetteers (100k+ entries) stay compact. Gazetteers are compiled at train time and written in
+ * the following binary layout:
+ *
+ * <pre>{@code
+ *
+ *  int       magic number
+ *  boolean   set if tokens are case folded
+ *  int       number of entity names
+ *  utf[]     entity names
+ *  int       number of distinct tokens
+ *  utf[]     tokens (a token id is its index)
+ *  int       number of nodes (node 0 is the root)
+ *  int[]     per node: first child index, depth, entity index (or -1), failure node, output node (or -1)
+ *  int       number of children
+ *  int[]     per child: token id, node (children of each node are sorted by token id)
+ *
+ * }</pre>
+ *
+ * @author Peter Smith
+ */
+public final class Gazetteer {
+
+    /** Binary format identifier */
+
+    private static final int MAGIC = 0x47415A31;
+
+
+    /** Set if tokens are case folded */
+
+    private final boolean foldCase;
+
+
+    /** The entity names */
+
+    private final String[] entities;
+
+
+    /** Token to token id mappings */
+
+    private final Map<String, Integer> tokens;
+
+
+    /** Root node children, by token id (0 if none) */
+
+    private final int[] rootChild;
+
+
+    /** The index of each node's first child (with an extra entry marking the end of the last node's children) */
+
+    private final int[] childStart;
+
+
+    /** The depth (entry length in tokens) of each node */
+
+    private final int[] depth;
+
+
+    /** The entity index of each node that completes an entry, or -1 */
+
+    private final int[] entity;
+
+
+    /** The failure node of each node (the node for its longest proper suffix in the trie) */
+
+    private final int[] fail;
+
+
+    /** The nearest node on each node's failure chain that completes an entry, or -1 */
+
+    private final int[] output;
+
+
+    /** Child token ids */
+
+    private final int[] childToken;
+
+
+    /** Child nodes */
+
+    private final int[] childNode;
+
+
+
+    /**
+     * Creates a gazetteer from its compiled arrays.
+     */
+    private Gazetteer(final boolean foldCase, final String[] entities, final String[] tokens, final int[] childStart, final int[] depth,
+            final int[] entity, final int[] fail, final int[] output, final int[] childToken, final int[] childNode) {
+
+        this.foldCase = foldCase;
+        this.entities = entities;
+        this.childStart = childStart;
+        this.depth = depth;
+        this.entity = entity;
+        this.fail = fail;
+        this.output = output;
+        this.childToken = childToken;
+        this.childNode = childNode;
+
+        this.tokens = new HashMap<String, Integer>(tokens.length * 2);
+        for (int i = 0; i < tokens.length; ++i) this.tokens.put(tokens[i], i);
+
+        rootChild = new int[tokens.length];
+        for (int i = childStart[0]; i < childStart[1]; ++i) rootChild[childToken[i]] = childNode[i];
+    }
+
+
+
+    /**
+     * Loads a compiled gazetteer.
+     *
+     * @param in  the compiled gazetteer data
+     * @return the gazetteer
+     * @throws IOException on error, or if the data is not a compiled gazetteer
+     */
+    public static Gazetteer load(final DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not a compiled gazetteer");
+
+        boolean foldCase = in.readBoolean();
+        String[] entities = readStrings(in);
+        String[] tokens = readStrings(in);
+
+        int nodes = in.readInt();
+        int[] childStart = new int[nodes + 1];
+        int[] depth = new int[nodes];
+        int[] entity = new int[nodes];
+        int[] fail = new int[nodes];
+        int[] output = new int[nodes];
+        for (int i = 0; i < nodes; ++i) {
+            childStart[i] = in.readInt();
+            depth[i] = in.readInt();
+            entity[i] = in.readInt();
+            fail[i] = in.readInt();
+            output[i] = in.readInt();
+        }
+
+        int children = in.readInt();
+        childStart[nodes] = children;
+        int[] childToken = new int[children];
+        int[] childNode = new int[children];
+        for (int i = 0; i < children; ++i) {
+            childToken[i] = in.readInt();
+            childNode[i] = in.readInt();
+        }
+
+        return new Gazetteer(foldCase, entities, tokens, childStart, depth, entity, fail, output, childToken, childNode);
+    }
+
+
+
+    /**
+     * Returns the entity names.
+     *
+     * @return the entity names
+     */
+    public List<String> getEntities() {
+        return Arrays.asList(entities);
+    }
+
+
+
+    /**
+     * Returns the number of nodes in the automaton.
+     *
+     * @return the number of nodes
+     */
+    public int size() {
+        return depth.length;
+    }
+
+
+
+    /**
+     * Finds the entries in a token stream.
+     * <p>Matches are reported in input order, and do not overlap.
+     *
+     * @param input  the input tokens
+     * @return the matches, each as an array of start token index, end token index (exclusive) and entity index
+     */
+    public List<int[]> find(final String[] input) {
+        List<int[]> found = new ArrayList<int[]>();
+        int node = 0;
+
+        for (int i = 0; i < input.length; ++i) {
+            Integer token = tokens.get(foldCase ? input[i].toLowerCase(Locale.ROOT) : input[i]);
+            if (token == null) {
+                node = 0;
+                continue;
+            }
+
+            int next;
+            while ((next = child(node, token)) == 0 && node != 0) node = fail[node];
+            node = next;
+
+
+            /* Record every entry ending at this token */
+
+            for (int match = entity[node] >= 0 ? node : output[node]; match > 0; match = output[match]) {
+                found.add(new int[] {i + 1 - depth[match], i + 1, entity[match]});
+            }
+        }
+
+
+        /* Resolve overlapping matches, leftmost then longest */
+
+        found.sort((a, b) -> a[0] != b[0] ? a[0] - b[0] : b[1] - a[1]);
+
+        List<int[]> matches = new ArrayList<int[]>();
+        int end = 0;
+        for (int[] match : found) {
+            if (match[0] < end) continue;
+            matches.add(match);
+            end = match[1];
+        }
+        return matches;
+    }
+
+
+
+    /**
+     * Returns the name of an entity.
+     *
+     * @param index  the entity index
+     * @return the entity name
+     */
+    public String getEntity(final int index) {
+        return entities[index];
+    }
+
+
+
+    /**
+     * Returns the child of a node for a token.
+     *
+     * @param node   the node
+     * @param token  the token id
+     * @return the child node, or 0 if there is none
+     */
+    private int child(final int node, final int token) {
+        if (node == 0) return rootChild[token];
+
+        int low = childStart[node];
+        int high = childStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int t = childToken[mid];
+
+            if (t < token)
+                low = mid + 1;
+            else if (t > token)
+                high = mid - 1;
+            else
+                return childNode[mid];
+        }
+        return 0;
+    }
+
+
+
+    /**
+     * Reads a counted list of strings.
+     */
+    private static String[] readStrings(final DataInputStream in) throws IOException {
+        String[] strings = new String[in.readInt()];
+        for (int i = 0; i < strings.length; ++i) strings[i] = in.readUTF();
+        return strings;
+    }
+
+
+
+    /**
+     * Builds (compiles) a gazetteer.
+     * <p>This is used at train time. Entries are added as token sequences, then the automaton is
+     * compiled and written in the binary format read by {@link Gazetteer#load}.
+     */
+    public static final class Builder {
+
+        /** Set if tokens are case folded */
+
+        private final boolean foldCase;
+
+
+        /** The entity names */
+
+        private final List<String> entities = new ArrayList<String>();
+
+
+        /** Token to token id mappings */
+
+        private final Map<String, Integer> tokens = new HashMap<String, Integer>();
+
+
+        /** The children of each trie node, by token id */
+
+        private final List<TreeMap<Integer, Integer>> children = new ArrayList<TreeMap<Integer, Integer>>();
+
+
+        /** The entity index of each trie node (-1 if the node does not complete an entry) */
+
+        private final List<Integer> entity = new ArrayList<Integer>();
+
+
+        /** The number of entries added */
+
+        private int count = 0;
+
+
+
+        /**
+         * Creates a gazetteer builder.
+         *
+         * @param foldCase  set if tokens should be case folded
+         */
+        public Builder(final boolean foldCase) {
+            this.foldCase = foldCase;
+            addNode();
+        }
+
+
+
+        /**
+         * Adds an entry.
+         * <p>If the same entry is added for more than one entity, the first entity is kept.
+         *
+         * @param name    the entity name
+         * @param tokens  the entry tokens
+         * @return true if the entry was added, false if it was empty or a duplicate
+         */
+        public boolean add(final String name, final String[] tokens) {
+            if (tokens.length == 0) return false;
+
+            int index = entities.indexOf(name);
+            if (index < 0) {
+                index = entities.size();
+                entities.add(name);
+            }
+
+            int node = 0;
+            for (String token : tokens) {
+                int id = this.tokens.computeIfAbsent(foldCase ? token.toLowerCase(Locale.ROOT) : token, (t) -> this.tokens.size());
+                Integer next = children.get(node).get(id);
+                if (next == null) {
+                    next = addNode();
+                    children.get(node).put(id, next);
+                }
+                node = next;
+            }
+
+            if (entity.get(node) >= 0) return false;
+
+            entity.set(node, index);
+            ++count;
+            return true;
+        }
+
+
+
+        /**
+         * Returns the number of entries added.
+         *
+         * @return the number of entries
+         */
+        public int size() {
+            return count;
+        }
+
+
+
+        /**
+         * Compiles the automaton and writes it out.
+         *
+         * @param out  the output stream
+         * @throws IOException on error
+         */
+        public void write(final DataOutputStream out) throws IOException {
+            int nodes = children.size();
+            int[] depth = new int[nodes];
+            int[] fail = new int[nodes];
+            int[] output = new int[nodes];
+            Arrays.fill(output, -1);
+
+
+            /* Set the failure and output links breadth first, so each node's failure node is done before the node */
+
+            Deque<Integer> pending = new ArrayDeque<Integer>();
+            for (int child : children.get(0).values()) {
+                depth[child] = 1;
+                pending.add(child);
+            }
+
+            while (!pending.isEmpty()) {
+                int node = pending.remove();
+
+                for (Map.Entry<Integer, Integer> edge : children.get(node).entrySet()) {
+                    int token = edge.getKey();
+                    int child = edge.getValue();
+
+                    int f = fail[node];
+                    while (f != 0 && !children.get(f).containsKey(token)) f = fail[f];
+                    Integer target = children.get(f).get(token);
+                    fail[child] = target != null ? target : 0;
+                    output[child] = entity.get(fail[child]) >= 0 ? fail[child] : output[fail[child]];
+                    depth[child] = depth[node] + 1;
+
+                    pending.add(child);
+                }
+            }
+
+
+            /* Write out the automaton */
+
+            String[] names = new String[tokens.size()];
+            for (Map.Entry<String, Integer> token : tokens.entrySet()) names[token.getValue()] = token.getKey();
+
+            out.writeInt(MAGIC);
+            out.writeBoolean(foldCase);
+            writeStrings(out, entities.toArray(new String[entities.size()]));
+            writeStrings(out, names);
+
+            out.writeInt(nodes);
+            int start = 0;
+            for (int i = 0; i < nodes; ++i) {
+                out.writeInt(start);
+                out.writeInt(depth[i]);
+                out.writeInt(entity.get(i));
+                out.writeInt(fail[i]);
+                out.writeInt(output[i]);
+                start += children.get(i).size();
+            }
+
+            out.writeInt(start);
+            for (int i = 0; i < nodes; ++i) {
+                for (Map.Entry<Integer, Integer> edge : children.get(i).entrySet()) {
+                    out.writeInt(edge.getKey());
+                    out.writeInt(edge.getValue());
+                }
+            }
+            out.flush();
+        }
+
+
+
+        /**
+         * Adds a trie node, returning its index.
+         */
+        private int addNode() {
+            children.add(new TreeMap<Integer, Integer>());
+            entity.add(-1);
+            return children.size() - 1;
+        }
+
+
+
+        /**
+         * Writes a counted list of strings.
+         */
+        private static void writeStrings(final DataOutputStream out, final String[] strings) throws IOException {
+            out.writeInt(strings.length);
+            for (String string : strings) out.writeUTF(string);
+        }
+    }
+}
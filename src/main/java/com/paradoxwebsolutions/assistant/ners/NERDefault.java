@@ -4,6 +4,8 @@ package com.paradoxwebsolutions.assistant.ners;
 import com.paradoxwebsolutions.assistant.Assistant;
 import com.paradoxwebsolutions.assistant.ClientSession;
 import com.paradoxwebsolutions.assistant.Input;
+import com.paradoxwebsolutions.assistant.MappedMaxentModel;
+import com.paradoxwebsolutions.assistant.ModelRegistry;
 import com.paradoxwebsolutions.assistant.NER;
 import com.paradoxwebsolutions.assistant.Trainer;
 import com.paradoxwebsolutions.assistant.ners.trainers.NERDefaultTrainer;
@@ -19,6 +21,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import opennlp.tools.namefind.NameFinderME;
@@ -50,9 +53,30 @@ public class NERDefault implements NER {
     private StringMap models = new StringMap();
 
 
-    /* A map of loaded name finders (language is the key) */
+    /* A map of loaded name finders (language is the key, set once all models are loaded) */
 
-    private transient Map<String, NameFinderME>  nameFinders = new HashMap<String, NameFinderME>();
+    private transient volatile Map<String, NameFinderME>  nameFinders = new HashMap<String, NameFinderME>();
+
+
+    /** The directory for compiled (memory mapped) models, or null if models are not mapped */
+
+    private static File cacheDir = null;
+
+
+
+    /**
+     * Service level initialization.
+     * <p>If a model cache directory is configured, model parameters are compiled into it
+     * and memory mapped, so they are shared by all processes using the same cache.
+     *
+     * @param config  the service configuration
+     * @throws ApplicationError on error
+     */
+    @Init
+    public static void init(Config config) throws ApplicationError {
+        String cache = config.getString("opennlp.models.cache");
+        cacheDir = cache == null ? null : new File(cache);
+    }
 
 
     /**
@@ -62,17 +86,20 @@ public class NERDefault implements NER {
      * @param logger    the assistant logger
      * @throws ApplicationError on error loading the language models
      */
-    @Init
+    @Init(concurrent = true)
     public void init(ResourceAPI resource, Logger logger) throws ApplicationError {
 
         /* Load the name find models for all supported languages */
 
+        Map<String, NameFinderME> nameFinders = new HashMap<String, NameFinderME>();
         for (String language : models.keySet()) {
             String filename = models.get(language);
 
             try {
 
-                TokenNameFinderModel nerModel = new TokenNameFinderModel(resource.getInputStream(filename));
+                String name = filename.replaceFirst("\\.bin$", "");
+                TokenNameFinderModel nerModel = ModelRegistry.acquire(resource, resource.getInputStream(filename), TokenNameFinderModel.class,
+                    (in, hash) -> MappedMaxentModel.loadNameFinder(in, cacheDir, name, hash));
                 NameFinderME nameFinder = new NameFinderME(nerModel);
                 nameFinder.clearAdaptiveData();
                 nameFinders.put(language, nameFinder);
@@ -88,6 +115,17 @@ public class NERDefault implements NER {
             }
         }
 
+        this.nameFinders = nameFinders;
+    }
+
+
+
+    /**
+     * Sets configuration defaults.
+     * <p>This is kept out of the (concurrent) model loading, which must only set transient state.
+     */
+    @Init
+    public void init() {
         if (this.input == null) this.input = "tokens";
     }
 
@@ -119,7 +157,7 @@ public class NERDefault implements NER {
             for(Span span: nameSpans) {
                 String entity = Arrays.stream(tokens, span.getStart(), span.getEnd()).collect(Collectors.joining(" "));
                 entities.put(span.getType(), entity);
-                session.debug(String.format("%s[%s]", span.getType(), entity));
+                session.debug("%s[%s]", span.getType(), entity);
             }
         }
         else {
@@ -129,6 +167,13 @@ public class NERDefault implements NER {
 
 
 
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(input != null ? input : "tokens");
+    }
+
+
+
     @Override
     public List<String> getParameters() {
         return this.parameters;
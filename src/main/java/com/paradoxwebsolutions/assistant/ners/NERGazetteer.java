@@ -0,0 +1,185 @@
+package com.paradoxwebsolutions.assistant.ners;
+
+import com.paradoxwebsolutions.assistant.ClientSession;
+import com.paradoxwebsolutions.assistant.Input;
+import com.paradoxwebsolutions.assistant.ModelRegistry;
+import com.paradoxwebsolutions.assistant.NER;
+import com.paradoxwebsolutions.assistant.Trainer;
+import com.paradoxwebsolutions.assistant.ners.trainers.NERGazetteerTrainer;
+import com.paradoxwebsolutions.core.ApplicationError;
+import com.paradoxwebsolutions.core.Logger;
+import com.paradoxwebsolutions.core.ResourceAPI;
+import com.paradoxwebsolutions.core.StringMap;
+import com.paradoxwebsolutions.core.annotations.Init;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+
+/**
+ * Gazetteer (dictionary lookup) implementation of a Named Entity Recognizer.
+ * <p>This is intended for entities with closed vocabularies, such as product names or cities,
+ * where a lookup is both faster and more accurate than a trained model. Each entity is given a
+ * gazetteer source file (one entry per line) in the identity data. At train time, the entries are
+ * run through the lesson pipeline and compiled into a {@link Gazetteer}, which finds entries in
+ * the user input in a single pass.
+ * <p>Matching is done against the configured input token stream. Case folding is enabled by default
+ * (<code>ignoreCase</code>). Other folding is done by matching a normalized token stream - for
+ * example, setting <code>input</code> to a lemma stream matches entries regardless of inflection.
+ * In this case, <code>text</code> can be set to the (aligned) original token stream so that entity
+ * values use the words of the user input rather than their normalized forms.
+ *
+ * @author Peter Smith
+ */
+public class NERGazetteer implements NER {
+
+    /** The gazetteer source files (relative to the identity data directory), by entity name */
+
+    private Map<String, String> gazetteers;
+
+
+    /** The input stream to match entries against */
+
+    private String input = "tokens";
+
+
+    /** The input stream used for entity values (defaults to the matched input) */
+
+    private String text;
+
+
+    /** Set if entries are matched regardless of case */
+
+    private boolean ignoreCase = true;
+
+
+    /** A map of compiled gazetteer files, by language */
+
+    private StringMap models = new StringMap();
+
+
+    /* The loaded gazetteers (language is the key, set once all gazetteers are loaded) */
+
+    private transient volatile Map<String, Gazetteer> dictionaries = new HashMap<String, Gazetteer>();
+
+
+
+    /**
+     * Loads the compiled gazetteers for this NER instance.
+     * <p>Gazetteers are immutable, so identical gazetteers loaded by different assistants are shared.
+     *
+     * @param resource  resource API for loading data files
+     * @param logger    the assistant logger
+     * @throws ApplicationError on error loading the gazetteers
+     */
+    @Init(concurrent = true)
+    public void init(ResourceAPI resource, Logger logger) throws ApplicationError {
+        if (gazetteers == null) throw new ApplicationError("No gazetteers defined for NERGazetteer");
+
+        Map<String, Gazetteer> dictionaries = new HashMap<String, Gazetteer>();
+        for (String language : models.keySet()) {
+            String filename = models.get(language);
+
+            Gazetteer gazetteer = ModelRegistry.acquire(resource, resource.getInputStream(filename), Gazetteer.class,
+                (in) -> Gazetteer.load(new DataInputStream(new BufferedInputStream(in))));
+            dictionaries.put(language, gazetteer);
+
+            logger.info(String.format("Loaded gazetteer '%s' for language %s (%s)", filename, language, String.join(", ", gazetteer.getEntities())));
+        }
+        this.dictionaries = dictionaries;
+    }
+
+
+
+    @Override
+    public void getEntities(final ClientSession session, final Input input, final StringMap entities) throws ApplicationError {
+        Gazetteer gazetteer = dictionaries.get(session.getSessionData().getLanguage());
+        if (gazetteer == null) return;
+
+        String[] tokens = (String[]) input.get(this.input);
+        String[] values = text == null ? tokens : (String[]) input.get(text);
+        if (values.length != tokens.length) throw new ApplicationError(String.format("NERGazetteer inputs '%s' and '%s' are not aligned", this.input, text));
+
+        for (int[] match : gazetteer.find(tokens)) {
+            String name = gazetteer.getEntity(match[2]);
+            String value = Arrays.stream(values, match[0], match[1]).collect(Collectors.joining(" "));
+
+            entities.put(name, value);
+            session.debug("%s[%s]", name, value);
+        }
+    }
+
+
+
+    @Override
+    public Set<String> getInputs() {
+        return text == null ? Set.of(input) : Set.of(input, text);
+    }
+
+
+
+    @Override
+    public List<String> getParameters() {
+        return new ArrayList<String>(gazetteers.keySet());
+    }
+
+
+
+    /**
+     * Returns the gazetteer source files.
+     *
+     * @return the gazetteer source files, by entity name
+     */
+    public Map<String, String> getGazetteers() {
+        return gazetteers;
+    }
+
+
+
+    /**
+     * Returns the name of the input stream entries are matched against.
+     *
+     * @return the input name
+     */
+    public String getInput() {
+        return input;
+    }
+
+
+
+    /**
+     * Checks if entries are matched regardless of case.
+     *
+     * @return true if matching ignores case
+     */
+    public boolean isIgnoreCase() {
+        return ignoreCase;
+    }
+
+
+
+    /**
+     * Set a compiled gazetteer filename for this NER.
+     *
+     * @param lang   the language for which the gazetteer applies
+     * @param model  the file name of the compiled gazetteer
+     */
+    public void setModel(final String lang, final String model) {
+        this.models.put(lang, model);
+    }
+
+
+
+    @Override
+    public Trainer getTrainer() {
+        return new NERGazetteerTrainer(this);
+    }
+}
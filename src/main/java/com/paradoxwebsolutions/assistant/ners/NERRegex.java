@@ -8,15 +8,33 @@ import com.paradoxwebsolutions.core.ApplicationError;
 import com.paradoxwebsolutions.core.StringMap;
 import com.paradoxwebsolutions.core.annotations.Init;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
  * Implementation of a Name Entity Recognizer (NER) that uses regular expressions.
+ * <p>The input (a document or token stream) is scanned once. Each token is checked against the
+ * regular expressions in the order they are configured, and every match is recorded as an entity
+ * value. Where more than one match is found for the same entity, the last one (in input order - by
+ * token, then by position within the token - then configuration order) is used, so results do not
+ * depend on map iteration order, and are the same whether the input is a document or tokens.
+ * <p>Regular expressions that start with a literal string (e.g. <code>#\d+</code>) can only match
+ * tokens containing that string. If the prefilter is enabled (the default), the literal prefixes of
+ * all the expressions are compiled into a single (Aho-Corasick) automaton. Each token is scanned
+ * once by the automaton to find the prefixes it contains, and only the expressions with one of those
+ * prefixes, plus any expressions without a literal prefix, are run against the token. The cost per
+ * token is therefore linear in its length plus the cost of the candidate expressions, rather than
+ * growing with the total number of expressions.
+ * <p>Matchers and other working state are kept per thread, so extraction does not allocate them
+ * for each input.
  *
  * @author Peter Smith
  */
@@ -27,29 +45,62 @@ public class NERRegex implements NER {
     private Map<String, String> parameters;
 
 
-    /** A map of compiled regular expressions */
+    /** The input stream to use for named entity extraction */
 
-    private transient Map<Pattern, String> patterns = new HashMap<Pattern, String>();
+    private String input = "document";
 
 
-    /** The input stream to use for named entity extraction */
+    /** Set if regular expressions should be skipped for tokens that do not contain their literal prefix */
+
+    private boolean prefilter = true;
+
+
+    /** The compiled regular expressions, in configuration order */
+
+    private transient Parameter[] patterns;
+
+
+    /** The number of distinct entity names */
+
+    private transient int entityCount;
+
+
+    /** Automaton finding the literal prefixes contained in a token (null if prefiltering is disabled) */
+
+    private transient PrefixAutomaton prefixes;
+
+
+    /** Working state, per thread */
+
+    private transient ThreadLocal<Scratch> scratch;
 
-    private String input = "document";
-    
 
 
     /**
      * Compiles the regular expressions for this regex NER.
-     * 
+     *
      * @throws ApplicationError on error loading the language models
      */
     @Init
     public void init() throws ApplicationError {
         if (parameters == null) throw new ApplicationError("No parameters defined for NERRegex");
 
+        Parameter[] patterns = new Parameter[parameters.size()];
+        Map<String, Integer> entities = new HashMap<String, Integer>();
+        String[] literals = new String[patterns.length];
+
+        int i = 0;
         for (Map.Entry<String, String> parameter : parameters.entrySet()) {
-            patterns.put(Pattern.compile(parameter.getKey()), parameter.getValue());
+            Integer entity = entities.computeIfAbsent(parameter.getValue(), (n) -> entities.size());
+            literals[i] = prefilter ? literalPrefix(parameter.getKey()) : null;
+            patterns[i] = new Parameter(Pattern.compile(parameter.getKey()), parameter.getValue(), entity, literals[i] != null);
+            ++i;
         }
+
+        this.patterns = patterns;
+        this.entityCount = entities.size();
+        this.prefixes = prefilter ? new PrefixAutomaton(literals) : null;
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(patterns.length, entityCount));
     }
 
 
@@ -60,35 +111,259 @@ public class NERRegex implements NER {
 
         Object data = input.get(this.input);
 
-        if (data.getClass() == String[].class) {
-            String[] tokens = (String[]) data;
+        String[] tokens;
+        if (data.getClass() == String[].class)
+            tokens = (String[]) data;
+        else if (data.getClass() == String.class)
+            tokens = new String[] {(String) data};
+        else
+            throw new ApplicationError("Unsupported input type for NERRegex");
 
-            for (Map.Entry<Pattern, String> parameter : patterns.entrySet()) {
-                for (int i = 0; i < tokens.length; ++i) {
-                    Matcher m = parameter.getKey().matcher(tokens[i]);
-                    while (m.find()) {
-                        entities.put(parameter.getValue(), m.group());
-                    }
-                }
+
+        /* Matchers are created when first needed, and reset for each token */
+
+        Scratch work = scratch.get();
+        Matcher[] matchers = work.matchers;
+        int[] positions = work.positions;
+        boolean[] candidates = work.candidates;
+
+        for (String token : tokens) {
+            Arrays.fill(positions, -1);
+            if (prefixes != null) {
+                Arrays.fill(candidates, false);
+                prefixes.scan(token, candidates);
             }
-        }
-        else if (data.getClass() == String.class) {
-            String sentence = (String) data;
 
-            for (Map.Entry<Pattern, String> parameter : patterns.entrySet()) {
-                Matcher m = parameter.getKey().matcher(sentence);
+            for (int i = 0; i < patterns.length; ++i) {
+                Parameter parameter = patterns[i];
+                if (parameter.prefixed && !candidates[i]) continue;
+
+                Matcher m = matchers[i] == null ? (matchers[i] = parameter.pattern.matcher(token)) : matchers[i].reset(token);
                 while (m.find()) {
-                    entities.put(parameter.getValue(), m.group());
-                    session.debug(String.format("%s[%s]", parameter.getValue(), m.group()));
+                    /* A match earlier in the token than one already found for the entity is not used */
+
+                    if (positions[parameter.entity] > m.start()) continue;
+
+                    positions[parameter.entity] = m.start();
+                    entities.put(parameter.name, m.group());
+                    session.debug("%s[%s]", parameter.name, m.group());
                 }
+                m.reset(""); /* Don't keep a reference to the input */
             }
         }
-        else throw new ApplicationError("Unsupported input type for 'replace' preprocessor");
     }
 
 
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(input);
+    }
+
+
+
     @Override
     public List<String> getParameters() {
         return parameters.entrySet().stream().map((e) -> e.getValue()).collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+
+
+    /**
+     * Returns the literal string that any match of a regular expression must start with.
+     * <p>This is the run of literal characters at the start of the expression, ignoring a leading
+     * '^'. Expressions that contain alternation, or do not start with a literal, have no prefix.
+     *
+     * @param regex  the regular expression
+     * @return the literal prefix, or null if there is none
+     */
+    static String literalPrefix(final String regex) {
+        if (regex.indexOf('|') >= 0) return null;
+
+        StringBuilder prefix = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+
+            if (c == '\\') {
+                if (i + 1 >= regex.length() || Character.isLetterOrDigit(regex.charAt(i + 1))) break;
+                c = regex.charAt(i + 1);
+                i += 2;
+            }
+            else if ("^$.?*+()[]{}".indexOf(c) >= 0) {
+                break;
+            }
+            else {
+                ++i;
+            }
+
+            /* A quantified character is not part of the prefix */
+
+            if (i < regex.length() && "?*+{".indexOf(regex.charAt(i)) >= 0) break;
+            prefix.append(c);
+        }
+
+        return prefix.length() > 0 ? prefix.toString() : null;
+    }
+
+
+
+    /**
+     * A compiled regular expression and the entity it extracts.
+     */
+    private static class Parameter {
+
+        /** The compiled regular expression */
+
+        final Pattern pattern;
+
+
+        /** The entity name */
+
+        final String name;
+
+
+        /** The index of the entity name */
+
+        final int entity;
+
+
+        /** Set if the regular expression has a literal prefix (and prefiltering is enabled) */
+
+        final boolean prefixed;
+
+
+        Parameter(final Pattern pattern, final String name, final int entity, final boolean prefixed) {
+            this.pattern = pattern;
+            this.name = name;
+            this.entity = entity;
+            this.prefixed = prefixed;
+        }
+    }
+
+
+
+    /**
+     * Working state for extracting entities on a thread.
+     */
+    private static class Scratch {
+
+        /** Matchers, by pattern (created when first needed) */
+
+        final Matcher[] matchers;
+
+
+        /** The position of the last match found in the current token, by entity (-1 if none) */
+
+        final int[] positions;
+
+
+        /** Set for patterns whose literal prefix is in the current token */
+
+        final boolean[] candidates;
+
+
+        Scratch(final int patterns, final int entities) {
+            this.matchers = new Matcher[patterns];
+            this.positions = new int[entities];
+            this.candidates = new boolean[patterns];
+        }
+    }
+
+
+
+    /**
+     * An Aho-Corasick automaton finding which of a set of literal strings occur in an input.
+     * <p>Instances are thread safe once constructed.
+     */
+    static class PrefixAutomaton {
+
+        /** The start state */
+
+        private final Node root = new Node();
+
+
+        /**
+         * Builds the automaton for a set of literals.
+         *
+         * @param literals  the literals, by pattern index (null entries are ignored)
+         */
+        PrefixAutomaton(final String[] literals) {
+
+            /* Build a trie of the literals */
+
+            for (int i = 0; i < literals.length; ++i) {
+                if (literals[i] == null) continue;
+
+                Node node = root;
+                for (char c : literals[i].toCharArray()) node = node.next.computeIfAbsent(c, (k) -> new Node());
+                node.outputs = append(node.outputs, i);
+            }
+
+
+            /* Add failure links (breadth first), merging the outputs of each state's failure state */
+
+            Deque<Node> queue = new ArrayDeque<Node>();
+            for (Node child : root.next.values()) {
+                child.fail = root;
+                queue.add(child);
+            }
+
+            while (!queue.isEmpty()) {
+                Node node = queue.remove();
+
+                for (Map.Entry<Character, Node> entry : node.next.entrySet()) {
+                    Node child = entry.getValue();
+                    Node fail = node.fail;
+                    while (fail != root && !fail.next.containsKey(entry.getKey())) fail = fail.fail;
+
+                    Node target = fail.next.get(entry.getKey());
+                    child.fail = target != null ? target : root;
+                    for (int output : child.fail.outputs) child.outputs = append(child.outputs, output);
+                    queue.add(child);
+                }
+            }
+        }
+
+
+        /**
+         * Scans an input once, marking the literals it contains.
+         *
+         * @param input  the input to scan
+         * @param found  set for the index of each literal found
+         */
+        void scan(final String input, final boolean[] found) {
+            Node node = root;
+
+            for (int i = 0; i < input.length(); ++i) {
+                char c = input.charAt(i);
+
+                Node next;
+                while ((next = node.next.get(c)) == null && node != root) node = node.fail;
+                node = next == null ? root : next;
+
+                for (int output : node.outputs) found[output] = true;
+            }
+        }
+
+
+        /**
+         * Returns an array with a value appended.
+         */
+        private static int[] append(final int[] values, final int value) {
+            int[] result = Arrays.copyOf(values, values.length + 1);
+            result[values.length] = value;
+            return result;
+        }
+
+
+        /**
+         * An automaton state.
+         */
+        private static class Node {
+            final Map<Character, Node> next = new HashMap<Character, Node>();
+            Node fail = null;
+            int[] outputs = new int[0];
+        }
+    }
+}
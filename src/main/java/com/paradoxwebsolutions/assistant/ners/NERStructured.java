@@ -0,0 +1,1071 @@
+package com.paradoxwebsolutions.assistant.ners;
+
+import com.paradoxwebsolutions.assistant.ClientSession;
+import com.paradoxwebsolutions.assistant.Input;
+import com.paradoxwebsolutions.assistant.NER;
+import com.paradoxwebsolutions.core.ApplicationError;
+import com.paradoxwebsolutions.core.StringMap;
+import com.paradoxwebsolutions.core.annotations.Init;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+
+
+/**
+ * Rule based Named Entity Recognizer for numbers, ordinals, dates and times.
+ * <p>This needs no model or training. The input tokens are scanned once by a hand coded English
+ * grammar that recognizes:
+ *
+ * <ul>
+ * <li>numbers - <code>42</code>, <code>1,000</code>, <code>2.5</code>, <code>twenty one</code>, <code>a hundred and five</code></li>
+ * <li>ordinals - <code>3rd</code>, <code>third</code>, <code>twenty-first</code></li>
+ * <li>dates - <code>today</code>, <code>tomorrow</code>, <code>the day after tomorrow</code>, <code>next friday</code>,
+ *     <code>in 3 days</code>, <code>2 weeks ago</code>, <code>march 3rd</code>, <code>the 3rd of march 2027</code>,
+ *     <code>2027-03-03</code>, <code>this weekend</code>, <code>next week</code></li>
+ * <li>times - <code>3pm</code>, <code>3:30 p.m.</code>, <code>noon</code>, <code>half past six</code>,
+ *     <code>5 o'clock</code>, <code>7 in the evening</code></li>
+ * <li>ranges of any of the above - <code>from monday to friday</code>, <code>between 3 and 5pm</code>, <code>2 to 4</code></li>
+ * </ul>
+ *
+ * <p>Entity values are normalized rather than taken from the input: numbers and ordinals are decimal
+ * numbers, dates are ISO dates (yyyy-MM-dd), times are 24 hour times (HH:mm) and ranges are the start
+ * and end values separated by '/'. Relative dates are resolved against the current date in the
+ * configured time zone (the system default if none). Dates given without a year are taken to be the
+ * next such date, so 'march 3rd' is never in the past.
+ * <p>By default, each type of value is reported under an entity of the same name (<code>number</code>,
+ * <code>ordinal</code>, <code>date</code> and <code>time</code>). The <code>entities</code> map can be
+ * used to rename these, or to limit extraction to some of them - e.g. <code>{"date": "temporal"}</code>
+ * reports dates as <code>temporal</code>, and nothing else.
+ * <p>The grammar is English, so by default this only runs for English sessions.
+ *
+ * @author Peter Smith
+ */
+public class NERStructured implements NER {
+
+    /* Value types (indexes into TYPES) */
+
+    private static final int NUMBER = 0;
+    private static final int ORDINAL = 1;
+    private static final int DATE = 2;
+    private static final int TIME = 3;
+
+    private static final String[] TYPES = {"number", "ordinal", "date", "time"};
+
+
+    /* Number word kinds, for validating number word sequences */
+
+    private static final int NONE = 0;
+    private static final int UNIT = 1;
+    private static final int TEEN = 2;
+    private static final int TEN = 3;
+    private static final int HUNDRED = 4;
+    private static final int SCALE = 5;
+    private static final int AND = 6;
+
+
+    /* Meridiem indicators */
+
+    private static final int AM = 1;
+    private static final int PM = 2;
+
+    private static final String[] MERIDIEMS = {"a.m.", "p.m.", "a.m", "p.m", "am", "pm"};
+
+
+    /* Word tables */
+
+    private static final Map<String, Integer> UNITS = table(0, "zero", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine");
+    private static final Map<String, Integer> TEENS = table(10, "ten", "eleven", "twelve", "thirteen", "fourteen", "fifteen", "sixteen",
+        "seventeen", "eighteen", "nineteen");
+    private static final Map<String, Integer> TENS = new HashMap<String, Integer>();
+    private static final Map<String, Integer> SCALES = new HashMap<String, Integer>();
+    private static final Map<String, Integer> ORDINALS = table(1, "first", "second", "third", "fourth", "fifth", "sixth", "seventh",
+        "eighth", "ninth", "tenth", "eleventh", "twelfth", "thirteenth", "fourteenth", "fifteenth", "sixteenth", "seventeenth",
+        "eighteenth", "nineteenth");
+    private static final Map<String, Integer> WEEKDAYS = table(1, "monday", "tuesday", "wednesday", "thursday", "friday", "saturday", "sunday");
+    private static final Map<String, Integer> MONTHS = table(1, "january", "february", "march", "april", "may", "june", "july", "august",
+        "september", "october", "november", "december");
+
+    static {
+        String[] tens = {"twenty", "thirty", "forty", "fifty", "sixty", "seventy", "eighty", "ninety"};
+        String[] tenths = {"twentieth", "thirtieth", "fortieth", "fiftieth", "sixtieth", "seventieth", "eightieth", "ninetieth"};
+        for (int i = 0; i < tens.length; ++i) {
+            TENS.put(tens[i], (i + 2) * 10);
+            ORDINALS.put(tenths[i], (i + 2) * 10);
+        }
+
+        SCALES.put("thousand", 1000);
+        SCALES.put("million", 1000000);
+        SCALES.put("billion", 1000000000);
+
+        String[] months = {"jan", "feb", "mar", "apr", "may", "jun", "jul", "aug", "sep", "oct", "nov", "dec"};
+        for (int i = 0; i < months.length; ++i) MONTHS.put(months[i], i + 1);
+        MONTHS.put("sept", 9);
+    }
+
+
+    /** The input stream to use for named entity extraction (a token stream or document) */
+
+    private String input = "tokens";
+
+
+    /** The entity names to report values under, by value type (all types under their own names if not set) */
+
+    private Map<String, String> entities;
+
+
+    /** The time zone used to resolve relative dates (the system default if not set) */
+
+    private String zone;
+
+
+    /** The languages this NER runs for */
+
+    private List<String> languages = List.of("en");
+
+
+    /* The entity name for each value type (null if the type is not reported) */
+
+    private transient String[] names;
+
+
+    /* The clock used to resolve relative dates */
+
+    private transient Clock clock;
+
+
+
+    /**
+     * Sets up the entity names and the clock for this NER.
+     *
+     * @throws ApplicationError on configuration error
+     */
+    @Init
+    public void init() throws ApplicationError {
+        names = new String[TYPES.length];
+
+        if (entities == null) {
+            for (int i = 0; i < TYPES.length; ++i) names[i] = TYPES[i];
+        }
+        else {
+            for (Map.Entry<String, String> entity : entities.entrySet()) {
+                int type = List.of(TYPES).indexOf(entity.getKey());
+                if (type < 0) throw new ApplicationError(String.format("Unknown value type '%s' for NERStructured (expected one of %s)",
+                    entity.getKey(), String.join(", ", TYPES)));
+                names[type] = entity.getValue();
+            }
+        }
+
+        try {
+            clock = zone == null ? Clock.systemDefaultZone() : Clock.system(ZoneId.of(zone));
+        }
+        catch (DateTimeException x) {
+            throw new ApplicationError(String.format("Invalid time zone '%s' for NERStructured", zone), x);
+        }
+    }
+
+
+
+    @Override
+    public void getEntities(final ClientSession session, final Input input, final StringMap entities) throws ApplicationError {
+        if (!languages.contains(session.getSessionData().getLanguage())) return;
+
+        Object data = input.get(this.input);
+
+        String[] tokens;
+        if (data instanceof String[])
+            tokens = (String[]) data;
+        else if (data instanceof String)
+            tokens = split((String) data);
+        else
+            throw new ApplicationError("Unsupported input type for NERStructured");
+
+        extract(tokens, LocalDate.now(clock), entities, session);
+    }
+
+
+
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(input);
+    }
+
+
+
+    @Override
+    public List<String> getParameters() {
+        List<String> parameters = new ArrayList<String>(entities == null ? List.of(TYPES) : entities.values());
+        return parameters;
+    }
+
+
+
+    /**
+     * Extracts the values in a token stream.
+     *
+     * @param tokens    the input tokens
+     * @param today     the date relative dates are resolved against
+     * @param entities  the entity map to add values to
+     * @param session   the client session for debug output (may be null)
+     */
+    void extract(final String[] tokens, final LocalDate today, final StringMap entities, final ClientSession session) {
+        Scanner scanner = new Scanner(tokens, today);
+        Item item = scanner.result;
+
+        int i = 0;
+        while (i < tokens.length) {
+            if (!scanner.range(i) && !scanner.item(i, item)) {
+                ++i;
+                continue;
+            }
+
+            String name = names[item.type];
+            if (name != null) {
+                String value = item.text != null ? item.text : format(item.type, item.value, item.real);
+                entities.put(name, value);
+                if (session != null) session.debug("%s[%s]", name, value);
+            }
+            i = item.end;
+        }
+    }
+
+
+
+    /**
+     * Formats a value.
+     */
+    private static String format(final int type, final long value, final double real) {
+        switch (type) {
+            case DATE:
+                return LocalDate.ofEpochDay(value).toString();
+
+            case TIME:
+                return new String(new char[] {
+                    (char) ('0' + value / 600), (char) ('0' + value / 60 % 10), ':', (char) ('0' + value % 60 / 10), (char) ('0' + value % 10)});
+
+            default:
+                return Double.isNaN(real) ? Long.toString(value) : BigDecimal.valueOf(real).stripTrailingZeros().toPlainString();
+        }
+    }
+
+
+
+    /**
+     * Splits a document into tokens.
+     * <p>The document is split on whitespace, and punctuation is stripped from the ends of each token.
+     */
+    private static String[] split(final String document) {
+        List<String> tokens = new ArrayList<String>();
+        int length = document.length();
+        int i = 0;
+
+        while (i < length) {
+            while (i < length && Character.isWhitespace(document.charAt(i))) ++i;
+            int start = i;
+            while (i < length && !Character.isWhitespace(document.charAt(i))) ++i;
+            int end = i;
+
+            while (start < end && ",.!?;:\"'()".indexOf(document.charAt(start)) >= 0) ++start;
+            while (end > start && ",.!?;:\"'()".indexOf(document.charAt(end - 1)) >= 0) --end;
+            if (start < end) tokens.add(document.substring(start, end));
+        }
+        return tokens.toArray(new String[tokens.size()]);
+    }
+
+
+
+    /**
+     * Creates a word table, mapping words to consecutive values.
+     */
+    private static Map<String, Integer> table(final int first, final String... words) {
+        Map<String, Integer> table = new HashMap<String, Integer>();
+        for (int i = 0; i < words.length; ++i) table.put(words[i], first + i);
+        return table;
+    }
+
+
+
+    /**
+     * A recognized value.
+     */
+    private static final class Item {
+
+        /** The value type */
+
+        int type;
+
+
+        /** The index of the token following the value */
+
+        int end;
+
+
+        /** The value - an integer, epoch day or minute of the day */
+
+        long value;
+
+
+        /** The value of non-integer numbers (NaN for integers) */
+
+        double real = Double.NaN;
+
+
+        /** The meridiem given with a time (0 if none) */
+
+        int meridiem;
+
+
+        /** The formatted value, for ranges */
+
+        String text;
+
+
+        Item set(final int type, final int end, final long value) {
+            this.type = type;
+            this.end = end;
+            this.value = value;
+            this.real = Double.NaN;
+            this.meridiem = 0;
+            this.text = null;
+            return this;
+        }
+
+
+        void copy(final Item item) {
+            type = item.type;
+            end = item.end;
+            value = item.value;
+            real = item.real;
+            meridiem = item.meridiem;
+            text = item.text;
+        }
+    }
+
+
+
+    /**
+     * Scanner for a single input.
+     * <p>Each parse method attempts to recognize a value starting at a given token, returning true
+     * (with the value set in an item) if it does. Items are reused, so scanning allocates little
+     * beyond the lower cased tokens and the formatted entity values.
+     */
+    private static final class Scanner {
+
+        /** The lower cased input tokens */
+
+        final String[] words;
+
+
+        /** The current date, as an epoch day */
+
+        final long today;
+
+
+        /** The current day of the week (1 is monday) */
+
+        final int weekday;
+
+
+        /** The current date */
+
+        final LocalDate date;
+
+
+        /** The result item */
+
+        final Item result = new Item();
+
+
+        /* Working items */
+
+        final Item first = new Item();
+        final Item second = new Item();
+        final Item candidate = new Item();
+        final Item scratch = new Item();
+
+
+        Scanner(final String[] tokens, final LocalDate date) {
+            this.date = date;
+            this.today = date.toEpochDay();
+            this.weekday = date.getDayOfWeek().getValue();
+
+            words = new String[tokens.length];
+            for (int i = 0; i < tokens.length; ++i) words[i] = lower(tokens[i]);
+        }
+
+
+
+        /**
+         * Returns the word at an index, or an empty string if the index is past the end of the input.
+         */
+        String word(final int i) {
+            return i < words.length ? words[i] : "";
+        }
+
+
+
+        /**
+         * Recognizes a range (e.g. 'from X to Y', 'between X and Y', 'X to Y') at a token, into the result item.
+         */
+        boolean range(final int i) {
+            String word = word(i);
+            boolean between = word.equals("between");
+            int start = between || word.equals("from") ? i + 1 : i;
+
+            if (!item(start, first)) return false;
+
+            String connector = word(first.end);
+            boolean joined = between ? connector.equals("and")
+                : connector.equals("to") || connector.equals("-") || connector.equals("until") || connector.equals("till")
+                    || connector.equals("through") || connector.equals("thru");
+
+            if (!joined || !item(first.end + 1, second) || first.text != null || second.text != null) return false;
+
+
+            /* A bare number takes its meridiem from a following time (e.g. '3 to 5pm') */
+
+            if (first.type == NUMBER && second.type == TIME && Double.isNaN(first.real) && first.value >= 0 && first.value <= 23) {
+                long hour = first.value;
+                if (second.meridiem == PM && hour < 12 && (hour + 12) * 60 <= second.value) hour += 12;
+                first.set(TIME, first.end, hour * 60);
+            }
+
+            if (first.type != second.type || first.type == ORDINAL) return false;
+
+            result.set(first.type, second.end, first.value);
+            result.text = format(first.type, first.value, first.real) + "/" + format(second.type, second.value, second.real);
+            return true;
+        }
+
+
+
+        /**
+         * Recognizes the longest single value at a token.
+         */
+        boolean item(final int i, final Item item) {
+            if (i >= words.length) return false;
+
+            boolean found = false;
+            item.end = i;
+
+            if (date(i, candidate) && candidate.end > item.end) {
+                item.copy(candidate);
+                found = true;
+            }
+            if (time(i, candidate) && candidate.end > item.end) {
+                item.copy(candidate);
+                found = true;
+            }
+            if (ordinal(i, candidate) && candidate.end > item.end) {
+                item.copy(candidate);
+                found = true;
+            }
+            if (number(i, candidate) && candidate.end > item.end) {
+                item.copy(candidate);
+                found = true;
+            }
+            return found;
+        }
+
+
+
+        /**
+         * Recognizes a number (digits or number words).
+         */
+        boolean number(final int i, final Item item) {
+            String word = word(i);
+            if (word.isEmpty()) return false;
+
+            if (isDigit(word.charAt(0))) return numeral(word, i, item);
+
+
+            /* Number words - the sequence of word kinds is checked so 'one two' is two numbers, not three */
+
+            long total = 0;
+            long current = 0;
+            int kind = NONE;
+            int end = -1;
+
+            for (int j = i; j < words.length; ++j) {
+                String w = words[j];
+                Integer value;
+                int next;
+
+                if (w.equals("and")) {
+                    if (kind != HUNDRED && kind != SCALE) break;
+                    kind = AND;
+                    continue;
+                }
+
+                if ((value = UNITS.get(w)) != null)
+                    next = UNIT;
+                else if ((value = TEENS.get(w)) != null)
+                    next = TEEN;
+                else if ((value = TENS.get(w)) != null)
+                    next = TEN;
+                else if (w.equals("hundred"))
+                    next = HUNDRED;
+                else if ((value = SCALES.get(w)) != null)
+                    next = SCALE;
+                else if (w.equals("a") && kind == NONE && (word(j + 1).equals("hundred") || SCALES.containsKey(word(j + 1)))) {
+                    value = 1;
+                    next = UNIT;
+                }
+                else if ((value = compound(w, UNITS)) != null)
+                    next = UNIT;
+                else
+                    break;
+
+                if (!follows(kind, next)) break;
+
+                if (next == HUNDRED)
+                    current = Math.max(current, 1) * 100;
+                else if (next == SCALE) {
+                    total += Math.max(current, 1) * value;
+                    current = 0;
+                }
+                else
+                    current += value;
+
+                kind = next;
+                end = j + 1;
+            }
+
+            if (end < 0) return false;
+
+            item.set(NUMBER, end, total + current);
+            return true;
+        }
+
+
+
+        /**
+         * Recognizes a number written in digits, with optional thousands separators and decimal places.
+         */
+        boolean numeral(final String word, final int i, final Item item) {
+            long value = 0;
+            int digits = 0;
+            int group = -1;
+            int point = -1;
+
+            for (int k = 0; k < word.length(); ++k) {
+                char c = word.charAt(k);
+
+                if (isDigit(c)) {
+                    if (++digits > 18) return false;
+                    if (point < 0) value = value * 10 + (c - '0');
+                    if (group >= 0) ++group;
+                }
+                else if (c == ',' && point < 0 && (group < 0 ? k > 0 && k <= 3 : group == 3)) {
+                    group = 0;
+                }
+                else if (c == '.' && point < 0 && k + 1 < word.length()) {
+                    point = k;
+                }
+                else {
+                    return false;
+                }
+            }
+            if (group >= 0 && group != 3 && point < 0) return false;
+
+            item.set(NUMBER, i + 1, value);
+            if (point >= 0) item.real = Double.parseDouble(word.replace(",", ""));
+            return true;
+        }
+
+
+
+        /**
+         * Recognizes an ordinal (e.g. '3rd', 'third', 'twenty first').
+         */
+        boolean ordinal(final int i, final Item item) {
+            String word = word(i);
+            if (word.isEmpty()) return false;
+
+            int length = word.length();
+            if (isDigit(word.charAt(0))) {
+                if (length < 3 || length > 6) return false;
+
+                String suffix = word.substring(length - 2);
+                if (!suffix.equals("st") && !suffix.equals("nd") && !suffix.equals("rd") && !suffix.equals("th")) return false;
+
+                long value = 0;
+                for (int k = 0; k < length - 2; ++k) {
+                    char c = word.charAt(k);
+                    if (!isDigit(c)) return false;
+                    value = value * 10 + (c - '0');
+                }
+                item.set(ORDINAL, i + 1, value);
+                return true;
+            }
+
+            Integer value = ORDINALS.get(word);
+            if (value != null) {
+                item.set(ORDINAL, i + 1, value);
+                return true;
+            }
+
+            if ((value = compound(word, ORDINALS)) != null) {
+                item.set(ORDINAL, i + 1, value);
+                return true;
+            }
+
+            Integer tens = TENS.get(word);
+            Integer units = ORDINALS.get(word(i + 1));
+            if (tens != null && units != null && units < 10) {
+                item.set(ORDINAL, i + 2, tens + units);
+                return true;
+            }
+            return false;
+        }
+
+
+
+        /**
+         * Recognizes a time of day.
+         */
+        boolean time(final int i, final Item item) {
+            String word = word(i);
+            int end;
+            long minutes;
+            int meridiem = 0;
+
+            if (word.equals("noon") || word.equals("midday")) {
+                item.set(TIME, i + 1, 12 * 60);
+                return true;
+            }
+            if (word.equals("midnight")) {
+                item.set(TIME, i + 1, 0);
+                return true;
+            }
+
+
+            /* Half past, quarter past/to */
+
+            if ((word.equals("half") || word.equals("quarter")) && (word(i + 1).equals("past") || word(i + 1).equals("to"))) {
+                int hour = hour(word(i + 2));
+                if (hour < 0) return false;
+
+                minutes = hour * 60 + (word.equals("half") ? 30 : word(i + 1).equals("past") ? 15 : -15);
+                if (minutes < 0) minutes += 24 * 60;
+                end = i + 3;
+            }
+
+
+            /* Clock times (e.g. '3', '3:30', '3pm', '3:30pm') */
+
+            else {
+                int suffix = meridiem(word, word.length());
+                String base = word;
+                if (suffix != 0) {
+                    meridiem = suffix >> 8;
+                    base = word.substring(0, word.length() - (suffix & 0xff));
+                }
+
+                minutes = clock(base);
+                if (minutes < 0) {
+                    int hour = hour(base);
+                    if (hour < 0) return false;
+                    minutes = hour * 60;
+                }
+                end = i + 1;
+
+
+                /* A bare hour must be followed by a meridiem or o'clock */
+
+                if (meridiem == 0 && (suffix = meridiem(word(end), word(end).length())) != 0 && (suffix & 0xff) == word(end).length()) {
+                    meridiem = suffix >> 8;
+                    ++end;
+                }
+                else if (meridiem == 0 && (word(end).equals("o'clock") || word(end).equals("oclock"))) {
+                    ++end;
+                }
+                else if (meridiem == 0 && base.indexOf(':') < 0) {
+                    return false;
+                }
+            }
+
+
+            /* A trailing period of the day sets the meridiem (e.g. '7 in the evening') */
+
+            if (meridiem == 0) {
+                String period = word(end + 2);
+                if (word(end).equals("in") && word(end + 1).equals("the")) {
+                    if (period.equals("morning"))
+                        meridiem = AM;
+                    else if (period.equals("afternoon") || period.equals("evening"))
+                        meridiem = PM;
+                    if (meridiem != 0) end += 3;
+                }
+                else if (word(end).equals("at") && word(end + 1).equals("night")) {
+                    meridiem = PM;
+                    end += 2;
+                }
+                else if (word(end).equals("tonight")) {
+                    meridiem = PM;
+                }
+            }
+
+            if (meridiem != 0) {
+                if (minutes < 60 || minutes >= 13 * 60) return false;
+                if (meridiem == AM && minutes >= 12 * 60) minutes -= 12 * 60;
+                if (meridiem == PM && minutes < 12 * 60) minutes += 12 * 60;
+            }
+
+            item.set(TIME, end, minutes);
+            item.meridiem = meridiem;
+            return true;
+        }
+
+
+
+        /**
+         * Recognizes a date, or a range of dates (e.g. 'this weekend').
+         */
+        boolean date(final int i, final Item item) {
+            final int start = word(i).equals("the") ? i + 1 : i;
+            int j = start;
+            String word = word(j);
+
+
+            /* Relative days */
+
+            switch (word) {
+                case "today":
+                case "tonight":
+                    item.set(DATE, j + 1, today);
+                    return true;
+
+                case "tomorrow":
+                    item.set(DATE, j + 1, today + 1);
+                    return true;
+
+                case "yesterday":
+                    item.set(DATE, j + 1, today - 1);
+                    return true;
+
+                case "day":
+                    if (word(j + 1).equals("after") && word(j + 2).equals("tomorrow")) {
+                        item.set(DATE, j + 3, today + 2);
+                        return true;
+                    }
+                    if (word(j + 1).equals("before") && word(j + 2).equals("yesterday")) {
+                        item.set(DATE, j + 3, today - 2);
+                        return true;
+                    }
+                    return false;
+
+                case "in":
+                    return offset(j + 1, 1, item);
+            }
+
+
+            /* Weekdays and weeks, with an optional modifier (e.g. 'next friday', 'this weekend') */
+
+            int modifier = 0;
+            if (word.equals("this") || word.equals("on")) {
+                modifier = word(j + 1).equals("coming") ? 1 : 0;
+                j += modifier + 1;
+            }
+            else if (word.equals("next") || word.equals("coming")) {
+                modifier = 1;
+                ++j;
+            }
+            else if (word.equals("last")) {
+                modifier = -1;
+                ++j;
+            }
+            boolean modified = j != start;
+            word = word(j);
+
+            Integer day = WEEKDAYS.get(word);
+            if (day != null) {
+                int delta = (day - weekday + 7) % 7;
+                if (modifier > 0 && delta == 0) delta = 7;
+                if (modifier < 0) delta = delta == 0 ? -7 : delta - 7;
+
+                item.set(DATE, j + 1, today + delta);
+                return true;
+            }
+
+            if (modified && (word.equals("week") || word.equals("weekend"))) {
+                long monday = today - weekday + 1 + 7 * modifier;
+                long from = word.equals("week") ? monday : monday + 5;
+
+                item.set(DATE, j + 1, from);
+                item.text = format(DATE, from, 0) + "/" + format(DATE, monday + 6, 0);
+                return true;
+            }
+
+            if (modified && word.equals("month")) {
+                LocalDate month = date.withDayOfMonth(1).plusMonths(modifier);
+
+                item.set(DATE, j + 1, month.toEpochDay());
+                item.text = month + "/" + month.withDayOfMonth(month.lengthOfMonth());
+                return true;
+            }
+
+            if (modified) return false;
+
+
+            /* Offsets (e.g. '3 days ago') and calendar dates */
+
+            return offset(j, -1, item) || calendar(i, item) || iso(word, j, item);
+        }
+
+
+
+        /**
+         * Recognizes a day offset (e.g. '3 days', 'a week') followed by 'ago' for past offsets.
+         */
+        boolean offset(final int i, final int sign, final Item item) {
+            long count;
+            int j;
+
+            if (word(i).equals("a")) {
+                count = 1;
+                j = i + 1;
+            }
+            else if (number(i, scratch) && Double.isNaN(scratch.real)) {
+                count = scratch.value;
+                j = scratch.end;
+            }
+            else {
+                return false;
+            }
+
+            String unit = word(j);
+            int days = unit.equals("day") || unit.equals("days") ? 1 : unit.equals("week") || unit.equals("weeks") ? 7 : 0;
+            if (days == 0 || count > 10000) return false;
+
+            if (sign < 0) {
+                if (!word(j + 1).equals("ago")) return false;
+                ++j;
+            }
+
+            item.set(DATE, j + 1, today + sign * count * days);
+            return true;
+        }
+
+
+
+        /**
+         * Recognizes a calendar date (e.g. 'march 3rd', '3 march 2027', 'the 3rd of march').
+         */
+        boolean calendar(final int i, final Item item) {
+            int j = word(i).equals("the") ? i + 1 : i;
+            int day;
+            int month;
+
+            Integer m = MONTHS.get(word(j));
+            if (m != null) {
+                month = m;
+                if (word(j + 1).equals("the")) ++j;
+                if ((day = day(j + 1)) < 0) return false;
+                j = scratch.end;
+            }
+            else {
+                if ((day = day(j)) < 0) return false;
+                j = scratch.end;
+                if (word(j).equals("of")) ++j;
+                if ((m = MONTHS.get(word(j))) == null) return false;
+                month = m;
+                ++j;
+            }
+
+
+            /* Optional year, otherwise the next such date */
+
+            int k = word(j).equals(",") ? j + 1 : j;
+            int year = year(word(k));
+            boolean explicit = year > 0;
+            if (explicit)
+                j = k + 1;
+            else
+                year = date.getYear();
+
+            try {
+                LocalDate result = LocalDate.of(year, month, day);
+                if (!explicit && result.isBefore(date)) result = result.plusYears(1);
+
+                item.set(DATE, j, result.toEpochDay());
+                return true;
+            }
+            catch (DateTimeException x) {
+                return false;
+            }
+        }
+
+
+
+        /**
+         * Recognizes a day of the month (a number or ordinal from 1 to 31) into the scratch item.
+         */
+        int day(final int i) {
+            if (!ordinal(i, scratch) && !(number(i, scratch) && Double.isNaN(scratch.real))) return -1;
+            return scratch.value >= 1 && scratch.value <= 31 ? (int) scratch.value : -1;
+        }
+
+
+
+        /**
+         * Recognizes an ISO date (yyyy-MM-dd).
+         */
+        boolean iso(final String word, final int i, final Item item) {
+            if (word.length() != 10 || word.charAt(4) != '-' || word.charAt(7) != '-') return false;
+
+            int year = year(word.substring(0, 4));
+            int month = digitValue(word, 5, 7);
+            int day = digitValue(word, 8, 10);
+            if (year < 0 || month < 0 || day < 0) return false;
+
+            try {
+                item.set(DATE, i + 1, LocalDate.of(year, month, day).toEpochDay());
+                return true;
+            }
+            catch (DateTimeException x) {
+                return false;
+            }
+        }
+
+
+
+        /**
+         * Returns the hour given by a word (digits or a number word), or -1 if it is not an hour.
+         */
+        static int hour(final String word) {
+            Integer value = UNITS.get(word);
+            if (value == null) value = TEENS.get(word);
+            if (value != null) return value >= 1 && value <= 12 ? value : -1;
+
+            int hour = word.length() <= 2 ? digitValue(word, 0, word.length()) : -1;
+            return hour <= 23 ? hour : -1;
+        }
+
+
+
+        /**
+         * Returns the minute of the day for a clock time (h:mm), or -1.
+         */
+        static long clock(final String word) {
+            int colon = word.indexOf(':');
+            if (colon < 1 || colon > 2 || word.length() - colon != 3) return -1;
+
+            int hour = digitValue(word, 0, colon);
+            int minute = digitValue(word, colon + 1, word.length());
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59) return -1;
+            return hour * 60 + minute;
+        }
+
+
+
+        /**
+         * Checks a word for a meridiem suffix (e.g. 'pm', 'a.m.').
+         *
+         * @return the meridiem shifted left 8 bits plus the suffix length, or 0 if there is none
+         */
+        static int meridiem(final String word, final int length) {
+            for (String suffix : MERIDIEMS) {
+                if (length >= suffix.length() && word.startsWith(suffix, length - suffix.length())) {
+                    return ((suffix.charAt(0) == 'a' ? AM : PM) << 8) | suffix.length();
+                }
+            }
+            return 0;
+        }
+
+
+
+        /**
+         * Returns a four digit year (from 1900 to 2199), or -1.
+         */
+        static int year(final String word) {
+            int year = word.length() == 4 ? digitValue(word, 0, 4) : -1;
+            return year >= 1900 && year < 2200 ? year : -1;
+        }
+
+
+
+        /**
+         * Returns the value of a run of digits, or -1 if any character is not a digit.
+         */
+        static int digitValue(final String word, final int start, final int end) {
+            if (start >= end) return -1;
+
+            int value = 0;
+            for (int k = start; k < end; ++k) {
+                char c = word.charAt(k);
+                if (!isDigit(c)) return -1;
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+
+
+
+        /**
+         * Returns the value of a hyphenated compound number word (e.g. 'twenty-one', 'thirty-first'), or null.
+         */
+        static Integer compound(final String word, final Map<String, Integer> units) {
+            int hyphen = word.indexOf('-');
+            if (hyphen < 0) return null;
+
+            Integer tens = TENS.get(word.substring(0, hyphen));
+            Integer value = tens == null ? null : units.get(word.substring(hyphen + 1));
+            return value == null || value < 1 || value > 9 ? null : tens + value;
+        }
+
+
+
+        /**
+         * Checks if one kind of number word can follow another.
+         */
+        static boolean follows(final int previous, final int next) {
+            switch (previous) {
+                case NONE:
+                case AND:
+                    return next == UNIT || next == TEEN || next == TEN;
+
+                case UNIT:
+                case TEEN:
+                    return next == HUNDRED || next == SCALE;
+
+                case TEN:
+                    return next == UNIT || next == SCALE;
+
+                case HUNDRED:
+                case SCALE:
+                    return next == UNIT || next == TEEN || next == TEN || next == SCALE;
+
+                default:
+                    return false;
+            }
+        }
+
+
+
+        static boolean isDigit(final char c) {
+            return c >= '0' && c <= '9';
+        }
+
+
+
+        /**
+         * Lower cases a token, returning the token itself if it has no upper case characters.
+         */
+        static String lower(final String token) {
+            for (int i = 0; i < token.length(); ++i) {
+                if (Character.isUpperCase(token.charAt(i))) return token.toLowerCase(Locale.ROOT);
+            }
+            return token;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.paradoxwebsolutions.assistant.ners.trainers;
+
+import com.paradoxwebsolutions.assistant.Input;
+import com.paradoxwebsolutions.assistant.Trainer;
+import com.paradoxwebsolutions.assistant.ners.Gazetteer;
+import com.paradoxwebsolutions.assistant.ners.NERGazetteer;
+import com.paradoxwebsolutions.core.ApplicationError;
+import com.paradoxwebsolutions.core.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+
+
+/**
+ * Trainer class for the gazetteer named entity recognizer.
+ * <p>This compiles the gazetteer source files configured for the NER into a {@link Gazetteer}
+ * for each language in the training data. Source files contain one entry per line (blank lines
+ * and lines starting with '#' are ignored). Each entry is run through the lesson pipeline so that
+ * it is tokenized (and normalized - e.g. lemmatized) the same way as user input.
+ *
+ * @author Peter Smith
+ */
+public class NERGazetteerTrainer implements Trainer {
+
+    /** The NER instance being trained/configured */
+
+    private NERGazetteer ner;
+
+
+
+    /**
+     * Creates an instance of a trainer.
+     *
+     * @param ner  the NER being trained
+     */
+    public NERGazetteerTrainer(NERGazetteer ner) {
+        this.ner = ner;
+    }
+
+
+
+    @Override
+    public void train(final Context context, final String language, final String intent, final List<Input> docs) throws ApplicationError {
+
+        final Logger logger = context.logger;
+        final Gazetteer.Builder builder = new Gazetteer.Builder(ner.isIgnoreCase());
+
+        if (context.dataDir == null) throw new ApplicationError("No data directory for gazetteer sources");
+
+        for (Map.Entry<String, String> gazetteer : ner.getGazetteers().entrySet()) {
+            String entity = gazetteer.getKey();
+            File source = new File(context.dataDir + File.separator + gazetteer.getValue().replace("{lang}", language));
+
+            logger.info(String.format("Compiling gazetteer '%s' for entity %s, language %s", source.getPath(), entity, language));
+
+            try {
+                int duplicates = 0;
+                for (String line : Files.readAllLines(source.toPath(), StandardCharsets.UTF_8)) {
+                    line = line.trim();
+                    if (line.isEmpty() || line.startsWith("#")) continue;
+
+                    if (!builder.add(entity, tokenize(context, line))) {
+                        ++duplicates;
+                        logger.debug("Duplicate gazetteer entry '%s' for entity %s", line, entity);
+                    }
+                }
+                if (duplicates > 0) logger.warning(String.format("%d duplicate entries ignored in gazetteer '%s'", duplicates, source.getPath()));
+            }
+            catch (ApplicationError x) {
+                throw x;
+            }
+            catch (Exception x) {
+                throw new ApplicationError(String.format("Failed to read gazetteer '%s'", source.getPath()), x);
+            }
+        }
+
+
+        /* Write out the compiled gazetteer and set it on the NER */
+
+        String modelFilename = language + "-gazetteer-" + Integer.toHexString(intent.hashCode()) + ".bin";
+        File modelFile = new File(context.modelDir + File.separator + modelFilename);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(modelFile)))) {
+            builder.write(out);
+        }
+        catch (Exception x) {
+            throw new ApplicationError(String.format("Failed to write gazetteer '%s'", modelFilename), x);
+        }
+        logger.info(String.format("Created gazetteer file '%s' (%d entries)", modelFilename, builder.size()));
+
+        ner.setModel(language, modelFilename);
+        context.files.add(modelFilename);
+    }
+
+
+
+    /**
+     * Tokenizes a gazetteer entry.
+     * <p>The entry is run through the lesson pipeline, and the NER input taken from the result. If
+     * there is no pipeline, or the pipeline does not produce a token stream for the NER input, the
+     * entry is split on whitespace.
+     *
+     * @param context  the training context
+     * @param entry    the gazetteer entry
+     * @return the entry tokens
+     * @throws ApplicationError on error
+     */
+    private String[] tokenize(final Context context, final String entry) throws ApplicationError {
+        if (context.pipeline != null) {
+            Object tokens = context.pipeline.preprocess(context.session, entry).get(ner.getInput());
+            if (tokens instanceof String[]) return (String[]) tokens;
+        }
+        return entry.split("\\s+");
+    }
+}
@@ -0,0 +1,343 @@
+package com.paradoxwebsolutions.assistant.preprocessors;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+
+/**
+ * A compact, read only lemma dictionary.
+ * <p>This is a replacement for the OpenNLP DictionaryLemmatizer, which holds its dictionary
+ * as a large map of small heap objects. Here, the dictionary is compiled into a single binary
+ * buffer of entries sorted by word and POS tag, which is searched directly. Lookups do not
+ * allocate any memory other than for returning a lemma that differs from the word. Compiled
+ * dictionaries can be written to a cache directory and memory mapped, in which case they are
+ * shared by all processes using the same cache.
+ * <p>Lookup semantics follow the OpenNLP lemmatizer - words are lower cased, and only the
+ * first of any alternative lemmas is used. The binary layout is as follows:
+ *
+ * <pre>{@code
+ *
+ *  int      magic number
+ *  int      number of POS tags
+ *  tag[]    POS tags, each as a short length followed by characters
+ *  int      number of entries
+ *  int[]    entry offsets (relative to the start of the entry data)
+ *  entry[]  entries, each as a byte tag index, a short word length and word characters,
+ *           and a short lemma length and lemma characters (a lemma length of -1 indicates
+ *           that the lemma is the same as the word)
+ *
+ * }</pre>
+ *
+ * @author Peter Smith
+ */
+final class LemmaDictionary {
+
+    /** Binary format identifier */
+
+    private static final int MAGIC = 0x4C454D31;
+
+
+    /** Lemma length indicating that the lemma is the word itself */
+
+    private static final short SAME = -1;
+
+
+    /** The compiled dictionary */
+
+    private final ByteBuffer data;
+
+
+    /** POS tag to tag index mappings */
+
+    private final Map<String, Integer> tags = new HashMap<String, Integer>();
+
+
+    /** The number of entries */
+
+    private final int count;
+
+
+    /** The offset of the entry offset table */
+
+    private final int index;
+
+
+    /** The offset of the entry data */
+
+    private final int entries;
+
+
+
+    /**
+     * Creates a dictionary from compiled data.
+     *
+     * @param data  the compiled dictionary data
+     * @throws IOException if the data is not a compiled dictionary
+     */
+    private LemmaDictionary(final ByteBuffer data) throws IOException {
+        if (data.limit() < 8 || data.getInt(0) != MAGIC) throw new IOException("Invalid compiled lemma dictionary");
+        this.data = data;
+
+        int offset = 4;
+        int tagCount = data.getInt(offset);
+        offset += 4;
+
+        for (int i = 0; i < tagCount; ++i) {
+            int len = data.getShort(offset);
+            tags.put(getString(offset + 2, len), i);
+            offset += 2 + len * 2;
+        }
+
+        count = data.getInt(offset);
+        index = offset + 4;
+        entries = index + count * 4;
+    }
+
+
+
+    /**
+     * Loads a lemma dictionary.
+     * <p>The dictionary source is in the OpenNLP format (word, POS tag, and lemma separated
+     * by tabs, one entry per line). If a cache directory is given, the compiled dictionary is
+     * stored there (keyed by a checksum of the source) and memory mapped. Otherwise, it is
+     * compiled into an off-heap buffer.
+     *
+     * @param in        the dictionary source
+     * @param cacheDir  the directory for compiled dictionaries, or null if not cached
+     * @param name      the base name for the compiled dictionary file
+     * @return the lemma dictionary
+     * @throws IOException on error
+     */
+    static LemmaDictionary load(final InputStream in, final File cacheDir, final String name) throws IOException {
+        byte[] source = in.readAllBytes();
+
+        if (cacheDir != null) {
+            CRC32 crc = new CRC32();
+            crc.update(source);
+            File file = new File(cacheDir, String.format("%s-%08x.bin", name, crc.getValue()));
+
+            if (!file.isFile()) {
+                /* Write to a temporary file first so that other processes never see a partial file */
+
+                Files.createDirectories(cacheDir.toPath());
+                File temp = File.createTempFile(name, ".tmp", cacheDir);
+                ByteBuffer compiled = compile(source);
+                try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE)) {
+                    while (compiled.hasRemaining()) channel.write(compiled);
+                }
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                return new LemmaDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+        }
+
+        ByteBuffer compiled = compile(source);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(compiled.remaining());
+        buffer.put(compiled).flip();
+        return new LemmaDictionary(buffer);
+    }
+
+
+
+    /**
+     * Returns the number of entries in this dictionary.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return count;
+    }
+
+
+
+    /**
+     * Looks up the lemma for a word.
+     *
+     * @param word  the word to look up
+     * @param tag   the POS tag for the word
+     * @return the lemma, or null if the word/tag pair is not in the dictionary
+     */
+    String lemmatize(final String word, final String tag) {
+        Integer tagIndex = tags.get(tag);
+        if (tagIndex == null) return null;
+
+        int low = 0;
+        int high = count - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = entries + data.getInt(index + mid * 4);
+            int cmp = compare(offset, word, tagIndex);
+
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else {
+                int wordLen = data.getShort(offset + 1);
+                int lemmaOffset = offset + 3 + wordLen * 2;
+                int lemmaLen = data.getShort(lemmaOffset);
+
+                return lemmaLen == SAME ? word : getString(lemmaOffset + 2, lemmaLen);
+            }
+        }
+        return null;
+    }
+
+
+
+    /**
+     * Compares a dictionary entry with a (lower cased) word and tag.
+     *
+     * @param offset  the offset of the entry
+     * @param word    the word
+     * @param tag     the tag index
+     * @return less than, equal to, or greater than zero as the entry is less than, equal to, or greater than the word and tag
+     */
+    private int compare(final int offset, final String word, final int tag) {
+        int len = data.getShort(offset + 1);
+        int n = Math.min(len, word.length());
+
+        for (int i = 0; i < n; ++i) {
+            char a = data.getChar(offset + 3 + i * 2);
+            char b = Character.toLowerCase(word.charAt(i));
+            if (a != b) return a - b;
+        }
+        if (len != word.length()) return len - word.length();
+
+        return data.get(offset) - tag;
+    }
+
+
+
+    /**
+     * Reads a string from the dictionary data.
+     *
+     * @param offset  the offset of the first character
+     * @param len     the number of characters
+     * @return the string
+     */
+    private String getString(final int offset, final int len) {
+        char[] chars = new char[len];
+        for (int i = 0; i < len; ++i) chars[i] = data.getChar(offset + i * 2);
+        return new String(chars);
+    }
+
+
+
+    /**
+     * Compiles a dictionary source into the binary format.
+     *
+     * @param source  the dictionary source
+     * @return a buffer containing the compiled dictionary
+     * @throws IOException on error
+     */
+    private static ByteBuffer compile(final byte[] source) throws IOException {
+
+        /* Read the source entries. Later entries replace earlier ones, as with the OpenNLP lemmatizer */
+
+        Map<List<String>, String> lemmas = new HashMap<List<String>, String>();
+        TreeSet<String> tagSet = new TreeSet<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(source), StandardCharsets.UTF_8));
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t");
+            if (fields.length < 3) continue;
+
+            /* Words are looked up in lower case, so other entries can never match */
+
+            if (!fields[0].equals(fields[0].toLowerCase())) continue;
+
+            lemmas.put(List.of(fields[0], fields[1]), fields[2].split("#")[0]);
+            tagSet.add(fields[1]);
+        }
+
+        if (tagSet.size() > Byte.MAX_VALUE) throw new IOException("Too many POS tags in lemma dictionary");
+
+        List<String> tagList = new ArrayList<String>(tagSet);
+        Map<String, Integer> tagIndex = new HashMap<String, Integer>();
+        for (int i = 0; i < tagList.size(); ++i) tagIndex.put(tagList.get(i), i);
+
+
+        /* Sort entries by word, then tag index */
+
+        List<List<String>> keys = new ArrayList<List<String>>(lemmas.keySet());
+        keys.sort((a, b) -> {
+            int cmp = a.get(0).compareTo(b.get(0));
+            return cmp != 0 ? cmp : tagIndex.get(a.get(1)) - tagIndex.get(b.get(1));
+        });
+
+
+        /* Work out the size of the compiled dictionary */
+
+        int size = 12 + keys.size() * 4;
+        for (String tag : tagList) size += 2 + tag.length() * 2;
+        for (List<String> key : keys) {
+            String lemma = lemmas.get(key);
+            size += 5 + key.get(0).length() * 2 + (lemma.equals(key.get(0)) ? 0 : lemma.length() * 2);
+        }
+
+
+        /* Write the dictionary */
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putInt(tagList.size());
+        for (String tag : tagList) putString(buffer, tag);
+
+        buffer.putInt(keys.size());
+        int offsets = buffer.position();
+        int start = offsets + keys.size() * 4;
+        buffer.position(start);
+
+        for (int i = 0; i < keys.size(); ++i) {
+            List<String> key = keys.get(i);
+            String lemma = lemmas.get(key);
+
+            buffer.putInt(offsets + i * 4, buffer.position() - start);
+            buffer.put((byte) (int) tagIndex.get(key.get(1)));
+            putString(buffer, key.get(0));
+
+            if (lemma.equals(key.get(0)))
+                buffer.putShort(SAME);
+            else
+                putString(buffer, lemma);
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+
+
+    /**
+     * Writes a length prefixed string to a buffer.
+     *
+     * @param buffer  the buffer to write to
+     * @param value   the string to write
+     * @throws IOException if the string is too long
+     */
+    private static void putString(final ByteBuffer buffer, final String value) throws IOException {
+        if (value.length() > Short.MAX_VALUE) throw new IOException("Lemma dictionary entry too long");
+
+        buffer.putShort((short) value.length());
+        for (int i = 0; i < value.length(); ++i) buffer.putChar(value.charAt(i));
+    }
+}
@@ -0,0 +1,171 @@
+package com.paradoxwebsolutions.assistant.preprocessors;
+
+import com.paradoxwebsolutions.assistant.Preprocessor;
+import com.paradoxwebsolutions.assistant.ClientSession;
+import com.paradoxwebsolutions.core.ApplicationError;
+import com.paradoxwebsolutions.core.GenericMap;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.gson.annotations.SerializedName;
+
+
+/**
+ * Input preprocessor that selects a set of preprocessing steps based on the session language.
+ * <p>This allows language specific steps (for example, POS tagging or lemmatization) to be
+ * configured per language, so that they are only run (and their models only loaded) for the
+ * languages that need them. Language detection must be performed prior to this step. A typical
+ * configuration may look as follows:
+ *
+ * <pre>{@code
+ *
+ *  {
+ *      "type": "com.paradoxwebsolutions.assistant.preprocessors.PreprocessorBranch",
+ *      "languages": {
+ *          "en": [
+ *              { "type": "com.paradoxwebsolutions.assistant.preprocessors.PreprocessorPOS", "language": "en" },
+ *              { "type": "com.paradoxwebsolutions.assistant.preprocessors.PreprocessorLemmatizer", "language": "en" }
+ *          ]
+ *      },
+ *      "default": []
+ *  }
+ *
+ * }</pre>
+ *
+ * If there is no branch for the session language, the default steps (if any) are run.
+ *
+ * @author Peter Smith
+ */
+public class PreprocessorBranch extends Preprocessor {
+
+    /** The preprocessing steps to run for each language */
+
+    private Map<String, List<Preprocessor>> languages = new HashMap<String, List<Preprocessor>>();
+
+
+    /** The preprocessing steps to run for languages without a configured branch */
+
+    @SerializedName("default")
+    private List<Preprocessor> defaultSteps;
+
+
+
+    /**
+     * Returns a copy of this branch containing only the steps for a named pipeline.
+     * <p>The steps themselves are shared with this branch.
+     *
+     * @param pipeline  the name of the pipeline
+     * @return a branch containing only the steps active for the pipeline
+     */
+    public PreprocessorBranch forPipelineSteps(final String pipeline) {
+        PreprocessorBranch branch = new PreprocessorBranch();
+
+        for (Map.Entry<String, List<Preprocessor>> entry : languages.entrySet()) {
+            branch.languages.put(entry.getKey(), filter(entry.getValue(), pipeline));
+        }
+        branch.defaultSteps = filter(defaultSteps, pipeline);
+
+        return branch;
+    }
+
+
+
+    @Override
+    public Set<String> getInputs() {
+
+        /*
+         * Since a branch may or may not write a given output, its outputs are also treated as
+         * inputs so that prior values are carried through when they are not overwritten.
+         */
+        Set<String> inputs = getIO(true);
+        Set<String> outputs = getIO(false);
+        if (inputs == null || outputs == null) return null;
+
+        inputs.addAll(outputs);
+        inputs.add(SESSION_LANGUAGE);
+        return inputs;
+    }
+
+
+
+    @Override
+    public Set<String> getOutputs() {
+        return getIO(false);
+    }
+
+
+
+    @Override
+    public void preprocess(ClientSession session, GenericMap input) throws ApplicationError {
+        List<Preprocessor> steps = languages.get(session.getLanguage());
+        if (steps == null) steps = defaultSteps;
+        if (steps == null) return;
+
+        for (Preprocessor step : steps) {
+            step.preprocess(session, input);
+        }
+    }
+
+
+
+    /**
+     * Returns the union of the inputs or outputs of all steps in all branches.
+     *
+     * @param inputs  true to get inputs, false to get outputs
+     * @return the set of names, or null if any step has unknown inputs or outputs
+     */
+    private Set<String> getIO(final boolean inputs) {
+        Set<String> names = new HashSet<String>();
+
+        for (List<Preprocessor> steps : languages.values()) {
+            if (!addIO(names, steps, inputs)) return null;
+        }
+        if (!addIO(names, defaultSteps, inputs)) return null;
+
+        return names;
+    }
+
+
+
+    /**
+     * Adds the inputs or outputs of a list of steps to a set of names.
+     *
+     * @param names   the set of names to add to
+     * @param steps   the steps (may be null)
+     * @param inputs  true to add inputs, false to add outputs
+     * @return false if any step has unknown inputs or outputs, true otherwise
+     */
+    private static boolean addIO(final Set<String> names, final List<Preprocessor> steps, final boolean inputs) {
+        if (steps == null) return true;
+
+        for (Preprocessor step : steps) {
+            Set<String> io = inputs ? step.getInputs() : step.getOutputs();
+            if (io == null) return false;
+            names.addAll(io);
+        }
+        return true;
+    }
+
+
+
+    /**
+     * Filters a list of steps for a named pipeline.
+     *
+     * @param steps     the steps to filter (may be null)
+     * @param pipeline  the name of the pipeline
+     * @return the steps active for the pipeline
+     */
+    private static List<Preprocessor> filter(final List<Preprocessor> steps, final String pipeline) {
+        if (steps == null) return null;
+
+        return steps.stream()
+            .filter((s) -> s.forPipeline(pipeline))
+            .map((s) -> s instanceof PreprocessorBranch ? ((PreprocessorBranch) s).forPipelineSteps(pipeline) : s)
+            .collect(Collectors.toList());
+    }
+}
@@ -10,6 +10,7 @@ import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.util.Set;
 
 
 /**
@@ -87,7 +88,29 @@ public class PreprocessorCopy extends Preprocessor {
      * @return the input data.
      */
     protected Object getInput(GenericMap input) {
-        return input.get(this.input != null ? this.input : defaultInput);
+        return input.get(getInputName());
+    }
+
+
+
+    /**
+     * Returns the key name of the input data.
+     *
+     * @return the configured input key name, or the default if not configured
+     */
+    protected String getInputName() {
+        return this.input != null ? this.input : defaultInput;
+    }
+
+
+
+    /**
+     * Returns the key name of the output data.
+     *
+     * @return the configured output key name, or the default if not configured
+     */
+    protected String getOutputName() {
+        return this.output != null ? this.output : defaultOutput;
     }
 
 
@@ -111,7 +134,21 @@ public class PreprocessorCopy extends Preprocessor {
      * @param value   the value to set as the output of this preprocessor
      */
     protected void setOutput(GenericMap input, Object value) {
-        input.put(output != null ? output : defaultOutput, value);
+        input.put(getOutputName(), value);
+    }
+
+
+
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(getInputName());
+    }
+
+
+
+    @Override
+    public Set<String> getOutputs() {
+        return Set.of(getOutputName());
     }
 
 
@@ -5,6 +5,7 @@ import com.paradoxwebsolutions.assistant.ClientSession;
 import com.paradoxwebsolutions.core.GenericMap;
 
 import java.util.Arrays;
+import java.util.Set;
 
 
 /**
@@ -17,6 +18,20 @@ import java.util.Arrays;
  */
 public class PreprocessorDefault extends Preprocessor {
 
+    @Override
+    public Set<String> getInputs() {
+        return Set.of("document");
+    }
+
+
+
+    @Override
+    public Set<String> getOutputs() {
+        return Set.of("tokens");
+    }
+
+
+
     @Override
     public void preprocess(ClientSession session, GenericMap input) {
         assert input != null : "Null input passed to default preprocessor";
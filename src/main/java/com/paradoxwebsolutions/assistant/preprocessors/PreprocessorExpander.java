@@ -14,6 +14,7 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -57,6 +58,13 @@ public class PreprocessorExpander extends PreprocessorCopy {
 
 
 
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(getInputName(), SESSION_LANGUAGE);
+    }
+
+
+
     @Override
     public Object preprocess(ClientSession session, String doc) {
         assert doc != null : "Null input passed to default preprocessor";
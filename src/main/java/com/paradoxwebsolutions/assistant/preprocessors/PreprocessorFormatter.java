@@ -5,6 +5,10 @@ import com.paradoxwebsolutions.assistant.ClientSession;
 import com.paradoxwebsolutions.core.ApplicationError;
 import com.paradoxwebsolutions.core.GenericMap;
 
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
 
 /**
  * Input preprocessor that can be used to combine multiple input fields into
@@ -34,6 +38,20 @@ public class PreprocessorFormatter extends Preprocessor {
 
 
 
+    @Override
+    public Set<String> getInputs() {
+        return inputs == null ? null : new HashSet<>(Arrays.asList(inputs));
+    }
+
+
+
+    @Override
+    public Set<String> getOutputs() {
+        return Set.of((output == null || output.length() == 0) ? "tokens" : output);
+    }
+
+
+
     @Override
     public void preprocess(ClientSession session, GenericMap input) throws ApplicationError {
         assert input != null : "Null input passed to preprocessor";
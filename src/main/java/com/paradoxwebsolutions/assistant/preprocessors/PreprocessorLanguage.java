@@ -1,6 +1,8 @@
 package com.paradoxwebsolutions.assistant.preprocessors;
 
 import com.paradoxwebsolutions.assistant.ClientSession;
+import com.paradoxwebsolutions.assistant.ModelRegistry;
+import com.paradoxwebsolutions.assistant.SessionData;
 import com.paradoxwebsolutions.core.ApplicationError;
 import com.paradoxwebsolutions.core.Config;
 import com.paradoxwebsolutions.core.Logger;
@@ -10,8 +12,12 @@ import com.paradoxwebsolutions.core.annotations.Init;
 import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import opennlp.tools.langdetect.Language;
+import opennlp.tools.langdetect.LanguageDetector;
 import opennlp.tools.langdetect.LanguageDetectorME;
 import opennlp.tools.langdetect.LanguageDetectorModel;
 
@@ -23,6 +29,12 @@ import com.google.gson.annotations.SerializedName;
  * <p>This preprocessor is usually used at the very beginning of the processing
  * pipeline and, with properly trained models, can be used to determine the
  * languge being used by the client.
+ * <p>Since detection is relatively expensive and unreliable on short inputs, inputs below
+ * a minimum length ({@code minLength}) can be skipped. In addition, once the session language
+ * has been confidently detected a number of times in a row ({@code stickyCount}), it can be
+ * reused for subsequent inputs unless they are long, or contain a high proportion of words not
+ * previously seen in the session language. Both are disabled by default, so every input is
+ * checked.
  *
  * @author Peter Smith
  */
@@ -35,9 +47,39 @@ public class PreprocessorLanguage extends PreprocessorCopy {
     private double  confidenceLimit = 0.90;
 
 
+    /** Inputs shorter than this (in characters) are not checked - the session language is used (0 to always detect) */
+
+    private int     minLength = 0;
+
+
+    /** The number of consecutive confident detections after which the session language is reused (0 to always detect) */
+
+    private int     stickyCount = 0;
+
+
+    /** Inputs of at least this length (in characters) are always checked, even if the session language is sticky */
+
+    private int     redetectLength = 100;
+
+
+    /** The fraction of unknown words in an input above which a sticky session language is checked */
+
+    private double  oovThreshold = 0.5;
+
+
+    /** The maximum number of known words kept per language */
+
+    private int     vocabularySize = 20000;
+
+
+    /** Words seen in confidently detected inputs, per language */
+
+    private transient Map<String, Set<String>> vocabulary = new ConcurrentHashMap<String, Set<String>>();
+
+
     /** OpenNLP language detector */
 
-    private transient LanguageDetectorME detector;
+    transient LanguageDetector detector;
 
 
 
@@ -51,7 +93,7 @@ public class PreprocessorLanguage extends PreprocessorCopy {
      * @param logger     the assistant logger
      * @throws ApplicationError on error
      */
-    @Init
+    @Init(concurrent = true)
     public void init(ResourceAPI resource, Config config, Logger logger) throws ApplicationError {
 
         if (!config.getBool("training", false)) {
@@ -59,7 +101,7 @@ public class PreprocessorLanguage extends PreprocessorCopy {
             logger.info(String.format("Loading language model '%s'", filename));
 
             try {
-                detector = new LanguageDetectorME(new LanguageDetectorModel(resource.getInputStream(filename)));
+                detector = new LanguageDetectorME(ModelRegistry.acquire(resource, resource.getInputStream(filename), LanguageDetectorModel.class, LanguageDetectorModel::new));
             }
             catch (Exception x) {
                 throw new ApplicationError(String.format("Failed to load language model '%s'", filename), x);
@@ -68,20 +110,102 @@ public class PreprocessorLanguage extends PreprocessorCopy {
     }
 
 
+    @Override
+    public Set<String> getOutputs() {
+
+        /* Detection also sets the session language, which is used well beyond the pipeline */
+
+        return Set.of(getOutputName(), SESSION_LANGUAGE);
+    }
+
+
+
     @Override
     public Object preprocess(ClientSession session, String input) {
         assert input != null : "Null input passed to preprocessor";
 
+        SessionData data = session.getSessionData();
+
+        /* Short inputs cannot be reliably classified, so don't try */
+
+        if (input.length() < minLength) {
+            session.debug("Input too short for language detection - using %s", data.getLanguage());
+            return data.getLanguage();
+        }
+
+
+        /*
+         * If the session language has been consistently detected, keep using it unless this input
+         * is long enough to be worth checking, or contains too many words we have not seen before.
+         */
+        String[] words = input.toLowerCase().split("\\P{L}+");
+
+        if (stickyCount > 0 && data.getLanguageDetections() >= stickyCount && input.length() < redetectLength) {
+            double oov = getOOVRate(data.getLanguage(), words);
+            if (oov <= oovThreshold) {
+                session.debug("Using session language: %s", data.getLanguage());
+                return data.getLanguage();
+            }
+            session.debug("Unknown word rate %f exceeds threshold - checking language", oov);
+        }
+
         Language lang = detector.predictLanguage(input);
 
         if (lang.getConfidence() >= confidenceLimit) {
-            session.debug(String.format("Detected language: %s (%f)", lang.getLang(), lang.getConfidence()));
-            session.getSessionData().setLanguage(lang.getLang());
+            session.debug("Detected language: %s (%f)", lang.getLang(), lang.getConfidence());
+
+            if (lang.getLang().equals(data.getLanguage()))
+                data.setLanguageDetections(data.getLanguageDetections() + 1);
+            else
+                data.setLanguageDetections(1);
+
+            data.setLanguage(lang.getLang());
+            learn(lang.getLang(), words);
             return lang.getLang();
         }
 
         session.debug("Language not detected within confidence limit");
+        data.setLanguageDetections(0);
         return "en"; /* Default */
     }
 
+
+
+    /**
+     * Returns the fraction of words that have not been seen in a language.
+     *
+     * @param language  the language to check against
+     * @param words     the words to check
+     * @return the fraction of unknown words (0 if there are no words)
+     */
+    private double getOOVRate(final String language, final String[] words) {
+        Set<String> known = vocabulary.get(language);
+        int total = 0;
+        int unknown = 0;
+
+        for (String word : words) {
+            if (word.length() == 0) continue;
+            ++total;
+            if (known == null || !known.contains(word)) ++unknown;
+        }
+        return total == 0 ? 0 : (double) unknown / total;
+    }
+
+
+
+    /**
+     * Adds words to the known vocabulary of a language.
+     *
+     * @param language  the language the words belong to
+     * @param words     the words to add
+     */
+    private void learn(final String language, final String[] words) {
+        Set<String> known = vocabulary.computeIfAbsent(language, (l) -> ConcurrentHashMap.newKeySet());
+
+        for (String word : words) {
+            if (known.size() >= vocabularySize) break;
+            if (word.length() > 0) known.add(word);
+        }
+    }
+
 }
\ No newline at end of file
@@ -2,15 +2,20 @@ package com.paradoxwebsolutions.assistant.preprocessors;
 
 import com.paradoxwebsolutions.assistant.ClientSession;
 import com.paradoxwebsolutions.core.ApplicationError;
+import com.paradoxwebsolutions.core.Config;
 import com.paradoxwebsolutions.core.GenericMap;
 import com.paradoxwebsolutions.core.Logger;
 import com.paradoxwebsolutions.core.ResourceAPI;
 import com.paradoxwebsolutions.core.annotations.Init;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
-
-import opennlp.tools.lemmatizer.DictionaryLemmatizer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 import com.google.gson.annotations.SerializedName;
 
@@ -28,12 +33,32 @@ public class PreprocessorLemmatizer extends PreprocessorCopy {
 
     /** Name of our dictionary resource */
 
-    private static String resource = "data/models/opennlp/en-lemmatizer.dict";
+    private static final String resourceTemplate = "data/models/opennlp/%s-lemmatizer.dict";
+
+
+    /* The lemma dictionaries by language (these are thread safe, and are loaded on demand) */
+
+    private static final Map<String, LemmaDictionary> lemmatizers = new HashMap<String, LemmaDictionary>();
+
+
+    /** The languages for which lemmatizer dictionaries are available */
+
+    private static Set<String> lemmatizerLanguages = Set.of("en");
+
+
+    /** Resource API used for loading dictionaries */
+
+    private static ResourceAPI resourceAPI = null;
+
+
+    /** Directory for compiled (memory mapped) dictionaries, or null to compile on every load */
+
+    private static File cacheDir = null;
 
 
-    /* The OpenNLP lemmatizer (this is assumed to be thread safe) */
+    /** Logger used for reporting dictionary loading */
 
-    private static DictionaryLemmatizer lemmatizer;
+    private static Logger dictionaryLogger = null;
 
 
     /* The name of the input POS tags */
@@ -42,27 +67,100 @@ public class PreprocessorLemmatizer extends PreprocessorCopy {
     private String inputPOS;
 
 
+    /** The language of the dictionary to use (defaults to the identity language) */
+
+    private String language;
+
+
+    /* The lemmatizer for this instance */
+
+    private transient LemmaDictionary lemmatizer;
+
+
 
     /**
-     * Loads the lemmatizer dictionary.
+     * Configures the available lemmatizer dictionaries.
+     * <p>Dictionaries are not loaded here. They are loaded on first use so that only the
+     * dictionaries for languages actually used by an assistant pipeline are loaded. If a
+     * dictionary cache directory is configured, compiled dictionaries are kept there and
+     * memory mapped rather than being recompiled on each load.
      *
      * @param api      the resource API instance 
+     * @param config   application level configuration
      * @param logger   the assistant logger
      * @throws ApplicationError on error
      */
     @Init
-    public static void init(ResourceAPI api, Logger logger) throws ApplicationError {
-       /* Load the model */
+    public static void init(ResourceAPI api, Config config, Logger logger) throws ApplicationError {
+        lemmatizerLanguages = new HashSet<String>(Arrays.asList(config.getList("opennlp.lemmatizer.languages", new String[] {"en"})));
+        String cache = config.getString("opennlp.lemmatizer.cache");
+        cacheDir = cache == null ? null : new File(cache);
+        resourceAPI = api;
+        dictionaryLogger = logger;
+    }
+
+
 
+    /**
+     * Returns the lemmatizer for a language, loading its dictionary if necessary.
+     *
+     * @param lang  the language to get the lemmatizer for
+     * @return the lemmatizer for the language
+     * @throws ApplicationError if the language is not supported or the dictionary could not be loaded
+     */
+    private static synchronized LemmaDictionary getLemmatizer(final String lang) throws ApplicationError {
+        LemmaDictionary lemmatizer = lemmatizers.get(lang);
+        if (lemmatizer != null) return lemmatizer;
+
+        if (!lemmatizerLanguages.contains(lang) || resourceAPI == null) throw new ApplicationError(String.format("Unsupported lemmatizer language '%s'", lang));
+
+        String resource = String.format(resourceTemplate, lang);
         try {
-            InputStream is = api.getInputStream(resource);
+            InputStream is = resourceAPI.getInputStream(resource);
             if (is == null) throw new ApplicationError(String.format("Missing resource '%s'", resource));
-            lemmatizer = new DictionaryLemmatizer(is);
-            logger.info(String.format("Loaded PreprocessorLemmatizer dictionary '%s'", resource));
+            lemmatizer = LemmaDictionary.load(is, cacheDir, String.format("%s-lemmatizer", lang));
+            if (dictionaryLogger != null) dictionaryLogger.info(String.format("Loaded PreprocessorLemmatizer dictionary '%s' (%d entries)", resource, lemmatizer.size()));
         }
         catch (IOException x) {
-            throw new ApplicationError(String.format("Failed to load lemmatizer dictionary '%s'", resource));
+            throw new ApplicationError(String.format("Failed to load lemmatizer dictionary '%s'", resource), x);
         }
+
+        lemmatizers.put(lang, lemmatizer);
+        return lemmatizer;
+    }
+
+
+
+    /**
+     * Selects the lemmatizer dictionary for this instance.
+     * <p>The dictionary for the configured language is used if set (typically within a
+     * language branch of the pipeline), otherwise the dictionary for the identity language
+     * is used.
+     *
+     * @param config  assistant specific configuration
+     * @throws ApplicationError on error
+     */
+    @Init
+    public void init(Config config) throws ApplicationError {
+        lemmatizer = getLemmatizer(language != null ? language : config.getString("lang", "en"));
+    }
+
+
+
+    @Override
+    public Set<String> getInputs() {
+        return new HashSet<>(Arrays.asList(getInputName(), getPOSName()));
+    }
+
+
+
+    /**
+     * Returns the key name of the input POS tags.
+     *
+     * @return the configured POS tag key name, or 'pos' if not configured
+     */
+    private String getPOSName() {
+        return inputPOS != null ? inputPOS : "pos";
     }
 
 
@@ -70,7 +168,7 @@ public class PreprocessorLemmatizer extends PreprocessorCopy {
     @Override
     public void preprocess(ClientSession session, GenericMap input) {
 
-        final String posName = inputPOS != null ? inputPOS : "pos";
+        final String posName = getPOSName();
 
         assert input != null : "Null input passed to preprocessor";
         assert input.get(posName) != null : "POS tagging has not been preformed";
@@ -80,10 +178,11 @@ public class PreprocessorLemmatizer extends PreprocessorCopy {
         assert tags != null : "Invalid POS tag configuration";
         assert tokens.length == tags.length : "Token / POS tag array length mismatch";
 
-        String[] lemmas = lemmatizer.lemmatize(tokens, tags);
+        String[] lemmas = new String[tokens.length];
 
         for (int i = 0; i < lemmas.length; ++i) {
-            if (lemmas[i].equals("O")) lemmas[i] = tokens[i];
+            String lemma = lemmatizer.lemmatize(tokens[i], tags[i]);
+            lemmas[i] = lemma != null ? lemma : tokens[i];
         }
 
         setOutput(input, lemmas);
@@ -3,6 +3,7 @@ package com.paradoxwebsolutions.assistant.preprocessors;
 import com.paradoxwebsolutions.assistant.Assistant;
 import com.paradoxwebsolutions.assistant.Preprocessor;
 import com.paradoxwebsolutions.assistant.ClientSession;
+import com.paradoxwebsolutions.assistant.ModelRegistry;
 import com.paradoxwebsolutions.core.ApplicationError;
 import com.paradoxwebsolutions.core.Config;
 import com.paradoxwebsolutions.core.GenericMap;
@@ -10,11 +11,15 @@ import com.paradoxwebsolutions.core.Logger;
 import com.paradoxwebsolutions.core.ResourceAPI;
 import com.paradoxwebsolutions.core.annotations.Init;
 
-import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -24,7 +29,14 @@ import opennlp.tools.postag.POSTaggerME;
 
 /**
  * Input preprocessor to perform parts-of-speech tagging.
- * <p>This is an OpenNLP based parts of speech tagger.
+ * <p>This is an OpenNLP based parts of speech tagger. Tagging uses the model for the
+ * session language (unless a language is explicitly configured), and is performed by a
+ * pool of taggers per language so that concurrent requests do not block each other.
+ * Models are acquired from the {@link ModelRegistry} for the identity archive, so they are
+ * shared with other identities using the same model file and released with the identity.
+ * <p>Tags for short inputs are cached since these tend to be repeated frequently. The cache
+ * has two generations: when the current one fills, it becomes the previous one and a new one
+ * is started, so lookups never take a lock.
  *
  * @author Peter Smith
  */
@@ -36,9 +48,9 @@ public class PreprocessorPOS extends PreprocessorCopy {
     private static final String modelTemplate = "data/models/opennlp/%s-pos-maxent.bin";
 
 
-    /** Language models used for POS tagging */
+    /** The languages for which POS models are available */
 
-    private static final Map<String, POSModel> posModels = new HashMap<String, POSModel>();
+    private static Set<String> posLanguages = Set.of("en");
 
 
     /** Map used to simplify pos tags down to simple noun/verb */
@@ -70,59 +82,133 @@ public class PreprocessorPOS extends PreprocessorCopy {
 
 
     /**
-     * Loads the POS models.
+     * Configures the available POS models.
+     * <p>Models are not loaded here. They are loaded on first use so that only the
+     * models for languages actually used by an assistant pipeline are loaded.
      *
-     * @param resource  the resource API instance 
      * @param config    application level configuration
-     * @param logger    the assistant logger
      * @throws ApplicationError on error
      */
     @Init
-    public static void init(ResourceAPI resource, Config config, Logger logger) throws ApplicationError {
+    public static void init(Config config) throws ApplicationError {
+        posLanguages = new HashSet<String>(Arrays.asList(config.getList("opennlp.pos.languages", new String[] {"en"})));
+    }
 
-        /* Load the available POS models */
 
-        try {
-            final String[] langs = config.getList("opennlp.pos.languages", new String[] {"en"});
-
-            for (String lang : langs) {
-                String filename = String.format(modelTemplate, lang);
-                InputStream is = resource.getInputStream(filename);
-                
-                logger.info(String.format("Loading PreprocessorPOS model '%s'", filename));
-                posModels.put(lang, new POSModel(is));
-            }
-        }
-        catch (IOException x) {
-            throw new ApplicationError(String.format("Failed to load PreprocessorPOS model '%s'", x));
-        }
-    }
 
+    /** Flag indicating whether or not to simplify (reduce) the pos tag set */
 
-    /** The POS tagger */
+    private boolean  reduce = false;
 
-    private transient POSTaggerME posTagger = null;
 
+    /** The language of the POS model to use (defaults to the session language) */
 
-    /** Flag indicating whether or not to simplify (reduce) the pos tag set */
+    private String   language;
 
-    private boolean  reduce = false;
+
+    /** The maximum number of cached tag sequences (0 to disable caching) */
+
+    private int      cacheSize = 10000;
+
+
+    /** The maximum number of tokens in an input for its tags to be cached */
+
+    private int      cacheMaxTokens = 8;
+
+
+    /** The language to use if there is no model for the session language */
+
+    private transient String defaultLanguage;
+
+
+    /** Resource API used for loading models (the identity archive, which owns the models) */
+
+    private transient ResourceAPI resource;
+
+
+    /** Logger used for reporting model loading */
+
+    private transient Logger logger;
+
+
+    /** Language models used for POS tagging (loaded on demand) */
+
+    private transient Map<String, POSModel> models = new ConcurrentHashMap<String, POSModel>();
+
+
+    /** Pools of idle taggers, per language (POSTaggerME instances are not thread safe) */
+
+    private transient Map<String, Queue<POSTaggerME>> pools = new ConcurrentHashMap<String, Queue<POSTaggerME>>();
+
+
+    /** Cache of token sequences (prefixed by language) to tags (current generation) */
+
+    private transient volatile Map<List<String>, String[]> cache = new ConcurrentHashMap<List<String>, String[]>();
+
+
+    /** Cache of token sequences (prefixed by language) to tags (previous generation) */
+
+    private transient volatile Map<List<String>, String[]> previous = new ConcurrentHashMap<List<String>, String[]>();
 
 
 
     /**
      * Initialization method used to load the POS models.
-     * <p>This method is invoked as part of assistant initialization.
+     * <p>This method is invoked as part of assistant initialization. If a language is
+     * configured (typically within a language branch of the pipeline), its model is always
+     * used. Otherwise, the model for the session language is used, falling back to the
+     * model for the identity language if the session language is not supported.
      *
-     * @param config     assistant specific configuration
+     * @param resource  the resource API instance (the identity archive)
+     * @param config    assistant specific configuration
+     * @param logger    the assistant logger
      * @throws ApplicationError on error
      */
     @Init
-    public void init(Config config) throws ApplicationError {
-        String lang = config.getString("lang", "en");
-        if (!posModels.containsKey(lang)) throw new ApplicationError(String.format("Unsupported POS language '%s'", lang));
+    public void init(ResourceAPI resource, Config config, Logger logger) throws ApplicationError {
+        this.resource = resource;
+        this.logger = logger;
+        defaultLanguage = language != null ? language : config.getString("lang", "en");
+
+        /* Make sure the default model is loaded and available */
+
+        getModel(defaultLanguage);
+    }
 
-        posTagger = new POSTaggerME(posModels.get(lang));
+
+
+    /**
+     * Returns the POS model for a language, loading it if necessary.
+     *
+     * @param lang  the language to get the POS model for
+     * @return the POS model for the language
+     * @throws ApplicationError if the language is not supported or the model could not be loaded
+     */
+    private synchronized POSModel getModel(final String lang) throws ApplicationError {
+        POSModel model = models.get(lang);
+        if (model != null) return model;
+
+        if (!posLanguages.contains(lang) || resource == null) throw new ApplicationError(String.format("Unsupported POS language '%s'", lang));
+
+        String filename = String.format(modelTemplate, lang);
+        InputStream is = resource.getInputStream(filename);
+        if (is == null) throw new ApplicationError(String.format("Missing resource '%s'", filename));
+
+        if (logger != null) logger.info(String.format("Loading PreprocessorPOS model '%s'", filename));
+        model = ModelRegistry.acquire(resource, is, POSModel.class, POSModel::new);
+
+        models.put(lang, model);
+        return model;
+    }
+
+
+
+    @Override
+    public Set<String> getInputs() {
+
+        /* Unless a language is configured, the model depends on the session language (which may be set earlier in the pipeline) */
+
+        return language != null ? Set.of(getInputName()) : Set.of(getInputName(), SESSION_LANGUAGE);
     }
 
 
@@ -131,12 +217,46 @@ public class PreprocessorPOS extends PreprocessorCopy {
      * Performs parts-of-speech tagging on the client input
      */
     @Override
-    public Object preprocess(ClientSession session, String[] input) {
+    public Object preprocess(ClientSession session, String[] input) throws ApplicationError {
         assert input != null : "Null input passed to preprocessor";
 
-        String[] tags;
+        /* Use the configured language, or the session language if we have a model for it */
+
+        String lang = language;
+        if (lang == null) {
+            lang = session == null ? null : session.getLanguage();
+            if (lang == null || !posLanguages.contains(lang)) lang = defaultLanguage;
+        }
+
+
+        /* Check the cache for short inputs */
 
-        synchronized(posTagger) { tags = posTagger.tag(input); }
+        List<String> key = null;
+        if (cacheSize > 0 && input.length <= cacheMaxTokens) {
+            String[] parts = new String[input.length + 1];
+            parts[0] = lang;
+            System.arraycopy(input, 0, parts, 1, input.length);
+            key = Arrays.asList(parts);
+
+            String[] tags = cache.get(key);
+            if (tags == null && (tags = previous.get(key)) != null) put(key, tags);
+            if (tags != null) return tags.clone();
+        }
+
+
+        /* Tag with a pooled tagger for the language */
+
+        Queue<POSTaggerME> pool = pools.computeIfAbsent(lang, (l) -> new ConcurrentLinkedQueue<POSTaggerME>());
+        POSTaggerME tagger = pool.poll();
+        if (tagger == null) tagger = new POSTaggerME(getModel(lang));
+
+        String[] tags;
+        try {
+            tags = tagger.tag(input);
+        }
+        finally {
+            pool.offer(tagger);
+        }
 
         if (this.reduce) {
             for (int i = 0; i < tags.length; ++i) {
@@ -144,7 +264,28 @@ public class PreprocessorPOS extends PreprocessorCopy {
             }
         }
 
+        if (key != null) put(key, tags.clone());
+
         return tags;
     }
 
+
+
+    /**
+     * Adds tags to the cache, starting a new generation if the current one is full.
+     * <p>Racing threads may both start a new generation, which just drops a few entries.
+     *
+     * @param key   the token sequence (prefixed by language)
+     * @param tags  the tags for the token sequence
+     */
+    private void put(final List<String> key, final String[] tags) {
+        Map<List<String>, String[]> current = cache;
+
+        if (current.size() >= cacheSize) {
+            previous = current;
+            cache = current = new ConcurrentHashMap<List<String>, String[]>();
+        }
+        current.put(key, tags);
+    }
+
 }
\ No newline at end of file
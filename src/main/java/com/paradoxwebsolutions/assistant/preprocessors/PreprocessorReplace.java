@@ -78,8 +78,8 @@ public class PreprocessorReplace extends PreprocessorCopy {
         System.arraycopy(input, 0, output, 0, input.length);
 
         for (Map.Entry<Pattern, String> replace : patterns.entrySet()) {
-            for (int i = 0; i < input.length; ++i) {
-                input[i] = replace.getKey().matcher(input[i]).replaceAll(replace.getValue());
+            for (int i = 0; i < output.length; ++i) {
+                output[i] = replace.getKey().matcher(output[i]).replaceAll(replace.getValue());
             }
         }
 
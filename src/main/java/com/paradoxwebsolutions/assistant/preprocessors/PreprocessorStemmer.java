@@ -6,6 +6,8 @@ import com.paradoxwebsolutions.assistant.ClientSession;
 
 import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 import opennlp.tools.stemmer.PorterStemmer;
@@ -16,21 +18,66 @@ import opennlp.tools.stemmer.PorterStemmer;
  * Input preprocessor to stem words.
  * <p>This preprocessor is an OpenNLP implementation of a word stemmer.
  * Note that this implementation only supports the English language.
+ * <p>Stems are cached at runtime, up to a configurable limit. The cache has two
+ * generations: when the current one fills, it becomes the previous one and a new one
+ * is started, so words still in use are carried forward and the rest are dropped.
  */
 @PreprocessorIO(input = "tokens", output = "tokens")
 public class PreprocessorStemmer extends PreprocessorCopy {
 
-    
-    /* Stemmer */
 
-    private transient PorterStemmer stemmer = new PorterStemmer();
+    /* Stemmer (the OpenNLP stemmer is not thread safe, so each thread gets its own) */
+
+    private static final ThreadLocal<PorterStemmer> stemmer = ThreadLocal.withInitial(PorterStemmer::new);
+
+
+    /** The maximum number of cached stems */
+
+    private int cacheSize = 50000;
+
+
+    /** Cache of word stems (current generation) */
+
+    private transient volatile ConcurrentMap<String, String> stems = new ConcurrentHashMap<String, String>();
+
+
+    /** Cache of word stems (previous generation) */
+
+    private transient volatile ConcurrentMap<String, String> previous = new ConcurrentHashMap<String, String>();
+
 
 
     @Override
     public Object preprocess(ClientSession session, String[] input) {
         assert input != null : "Null input passed to preprocessor";
 
-        return Arrays.stream(input).map(w -> this.stemmer.stem(w)).toArray(String[]::new);
+        return Arrays.stream(input).map(w -> stem(w)).toArray(String[]::new);
     }
 
-}
\ No newline at end of file
+
+
+    /**
+     * Returns the stem of a word, using the cache if possible.
+     *
+     * @param word  the word to stem
+     * @return the stemmed word
+     */
+    private String stem(final String word) {
+        ConcurrentMap<String, String> current = stems;
+        String stem = current.get(word);
+
+        if (stem == null) {
+            stem = previous.get(word);
+            if (stem == null) stem = stemmer.get().stem(word);
+
+            /* Start a new generation when full (racing threads may both do so, which just drops a few entries) */
+
+            if (current.size() >= cacheSize) {
+                previous = current;
+                stems = current = new ConcurrentHashMap<String, String>();
+            }
+            current.put(word, stem);
+        }
+        return stem;
+    }
+}
@@ -72,6 +72,13 @@ public class PreprocessorStopwords extends PreprocessorCopy {
 
 
 
+    @Override
+    public Set<String> getInputs() {
+        return Set.of(getInputName(), SESSION_LANGUAGE);
+    }
+
+
+
     @Override
     public Object preprocess(ClientSession session, String[] input) {
         assert input != null : "Null input passed to preprocessor";
@@ -10,6 +10,7 @@ import com.paradoxwebsolutions.core.StringMap;
 import com.paradoxwebsolutions.assistant.Agent;
 import com.paradoxwebsolutions.assistant.Assistant;
 import com.paradoxwebsolutions.assistant.AssistantFactory;
+import com.paradoxwebsolutions.assistant.AsyncAction;
 import com.paradoxwebsolutions.assistant.ClientResponse;
 import com.paradoxwebsolutions.assistant.ClientSession;
 import com.paradoxwebsolutions.assistant.IdentityArchive;
@@ -27,11 +28,17 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
@@ -46,6 +53,11 @@ import com.google.gson.JsonObject;
 
 /**
  * Chat service implementation.
+ * <p>Where the servlet container supports asynchronous requests, the response is completed when
+ * any asynchronous actions (see {@link AsyncAction}) complete, rather than holding the request
+ * thread while they run. Where client input is processed after an asynchronous action (e.g. the
+ * 'welcome back' action for an expired session), it is processed on the service executor rather
+ * than on whichever thread completed the action.
  *
  * @author Peter Smith
  */
@@ -66,6 +78,27 @@ public class ChatService extends BotService {
     private Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
 
 
+    /** The executor used for processing client input once a preceding action has completed */
+
+    private Executor executor = ForkJoinPool.commonPool();
+
+
+
+    /**
+     * Interface used for processing client input once a preceding action has completed.
+     */
+    @FunctionalInterface
+    static interface InputProcessor {
+        /**
+         * Processes the client input.
+         *
+         * @return  a stage completing with the response to the input
+         * @throws ApplicationError on error processing the input
+         */
+        CompletionStage<ClientResponse> process() throws ApplicationError;
+    }
+
+
 
     /**
      * Initializes the chat service. 
@@ -221,7 +254,7 @@ public class ChatService extends BotService {
 
             LOGGER.info(String.format("Handling '%s' request for identity '%s'", command, identity));
 
-            ClientResponse clientResponse = null;
+            CompletionStage<ClientResponse> clientResponse = null;
             if (command.equals("chat")) {
                 clientResponse = doChat(identity, request);
             }
@@ -230,33 +263,83 @@ public class ChatService extends BotService {
             }
             else if (command.equals("refresh")) {
                 doRefresh(identity, request);
+                clientResponse = CompletableFuture.completedFuture(null);
             }
             else
                 throw new Exception(String.format("Invalid request '%s'", command));
-          
 
-            /* Output the response */
 
-            response.addHeader("Access-Control-Allow-Origin", origin);            
-            response.addHeader("Access-Control-Allow-Credentials", "true");
-            response.setContentType("application/json");
-            response.setStatus(HttpServletResponse.SC_OK);
+            /* Output the response, once any asynchronous actions are complete */
+
+            if (request.isAsyncSupported() && !clientResponse.toCompletableFuture().isDone()) {
+                final AsyncContext context = request.startAsync();
+                final String responseOrigin = origin;
+
+                clientResponse.whenComplete((result, x) -> {
+                    try {
+                        if (x == null) writeResponse(response, responseOrigin, result);
+                        else writeError(response, responseOrigin, x instanceof CompletionException && x.getCause() != null ? x.getCause() : x);
+                    }
+                    catch (IOException e) {
+                        LOGGER.error(e);
+                    }
+                    finally {
+                        context.complete();
+                    }
+                });
+                return;
+            }
 
-            response.getWriter().write(gson.toJson(clientResponse));
+            writeResponse(response, origin, AsyncAction.await(clientResponse));
         }
         catch (Exception x) {
             /* An error was generated, so return the appropriate error response */
-            LOGGER.info("ERROR: " + x.getMessage());
-            
-            JsonObject error = new JsonObject();
-            error.addProperty("error", x.getMessage());
 
-            response.addHeader("Access-Control-Allow-Origin", origin);            
-            response.addHeader("Access-Control-Allow-Credentials", "true");
-            response.setContentType("application/json");
-            response.setStatus(400);
-            response.getWriter().write(error.toString());
+            writeError(response, origin, x);
         }
+    }
+
+
+
+    /**
+     * Outputs a successful response.
+     *
+     * @param response        the response to be returned to the client
+     * @param origin          the client origin
+     * @param clientResponse  the chat response
+     * @throws IOException if there was an error writing the response
+     */
+    private void writeResponse(HttpServletResponse response, String origin, ClientResponse clientResponse) throws IOException {
+        response.addHeader("Access-Control-Allow-Origin", origin);            
+        response.addHeader("Access-Control-Allow-Credentials", "true");
+        response.setContentType("application/json");
+        response.setStatus(HttpServletResponse.SC_OK);
+
+        response.getWriter().write(gson.toJson(clientResponse));
+        response.getWriter().flush();
+    }
+
+
+
+    /**
+     * Outputs an error response.
+     *
+     * @param response  the response to be returned to the client
+     * @param origin    the client origin
+     * @param x         the error
+     * @throws IOException if there was an error writing the response
+     */
+    private void writeError(HttpServletResponse response, String origin, Throwable x) throws IOException {
+        LOGGER.info("ERROR: " + x.getMessage());
+        
+        JsonObject error = new JsonObject();
+        error.addProperty("error", x.getMessage());
+
+        response.addHeader("Access-Control-Allow-Origin", origin);            
+        response.addHeader("Access-Control-Allow-Credentials", "true");
+        response.setContentType("application/json");
+        response.setStatus(400);
+        response.getWriter().write(error.toString());
         response.getWriter().flush();
     }
     
@@ -304,10 +387,10 @@ public class ChatService extends BotService {
      *
      * @param identity  the identity of the assistant being chatted with
      * @param request   the client HTTP request
-     * @return          A {@link ClientResponse} instance represeting the response to be returned to the client
+     * @return          A stage completing with the {@link ClientResponse} to be returned to the client
      * @throws Exception on error. 
      */
-    private ClientResponse doChat(String identity, HttpServletRequest request) throws Exception {
+    private CompletionStage<ClientResponse> doChat(String identity, HttpServletRequest request) throws Exception {
 
         /* Check for input */
 
@@ -344,27 +427,50 @@ public class ChatService extends BotService {
             sessionData.setLanguage(agent.getDefaultLanguage());
             ClientSession clientSession = new ClientSession(sessionData, agent.getAssistant());
 
-            return agent.doWelcomeBack(clientSession).append(agent.processChatInput(clientSession, input));
+            return appendReply(agent.doWelcomeBackAsync(clientSession), () -> agent.processChatInputAsync(clientSession, input), executor);
         }
         else {
             ClientSession clientSession = new ClientSession(sessionData, agent.getAssistant());
 
-            return agent.processChatInput(clientSession, input);
+            return agent.processChatInputAsync(clientSession, input);
         }
     }
 
 
 
+    /**
+     * Appends the response to client input to the response of a preceding action.
+     * <p>The input is processed on the given executor once the action has completed, so it does not
+     * run on whichever thread completed the action (which may be an I/O or timer thread).
+     *
+     * @param action     a stage completing with the response of the preceding action
+     * @param processor  processes the client input
+     * @param executor   the executor used for processing the input
+     * @return           a stage completing with the combined response
+     */
+    static CompletionStage<ClientResponse> appendReply(final CompletionStage<ClientResponse> action, final InputProcessor processor, final Executor executor) {
+        return action.thenComposeAsync((response) -> {
+            try {
+                return processor.process().thenApply((reply) -> reply == null ? response : response.append(reply));
+            }
+            catch (ApplicationError x) {
+                return CompletableFuture.failedFuture(x);
+            }
+        }, executor);
+    }
+
+
+
     /**
      * Execute a client initialization command.
      * <p>This command is invoked when a client is first initialized (e.g. the web page is loaded).
      *
      * @param identity  the identity of the assistant being chatted with
      * @param request   the client HTTP request
-     * @return          A {@link ClientResponse} instance represeting the response to be returned to the client
+     * @return          A stage completing with the {@link ClientResponse} to be returned to the client
      * @throws          ApplicationError on error
      */
-    private ClientResponse doInit(String identity, HttpServletRequest request) throws ApplicationError {
+    private CompletionStage<ClientResponse> doInit(String identity, HttpServletRequest request) throws ApplicationError {
 
         /* Load agent/assistant for identity */
 
@@ -410,7 +516,7 @@ public class ChatService extends BotService {
             ClientSession clientSession = new ClientSession(sessionData, agent.getAssistant());
 
             response.addCommand("reset", null);
-            response.append(agent.doWelcome(clientSession));
+            return agent.doWelcomeAsync(clientSession).thenApply(response::append);
         }
         else {
             /*
@@ -422,11 +528,11 @@ public class ChatService extends BotService {
 
             response.addCommand("restore", null);
             if (timeSinceLastActivity > 600000) {
-                response.append(agent.doWelcomeBack(clientSession));
+                return agent.doWelcomeBackAsync(clientSession).thenApply(response::append);
             }
         }
 
-        return response;
+        return CompletableFuture.completedFuture(response);
     }
 
 
@@ -446,7 +552,12 @@ public class ChatService extends BotService {
         String user = request.getUserPrincipal().getName();
         LOGGER.info(String.format("Refresh assistant '%s' requested by user '%s'", identity, user));
 
-        this.agents.put(identity, createAgent(identity));
+        Agent previous = this.agents.put(identity, createAgent(identity));
+
+
+        /* Release any models no longer shared with the new agent */
+
+        if (previous != null) previous.release();
     }
 
 
@@ -0,0 +1,355 @@
+package com.paradoxwebsolutions.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Logging handler that takes log file output off the publishing threads.
+ * <p>Published records are placed in a bounded, lock-free ring buffer and written to a
+ * {@link CustomLogHandler} by a background writer thread. The writer drains the buffer in batches,
+ * flushing the log file once per batch rather than once per record. Formatting is also done by the
+ * writer thread, so publishing a record costs little more than a few atomic operations.
+ * <p>If records are published faster than they can be written the buffer fills, and the configured
+ * {@link Overflow} policy decides whether publishers wait or records are dropped. Dropped records
+ * are counted, and a warning giving the number dropped is written to the log once space is
+ * available again.
+ *
+ * @author Peter Smith
+ */
+public class AsyncLogHandler extends Handler {
+
+    /**
+     * Policies for handling records published when the buffer is full.
+     */
+    public static enum Overflow {
+        /** Wait for space in the buffer (no records are lost) */
+        BLOCK,
+
+        /** Drop records below INFO level, and wait for space for all others */
+        DROP_DEBUG,
+
+        /** Drop any record that does not fit in the buffer */
+        DROP_ALL;
+
+        /**
+         * Returns the policy for a configuration value (e.g. 'drop-debug').
+         *
+         * @param name  the policy name
+         * @return the overflow policy
+         * @throws ApplicationError if the name is not a valid policy
+         */
+        public static Overflow parse(final String name) throws ApplicationError {
+            try {
+                return valueOf(name.trim().toUpperCase().replace('-', '_'));
+            }
+            catch (IllegalArgumentException x) {
+                throw new ApplicationError(String.format("Invalid log overflow policy '%s'", name));
+            }
+        }
+    }
+
+
+    /** The maximum time the writer waits for records before checking the buffer again */
+
+    private static final long WRITER_WAIT = TimeUnit.MILLISECONDS.toNanos(50);
+
+
+    /** The maximum time to wait for the writer when flushing or closing */
+
+    private static final long FLUSH_WAIT = TimeUnit.SECONDS.toMillis(5);
+
+
+    /** The handler records are written to */
+
+    private final CustomLogHandler target;
+
+
+    /** The buffer overflow policy */
+
+    private final Overflow overflow;
+
+
+    /** The ring buffer of pending records */
+
+    private final RingBuffer buffer;
+
+
+    /** The number of records dropped since the last drop warning was logged */
+
+    private final AtomicLong dropped = new AtomicLong();
+
+
+    /** The total number of records dropped */
+
+    private final AtomicLong droppedTotal = new AtomicLong();
+
+
+    /** The background writer thread */
+
+    private final Thread writer;
+
+
+    /** The buffer position up to which records have been written and flushed */
+
+    private volatile long flushed = 0;
+
+
+    /** Set when the handler has been closed */
+
+    private volatile boolean closed = false;
+
+
+
+    /**
+     * Creates an asynchronous handler writing to a log file handler.
+     *
+     * @param target    the handler to write records to
+     * @param capacity  the maximum number of pending records (rounded up to a power of two)
+     * @param overflow  the policy for handling records published when the buffer is full
+     */
+    public AsyncLogHandler(final CustomLogHandler target, final int capacity, final Overflow overflow) {
+        super();
+
+        assert target != null : "Null log handler";
+        assert overflow != null : "Null overflow policy";
+
+        this.target = target;
+        this.overflow = overflow;
+        this.buffer = new RingBuffer(capacity);
+
+        writer = new Thread(this::drain, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+
+
+    /**
+     * Queues a log record for output.
+     * @param record the LogRecord instance to output
+     */
+    @Override
+    public void publish(final LogRecord record) {
+        if (record == null || closed || !isLoggable(record)) return;
+
+        if (buffer.offer(record)) {
+            /* Wake the writer early if the buffer is filling up */
+
+            if (buffer.pending() > buffer.capacity() / 2) LockSupport.unpark(writer);
+            return;
+        }
+
+        if (overflow == Overflow.DROP_ALL || (overflow == Overflow.DROP_DEBUG && record.getLevel().intValue() < Level.INFO.intValue())) {
+            dropped.incrementAndGet();
+            droppedTotal.incrementAndGet();
+            return;
+        }
+
+
+        /* Wait for the writer to make space */
+
+        LockSupport.unpark(writer);
+        while (!buffer.offer(record)) {
+            if (closed) return;
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+
+
+    /**
+     * Waits for all records published so far to be written and flushed to the log file.
+     */
+    @Override
+    public void flush() {
+        awaitWriter();
+    }
+
+
+
+    /**
+     * Writes any pending records and closes the log file.
+     * <p>This method should only ever be invoked as part of an application/service shutdown.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(FLUSH_WAIT);
+        }
+        catch (InterruptedException x) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+    }
+
+
+
+    /**
+     * Returns the total number of records dropped because the buffer was full.
+     *
+     * @return the number of dropped records
+     */
+    public long getDropped() {
+        return droppedTotal.get();
+    }
+
+
+
+    /**
+     * Waits until the writer has written and flushed all records published before the call.
+     */
+    private void awaitWriter() {
+        long position = buffer.published();
+        long deadline = System.currentTimeMillis() + FLUSH_WAIT;
+
+        while (flushed < position && writer.isAlive() && System.currentTimeMillis() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+    }
+
+
+
+    /**
+     * Background writer loop.
+     * <p>Drains the buffer in batches, flushing the log file after each batch.
+     */
+    private void drain() {
+        while (true) {
+            boolean stopping = closed;
+
+            int count = 0;
+            LogRecord record;
+            while ((record = buffer.poll()) != null) {
+                write(record);
+                ++count;
+            }
+
+            long lost = dropped.getAndSet(0);
+            if (lost > 0) {
+                write(new LogRecord(Level.WARNING, String.format("%d log records dropped (log buffer full)", lost)));
+                ++count;
+            }
+
+            if (count > 0) {
+                target.flush();
+                flushed = buffer.consumed();
+            }
+            if (stopping) return;
+            if (count == 0) LockSupport.parkNanos(this, WRITER_WAIT);
+        }
+    }
+
+
+
+    /**
+     * Writes a single record, reporting (rather than propagating) any failure.
+     *
+     * @param record  the record to write
+     */
+    private void write(final LogRecord record) {
+        try {
+            target.write(record);
+        }
+        catch (Exception x) {
+            reportError("Failed to write log record", x, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+
+
+    /**
+     * Bounded multi-producer, single consumer ring buffer.
+     * <p>Each slot has a sequence number that tells producers and the consumer whether the slot is
+     * free or holds a record for the current lap of the buffer, so no locks are needed. Producers
+     * claim slots by advancing the tail with a compare-and-set.
+     */
+    private static final class RingBuffer {
+        private final int mask;
+        private final AtomicReferenceArray<LogRecord> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail = new AtomicLong();
+        private volatile long head = 0;
+
+        RingBuffer(final int capacity) {
+            int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+
+            mask = size - 1;
+            slots = new AtomicReferenceArray<LogRecord>(size);
+            sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; ++i) sequences.set(i, i);
+        }
+
+        /**
+         * Adds a record, returning false if the buffer is full.
+         */
+        boolean offer(final LogRecord record) {
+            long position = tail.get();
+            while (true) {
+                int index = (int) position & mask;
+                long difference = sequences.get(index) - position;
+
+                if (difference == 0) {
+                    if (tail.compareAndSet(position, position + 1)) {
+                        slots.set(index, record);
+                        sequences.set(index, position + 1);
+                        return true;
+                    }
+                    position = tail.get();
+                }
+                else if (difference < 0) {
+                    return false;
+                }
+                else {
+                    position = tail.get();
+                }
+            }
+        }
+
+        /**
+         * Removes the oldest record, returning null if there are none (consumer thread only).
+         */
+        LogRecord poll() {
+            long position = head;
+            int index = (int) position & mask;
+            if (sequences.get(index) != position + 1) return null;
+
+            LogRecord record = slots.get(index);
+            slots.set(index, null);
+            sequences.set(index, position + mask + 1);
+            head = position + 1;
+            return record;
+        }
+
+        /** Returns the buffer capacity */
+        int capacity() {
+            return mask + 1;
+        }
+
+        /** Returns the approximate number of records waiting to be written */
+        long pending() {
+            return tail.get() - head;
+        }
+
+        /** Returns the number of slots claimed by producers */
+        long published() {
+            return tail.get();
+        }
+
+        /** Returns the number of records removed by the consumer */
+        long consumed() {
+            return head;
+        }
+    }
+}
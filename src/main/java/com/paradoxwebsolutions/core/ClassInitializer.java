@@ -2,19 +2,13 @@ package com.paradoxwebsolutions.core;
 
 import com.paradoxwebsolutions.core.annotations.Init;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Field;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.lang.reflect.Parameter;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.Set;
-
-import java.util.stream.IntStream;
 
 
 /**
@@ -29,6 +23,144 @@ import java.util.stream.IntStream;
  */
 public class ClassInitializer {
 
+    /**
+     * An invoker for an initialization method.
+     * <p>Invokers hold a method handle for the method, along with the argument binding (the
+     * mapping of available arguments to method parameters) worked out for the last set of argument
+     * types used. Since initialization of an object tree uses the same arguments throughout,
+     * the binding is normally only worked out once.
+     */
+    protected static final class Invoker {
+
+        /** The method being invoked */
+
+        private final Method method;
+
+
+        /** The method handle, taking a single array of arguments (including any instance) */
+
+        private final MethodHandle handle;
+
+
+        /** Whether or not the method may be invoked concurrently with other initialization methods */
+
+        private final boolean concurrent;
+
+
+        /** The current argument binding */
+
+        private volatile Binding binding = null;
+
+
+
+        /**
+         * Creates an invoker for a method.
+         *
+         * @param method  the method to invoke
+         * @throws ApplicationError if the method is not accessible
+         */
+        protected Invoker(final Method method) throws ApplicationError {
+            this.method = method;
+
+            Init annotation = method.getAnnotation(Init.class);
+            this.concurrent = annotation != null && annotation.concurrent();
+
+            try {
+                int count = method.getParameterCount() + (Modifier.isStatic(method.getModifiers()) ? 0 : 1);
+                this.handle = MethodHandles.lookup().unreflect(method)
+                    .asType(MethodType.genericMethodType(count))
+                    .asSpreader(Object[].class, count);
+            }
+            catch (IllegalAccessException x) {
+                throw new ApplicationError(String.format("Cannot access method '%s' for class '%s'",
+                    method.getName(),
+                    method.getDeclaringClass().getName()), x);
+            }
+        }
+
+
+
+        /**
+         * Returns whether or not the method may be invoked concurrently with other initialization methods.
+         *
+         * @return true if the method may be invoked concurrently, false otherwise
+         */
+        protected boolean isConcurrent() {
+            return concurrent;
+        }
+
+
+
+        /**
+         * Invokes the method.
+         *
+         * @param instance   the object instance on which the method is to be invoked (null if the method is static)
+         * @param arguments  the arguments available to be passed through to the method
+         * @throws ApplicationError if the method could not be invoked, or failed
+         */
+        protected void invoke(final Object instance, final Object[] arguments) throws ApplicationError {
+            int[] indexes = getBinding(arguments);
+            int offset = instance == null ? 0 : 1;
+
+            Object[] input = new Object[indexes.length + offset];
+            if (instance != null) input[0] = instance;
+            for (int i = 0; i < indexes.length; ++i) input[i + offset] = arguments[indexes[i]];
+
+            try {
+                /* The call site type must match the handle type exactly, so the (null) result is assigned */
+
+                Object result = (Object) handle.invokeExact(input);
+            }
+            catch (Throwable x) {
+                throw new ApplicationError(
+                    String.format(
+                        "Failed to invoke method '%s' on %s: %s",
+                        method.getName(),
+                        instance == null ? "class " + method.getDeclaringClass().getName() : "instance of " + instance.getClass().getName(),
+                        x.getMessage()),
+                    x instanceof Exception ? (Exception) x : new InvocationTargetException(x));
+            }
+        }
+
+
+
+        /**
+         * Returns the argument binding for a set of arguments.
+         *
+         * @param arguments  the available arguments
+         * @return the indexes of the arguments to pass for each method parameter
+         * @throws ApplicationError if a suitable argument list could not be created
+         */
+        private int[] getBinding(final Object[] arguments) throws ApplicationError {
+            Class<?>[] types = new Class<?>[arguments.length];
+            for (int i = 0; i < arguments.length; ++i) types[i] = arguments[i] == null ? null : arguments[i].getClass();
+
+            Binding current = binding;
+            if (current == null || !Arrays.equals(current.types, types)) {
+                current = new Binding(types, buildArgumentList(method, types));
+                binding = current;
+            }
+            return current.indexes;
+        }
+    }
+
+
+
+    /**
+     * The argument binding for a given set of argument types.
+     */
+    private static final class Binding {
+        final Class<?>[] types;
+        final int[] indexes;
+
+        Binding(final Class<?>[] types, final int[] indexes) {
+            this.types = types;
+            this.indexes = indexes;
+        }
+    }
+
+
+
     /**
      * Initialize a class.
      * <p>This method looks for static methods with the @Init annotation and invokes them with
@@ -48,8 +180,7 @@ public class ClassInitializer {
                 if (Modifier.isStatic(method.getModifiers())) {
                     Init annotation = method.getAnnotation(Init.class);
                     if (annotation != null) {
-                        Object[] input = buildArgumentList(method, args);
-                        method.invoke(null, input);
+                        new Invoker(method).invoke(null, args);
                     }
                 }
             }
@@ -71,20 +202,7 @@ public class ClassInitializer {
      * @throws ApplicationError if the method could not be found or invoked
      */
     protected static void invokeMethod(final Object instance, final Method method, final Object[] arguments) throws ApplicationError {
-
-        try {
-            Object[] input = buildArgumentList(method, arguments);
-            method.invoke(instance, input);
-        }
-        catch (Exception x) {
-            throw new ApplicationError(
-                String.format(
-                    "Failed to invoke method '%s' on instance of %s: %s",
-                    method.getName(),
-                    instance.getClass().getName(),
-                    x.getMessage()),
-                x);
-        }
+        new Invoker(method).invoke(instance, arguments);
     }
 
 
@@ -108,79 +226,41 @@ public class ClassInitializer {
      *    method(A a, B b)
      *    method(B b, A a)
      * </pre>
+     * <p>The argument list is worked out from the argument types only, so it can be reused for
+     * any set of arguments with the same types.
      *
-     *
-     * @param method      the method that will be invoked
-     * @param arguments   any arguments that should be passed through to the method if needed
-     * @return            an argument list as an array of object that matches the method
+     * @param method  the method that will be invoked
+     * @param types   the types of the available arguments (null for null arguments, which are never used)
+     * @return        the index of the argument to use for each method parameter
      * @throws ApplicationError if a suitable argument list could not be created
      */
-    private static Object[] buildArgumentList(final Method method, final Object[] arguments) throws ApplicationError {
+    private static int[] buildArgumentList(final Method method, final Class<?>[] types) throws ApplicationError {
+        Class<?>[] parameters = method.getParameterTypes();
+        boolean[] used = new boolean[types.length];
+        int[] indexes = new int[parameters.length];
 
-        final Object[] args = Arrays.copyOf(arguments, arguments.length);
+        for (int p = 0; p < parameters.length; ++p) {
 
-        try {
-            /* Loop through each parameter in the method */
-
-            return Arrays.stream(method.getParameters())
-
-                /* Get the parameter type (class) */
-
-                .map((parameter) -> parameter.getType())
-
-                /* Now patch the parameter type to the available arguments */
-
-                .map(
-                    /*
-                     * Loop through each argument. If we stream the arguments directly, we do not have the array index value needed
-                     * to set the array value to null if the argument is used. If we use an IntStream, we have no ability to map it
-                     * back to an object at the end. Thus we start of with an IntStream and map it to a stream of Integer objects. 
-                     * This gives us the functionality of an Object stream while still allowing us to easily index the argument
-                     * values (taking advantage of autoboxing/unboxing).
-                     */
-                    (type) -> IntStream.range(0, args.length).mapToObj((i) -> Integer.valueOf(i))
-
-                        /*
-                         * Exclude arguments that cannot be assigned to the parameter class. Note that we exclude null argument values since
-                         * once an argument is used, we set it to null in the argument array so it cannot be used again (the array itself must
-                         * be final).
-                         */
-                        .filter((i) -> args[i] != null && type.isAssignableFrom(args[i].getClass()))
-
-
-                        /*
-                         * Of those that can be assigned, select the closest argument, or, if two same-type arguments, select the first. Note that
-                         * this reduce method will return an empty Optional if the previous filter returned nothing.
-                         */
-                        .reduce((l, r) -> ((args[l].getClass() != args[r].getClass() && args[r].getClass().isAssignableFrom(args[l].getClass()))) ? r : l)
-
-
-                        /*
-                         * At this point, we have reduced the list of matching arguments to a single Optional. Now remove the argument from the
-                         * argument list so it does not get reused. Note that if the reduction above resulted in an empty Optional, the map will
-                         * not get invoked.
-                         */
-                        .map((i) -> {
-                            Object value = args[i];
-                            args[i] = null;
-                            return value;
-                        })
-
-                        /**
-                         * Force the value to be resolved. If no match was found, we have an empty Optional and this will throw a
-                         * NoSuchElementException exception and abort the whole process (as we want).
-                         */
-                        .get()
-                    )
-
-                /* Collect into an array */
-
-                .toArray();
-        }
-        catch (NoSuchElementException x) {
-            throw new ApplicationError(String.format("Failed to build argument list for method '%s' for class '%s'",
-                method.getName(),
-                method.getDeclaringClass().getName()));
+            /*
+             * Of the unused arguments that can be assigned to the parameter, select the closest, or if there
+             * are two of the same type, the first.
+             */
+            int best = -1;
+            for (int i = 0; i < types.length; ++i) {
+                if (used[i] || types[i] == null || !parameters[p].isAssignableFrom(types[i])) continue;
+
+                if (best < 0 || (types[best] != types[i] && types[i].isAssignableFrom(types[best]))) best = i;
+            }
+
+            if (best < 0) {
+                throw new ApplicationError(String.format("Failed to build argument list for method '%s' for class '%s'",
+                    method.getName(),
+                    method.getDeclaringClass().getName()));
+            }
+
+            used[best] = true;
+            indexes[p] = best;
         }
+        return indexes;
     }
 }
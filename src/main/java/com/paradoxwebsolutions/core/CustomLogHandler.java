@@ -3,6 +3,7 @@ package com.paradoxwebsolutions.core;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.time.format.DateTimeFormatter;
@@ -13,7 +14,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.logging.Formatter;
+import java.util.logging.ErrorManager;
 import java.util.logging.Handler;
 import java.util.logging.LogRecord;
 
@@ -23,7 +24,10 @@ import java.util.logging.LogRecord;
  * to roll-over logs files when the reach a specific size, as well as to remove old log
  * files when a given number have accumulated.
  * When a log file is rolled-over, it is renamed with a timestamp suffix that allows chronological
- * ordering using an alphabetic sort.
+ * ordering using an alphabetic sort. Log files can also be rolled-over periodically, regardless of
+ * their size.
+ * <p>Output is written synchronously by the publishing thread. To take log file output off request
+ * processing threads, wrap the handler in an {@link AsyncLogHandler}.
  *
  * @author Peter Smith
  */
@@ -49,6 +53,21 @@ public class CustomLogHandler extends Handler {
     private int     logCount;
 
 
+    /** The interval between time based roll-overs in milliseconds (zero if disabled) */
+
+    private long    logInterval;
+
+
+    /** The number of characters written to the active log file */
+
+    private long    written = 0;
+
+
+    /** The time of the next time based roll-over */
+
+    private long    rollOverAt = Long.MAX_VALUE;
+
+
     /** The currently active log file */
 
     Writer    log;
@@ -63,6 +82,22 @@ public class CustomLogHandler extends Handler {
      * @throws ApplicationError if the log file could not be created
      */
     public CustomLogHandler(String logFilename, int size, int count) throws ApplicationError {
+        this(logFilename, size, count, 0);
+    }
+
+
+
+    /**
+     * Creates a log handler instance with the given configuration, including time based roll-over.
+     *
+     * @param logFilename  the name to use for the log file
+     * @param size         the maximum allowed size of a log file, in bytes
+     * @param count        the maximum number of old log files to keep
+     * @param interval     the interval between roll-overs in milliseconds, or zero for size based
+     *                     roll-over only
+     * @throws ApplicationError if the log file could not be created
+     */
+    public CustomLogHandler(String logFilename, int size, int count, long interval) throws ApplicationError {
         super();
 
         assert logFilename != null : "Null log name";
@@ -73,6 +108,7 @@ public class CustomLogHandler extends Handler {
         this.logDir = file.getParent();
         this.logSize = size;
         this.logCount = count;
+        this.logInterval = interval;
 
 
         /* Verify the logging directory */
@@ -87,14 +123,7 @@ public class CustomLogHandler extends Handler {
 
         /* Check to see if the log file already exists, and if so, roll it over */
 
-        if (file.exists()) {
-            DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneId.systemDefault());
-            String suffix = formatter.format(Instant.now());
-
-            if (!file.renameTo(new File(logFilename + "." + suffix))) {
-                throw new ApplicationError("Can not rename log file for roll-over");
-            }
-        }
+        if (file.exists() && !rename(file)) throw new ApplicationError("Can not rename log file for roll-over");
 
 
         /* Roll off any old log files */
@@ -110,7 +139,7 @@ public class CustomLogHandler extends Handler {
         /* Open the new log */
 
         try {
-            this.log = new OutputStreamWriter(new FileOutputStream(logFilename));
+            this.open();
         }
         catch (Exception x) {
             throw new ApplicationError("Failed to open log file for output");
@@ -119,6 +148,63 @@ public class CustomLogHandler extends Handler {
 
 
 
+    /**
+     * Opens a new active log file.
+     *
+     * @throws IOException if the file could not be opened
+     */
+    private void open() throws IOException {
+        this.log = new OutputStreamWriter(new FileOutputStream(this.logDir + File.separator + this.logName));
+        this.written = 0;
+        if (this.logInterval > 0) this.rollOverAt = System.currentTimeMillis() + this.logInterval;
+    }
+
+
+
+    /**
+     * Renames a log file with a timestamp suffix.
+     * <p>If a file with the same suffix already exists (more than one roll-over in a second), a
+     * sequence number is appended to keep the names unique and in order.
+     *
+     * @param file  the log file to rename
+     * @return true if the file was renamed, false otherwise
+     */
+    private static boolean rename(File file) {
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyyMMddHHmmss").withZone(ZoneId.systemDefault());
+        String name = file.getPath() + "." + formatter.format(Instant.now());
+
+        File target = new File(name);
+        for (int i = 1; target.exists(); ++i) target = new File(name + "-" + i);
+
+        return file.renameTo(target);
+    }
+
+
+
+    /**
+     * Rolls over the active log file.
+     * <p>The active log is closed and renamed, old logs are rolled off, and a new active log is
+     * opened. If the log can not be renamed, output continues to the existing file.
+     */
+    private void rollOver() {
+        try {
+            this.log.close();
+
+            File file = new File(this.logDir, this.logName);
+            boolean renamed = rename(file);
+            if (renamed) this.rollOff();
+
+            this.log = new OutputStreamWriter(new FileOutputStream(file, !renamed));
+            this.written = 0;
+            if (this.logInterval > 0) this.rollOverAt = System.currentTimeMillis() + this.logInterval;
+        }
+        catch (Exception x) {
+            reportError("Failed to roll over log file", x, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+
+
     /**
      * Roll off logs.
      */
@@ -146,29 +232,44 @@ public class CustomLogHandler extends Handler {
 
 
     /**
-     * Outputs a log message to the log file.
+     * Outputs a log message to the log file, and flushes it.
      * @param record the LogRecord instance to output
      */
     @Override
-    public void publish(LogRecord record) {
+    public synchronized void publish(LogRecord record) {
         if (record != null) {
-            Formatter formatter = this.getFormatter();
-            String line = formatter.format(record);
-            try {
-                this.log.write(line, 0, line.length());
-                this.log.flush();
-            }
-            catch(Exception x){};
+            write(record);
+            flush();
         }
     }
 
 
+
+    /**
+     * Outputs a log message to the log file without flushing it.
+     * <p>The log file is rolled-over first if it has reached its maximum size or roll-over interval.
+     * The size of the log is tracked in characters, which matches bytes for plain ASCII output.
+     *
+     * @param record the LogRecord instance to output
+     */
+    synchronized void write(LogRecord record) {
+        if ((logSize > 0 && written >= logSize) || record.getMillis() >= rollOverAt) rollOver();
+
+        String line = this.getFormatter().format(record);
+        try {
+            this.log.write(line, 0, line.length());
+            written += line.length();
+        }
+        catch(Exception x){};
+    }
+
+
     
     /**
      * Flushes any cache messages to the log file.
      */
     @Override
-    public void flush() {
+    public synchronized void flush() {
         try {
             this.log.flush();
         }
@@ -182,7 +283,7 @@ public class CustomLogHandler extends Handler {
      * <p>This method should only ever be invoked as part of an application/service shutdown.
      */
     @Override
-    public void close() {
+    public synchronized void close() {
         try {
             this.log.close();
         }
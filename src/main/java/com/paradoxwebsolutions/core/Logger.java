@@ -2,6 +2,10 @@ package com.paradoxwebsolutions.core;
 
 
 import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 
@@ -17,6 +21,9 @@ import java.util.logging.Level;
  * </ul>
  * <p>If configured, it will output the logging to a log file based on the log name. Log files will be
  * rotated in an orderly manner, with old logs expiring (being cleaned up), based on configuration.
+ * <p>Messages that are costly to build should be logged using the {@link Supplier} or format string
+ * variants of the logging methods. These only build the message if it will actually be output at
+ * the current log level.
  * @author Peter Smith
  */
 public class Logger {
@@ -37,6 +44,11 @@ public class Logger {
 
 
 
+    /** Shared logger instances, by name */
+
+    private static final Map<String, Logger> loggers = new ConcurrentHashMap<String, Logger>();
+
+
     /** The underlying Logger instance used to handle log records */
 
     private java.util.logging.Logger logger;
@@ -68,6 +80,21 @@ public class Logger {
     }
 
 
+    /**
+     * Returns a shared instance of a named logger.
+     * <p>As with {@link #Logger(String)}, this assumes that the named logger has already been
+     * configured. Unlike the constructor, no logging framework lookup is made once the logger has
+     * been created, so this is suitable for use on request processing paths.
+     *
+     * @param name   the name of the logger
+     * @return       the shared logger instance
+     */
+    public static Logger get(final String name) {
+        return loggers.computeIfAbsent(name, Logger::new);
+    }
+
+
+
     /**
      * Logs an error (exception).
      *
@@ -120,6 +147,33 @@ public class Logger {
 
 
 
+    /**
+     * Logs an informational message, built only if it will be output.
+     *
+     * @param message  supplies the message to be logged.
+     * @return         a reference to this logger
+     */
+    public Logger info(final Supplier<String> message) {
+        logger.log(INFO, message);
+        return this;
+    }
+
+
+
+    /**
+     * Logs a formatted informational message, formatted only if it will be output.
+     *
+     * @param format   the message format string (see {@link String#format(String, Object...)})
+     * @param args     the message arguments
+     * @return         a reference to this logger
+     */
+    public Logger info(final String format, final Object... args) {
+        if (logger.isLoggable(INFO)) logger.info(String.format(format, args));
+        return this;
+    }
+
+
+
     /**
      * Logs a debug message.
      *
@@ -133,6 +187,33 @@ public class Logger {
 
 
 
+    /**
+     * Logs a debug message, built only if it will be output.
+     *
+     * @param message  supplies the message to be logged.
+     * @return         a reference to this logger
+     */
+    public Logger debug(final Supplier<String> message) {
+        logger.log(DEBUG, message);
+        return this;
+    }
+
+
+
+    /**
+     * Logs a formatted debug message, formatted only if it will be output.
+     *
+     * @param format   the message format string (see {@link String#format(String, Object...)})
+     * @param args     the message arguments
+     * @return         a reference to this logger
+     */
+    public Logger debug(final String format, final Object... args) {
+        if (logger.isLoggable(DEBUG)) logger.fine(String.format(format, args));
+        return this;
+    }
+
+
+
     /**
      * Logs at trace message.
      *
@@ -146,6 +227,33 @@ public class Logger {
 
 
 
+    /**
+     * Logs a trace message, built only if it will be output.
+     *
+     * @param message  supplies the message to be logged.
+     * @return         a reference to this logger
+     */
+    public Logger trace(final Supplier<String> message) {
+        logger.log(TRACE, message);
+        return this;
+    }
+
+
+
+    /**
+     * Logs a formatted trace message, formatted only if it will be output.
+     *
+     * @param format   the message format string (see {@link String#format(String, Object...)})
+     * @param args     the message arguments
+     * @return         a reference to this logger
+     */
+    public Logger trace(final String format, final Object... args) {
+        if (logger.isLoggable(TRACE)) logger.finest(String.format(format, args));
+        return this;
+    }
+
+
+
     /**
      * Determines whether or not a log message would be output at a given log level
      * given the current log configuration.
@@ -166,7 +274,14 @@ public class Logger {
      *   <li><code>dir</code> - the file system directory in which log files should be written
      *   <li><code>size</code> - the maximum allowed size of the the log files
      *   <li><code>count</code> - the maximum number of rolled-off log files to keep
+     *   <li><code>interval</code> - the number of hours after which log files are rolled-over
+     *       regardless of size (0, the default, for size based roll-over only)
      *   <li><code>level</code> - the log level to use
+     *   <li><code>async</code> - true (the default) if log files should be written by a background
+     *       thread (see {@link AsyncLogHandler})
+     *   <li><code>buffer</code> - the maximum number of log records waiting to be written
+     *   <li><code>overflow</code> - what to do when the buffer is full: 'block', 'drop-debug' (the
+     *       default) or 'drop-all'
      * </ul>
      *
      * @param name   the name of the logger. This can be used to identify the logger at a later point
@@ -179,9 +294,13 @@ public class Logger {
         
         java.util.logging.Logger logger = java.util.logging.Logger.getLogger(name);
 
-        /* Make sure any previous handlers are cleaned out (primarily for the "" logger in console apps) */
+        /* Make sure any previous handlers are cleaned out (primarily for the "" logger in console apps).
+         * Handlers created here own a writer thread or an open file, so they are closed as well. */
 
-        for (Handler h : logger.getHandlers()) logger.removeHandler(h);
+        for (Handler h : logger.getHandlers()) {
+            logger.removeHandler(h);
+            if (h instanceof AsyncLogHandler || h instanceof CustomLogHandler) h.close();
+        }
 
 
         /* If configuration is applied, use it */
@@ -193,7 +312,17 @@ public class Logger {
 
                 int size = config.getInt("size", 10000000);
                 int count = config.getInt("count", 5);
-                logger.addHandler(new CustomLogHandler(dir + File.separator + name + ".log", size, count));
+                long interval = TimeUnit.HOURS.toMillis(config.getInt("interval", 0));
+                CustomLogHandler handler = new CustomLogHandler(dir + File.separator + name + ".log", size, count, interval);
+
+                if (config.getBool("async", true)) {
+                    int buffer = config.getInt("buffer", 8192);
+                    AsyncLogHandler.Overflow overflow = AsyncLogHandler.Overflow.parse(config.getString("overflow", "drop-debug"));
+                    logger.addHandler(new AsyncLogHandler(handler, buffer, overflow));
+                }
+                else {
+                    logger.addHandler(handler);
+                }
             }
             else {
                 /* Fall back to console logger */
@@ -71,6 +71,11 @@ public class ObjectFactory {
     private GsonBuilder gsonBuilder;
 
 
+    /** The Gson instance, created on first use (and recreated if handlers are registered after that) */
+
+    private volatile Gson gson = null;
+
+
 
     /**
      * Creates a new ObjectFactory instance.
@@ -95,6 +100,7 @@ public class ObjectFactory {
      */
     public <T> ObjectFactory registerHandler(final Class<T> cls, final Serializer<T> serializer) {
         gsonBuilder.registerTypeAdapter(cls, new SerializerWrapper<T>(serializer));
+        gson = null;
         return this;
     }
 
@@ -111,6 +117,7 @@ public class ObjectFactory {
      */
     public <T> ObjectFactory registerHandler(final Class<T> cls, final Deserializer<T> deserializer) {
         gsonBuilder.registerTypeAdapter(cls, new DeserializerWrapper<T>(deserializer));
+        gson = null;
         return this;
     }
 
@@ -222,7 +229,7 @@ public class ObjectFactory {
      */
     public <T> String toJson(final T instance) throws ApplicationError {
         try {
-            return gsonBuilder.create().toJson(instance);
+            return getGson().toJson(instance);
         }
         catch (Exception x) {
             throw new ApplicationError(String.format("Error serializing configuration: %s", x.getMessage()));
@@ -281,7 +288,7 @@ public class ObjectFactory {
         assert json != null : "Null json element passed to 'fromJson'";
 
         try {
-            return gsonBuilder.create().fromJson(json, type);
+            return getGson().fromJson(json, type);
         }
         catch (Exception x) {x.printStackTrace();
             throw new ApplicationError(String.format("Error processing Json: %s", x.getMessage()));
@@ -289,6 +296,25 @@ public class ObjectFactory {
     }
 
 
+    /**
+     * Returns the Gson instance for this factory.
+     * <p>Gson instances are thread safe, and cache the (reflective) type adapters they create,
+     * so a single instance is shared by all conversions.
+     *
+     * @return the Gson instance
+     */
+    private Gson getGson() {
+        Gson instance = gson;
+        if (instance == null) {
+            synchronized (this) {
+                if (gson == null) gson = gsonBuilder.create();
+                instance = gson;
+            }
+        }
+        return instance;
+    }
+
+
     /**
      * Wraps an ObjectFactory serializer as a JsonSerializer so it can be registered
      * as a type adapter with Gson.
@@ -6,12 +6,17 @@ import com.paradoxwebsolutions.core.annotations.Init;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.lang.reflect.Parameter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.lang.annotation.Annotation;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 
 /** 
@@ -49,6 +54,21 @@ public class ObjectInitializer extends ClassInitializer {
     }
 
 
+    /** The default class filter, limiting scanning to the com.paradoxwebsolutions namespace */
+
+    private static final Filter DEFAULT_FILTER = (cls) -> cls.getName().startsWith("com.paradoxwebsolutions.");
+
+
+    /** Class metadata for the default filter, shared by all initializers (and released with the class) */
+
+    private static final ClassValue<ClassMetadata> defaultMetadata = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(final Class<?> cls) {
+            return new ClassMetadata(cls, DEFAULT_FILTER);
+        }
+    };
+
+
     /** A record of objects scanned so we can prevent recursion problems */
 
     private Set<Object> ledger = new HashSet<>();
@@ -59,6 +79,84 @@ public class ObjectInitializer extends ClassInitializer {
     private Filter filter;
 
 
+    /** Class metadata for a custom filter */
+
+    private Map<Class<?>, ClassMetadata> metadata = new HashMap<Class<?>, ClassMetadata>();
+
+
+    /** Initialization methods running concurrently */
+
+    private List<CompletableFuture<Void>> pending = new ArrayList<CompletableFuture<Void>>();
+
+
+    /** Executor for concurrent initialization methods (created when first needed) */
+
+    private ExecutorService executor = null;
+
+
+
+    /**
+     * Scanning metadata for one level of a class hierarchy.
+     */
+    private static final class Level {
+        final List<Invoker> initializers = new ArrayList<Invoker>();
+        final List<Field> fields = new ArrayList<Field>();
+    }
+
+
+
+    /**
+     * Scanning metadata for a class.
+     * <p>This holds the annotated methods and scannable fields of a class, so that the class only needs to be
+     * examined (using reflection) once, however many instances of it are initialized. Any problem with an
+     * annotated method is reported when an instance is initialized.
+     */
+    private static final class ClassMetadata {
+        final List<Level> levels = new ArrayList<Level>();
+        ApplicationError error = null;
+
+        ClassMetadata(final Class<?> type, final Filter filter) {
+            Class<?> cls = type;
+
+            while (cls.getSuperclass() != null && (filter == null || filter.apply(cls))) {
+                Level level = new Level();
+                levels.add(level);
+
+                /* Interested in all public methods, including those on superclasses */
+
+                for (Method method : cls.getMethods()) {
+                    if (!Modifier.isStatic(method.getModifiers()) && method.getAnnotation(Init.class) != null) {
+                        try {
+                            level.initializers.add(new Invoker(method));
+                        }
+                        catch (ApplicationError x) {
+                            if (error == null) error = x;
+                        }
+                    }
+                }
+
+
+                /*
+                 * Fields specific to the current class, excluding primitives, enums, and static fields. Transient
+                 * fields hold runtime state set up by initialization methods (possibly concurrently, while this
+                 * scan is running), so they are not scanned either.
+                 */
+                for (Field field : cls.getDeclaredFields()) {
+                    Class<?> fieldClass = field.getType();
+                    int modifiers = field.getModifiers();
+                    if (fieldClass.isPrimitive() || field.isEnumConstant() || Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) continue;
+                    if (fieldClass.isArray() && fieldClass.getComponentType().isPrimitive()) continue;
+                    if (!field.trySetAccessible()) continue;
+
+                    level.fields.add(field);
+                }
+
+                cls = cls.getSuperclass();
+            }
+        }
+    }
+
+
 
     /**
      * Creates an ObjectInitializer instance with a default class filter.
@@ -66,7 +164,7 @@ public class ObjectInitializer extends ClassInitializer {
      *
      */
     public ObjectInitializer() {
-        this.filter = (cls) -> cls.getName().startsWith("com.paradoxwebsolutions.");
+        this.filter = DEFAULT_FILTER;
     }
 
 
@@ -84,13 +182,91 @@ public class ObjectInitializer extends ClassInitializer {
 
     /**
      * Initializes an object tree.
+     * <p>Initialization methods marked as concurrent are run in parallel with the rest of the
+     * initialization, but are all complete when this method returns.
      *
      * @param instance   the object instance to initialize
      * @param arguments  a set of arguments that can be passed though to the initialization methods
      * @throws ApplicationError on error
      */
     public void initialize(Object instance, Object ...arguments) throws ApplicationError {
-        this.scanObjectHierarchy(Init.class, instance, arguments);
+        try {
+            this.scanObjectHierarchy(instance, arguments);
+        }
+        finally {
+            awaitPending();
+        }
+    }
+
+
+
+    /**
+     * Returns the scanning metadata for a class.
+     *
+     * @param cls  the class
+     * @return the class metadata
+     */
+    private ClassMetadata getMetadata(final Class<?> cls) {
+        if (filter == DEFAULT_FILTER) return defaultMetadata.get(cls);
+
+        return metadata.computeIfAbsent(cls, (c) -> new ClassMetadata(c, filter));
+    }
+
+
+
+    /**
+     * Invokes an initialization method, either directly or concurrently.
+     *
+     * @param invoker    the method invoker
+     * @param object     the object to invoke the method on
+     * @param arguments  a list of available arguments to be used for invoking the method
+     * @throws ApplicationError on error
+     */
+    private void invoke(final Invoker invoker, final Object object, final Object[] arguments) throws ApplicationError {
+        if (!invoker.isConcurrent()) {
+            invoker.invoke(object, arguments);
+            return;
+        }
+
+        if (executor == null) executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        pending.add(CompletableFuture.runAsync(() -> {
+            try {
+                invoker.invoke(object, arguments);
+            }
+            catch (ApplicationError x) {
+                throw new CompletionException(x);
+            }
+        }, executor));
+    }
+
+
+
+    /**
+     * Waits for all concurrent initialization methods to complete.
+     *
+     * @throws ApplicationError if any concurrent initialization method failed
+     */
+    private void awaitPending() throws ApplicationError {
+        ApplicationError error = null;
+
+        for (CompletableFuture<Void> future : pending) {
+            try {
+                future.join();
+            }
+            catch (CompletionException x) {
+                Throwable cause = x.getCause();
+                if (error == null) error = cause instanceof ApplicationError ? (ApplicationError) cause : new ApplicationError(cause.getMessage(), x);
+            }
+        }
+
+        pending.clear();
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+
+        if (error != null) throw error;
     }
 
 
@@ -98,13 +274,11 @@ public class ObjectInitializer extends ClassInitializer {
     /**
      * Recurses down an object hierarchy looking for, and invoking, annotated methods.
      *
-     * @param <T>              the annotation class instance
-     * @param annotationClass  the class of the annotation being searched for
      * @param object           the root of the object hierarchy being scanned
      * @param arguments        a list of available arguments to be used for invoking the methods
      * @throws ApplicationError on error
      */
-    private <T extends Annotation>  void scanObjectHierarchy(Class<T> annotationClass, Object object, Object[] arguments) throws ApplicationError {
+    private void scanObjectHierarchy(Object object, Object[] arguments) throws ApplicationError {
 
         /*
          * Check to see if this object should be scanned. By default we do not scan
@@ -113,7 +287,7 @@ public class ObjectInitializer extends ClassInitializer {
         if (object == null || ledger.contains(object)) return;
 
         Class<?> cls = object.getClass();
-        if (cls.getName().equals("java.lang.Object") || cls.getName().equals("java.lang.String")) return;
+        if (cls == Object.class || cls == String.class) return;
 
 
         /* We need to scan this object */
@@ -126,32 +300,19 @@ public class ObjectInitializer extends ClassInitializer {
          * scanned - usually because it is outside our package and therefore cannot contain any further classes of
          * interest, with the exception of collections.
          */
-        while (cls.getSuperclass() != null && (filter == null || filter.apply(cls))) {
-
-            /*
-            * First, scan non-static methods in the object to find any that are annotated 
-            */
-            for (Method method : cls.getMethods()) { /* Interested in all public methods, including those on superclasses */
-                if (!Modifier.isStatic(method.getModifiers())) {
-                    T annotation = method.getAnnotation(annotationClass);
-                    if (annotation != null) invokeMethod(object, method, arguments);
-                }
-            }
+        ClassMetadata classMetadata = getMetadata(cls);
+        if (classMetadata.error != null) throw classMetadata.error;
 
+        for (Level level : classMetadata.levels) {
 
+            /* First, invoke any annotated methods */
 
-            /* Next, process fields specific to the current class */
+            for (Invoker invoker : level.initializers) invoke(invoker, object, arguments);
 
-            for (Field field : cls.getDeclaredFields()) {
-                /* Exclude primitives, enums, and static fields */
 
-                Class<?> fieldClass = field.getType();
-                if (fieldClass.isPrimitive() || field.isEnumConstant() || Modifier.isStatic(field.getModifiers())) continue;
-                if (!field.canAccess(object) && !field.trySetAccessible()) continue;
-
-
-                /* Check for a null value, which can be ignored */
+            /* Next, process fields specific to the current class */
 
+            for (Field field : level.fields) {
                 try {
                     /* Now look at the field value. Nulls can be ignored */
 
@@ -161,24 +322,19 @@ public class ObjectInitializer extends ClassInitializer {
                     /* 
                      * If the field is an array, we need to loop through each index
                      */
-                    if (fieldClass.isArray()) {
-                        Class<?> objectClass = fieldClass.getComponentType();
+                    if (fieldValue instanceof Object[]) {
                         Object[] array = (Object[]) fieldValue;
                         for (int i = 0; i < array.length; ++i) {
-                            scanObjectHierarchy(annotationClass, array[i], arguments);
+                            scanObjectHierarchy(array[i], arguments);
                         }
                     }
                     else {
-                            scanObjectHierarchy(annotationClass, fieldValue, arguments);
+                            scanObjectHierarchy(fieldValue, arguments);
                     }
                 }
                 catch (IllegalAccessException x) {
                 }
             }
-
-            /* Move up to the superclass */
-
-            cls = cls.getSuperclass();
         }
 
 
@@ -186,15 +342,14 @@ public class ObjectInitializer extends ClassInitializer {
         /*
          * Now handle collections and maps - these are special cases.
          */
-        cls = object.getClass();
-        if (Collection.class.isAssignableFrom(cls)) {
+        if (object instanceof Collection) {
             /* This is a collection - we need to process its contents */
 
             for (Object child : Collection.class.cast(object).toArray()) {
-                scanObjectHierarchy(annotationClass, child, arguments);
+                scanObjectHierarchy(child, arguments);
             }
         }
-        else if (Map.class.isAssignableFrom(cls)) {
+        else if (object instanceof Map) {
             
             /* This is a map - we need to process its contents */
 
@@ -202,10 +357,10 @@ public class ObjectInitializer extends ClassInitializer {
             Set<?> set = map.keySet();
 
             for (Object key : set) {
-                scanObjectHierarchy(annotationClass, key, arguments);
-                scanObjectHierarchy(annotationClass, map.get(key), arguments);
+                scanObjectHierarchy(key, arguments);
+                scanObjectHierarchy(map.get(key), arguments);
             }
         }
 
     }
-}
\ No newline at end of file
+}
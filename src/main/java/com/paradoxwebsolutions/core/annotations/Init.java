@@ -15,4 +15,17 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface Init {
+
+    /**
+     * Whether or not the method may run concurrently with other initialization methods.
+     * <p>This is intended for expensive, self contained initialization (e.g. model loading). A
+     * concurrent method must not depend on, or be depended on by, any other initialization method.
+     * All concurrent methods are complete before object initialization returns.
+     * <p>The object tree is scanned while concurrent methods run, so a concurrent method should only
+     * set <code>transient</code> fields (which are not scanned), and should build any collections it
+     * sets locally, assigning them once complete.
+     *
+     * @return true if the method may run concurrently, false otherwise
+     */
+    boolean concurrent() default false;
 }
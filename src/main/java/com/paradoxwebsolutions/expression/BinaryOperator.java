@@ -70,6 +70,28 @@ public class BinaryOperator extends NamedExpression {
 
 
 
+    /**
+     * Returns the left hand expression.
+     *
+     * @return the left hand expression
+     */
+    Expression getLeft() {
+        return this.left;
+    }
+
+
+
+    /**
+     * Returns the right hand expression.
+     *
+     * @return the right hand expression
+     */
+    Expression getRight() {
+        return this.right;
+    }
+
+
+
     /**
      * Evaluates the binary operation.
      * 
@@ -0,0 +1,414 @@
+package com.paradoxwebsolutions.expression;
+
+import java.util.Objects;
+
+
+
+/**
+ * An expression compiled for repeated evaluation.
+ * <p>Parsed expressions are evaluated by walking the expression tree, with each operator
+ * checking and converting the types of its (boxed) operand values. Compiling an expression
+ * replaces the default operators with nodes specialized for the common operand types - integer
+ * and floating point comparisons and arithmetic, equality tests, and boolean logic that works on
+ * primitive boolean values rather than boxed results. Where an operator is given operands of
+ * other types, it falls back to the original (interpreted) operator, so a compiled expression
+ * always produces the same result (or error) as the parsed expression.
+ * <p>Operators and functions other than the defaults are left as they are. Note that the compiler
+ * identifies the default operators by name, so should not be used if any default operator has
+ * been registered with different behaviour.
+ * <pre>{@code
+ *   CompiledExpression expression = CompiledExpression.compile(new Parser().parse("count > 3 and name == \"x\""));
+ *   boolean result = expression.test(context);
+ * }</pre>
+ *
+ * @author Peter Smith
+ */
+public abstract class CompiledExpression implements Expression {
+
+    /* Operator codes */
+
+    private static final int ADD = 0;
+    private static final int SUB = 1;
+    private static final int MUL = 2;
+    private static final int DIV = 3;
+    private static final int GT  = 4;
+    private static final int GE  = 5;
+    private static final int LT  = 6;
+    private static final int LE  = 7;
+
+
+    /** The expression this was compiled from */
+
+    private final Expression source;
+
+
+
+    /**
+     * Creates a compiled expression node.
+     *
+     * @param source  the expression this node was compiled from
+     */
+    private CompiledExpression(final Expression source) {
+        this.source = source;
+    }
+
+
+
+    /**
+     * Compiles an expression.
+     *
+     * @param expression  the (parsed) expression to compile
+     * @return            the compiled expression
+     */
+    public static CompiledExpression compile(final Expression expression) {
+        if (expression instanceof CompiledExpression) return (CompiledExpression) expression;
+
+        if (expression instanceof Constant) return new ConstantNode((Constant) expression);
+        if (expression instanceof ContextValue) return new ContextNode((ContextValue) expression);
+        if (expression instanceof Parenthesis) return compile(((Parenthesis) expression).getExpression());
+
+        if (expression instanceof UnaryOperator) {
+            UnaryOperator op = (UnaryOperator) expression;
+            if (op.getName().equals("!")) return new NotNode(op, compile(op.getOperand()));
+        }
+        else if (expression instanceof BinaryOperator) {
+            BinaryOperator op = (BinaryOperator) expression;
+            String name = op.getName();
+            Class<?> type = op.getClass();
+
+            if (type == BinaryOperator.class && name.equals("and")) return new AndNode(op, compile(op.getLeft()), compile(op.getRight()));
+            if (type == BinaryOperator.class && name.equals("or")) return new OrNode(op, compile(op.getLeft()), compile(op.getRight()));
+
+            if (type == RelationalOperator.class && (name.equals("==") || name.equals("!="))) {
+                return new EqualsNode(op, compile(op.getLeft()), compile(op.getRight()), name.equals("!="));
+            }
+
+            if (type == ArithmeticOperator.class) {
+                int code = operatorCode(name);
+                if (code >= 0) return new ArithmeticNode(op, compile(op.getLeft()), compile(op.getRight()), code);
+            }
+        }
+
+        return new InterpretedNode(expression);
+    }
+
+
+
+    /**
+     * Evaluates the expression as a boolean value.
+     * <p>This is equivalent to converting the result of {@link #eval} with {@link Operators#toBoolean},
+     * but avoids creating boolean results for logical operators.
+     *
+     * @param context  the context in which the expression is being evaluated
+     * @return         the boolean value of the expression
+     * @throws ExpressionError if an error occurred during evaluation
+     */
+    public boolean test(final ExpressionContext context) throws ExpressionError {
+        return Operators.toBoolean(eval(context));
+    }
+
+
+
+    /**
+     * Evaluates the original (uncompiled) expression.
+     * <p>This is used when operand types do not match any of the specialized cases.
+     *
+     * @param context  the context in which the expression is being evaluated
+     * @return         the result of the original expression
+     * @throws ExpressionError if an error occurred during evaluation
+     */
+    protected Object interpret(final ExpressionContext context) throws ExpressionError {
+        return source.eval(context);
+    }
+
+
+
+    /**
+     * Converts this expression back to a string.
+     *
+     * @return a string representation of the original expression
+     */
+    @Override
+    public String toString() {
+        return source.toString();
+    }
+
+
+
+    /**
+     * Returns the specialized operator code for an arithmetic operator.
+     *
+     * @param name  the operator name
+     * @return      the operator code, or -1 if the operator is not specialized
+     */
+    private static int operatorCode(final String name) {
+        switch (name) {
+            case "+":  return ADD;
+            case "-":  return SUB;
+            case "*":  return MUL;
+            case "/":  return DIV;
+            case ">":  return GT;
+            case ">=": return GE;
+            case "<":  return LT;
+            case "<=": return LE;
+            default:   return -1;
+        }
+    }
+
+
+
+    /**
+     * A constant value.
+     */
+    private static final class ConstantNode extends CompiledExpression {
+        private final Object value;
+        private final boolean truth;
+
+        ConstantNode(final Constant constant) {
+            super(constant);
+            value = constant.getValue();
+            truth = Operators.toBoolean(value);
+        }
+
+        @Override
+        public Object eval(final ExpressionContext context) {
+            return value;
+        }
+
+        @Override
+        public boolean test(final ExpressionContext context) {
+            return truth;
+        }
+    }
+
+
+
+    /**
+     * A context value.
+     */
+    private static final class ContextNode extends CompiledExpression {
+        private final String name;
+        private final int slot;
+
+        ContextNode(final ContextValue value) {
+            super(value);
+            name = value.getName();
+            slot = value.getSlot();
+        }
+
+        @Override
+        public Object eval(final ExpressionContext context) {
+            return context == null ? null : context.get(slot, name);
+        }
+    }
+
+
+
+    /**
+     * Logical not.
+     */
+    private static final class NotNode extends CompiledExpression {
+        private final CompiledExpression operand;
+
+        NotNode(final Expression source, final CompiledExpression operand) {
+            super(source);
+            this.operand = operand;
+        }
+
+        @Override
+        public Object eval(final ExpressionContext context) throws ExpressionError {
+            return !operand.test(context);
+        }
+
+        @Override
+        public boolean test(final ExpressionContext context) throws ExpressionError {
+            return !operand.test(context);
+        }
+    }
+
+
+
+    /**
+     * Logical and.
+     */
+    private static final class AndNode extends CompiledExpression {
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        AndNode(final Expression source, final CompiledExpression left, final CompiledExpression right) {
+            super(source);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Object eval(final ExpressionContext context) throws ExpressionError {
+            return test(context);
+        }
+
+        @Override
+        public boolean test(final ExpressionContext context) throws ExpressionError {
+            return left.test(context) && right.test(context);
+        }
+    }
+
+
+
+    /**
+     * Logical or.
+     */
+    private static final class OrNode extends CompiledExpression {
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+
+        OrNode(final Expression source, final CompiledExpression left, final CompiledExpression right) {
+            super(source);
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public Object eval(final ExpressionContext context) throws ExpressionError {
+            return test(context);
+        }
+
+        @Override
+        public boolean test(final ExpressionContext context) throws ExpressionError {
+            return left.test(context) || right.test(context);
+        }
+    }
+
+
+
+    /**
+     * Equality (and inequality) tests.
+     * <p>Values of different types fall back to the original operator (which reports a type mismatch).
+     */
+    private static final class EqualsNode extends CompiledExpression {
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+        private final boolean negate;
+
+        EqualsNode(final Expression source, final CompiledExpression left, final CompiledExpression right, final boolean negate) {
+            super(source);
+            this.left = left;
+            this.right = right;
+            this.negate = negate;
+        }
+
+        @Override
+        public Object eval(final ExpressionContext context) throws ExpressionError {
+            return test(context);
+        }
+
+        @Override
+        public boolean test(final ExpressionContext context) throws ExpressionError {
+            Object l = left.eval(context);
+            Object r = right.eval(context);
+
+            if (l != null && r != null && l.getClass() != r.getClass()) return Operators.toBoolean(interpret(context));
+            return Objects.equals(l, r) != negate;
+        }
+    }
+
+
+
+    /**
+     * Arithmetic operators and numeric comparisons.
+     * <p>Integer and floating point operands are handled directly. Anything else (including
+     * integer division by zero) falls back to the original operator.
+     */
+    private static final class ArithmeticNode extends CompiledExpression {
+        private final CompiledExpression left;
+        private final CompiledExpression right;
+        private final int code;
+
+        ArithmeticNode(final Expression source, final CompiledExpression left, final CompiledExpression right, final int code) {
+            super(source);
+            this.left = left;
+            this.right = right;
+            this.code = code;
+        }
+
+        @Override
+        public Object eval(final ExpressionContext context) throws ExpressionError {
+            Object l = left.eval(context);
+            Object r = right.eval(context);
+
+            if (l instanceof Integer && r instanceof Integer) {
+                int a = (Integer) l;
+                int b = (Integer) r;
+
+                switch (code) {
+                    case ADD: return a + b;
+                    case SUB: return a - b;
+                    case MUL: return a * b;
+                    case DIV: if (b != 0) return a / b; break;
+                    case GT:  return a > b;
+                    case GE:  return a >= b;
+                    case LT:  return a < b;
+                    case LE:  return a <= b;
+                }
+            }
+            else if (l instanceof Number && r instanceof Number) {
+                double a = ((Number) l).doubleValue();
+                double b = ((Number) r).doubleValue();
+
+                switch (code) {
+                    case ADD: return a + b;
+                    case SUB: return a - b;
+                    case MUL: return a * b;
+                    case DIV: return a / b;
+                    case GT:  return a > b;
+                    case GE:  return a >= b;
+                    case LT:  return a < b;
+                    case LE:  return a <= b;
+                }
+            }
+
+            return interpret(context);
+        }
+
+        @Override
+        public boolean test(final ExpressionContext context) throws ExpressionError {
+            if (code < GT) return Operators.toBoolean(eval(context));
+
+            /* Comparisons are tested without boxing the result */
+
+            Object l = left.eval(context);
+            Object r = right.eval(context);
+
+            if (l instanceof Integer && r instanceof Integer) {
+                int a = (Integer) l;
+                int b = (Integer) r;
+                return code == GT ? a > b : code == GE ? a >= b : code == LT ? a < b : a <= b;
+            }
+            else if (l instanceof Number && r instanceof Number) {
+                double a = ((Number) l).doubleValue();
+                double b = ((Number) r).doubleValue();
+                return code == GT ? a > b : code == GE ? a >= b : code == LT ? a < b : a <= b;
+            }
+
+            return Operators.toBoolean(interpret(context));
+        }
+    }
+
+
+
+    /**
+     * Any other expression, evaluated as parsed.
+     */
+    private static final class InterpretedNode extends CompiledExpression {
+        private final Expression expression;
+
+        InterpretedNode(final Expression expression) {
+            super(expression);
+            this.expression = expression;
+        }
+
+        @Override
+        public Object eval(final ExpressionContext context) throws ExpressionError {
+            return expression.eval(context);
+        }
+    }
+}
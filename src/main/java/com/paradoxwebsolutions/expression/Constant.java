@@ -27,6 +27,17 @@ class Constant implements Expression {
 
 
 
+    /**
+     * Returns the constant value.
+     *
+     * @return the constant value
+     */
+    Object getValue() {
+        return value;
+    }
+
+
+
     /**
      * Evaluates the expression.
      * <p>This simply returns the constant value.
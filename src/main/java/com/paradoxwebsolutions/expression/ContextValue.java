@@ -14,6 +14,11 @@ class ContextValue implements Expression {
     private String name;
 
 
+    /* The context slot number of the value (-1 if not resolved) */
+
+    private int slot;
+
+
 
     /**
      * Creates an instance of a context value expression.
@@ -21,9 +26,45 @@ class ContextValue implements Expression {
      * @param name  the name of the context variable whos value is to be returned
      */
     public ContextValue(final String name) {
+        this(name, -1);
+    }
+
+
+
+    /**
+     * Creates an instance of a context value expression resolved to a context slot.
+     *
+     * @param name  the name of the context variable whos value is to be returned
+     * @param slot  the context slot number of the variable, or -1 if not resolved
+     * @see ExpressionContext#get(int, String)
+     */
+    public ContextValue(final String name, final int slot) {
         assert name != null : "Invalid variable name - cannot be null";
         assert name.length() > 0 : "Invalid variable name - cannot be empty";
         this.name = name;
+        this.slot = slot;
+    }
+
+
+
+    /**
+     * Returns the name of the context value.
+     *
+     * @return the context value name
+     */
+    String getName() {
+        return name;
+    }
+
+
+
+    /**
+     * Returns the context slot number of the value.
+     *
+     * @return the slot number, or -1 if the name was not resolved to a slot
+     */
+    int getSlot() {
+        return slot;
     }
 
 
@@ -40,7 +81,7 @@ class ContextValue implements Expression {
         if (context == null)
             return null;
         else
-            return context.get(name);
+            return context.get(slot, name);
     }
 
 
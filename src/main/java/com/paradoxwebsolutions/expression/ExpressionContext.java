@@ -28,4 +28,22 @@ public class ExpressionContext extends HashMap<String, Object> {
         put(key, value);
         return this;
     }
+
+
+
+    /**
+     * Returns a context value by slot number or name.
+     * <p>Parsers created with a list of known variables (see {@link Parser#Parser(String...)})
+     * resolve those variable names to slot numbers (their position in the list) when the
+     * expression is parsed. Contexts that hold the known variables in fixed positions can
+     * override this method to return them without a name lookup. The default implementation
+     * simply looks up the value by name.
+     *
+     * @param slot  the slot number of the value, or -1 if the name was not resolved to a slot
+     * @param name  the name of the value
+     * @return the context value, or null if there is no such value
+     */
+    public Object get(int slot, String name) {
+        return get(name);
+    }
 }
\ No newline at end of file
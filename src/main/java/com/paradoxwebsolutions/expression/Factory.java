@@ -6,6 +6,9 @@ package com.paradoxwebsolutions.expression;
  * Class used to register named functions or operators.
  * <p>Instances of this class are used for registering and creating named functions
  * and operators that can be used in expressions.
+ * <p>A factory may be marked as pure if the expressions it creates depend only on their
+ * inputs (not on the expression context or any other state). The parser evaluates pure
+ * expressions with constant inputs once, when the expression is parsed.
  *
  * @author Peter Smith
  */
@@ -16,6 +19,11 @@ public abstract class Factory {
     private String name;
 
 
+    /** Set if the expressions created by this factory depend only on their inputs */
+
+    private boolean pure = false;
+
+
     /**
      * Construct a factory instance.
      *
@@ -40,6 +48,31 @@ public abstract class Factory {
 
 
 
+    /**
+     * Determines whether or not the expressions created by this factory are pure (depend only on
+     * their inputs).
+     *
+     * @return  true if the created expressions are pure, false otherwise
+     */
+    public boolean isPure() {
+        return this.pure;
+    }
+
+
+
+    /**
+     * Marks the expressions created by this factory as pure (or not).
+     *
+     * @param pure  true if the created expressions depend only on their inputs
+     * @return      a reference to this factory
+     */
+    public Factory setPure(boolean pure) {
+        this.pure = pure;
+        return this;
+    }
+
+
+
    /**
      * Creates an instance of an expression for performing an operation on the provided
      * expression input. 
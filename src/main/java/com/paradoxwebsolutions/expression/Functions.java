@@ -1,7 +1,10 @@
 package com.paradoxwebsolutions.expression;
 
 import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import java.lang.reflect.Method;
 
@@ -15,6 +18,17 @@ import java.lang.reflect.Method;
  * Provides basic sets of functions that can be registered (if desired).
  */
 public class Functions {
+
+    /** The maximum number of dynamic (non constant) regular expressions to cache */
+
+    private static final int PATTERN_CACHE_SIZE = 256;
+
+
+    /** Cache of compiled dynamic regular expressions */
+
+    private static final Map<String, Pattern> patterns = new ConcurrentHashMap<String, Pattern>();
+
+
     /**
     * Lambda interface used to implement a functional expression which takes a no
     * arguments.
@@ -75,9 +89,9 @@ public class Functions {
      * all expressions.
      */
     public static void registerDefaultFunctions() {
-        Parser.registerFunction(Functions.create("float", (context, arg) -> Operators.toFloat(arg)));
-        Parser.registerFunction(Functions.create("int", (context, arg) -> Operators.toInt(arg)));
-        Parser.registerFunction(Functions.create("not", (context, arg) -> !Operators.toBoolean(arg)));
+        Parser.registerFunction(Functions.create("float", (context, arg) -> Operators.toFloat(arg)).setPure(true));
+        Parser.registerFunction(Functions.create("int", (context, arg) -> Operators.toInt(arg)).setPure(true));
+        Parser.registerFunction(Functions.create("not", (context, arg) -> !Operators.toBoolean(arg)).setPure(true));
     }
 
 
@@ -111,17 +125,17 @@ public class Functions {
                         }
                     };
                 }
-            }
+            }.setPure(true)
         );
 
-        Parser.registerFunction(Functions.create("tolower", (context, arg1) -> arg1.toString().toLowerCase()));
-        Parser.registerFunction(Functions.create("toupper", (context, arg1) -> arg1.toString().toUpperCase()));
-        Parser.registerFunction(Functions.create("length", (context, arg1) -> arg1 == null ? 0 : arg1.toString().length()));
+        Parser.registerFunction(Functions.create("tolower", (context, arg1) -> arg1.toString().toLowerCase()).setPure(true));
+        Parser.registerFunction(Functions.create("toupper", (context, arg1) -> arg1.toString().toUpperCase()).setPure(true));
+        Parser.registerFunction(Functions.create("length", (context, arg1) -> arg1 == null ? 0 : arg1.toString().length()).setPure(true));
 
         /* Technically, this is an operator but it behaves like a function in that it needs both sides evaluated */
 
-        Parser.registerOperator(Operators.createBinary("=~", (c, l, r) -> Functions.matches(l.eval(c), r.eval(c))), 3);
-        Parser.registerOperator(Operators.createBinary("matches", (c, l, r) -> Functions.matches(l.eval(c), r.eval(c))), 3);
+        Parser.registerOperator(Functions.createMatches("=~"), 3);
+        Parser.registerOperator(Functions.createMatches("matches"), 3);
     }
     
 
@@ -134,25 +148,25 @@ public class Functions {
 
         /* Trigonometric functions */
 
-        Parser.registerFunction(Functions.create("cos", (context, arg1) -> Math.cos(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("sin", (context, arg1) -> Math.sin(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("tan", (context, arg1) -> Math.tan(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("acos", (context, arg1) -> Math.acos(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("asin", (context, arg1) -> Math.asin(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("atan", (context, arg1) -> Math.atan(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("cosh", (context, arg1) -> Math.cosh(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("sinh", (context, arg1) -> Math.sinh(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("tanh", (context, arg1) -> Math.tanh(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("rad", (context, arg1) -> Math.toRadians(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("deg", (context, arg1) -> Math.toDegrees(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("exp", (context, arg1) -> Math.exp(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("log", (context, arg1) -> Math.log(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("sqrt", (context, arg1) -> Math.sqrt(Operators.toFloat(arg1))));
+        Parser.registerFunction(Functions.create("cos", (context, arg1) -> Math.cos(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("sin", (context, arg1) -> Math.sin(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("tan", (context, arg1) -> Math.tan(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("acos", (context, arg1) -> Math.acos(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("asin", (context, arg1) -> Math.asin(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("atan", (context, arg1) -> Math.atan(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("cosh", (context, arg1) -> Math.cosh(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("sinh", (context, arg1) -> Math.sinh(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("tanh", (context, arg1) -> Math.tanh(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("rad", (context, arg1) -> Math.toRadians(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("deg", (context, arg1) -> Math.toDegrees(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("exp", (context, arg1) -> Math.exp(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("log", (context, arg1) -> Math.log(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("sqrt", (context, arg1) -> Math.sqrt(Operators.toFloat(arg1))).setPure(true));
 
         /* Rounding/conversion functions */
 
-        Parser.registerFunction(Functions.create("floor", (context, arg1) -> Math.floor(Operators.toFloat(arg1))));
-        Parser.registerFunction(Functions.create("ceil", (context, arg1) -> Math.ceil(Operators.toFloat(arg1))));
+        Parser.registerFunction(Functions.create("floor", (context, arg1) -> Math.floor(Operators.toFloat(arg1))).setPure(true));
+        Parser.registerFunction(Functions.create("ceil", (context, arg1) -> Math.ceil(Operators.toFloat(arg1))).setPure(true));
     }
 
 
@@ -236,14 +250,68 @@ public class Functions {
 
 
 
+    /**
+     * Creates an operator factory for regular expression matching operators.
+     * <p>If the regular expression is a constant (the usual case), it is compiled once when the
+     * expression is parsed, and an invalid regular expression is reported as a parse error.
+     * Otherwise, the regular expression is compiled (or retrieved from a cache) when evaluated.
+     *
+     * @param name  the name of the operator
+     * @return      a Factory instance for creating regular expression matching expressions
+     */
+    private static Factory createMatches(String name) {
+        return new Factory(name) {
+            @Override
+            public Expression create(Expression ...input) throws ExpressionError {
+                if (input[1] instanceof Constant && ((Constant) input[1]).getValue() != null) {
+                    final Pattern pattern = compile(((Constant) input[1]).getValue().toString());
+                    return new BinaryOperator(name, input[0], input[1], (c, l, r) -> pattern.matcher(l.eval(c).toString()).find());
+                }
+                return new BinaryOperator(name, input[0], input[1], (c, l, r) -> Functions.matches(l.eval(c), r.eval(c)));
+            }
+        }.setPure(true);
+    }
+
+
+
     /**
      * Regex matching function used in some string operators.
      * 
      * @param left   the operand to match against
      * @param right  the regular expression to match with
      * @return       true if the match succeeds, false otherwise
+     * @throws ExpressionError if the regular expression is invalid
+     */
+    private static Boolean matches(Object left, Object right) throws ExpressionError {
+        String regex = right.toString();
+
+        Pattern pattern = patterns.get(regex);
+        if (pattern == null) {
+            pattern = compile(regex);
+
+            /* Keep the cache bounded - it is simply emptied when full */
+
+            if (patterns.size() >= PATTERN_CACHE_SIZE) patterns.clear();
+            patterns.put(regex, pattern);
+        }
+        return pattern.matcher(left.toString()).find();
+    }
+
+
+
+    /**
+     * Compiles a regular expression.
+     *
+     * @param regex  the regular expression
+     * @return       the compiled regular expression
+     * @throws ExpressionError if the regular expression is invalid
      */
-    private static Boolean matches(Object left, Object right) {
-        return Pattern.compile(right.toString()).matcher(left.toString()).find();
+    private static Pattern compile(String regex) throws ExpressionError {
+        try {
+            return Pattern.compile(regex);
+        }
+        catch (PatternSyntaxException x) {
+            throw new ExpressionError(String.format("Invalid regular expression '%s': %s", regex, x.getDescription()));
+        }
     }
 }
\ No newline at end of file
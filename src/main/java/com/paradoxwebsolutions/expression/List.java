@@ -1,6 +1,8 @@
 package com.paradoxwebsolutions.expression;
 
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Expression element representing a list value.
@@ -44,6 +46,22 @@ class List implements Expression {
 
 
 
+    /**
+     * Returns the list values as a set, if they are all constants.
+     *
+     * @return  the set of constant values, or null if any value is not a constant
+     */
+    Set<Object> getConstants() {
+        Set<Object> constants = new HashSet<Object>();
+        for (Expression value : values) {
+            if (!(value instanceof Constant)) return null;
+            constants.add(((Constant) value).getValue());
+        }
+        return constants;
+    }
+
+
+
     /**
      * Serializes this expression to a string.
      *
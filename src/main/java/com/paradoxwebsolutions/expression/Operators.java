@@ -1,6 +1,7 @@
 package com.paradoxwebsolutions.expression;
 
 import java.util.Objects;
+import java.util.Set;
 
 
 
@@ -28,8 +29,8 @@ public class Operators {
         Parser.registerOperator(Operators.createArithmetic("<", (l, r) -> l < r, (l, r) -> l < r), 9);
         Parser.registerOperator(Operators.createArithmetic("<=", (l, r) -> l <= r, (l, r) -> l <= r), 9);
 
-        Parser.registerOperator(Operators.createBinary("and", (c, l, r) -> (Operators.toBoolean(l.eval(c)) && Operators.toBoolean(r.eval(c)))), 4);
-        Parser.registerOperator(Operators.createBinary("or", (c, l, r) -> (Operators.toBoolean(l.eval(c)) || Operators.toBoolean(r.eval(c)))), 3);
+        Parser.registerOperator(Operators.createBinary("and", (c, l, r) -> (Operators.toBoolean(l.eval(c)) && Operators.toBoolean(r.eval(c)))).setPure(true), 4);
+        Parser.registerOperator(Operators.createBinary("or", (c, l, r) -> (Operators.toBoolean(l.eval(c)) || Operators.toBoolean(r.eval(c)))).setPure(true), 3);
 
         Parser.registerOperator(Operators.createArithmetic("+", (l, r) -> l + r, (l, r) -> l + r), 11);
         Parser.registerOperator(Operators.createArithmetic("-", (l, r) -> l - r, (l, r) -> l - r), 11);
@@ -37,10 +38,34 @@ public class Operators {
         Parser.registerOperator(Operators.createArithmetic("/", (l, r) -> l / r, (l, r) -> l / r), 12);
         Parser.registerOperator(Operators.createArithmetic("^", (l, r) -> (int) Math.pow(l, r), (l, r) -> Math.pow(l, r)), 13);
 
-        Parser.registerOperator(Operators.createUnary("!", (c, e) -> !Operators.toBoolean(e.eval(c))));
-        Parser.registerOperator(Operators.createUnary("-", (c, e) -> Operators.neg(e.eval(c))));
+        Parser.registerOperator(Operators.createUnary("!", (c, e) -> !Operators.toBoolean(e.eval(c))).setPure(true));
+        Parser.registerOperator(Operators.createUnary("-", (c, e) -> Operators.neg(e.eval(c))).setPure(true));
 
-        Parser.registerOperator(Operators.createBinary("in", (c, l, r) -> Operators.in(l.eval(c), r.eval(c))), 9);
+        Parser.registerOperator(Operators.createIn("in"), 9);
+    }
+
+
+
+    /**
+     * Creates a factory for the 'in' operator.
+     * <p>If the list is made up of constant values (the usual case), the values are placed in
+     * a hash set when the expression is parsed, so the list is neither evaluated nor scanned
+     * when the expression is evaluated.
+     *
+     * @param name  the name of the operator
+     * @return      a Factory instance for creating 'in' expressions
+     */
+    private static Factory createIn(String name) {
+        return new Factory(name) {
+            @Override
+            public Expression create(Expression ...input) throws ExpressionError {
+                if (input[1] instanceof List) {
+                    final Set<Object> values = ((List) input[1]).getConstants();
+                    if (values != null) return new BinaryOperator(name, input[0], input[1], (c, l, r) -> values.contains(l.eval(c)));
+                }
+                return new BinaryOperator(name, input[0], input[1], (c, l, r) -> Operators.in(l.eval(c), r.eval(c)));
+            }
+        }.setPure(true);
     }
 
 
@@ -83,7 +108,8 @@ public class Operators {
     /**
      * Creates an operator factory instance suitable for registering with the Parser.
      * <p>An operator factory is used to create expression instances for a given operator
-     * and set of operands.
+     * and set of operands. Arithmetic operators depend only on their operands, so the
+     * factory is marked as pure.
      * e.g.
      * <pre>{@code 
      *   Factory f = Operators.createArithmetic("+", (l, r) -> l + r, (l, r) -> l + r);
@@ -100,13 +126,14 @@ public class Operators {
             public Expression create(Expression ...input) throws ExpressionError {
                 return new ArithmeticOperator(name, input[0], input[1], iOp, fOp);
             }
-        };
+        }.setPure(true);
     }
 
 
 
     /**
      * Creates a lambda function for creating expresssions representing relational operators.
+     * <p>Relational operators depend only on their operands, so the factory is marked as pure.
      *
      * @param name  the name of the operator
      * @param fn    the operator function
@@ -118,7 +145,7 @@ public class Operators {
             public Expression create(Expression ...input) throws ExpressionError {
                 return new RelationalOperator(name, input[0], input[1], fn);
             }
-        };
+        }.setPure(true);
     }
 
 
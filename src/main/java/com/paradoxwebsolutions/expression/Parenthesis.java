@@ -26,6 +26,17 @@ class Parenthesis implements Expression {
 
 
 
+    /**
+     * Returns the expression contained within the parentheses.
+     *
+     * @return the contained expression
+     */
+    Expression getExpression() {
+        return this.expr;
+    }
+
+
+
     /**
      * Evaluates this expression.
      * <p>This simply returns the result of evaluating the contained expression.
@@ -3,12 +3,13 @@ package com.paradoxwebsolutions.expression;
 
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 
@@ -55,8 +56,20 @@ import java.util.regex.Pattern;
  *
  * For more details on operator precedence, refer to 
  * https://developer.mozilla.org/en-US/docs/Web/JavaScript/Reference/Operators/Operator_Precedence#table.
- * <p>Note that the Parser class uses no local storage and is therefore thread safe - a single
- * instance may be used simultaneously in multiple threads.
+ * <p>The parser simplifies expressions as it builds them. Operators and functions registered as
+ * pure (see {@link Factory#isPure}) are evaluated at parse time if their operands are constants,
+ * and 'and'/'or' expressions whose result is decided by a constant operand are replaced by that
+ * result. The simplified expression evaluates to the same result as the original.
+ * <p>A parser can be created with a list of variables that the evaluation context will always
+ * provide. References to these variables are resolved to slot numbers when the expression is
+ * parsed, allowing contexts that override {@link ExpressionContext#get(int, String)} to return
+ * them without a name lookup.
+ * <p>Parsed expressions are immutable, and each parser keeps a cache of the expressions it has
+ * parsed so that identical expression strings (e.g. the same guard used in many stories) share a
+ * single expression tree.
+ * <p>Note that the Parser class holds no state other than the (immutable) variable list and the
+ * (thread safe) expression cache, and is therefore thread safe - a single instance may be used
+ * simultaneously in multiple threads.
  *
  * <p>Embedding the expression parser into an application can be done with just a few lines of code:
  * <pre>{@code
@@ -167,34 +180,34 @@ public class Parser {
     private static Map<String, Factory> functionMap = new HashMap<String, Factory>();
 
 
-    /** Regular expression used to identify double quoted string constants */
+    /** Maximum number of parsed expressions cached by a parser */
 
-    private static Pattern doubleQuotes = Pattern.compile( "(?:\"(?:[^\"\\\\]|(?:\\\\.))*\")");
+    private static final int CACHE_SIZE = 4096;
 
 
-    /** Regular expression used to identify tokens to pad with spaces */
+    /** Count of operator and function registrations (cached expressions are discarded when this changes) */
 
-    private static Pattern expansions = Pattern.compile("(\\(|\\)|\\[|\\]|==|!=|=~|>=|>|<=|<|,|\\+|-|\\*|/|!|@|#|\\$|%|^|&)");
+    private static AtomicInteger registrations = new AtomicInteger();
 
 
-    /** Regular expression used to identify integer tokens */
+    /** List of tokens that trigger an exit from the current expression converter level */
 
-    private static Pattern integerPattern = Pattern.compile("\\d+");
+    private static List<TokenType> terminals = Arrays.asList(TokenType.COMMA, TokenType.ENDPAREN, TokenType.ENDLIST, TokenType.EOS);
 
 
-    /** Regular expression used to identify floating point tokens */
+    /** Context slot numbers of known variables */
 
-    private static Pattern floatPattern = Pattern.compile("\\d+(\\.\\d+)?");
+    private final Map<String, Integer> variables;
 
 
-    /** Regular expression used to identify string constants (unquoted strings) */
+    /** Cache of parsed expressions, by expression string */
 
-    private static Pattern constantPattern = Pattern.compile("^_\\d+$");
+    private final Map<String, Expression> cache = new ConcurrentHashMap<String, Expression>();
 
 
-    /** List of tokens that trigger an exit from the current expression converter level */
+    /** The registration count when the cache was last validated */
 
-    private static List<TokenType> terminals = Arrays.asList(TokenType.COMMA, TokenType.ENDPAREN, TokenType.ENDLIST, TokenType.EOS);
+    private volatile int cacheRegistrations = -1;
 
 
 
@@ -210,6 +223,22 @@ public class Parser {
 
 
 
+    /**
+     * Creates a parser.
+     * <p>The variables (if any) are those that the evaluation context provides in fixed slots. The
+     * slot number of each variable is its position in the list.
+     *
+     * @param variables  the names of variables to resolve to context slots
+     * @see ExpressionContext#get(int, String)
+     */
+    public Parser(String... variables) {
+        Map<String, Integer> slots = new HashMap<String, Integer>();
+        for (int i = 0; i < variables.length; ++i) slots.put(variables[i], i);
+        this.variables = Collections.unmodifiableMap(slots);
+    }
+
+
+
     /**
      * Registers a named binary operator.
      * This method is used to register new binary operators (only binary operators have precedence).
@@ -220,6 +249,7 @@ public class Parser {
     public static void registerOperator(Factory factory, int precedence) {
         biOperatorMap.put(factory.getName(), factory);
         operatorPrecedence.put(factory.getName(), precedence);
+        registrations.incrementAndGet();
     }
 
 
@@ -238,6 +268,7 @@ public class Parser {
      */
     public static void registerOperator(Factory factory) {
         uniOperatorMap.put(factory.getName(), factory);
+        registrations.incrementAndGet();
     }
     
 
@@ -254,6 +285,7 @@ public class Parser {
      */
     public static void registerFunction(Factory factory) {
         functionMap.put(factory.getName(), factory);
+        registrations.incrementAndGet();
     }
 
 
@@ -261,6 +293,9 @@ public class Parser {
     /**
      * Parser an expression string.
      * This parses a string expression and returns an expression instance that can be used to evaluate it.
+     * <p>Parsed expressions are immutable, so they are cached and shared - parsing the same expression
+     * string again returns the same instance. The cache is discarded if operators or functions are
+     * registered.
      *
      * @param expression  the string expression to parse.
      * @return an Expression instance that can be used to evaluate the expression.
@@ -268,33 +303,95 @@ public class Parser {
      * @see Expression
      */
     public Expression parse(String expression) throws ExpressionError {
-        /*
-         * First thing to do is process string constants (quoted strings), since these may contain spaces that
-         * would impact the tokenization. We temporarily pull them out and store them, replacing them with a
-         * tag that can be used to reinsert later, once tokenization is complete.
-         */
-        List<String> constants = new ArrayList<String>();
-        Matcher m1 = doubleQuotes.matcher(expression);
-        String expr = m1.replaceAll((match) -> String.format( " _%d ", constants.size(), constants.add(m1.group())));
+        int registered = registrations.get();
+        if (registered != cacheRegistrations) {
+            cache.clear();
+            cacheRegistrations = registered;
+        }
 
+        Expression parsed = cache.get(expression);
+        if (parsed == null) {
+            parsed = this.convert(new TokenStream(tokenize(expression)));
 
-        /* Next, expand (insert spaces) around various character sequences to make tokenization easier */
+            if (parsed != null) {
+                if (cache.size() >= CACHE_SIZE) cache.clear();
+                cache.put(expression, parsed);
+            }
+        }
+        return parsed;
+    }
 
-        Matcher m3 = expansions.matcher(expr);
-        expr = m3.replaceAll((match) -> String.format(" %s ", m3.group(1)));
 
 
-        /* Now tokenize and re-insert quoted strings */
+    /**
+     * Splits an expression string into tokens.
+     * <p>This is a single pass over the expression. Tokens are separated by whitespace, double quoted
+     * strings (which are kept whole, including the quotes and any escaped characters), and symbols
+     * (parentheses, list brackets, commas and symbolic operators). Anything else - names, numbers and
+     * word operators such as 'and' - runs up to the next separator.
+     *
+     * @param expression  the string expression to tokenize
+     * @return the expression tokens
+     * @throws ExpressionError if a quoted string is not terminated
+     */
+    private static String[] tokenize(final String expression) throws ExpressionError {
+        List<String> tokens = new ArrayList<String>();
+        int length = expression.length();
+        int i = 0;
 
-        String[] tokens = Arrays.stream(expr.split("\\s+"))
-            .map((s) -> (constantPattern.matcher(s).matches() ? constants.get(Integer.parseInt(s.substring(1))) : s))
-            .filter((s) -> s.length() > 0)
-            .toArray(String[]::new);
+        while (i < length) {
+            int start = i;
+            char c = expression.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                ++i;
+            }
+            else if (c == '"') {
+                for (++i; i < length && expression.charAt(i) != '"'; ++i) {
+                    if (expression.charAt(i) == '\\') ++i;
+                }
+                if (i >= length) throw new ExpressionError(String.format("Unterminated string in expression '%s'", expression));
+                tokens.add(expression.substring(start, ++i));
+            }
+            else if ((i = symbolEnd(expression, start)) > start) {
+                tokens.add(expression.substring(start, i));
+            }
+            else {
+                while (i < length && !Character.isWhitespace(c = expression.charAt(i)) && c != '"' && symbolEnd(expression, i) == i) ++i;
+                tokens.add(expression.substring(start, i));
+            }
+        }
+
+        return tokens.toArray(new String[tokens.size()]);
+    }
 
 
-        /* Finally, convert the token stream into an expression */
 
-        return this.convert(new TokenStream(tokens));
+    /**
+     * Finds the end of a symbol token.
+     *
+     * @param expression  the string expression being tokenized
+     * @param start       the position of the possible symbol
+     * @return the position following the symbol, or the start position if there is no symbol there
+     */
+    private static int symbolEnd(final String expression, final int start) {
+        char next = start + 1 < expression.length() ? expression.charAt(start + 1) : 0;
+
+        switch (expression.charAt(start)) {
+            case '=':
+                return next == '=' || next == '~' ? start + 2 : start;
+
+            case '!': case '>': case '<':
+                return next == '=' ? start + 2 : start + 1;
+
+            case '(': case ')': case '[': case ']': case ',':
+            case '+': case '-': case '*': case '/':
+            case '@': case '#': case '$': case '%': case '^': case '&':
+                return start + 1;
+
+            default:
+                return start;
+        }
     }
 
 
@@ -360,10 +457,10 @@ public class Parser {
                         if (type != TokenType.ENDPAREN) {
                             throw new ExpressionError(String.format("Invalid argument list for function %s", token));
                         }
-                        expr = functionMap.get(token).create(arguments.toArray(new Expression[arguments.size()]));
+                        expr = create(functionMap.get(token), arguments.toArray(new Expression[arguments.size()]));
                     }
                     else { /* This must be a context variable */
-                        expr = new ContextValue(token);
+                        expr = new ContextValue(token, variables.getOrDefault(token, -1));
                     }
                 }
                 break;
@@ -399,7 +496,7 @@ public class Parser {
                     type = getTokenType(stream.next());
                     if (type != TokenType.ENDPAREN) throw new ExpressionError("Invalid expression following parenthesis - not terminated with ')'");
 
-                    expr = new Parenthesis(expr);
+                    if (!(expr instanceof Constant)) expr = new Parenthesis(expr);
                 }
                 break;
 
@@ -447,7 +544,7 @@ public class Parser {
                  * wrapping the current expression.
                  */
                 if (unaryOp != null) {
-                    expr = uniOperatorMap.get(unaryOp).create(expr);
+                    expr = create(uniOperatorMap.get(unaryOp), expr);
                     unaryOp = null;
                 }
                 exprs.add(expr);
@@ -502,7 +599,7 @@ public class Parser {
                 int prec2 = (i < max_i) ? operatorPrecedence.get(ops.get(i + 1)) : -1;
 
                 if (prec1 >= prec2) {
-                    Expression e = biOperatorMap.get(ops.get(i)).create(exprs.get(i), exprs.get(i + 1));
+                    Expression e = create(biOperatorMap.get(ops.get(i)), exprs.get(i), exprs.get(i + 1));
                     exprs.set(i, e);
                     exprs.remove(i + 1);
                     ops.remove(i);
@@ -517,6 +614,57 @@ public class Parser {
 
 
 
+    /**
+     * Creates an expression node, simplifying it where possible.
+     * <p>Nodes are created bottom up, so the inputs have already been simplified. Only pure
+     * expressions are simplified. Constant folding is skipped if evaluation fails (so the error is
+     * reported when the expression is evaluated, as it would be without simplification) or if the
+     * result is not an immutable value (e.g. a list).
+     *
+     * @param factory  the factory for the operator or function
+     * @param input    the operator operands or function arguments
+     * @return         the new expression
+     * @throws ExpressionError if the expression could not be created
+     */
+    private Expression create(final Factory factory, final Expression ...input) throws ExpressionError {
+        Expression expr = factory.create(input);
+        if (!factory.isPure()) return expr;
+
+
+        /* Boolean identities - a false 'and' operand or true 'or' operand decides the result */
+
+        String name = factory.getName();
+        if (input.length == 2 && (name.equals("and") || name.equals("or"))) {
+            boolean decider = name.equals("or");
+
+            if (input[0] instanceof Constant && Operators.toBoolean(((Constant) input[0]).getValue()) == decider) return new Constant(decider);
+
+            /* The left operand can only be skipped if evaluating it has no effect (a context value) */
+
+            if (input[0] instanceof ContextValue && input[1] instanceof Constant && Operators.toBoolean(((Constant) input[1]).getValue()) == decider) {
+                return new Constant(decider);
+            }
+        }
+
+
+        /* Constant folding */
+
+        for (Expression operand : input) {
+            if (!(operand instanceof Constant)) return expr;
+        }
+
+        try {
+            Object value = expr.eval(null);
+            if (value == null || value instanceof String || value instanceof Number || value instanceof Boolean) return new Constant(value);
+        }
+        catch (ExpressionError | RuntimeException x) {
+            /* Leave the error to be reported at evaluation time */
+        }
+        return expr;
+    }
+
+
+
     /**
      * Identifies the type of an expression token.
      *
@@ -545,9 +693,9 @@ public class Parser {
             return TokenType.BOOL;
         else if (token.startsWith("\"") && token.endsWith("\""))
             return TokenType.STRING;
-        else if (integerPattern.matcher(token).matches())
+        else if (isNumber(token, false))
             return TokenType.INTEGER;
-        else if (floatPattern.matcher(token).matches())
+        else if (isNumber(token, true))
             return TokenType.FLOAT;
 
         return TokenType.TOKEN;
@@ -555,6 +703,43 @@ public class Parser {
 
 
 
+    /**
+     * Checks if a token is a number - one or more digits, optionally followed by a decimal point and
+     * one or more digits.
+     *
+     * @param token     the token string from the expression
+     * @param fraction  set if a decimal fraction is allowed
+     * @return true if the token is a number, false otherwise
+     */
+    private static boolean isNumber(final String token, final boolean fraction) {
+        int length = token.length();
+        int i = 0;
+
+        while (i < length && isDigit(token.charAt(i))) ++i;
+        if (i == 0) return false;
+        if (i == length) return true;
+        if (!fraction || token.charAt(i) != '.' || i == length - 1) return false;
+
+        for (++i; i < length; ++i) {
+            if (!isDigit(token.charAt(i))) return false;
+        }
+        return true;
+    }
+
+
+
+    /**
+     * Checks for an ASCII digit.
+     *
+     * @param c  the character to check
+     * @return true if the character is a digit
+     */
+    private static boolean isDigit(final char c) {
+        return c >= '0' && c <= '9';
+    }
+
+
+
     /**
      * Expression parser test tool entry point.
      *
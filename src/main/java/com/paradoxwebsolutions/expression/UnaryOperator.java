@@ -55,6 +55,16 @@ public class UnaryOperator extends NamedExpression {
     }
 
 
+    /**
+     * Returns the operand expression.
+     *
+     * @return the operand expression
+     */
+    Expression getOperand() {
+        return this.expr;
+    }
+
+
     /**
      * Executes the unary operator.
      *
@@ -9,6 +9,7 @@ import com.paradoxwebsolutions.assistant.Categorizers;
 import com.paradoxwebsolutions.assistant.ClientSession;
 import com.paradoxwebsolutions.assistant.Entities;
 import com.paradoxwebsolutions.assistant.Entity;
+import com.paradoxwebsolutions.assistant.IdentityArchive;
 import com.paradoxwebsolutions.assistant.Input;
 import com.paradoxwebsolutions.assistant.Intent;
 import com.paradoxwebsolutions.assistant.NER;
@@ -38,7 +39,6 @@ import com.paradoxwebsolutions.core.ResourceAPI;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -57,8 +57,6 @@ import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import javax.tools.JavaCompiler;
 import javax.tools.ToolProvider;
@@ -246,40 +244,26 @@ class Train extends Tool {
         File archive = new File(identityDir + File.separator + identity + ".zip");
         LOGGER.debug(String.format("Creating zip archive: %s", archive));
 
-        FileOutputStream fos = new FileOutputStream(archive);
-        ZipOutputStream zip = new ZipOutputStream(fos);
+        try (IdentityArchive.Writer zip = new IdentityArchive.Writer(archive)) {
 
+            /* Create the extensions directory (even if there are no extensions) */
 
-        /* Create the extensions directory (even if there are no extensions) */
+            zip.addDirectory("extensions/");
 
-        zip.putNextEntry(new ZipEntry("extensions/"));
-        zip.closeEntry();
+            /* Zip up the files */
 
-        /* Zip up the files */
+            for (String filename : identityFileList) {
+                LOGGER.debug(String.format("Writing '%s' to zip archive", filename));
 
-        for (String filename : identityFileList) {
-            LOGGER.debug(String.format("Writing '%s' to zip archive", filename));
+                File file = new File(outputDir + File.separator + filename);
+                zip.add(filename, file);
 
-            File file = new File(outputDir + File.separator + filename);
-            FileInputStream fis = new FileInputStream(file);
-            ZipEntry zipEntry = new ZipEntry(filename);
-            zip.putNextEntry(zipEntry);
+                /* Remove the file as it is zipped */
 
-            byte[] bytes = new byte[1024];
-            int length;
-            while ((length = fis.read(bytes)) >= 0) {
-                zip.write(bytes, 0, length);
+                file.delete();
             }
-            fis.close();
-
-            /* Remove the file as it is zipped */
-            
-            file.delete();
         }
 
-        zip.close();
-        fos.close();
-
         new File(outputDir + File.separator + "extensions").delete();
     }
 
@@ -582,6 +566,7 @@ class Train extends Tool {
         context.identity = assistant.getIdentity();
         context.logger = LOGGER;
         context.modelDir = outputDir;
+        context.dataDir = inputDir;
         context.files = new ArrayList<String>();
 
         for (String name : trainers.keySet()) {
@@ -640,7 +625,9 @@ class Train extends Tool {
             Trainer.Context context = new Trainer.Context();
             context.identity = assistant.getIdentity();
             context.modelDir = outputDir;
+            context.dataDir = inputDir;
             context.logger = LOGGER;
+            context.session = session;
             context.files = new ArrayList<String>();
 
             for (Lesson lesson : intentData.lessons) {
@@ -668,6 +655,7 @@ class Train extends Tool {
                     * object with a 'document' value.
                     */
                     PreprocessPipeline pipeline = new PreprocessPipeline(assistant, lesson.pipeline);
+                    context.pipeline = pipeline;
 
 
                     /*
@@ -705,6 +693,7 @@ class Train extends Tool {
                     /* Set up the preprocessing pipeline (may be a null one) */
 
                     PreprocessPipeline pipeline = new PreprocessPipeline(assistant, lesson.pipeline);
+                    context.pipeline = pipeline;
 
 
                     /* Train the NER */
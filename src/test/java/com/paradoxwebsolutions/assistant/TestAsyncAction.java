@@ -0,0 +1,200 @@
+package com.paradoxwebsolutions.assistant;
+
+import com.paradoxwebsolutions.assistant.actions.ActionList;
+import com.paradoxwebsolutions.assistant.actions.ActionTimeout;
+import com.paradoxwebsolutions.core.ApplicationError;
+import com.paradoxwebsolutions.core.ObjectFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestAsyncAction {
+
+    private static final ObjectFactory factory = new ObjectFactory();
+
+    private final Assistant assistant = new Assistant("test");
+    private final ClientSession session = new ClientSession(new SessionData("test", "user"), assistant);
+
+    /** The names of the actions performed, in order */
+
+    private final List<String> performed = Collections.synchronizedList(new ArrayList<String>());
+
+
+    /**
+     * Creates a synchronous action that records and utters its name.
+     */
+    private Action sync(final String name) {
+        return (assistant, session, response) -> {
+            performed.add(name);
+            response.utter(name);
+        };
+    }
+
+
+    /**
+     * Creates an asynchronous action that records and utters its name after a delay.
+     */
+    private AsyncAction async(final String name, final long delay) {
+        return (assistant, session, response) -> CompletableFuture.runAsync(() -> {
+            try {
+                Thread.sleep(delay);
+            }
+            catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+            performed.add(name);
+            response.utter(name);
+        });
+    }
+
+
+    /**
+     * Creates an asynchronous action that fails.
+     */
+    private AsyncAction failing(final String message) {
+        return (assistant, session, response) -> CompletableFuture.failedFuture(new ApplicationError(message));
+    }
+
+
+    /**
+     * Creates an asynchronous action that never completes.
+     */
+    private AsyncAction hanging() {
+        return (assistant, session, response) -> new CompletableFuture<Void>();
+    }
+
+
+    /**
+     * Performs an action, returning the client response as json.
+     */
+    private String perform(final Action action) throws Exception {
+        ClientResponse response = new ClientResponse();
+        action.perform(assistant, session, response);
+        return factory.toJson(response);
+    }
+
+
+    /**
+     * Returns the client response json for a list of utterances.
+     */
+    private static String utterances(final String... texts) throws Exception {
+        ClientResponse response = new ClientResponse();
+        for (String text : texts) response.utter(text);
+        return factory.toJson(response);
+    }
+
+
+
+    /**
+     * Waiting on a stage returns its result, and failures are reported as application errors
+     */
+    @Test public void testAwait() throws Exception {
+        assertEquals("Result returned", "done", AsyncAction.await(CompletableFuture.completedFuture("done")));
+
+        ApplicationError error = new ApplicationError("failed");
+        try {
+            AsyncAction.await(CompletableFuture.failedFuture(error));
+            fail("Application error not thrown");
+        }
+        catch (ApplicationError x) {
+            assertSame("Application error passed on", error, x);
+        }
+
+        try {
+            AsyncAction.await(CompletableFuture.supplyAsync(() -> {throw new IllegalStateException("broken");}));
+            fail("Runtime error not thrown");
+        }
+        catch (ApplicationError x) {
+            assertEquals("Runtime error wrapped", "Action failed: broken", x.getMessage());
+            assertTrue("Runtime error is the cause", x.getCause() instanceof IllegalStateException);
+        }
+    }
+
+
+
+    /**
+     * Action lists perform each action once the previous one has completed
+     */
+    @Test public void testActionListOrder() throws Exception {
+        ActionList list = new ActionList(async("first", 100), sync("second"), async("third", 10), sync("fourth"));
+
+        assertEquals("Response in order", utterances("first", "second", "third", "fourth"), perform(list));
+        assertEquals("Performed in order", List.of("first", "second", "third", "fourth"), performed);
+    }
+
+
+
+    /**
+     * Actions completing in time are added to the response, and the fallback is not used
+     */
+    @Test public void testActionTimeoutSuccess() throws Exception {
+        ActionTimeout action = new ActionTimeout(async("action", 10), 5000, sync("fallback"));
+
+        assertEquals("Action response", utterances("action"), perform(action));
+        assertEquals("Fallback not performed", List.of("action"), performed);
+    }
+
+
+
+    /**
+     * Failed actions use the fallback, or pass the failure on if there is none
+     */
+    @Test public void testActionTimeoutFailure() throws Exception {
+        assertEquals("Fallback response", utterances("fallback"), perform(new ActionTimeout(failing("unavailable"), 5000, sync("fallback"))));
+
+        try {
+            perform(new ActionTimeout(failing("unavailable"), 5000, null));
+            fail("Failure not passed on");
+        }
+        catch (ApplicationError x) {
+            assertTrue("Failure reason reported", x.getMessage().contains("unavailable"));
+        }
+    }
+
+
+
+    /**
+     * Timed out actions use the fallback (off the timeout thread), and their late output is discarded
+     */
+    @Test public void testActionTimeoutFallback() throws Exception {
+        List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        Action fallback = (assistant, session, response) -> {
+            threads.add(Thread.currentThread().getName());
+            response.utter("fallback");
+        };
+
+        assertEquals("Fallback response", utterances("fallback"), perform(new ActionTimeout(hanging(), 50, fallback)));
+        assertFalse("Fallback not run on the timeout thread", threads.get(0).contains("DelayScheduler"));
+
+        ClientResponse response = new ClientResponse();
+        new ActionTimeout(async("late", 200), 50, null).performAsync(assistant, session, response).exceptionally((x) -> null);
+        Thread.sleep(300);
+        assertEquals("Late action performed", List.of("late"), performed);
+        assertEquals("Late response discarded", utterances(), factory.toJson(response));
+    }
+
+
+
+    /**
+     * Synchronous actions complete before the timeout starts, so never time out
+     */
+    @Test public void testActionTimeoutSynchronous() throws Exception {
+        Action slow = (assistant, session, response) -> {
+            try {
+                Thread.sleep(100);
+            }
+            catch (InterruptedException x) {
+                Thread.currentThread().interrupt();
+            }
+            response.utter("slow");
+        };
+
+        assertEquals("Action response", utterances("slow"), perform(new ActionTimeout(slow, 10, sync("fallback"))));
+    }
+}
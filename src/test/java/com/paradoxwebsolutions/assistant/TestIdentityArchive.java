@@ -0,0 +1,133 @@
+package com.paradoxwebsolutions.assistant;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestIdentityArchive {
+
+    private static final String json = "{\"name\": \"test\"}";
+    private static final String model = "model content that is not compressed";
+
+
+    /**
+     * Version 2 archives store aligned, uncompressed models readable as buffers
+     */
+    @Test public void testIdentityArchiveV2() throws Exception {
+        File dir = Files.createTempDirectory("archive").toFile();
+        File archive = new File(dir, "test.zip");
+
+        try {
+            File jsonFile = new File(dir, "assistant.json");
+            File modelFile = new File(dir, "en-model.bin");
+            Files.write(jsonFile.toPath(), json.getBytes(StandardCharsets.UTF_8));
+            Files.write(modelFile.toPath(), model.getBytes(StandardCharsets.UTF_8));
+
+            try (IdentityArchive.Writer writer = new IdentityArchive.Writer(archive)) {
+                writer.addDirectory("extensions/");
+                writer.add("assistant.json", jsonFile);
+                writer.add("en-model.bin", modelFile);
+            }
+
+            try (ZipFile zip = new ZipFile(archive)) {
+                assertEquals("Model stored", ZipEntry.STORED, zip.getEntry("en-model.bin").getMethod());
+                assertEquals("Still a valid zip", model, new String(zip.getInputStream(zip.getEntry("en-model.bin")).readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            IdentityArchive identity = new IdentityArchive(archive.getPath());
+            assertNotNull("Model mapped", identity.getBuffer("en-model.bin"));
+            assertNull("JSON not mapped", identity.getBuffer("assistant.json"));
+            assertEquals("Model read", model, new String(identity.getInputStream("en-model.bin").readAllBytes(), StandardCharsets.UTF_8));
+            assertEquals("JSON read", json, new String(identity.getInputStream("assistant.json").readAllBytes(), StandardCharsets.UTF_8));
+
+            byte[] bytes = Files.readAllBytes(archive.toPath());
+            int offset = new String(bytes, StandardCharsets.ISO_8859_1).indexOf(model);
+            assertEquals("Model aligned", 0, offset % 4096);
+        }
+        finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+
+
+    /**
+     * Version 1 archives (plain zip files) remain readable
+     */
+    @Test public void testIdentityArchiveV1() throws Exception {
+        File dir = Files.createTempDirectory("archive").toFile();
+        File archive = new File(dir, "test.zip");
+
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+                zip.putNextEntry(new ZipEntry("en-model.bin"));
+                zip.write(model.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+
+            IdentityArchive identity = new IdentityArchive(archive.getPath());
+            assertNull("Model not mapped", identity.getBuffer("en-model.bin"));
+            assertEquals("Model read", model, new String(identity.getInputStream("en-model.bin").readAllBytes(), StandardCharsets.UTF_8));
+        }
+        finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+
+
+    /**
+     * Version 2 archives modified after being written are read as version 1 archives
+     */
+    @Test public void testIdentityArchiveModified() throws Exception {
+        File dir = Files.createTempDirectory("archive").toFile();
+        File archive = new File(dir, "test.zip");
+        File modified = new File(dir, "modified.zip");
+
+        try {
+            File modelFile = new File(dir, "en-model.bin");
+            Files.write(modelFile.toPath(), model.getBytes(StandardCharsets.UTF_8));
+
+            try (IdentityArchive.Writer writer = new IdentityArchive.Writer(archive)) {
+                writer.add("en-model.bin", modelFile);
+            }
+
+
+            /* Copy the archive with a new file first, so the (still stored) model moves */
+
+            try (ZipFile zip = new ZipFile(archive); ZipOutputStream out = new ZipOutputStream(new FileOutputStream(modified))) {
+                out.putNextEntry(new ZipEntry("assistant.json"));
+                out.write(json.getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+
+                for (ZipEntry entry : Collections.list(zip.entries())) {
+                    out.putNextEntry(new ZipEntry(entry));
+                    out.write(zip.getInputStream(entry).readAllBytes());
+                    out.closeEntry();
+                }
+            }
+
+            try (ZipFile zip = new ZipFile(modified)) {
+                assertEquals("Model still stored", ZipEntry.STORED, zip.getEntry("en-model.bin").getMethod());
+                assertNotNull("Stale table of contents", zip.getEntry(IdentityArchive.TOC));
+            }
+
+            IdentityArchive identity = new IdentityArchive(modified.getPath());
+            assertNull("Model not mapped", identity.getBuffer("en-model.bin"));
+            assertEquals("Model read", model, new String(identity.getInputStream("en-model.bin").readAllBytes(), StandardCharsets.UTF_8));
+        }
+        finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+}
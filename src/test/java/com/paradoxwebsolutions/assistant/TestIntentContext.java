@@ -0,0 +1,124 @@
+package com.paradoxwebsolutions.assistant;
+
+import com.paradoxwebsolutions.assistant.intentMatchers.IntentMatcherExpression;
+import com.paradoxwebsolutions.core.ObjectFactory;
+import com.paradoxwebsolutions.core.StringMap;
+import com.paradoxwebsolutions.expression.ExpressionContext;
+
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestIntentContext {
+
+    private static final ObjectFactory factory = new ObjectFactory();
+
+
+    /**
+     * Creates intent data with the given entities (name, value pairs).
+     */
+    private static IntentData intent(final String name, final String... entities) {
+        StringMap map = new StringMap();
+        for (int i = 0; i < entities.length; i += 2) map.put(entities[i], entities[i + 1]);
+
+        IntentData intent = new IntentData(name);
+        intent.setEntities(map);
+        return intent;
+    }
+
+
+    /**
+     * Creates an intent matcher for an expression, compiled or interpreted.
+     */
+    private static IntentMatcherExpression matcher(final String expression, final boolean compile) throws Exception {
+        IntentMatcherExpression matcher = factory.fromJson("{\"compile\": " + compile + "}", IntentMatcherExpression.class);
+        matcher.setIntent(expression);
+        matcher.init();
+        return matcher;
+    }
+
+
+
+    /**
+     * The reserved names take precedence over entities, and entities over the intent name
+     */
+    @Test public void testIntentContextPrecedence() throws Exception {
+        IntentData data = intent("book", "intent", "cancel", "slots", "none", "book", "flight", "city", "Paris");
+        ExpressionContext context = data.getContext();
+
+        assertEquals("Reserved intent name", "book", context.get("intent"));
+        assertSame("Reserved slots", data.getEntities(), context.get("slots"));
+        assertEquals("Entity over intent name", "flight", context.get("book"));
+        assertEquals("Entity value", "Paris", context.get("city"));
+        assertEquals("Intent name is true", Boolean.TRUE, intent("book").getContext().get("book"));
+        assertNull("Missing value", context.get("date"));
+
+        for (boolean compile : new boolean[] {true, false}) {
+            assertTrue("Reserved intent matched (" + compile + ")", matcher("intent == \"book\"", compile).match(data));
+            assertFalse("Entity not matched as intent (" + compile + ")", matcher("intent == \"cancel\"", compile).match(data));
+            assertTrue("Entity matched by name (" + compile + ")", matcher("city == \"Paris\"", compile).match(data));
+            assertTrue("Intent name matched (" + compile + ")", matcher("book", compile).match(intent("book")));
+        }
+    }
+
+
+
+    /**
+     * The whole map interface reflects the intent data
+     */
+    @Test public void testIntentContextMap() throws Exception {
+        IntentData data = intent("book", "city", "Paris");
+        ExpressionContext context = data.getContext();
+
+        assertEquals("Size", 4, context.size());
+        assertFalse("Not empty", context.isEmpty());
+        assertEquals("Keys", Set.of("book", "intent", "slots", "city"), context.keySet());
+        assertTrue("Contains value", context.containsValue("Paris"));
+        assertEquals("Default for missing value", "none", context.getOrDefault("date", "none"));
+        assertEquals("Equal to a copy", Map.copyOf(context), context);
+
+        data.getEntities().put("date", "today");
+        assertEquals("Reflects changes", 5, context.entrySet().size());
+        assertTrue("Contains new key", context.containsKey("date"));
+
+        ExpressionContext copy = (ExpressionContext) context.clone();
+        copy.set("city", "London");
+        assertEquals("Copy modifiable", "London", copy.get("city"));
+        assertEquals("View unchanged", "Paris", context.get("city"));
+    }
+
+
+
+    /**
+     * The context cannot be modified
+     */
+    @Test public void testIntentContextReadOnly() throws Exception {
+        ExpressionContext context = intent("book", "city", "Paris").getContext();
+
+        Runnable[] modifiers = {
+            () -> context.put("city", "London"),
+            () -> context.set("city", "London"),
+            () -> context.putAll(Map.of("city", "London")),
+            () -> context.putIfAbsent("date", "today"),
+            () -> context.remove("city"),
+            () -> context.replace("city", "London"),
+            () -> context.computeIfAbsent("date", (k) -> "today"),
+            () -> context.merge("city", "London", (a, b) -> b),
+            () -> context.clear(),
+            () -> context.keySet().remove("city")
+        };
+
+        for (int i = 0; i < modifiers.length; ++i) {
+            try {
+                modifiers[i].run();
+                fail("Modifier " + i + " not rejected");
+            }
+            catch (UnsupportedOperationException x) {
+            }
+        }
+        assertEquals("Context unchanged", "Paris", context.get("city"));
+    }
+}
@@ -0,0 +1,187 @@
+package com.paradoxwebsolutions.assistant;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import opennlp.tools.doccat.BagOfWordsFeatureGenerator;
+import opennlp.tools.doccat.DoccatFactory;
+import opennlp.tools.doccat.DoccatModel;
+import opennlp.tools.doccat.DocumentCategorizerME;
+import opennlp.tools.doccat.DocumentSample;
+import opennlp.tools.doccat.FeatureGenerator;
+import opennlp.tools.ml.AbstractTrainer;
+import opennlp.tools.ml.maxent.GISModel;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.NameSample;
+import opennlp.tools.namefind.TokenNameFinderFactory;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.model.ModelUtil;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestMappedMaxentModel {
+
+    private static final String[] documents = {"I want to fly to London", "book a flight to Paris", "hello there", "good morning to you"};
+    private static final String[] intents   = {"fly",                     "fly",                   "greet",       "greet"};
+    private static final String[] names     = {"I want to fly to <START:city> London <END> tomorrow", "book a flight to <START:city> Paris <END>"};
+    private static final String KEY = ModelRegistry.hash(new byte[] {1});
+
+
+    private static TrainingParameters parameters() {
+        TrainingParameters params = ModelUtil.createDefaultTrainingParameters();
+        params.put(TrainingParameters.CUTOFF_PARAM, 1);
+        params.put(AbstractTrainer.VERBOSE_PARAM, false);
+        return params;
+    }
+
+
+    /**
+     * Returns the serialized content of a categorizer model.
+     */
+    private static byte[] serialize(final DoccatModel model) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.serialize(out);
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Returns the serialized content of a name finder model.
+     */
+    private static byte[] serialize(final TokenNameFinderModel model) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.serialize(out);
+        return out.toByteArray();
+    }
+
+
+    /**
+     * Trains a name finder model.
+     */
+    private static TokenNameFinderModel trainNameFinder() throws Exception {
+        List<NameSample> samples = new ArrayList<NameSample>();
+        for (int i = 0; i < 10; ++i) for (String name : names) samples.add(NameSample.parse(name, false));
+
+        return NameFinderME.train("en", null, ObjectStreamUtils.createObjectStream(samples), parameters(), new TokenNameFinderFactory());
+    }
+
+
+
+    /**
+     * Mapped categorizer models give the same results as the original, and are loaded from the cache alone
+     */
+    @Test public void testMappedMaxentCategorizer() throws Exception {
+        List<DocumentSample> samples = new ArrayList<DocumentSample>();
+        for (int i = 0; i < documents.length; ++i) samples.add(new DocumentSample(intents[i], documents[i].split(" ")));
+
+        DoccatModel model = DocumentCategorizerME.train("en", ObjectStreamUtils.createObjectStream(samples), parameters(),
+            new DoccatFactory(new FeatureGenerator[] { new BagOfWordsFeatureGenerator() }));
+        byte[] content = serialize(model);
+        File dir = Files.createTempDirectory("models").toFile();
+
+        try {
+            DoccatModel mapped = MappedMaxentModel.loadCategorizer(new ByteArrayInputStream(content), dir, "test", KEY);
+            assertTrue("Model mapped", mapped.getMaxentModel() instanceof MappedMaxentModel);
+
+            DoccatModel cached = MappedMaxentModel.loadCategorizer(new ByteArrayInputStream(new byte[0]), dir, "test", KEY);
+            assertTrue("Cached model mapped", cached.getMaxentModel() instanceof MappedMaxentModel);
+            assertEquals("Language restored", "en", cached.getLanguage());
+
+            String[] text = "I want to book a flight to Berlin".split(" ");
+            double[] expected = new DocumentCategorizerME(model).categorize(text);
+            assertArrayEquals("Same scores", expected, new DocumentCategorizerME(mapped).categorize(text), 0.0);
+            assertArrayEquals("Same scores when cached", expected, new DocumentCategorizerME(cached).categorize(text), 0.0);
+        }
+        finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+
+
+    /**
+     * Without a cache directory, models are used as read
+     */
+    @Test public void testMappedMaxentUncached() throws Exception {
+        TokenNameFinderModel model = trainNameFinder();
+        TokenNameFinderModel loaded = MappedMaxentModel.loadNameFinder(new ByteArrayInputStream(serialize(model)), null, "test", KEY);
+
+        assertTrue("GIS model kept", loaded.getArtifact("nameFinder.model") instanceof GISModel);
+    }
+
+
+    /**
+     * Mapped name finder models give the same results as the original, and are cached
+     */
+    @Test public void testMappedMaxentNameFinder() throws Exception {
+        TokenNameFinderModel model = trainNameFinder();
+        byte[] content = serialize(model);
+        File dir = Files.createTempDirectory("models").toFile();
+
+        try {
+            TokenNameFinderModel mapped = MappedMaxentModel.loadNameFinder(new ByteArrayInputStream(content), dir, "test", KEY);
+            TokenNameFinderModel cached = MappedMaxentModel.loadNameFinder(new ByteArrayInputStream(new byte[0]), dir, "test", KEY);
+            assertEquals("Compiled file reused", 1, dir.listFiles().length);
+            assertEquals("Compiled file named by key", "test-" + KEY + ".mxm", dir.listFiles()[0].getName());
+
+            String[] tokens = "I want to fly to Paris tomorrow".split(" ");
+            Span[] expected = new NameFinderME(model).find(tokens);
+            assertEquals("Name found", 1, expected.length);
+            assertArrayEquals("Same names", expected, new NameFinderME(mapped).find(tokens));
+            assertArrayEquals("Same names when cached", expected, new NameFinderME(cached).find(tokens));
+        }
+        finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+
+
+    /**
+     * Cached files that do not match the model are compiled again
+     */
+    @Test public void testMappedMaxentInvalidCache() throws Exception {
+        TokenNameFinderModel model = trainNameFinder();
+        byte[] serialized = serialize(model);
+        File dir = Files.createTempDirectory("models").toFile();
+
+        try {
+            String[] tokens = "I want to fly to Paris tomorrow".split(" ");
+            Span[] expected = new NameFinderME(model).find(tokens);
+
+            /* Truncated file */
+
+            MappedMaxentModel.loadNameFinder(new ByteArrayInputStream(serialized), dir, "test", KEY);
+            File file = new File(dir, "test-" + KEY + ".mxm");
+            byte[] content = Files.readAllBytes(file.toPath());
+            Files.write(file.toPath(), Arrays.copyOf(content, content.length / 2));
+            assertArrayEquals("Truncated file replaced", expected,
+                new NameFinderME(MappedMaxentModel.loadNameFinder(new ByteArrayInputStream(serialized), dir, "test", KEY)).find(tokens));
+            assertEquals("Complete file written", content.length, file.length());
+
+            /* File compiled for a different model */
+
+            String other = ModelRegistry.hash(new byte[] {2});
+            MappedMaxentModel.loadNameFinder(new ByteArrayInputStream(serialized), dir, "test", other);
+            Files.copy(new File(dir, "test-" + other + ".mxm").toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            assertArrayEquals("Foreign file replaced", expected,
+                new NameFinderME(MappedMaxentModel.loadNameFinder(new ByteArrayInputStream(serialized), dir, "test", KEY)).find(tokens));
+            assertArrayEquals("Key file restored", content, Files.readAllBytes(file.toPath()));
+        }
+        finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+}
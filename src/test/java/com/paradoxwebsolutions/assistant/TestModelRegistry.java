@@ -0,0 +1,61 @@
+package com.paradoxwebsolutions.assistant;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestModelRegistry {
+
+    private static InputStream content(final String value) {return new ByteArrayInputStream(value.getBytes());}
+
+
+    /**
+     * Identical models are shared, and released with their last owner
+     */
+    @Test public void testModelRegistrySharing() throws Exception {
+        Object owner1 = new Object();
+        Object owner2 = new Object();
+        int size = ModelRegistry.size();
+
+        StringBuilder first = ModelRegistry.acquire(owner1, content("model-a"), StringBuilder.class, (in) -> new StringBuilder());
+        StringBuilder second = ModelRegistry.acquire(owner2, content("model-a"), StringBuilder.class, (in) -> new StringBuilder());
+        StringBuilder other = ModelRegistry.acquire(owner2, content("model-b"), StringBuilder.class, (in) -> new StringBuilder());
+
+        assertSame("Identical content shared", first, second);
+        assertNotSame("Different content not shared", first, other);
+        assertEquals("Models registered", size + 2, ModelRegistry.size());
+
+        ModelRegistry.release(owner1);
+        assertEquals("Shared model retained", size + 2, ModelRegistry.size());
+
+        ModelRegistry.release(owner2);
+        assertEquals("Models released", size, ModelRegistry.size());
+    }
+
+
+    /**
+     * Buffer backed content is hashed and loaded in place, and shared with identical stream content
+     */
+    @Test public void testModelRegistryBuffer() throws Exception {
+        Object owner = new Object();
+        List<InputStream> streams = new ArrayList<InputStream>();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(7).put("model-c".getBytes()).flip();
+        StringBuilder mapped = ModelRegistry.acquire(owner, new IdentityArchive.ByteBufferInputStream(buffer), StringBuilder.class,
+            (in) -> {streams.add(in); return new StringBuilder(new String(in.readAllBytes()));});
+        StringBuilder copied = ModelRegistry.acquire(owner, content("model-c"), StringBuilder.class, (in) -> new StringBuilder());
+
+        assertSame("Identical content shared", mapped, copied);
+        assertEquals("Content loaded", "model-c", mapped.toString());
+        assertTrue("Loaded from the buffer", streams.get(0) instanceof IdentityArchive.ByteBufferInputStream);
+        assertEquals("Same hash", ModelRegistry.hash("model-c".getBytes()), ModelRegistry.hash(buffer.duplicate()));
+
+        ModelRegistry.release(owner);
+    }
+}
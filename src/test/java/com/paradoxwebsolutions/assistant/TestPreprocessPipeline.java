@@ -0,0 +1,188 @@
+package com.paradoxwebsolutions.assistant;
+
+import com.paradoxwebsolutions.assistant.categorizers.CategorizerRegex;
+import com.paradoxwebsolutions.assistant.preprocessors.PreprocessorCopy;
+import com.paradoxwebsolutions.assistant.preprocessors.PreprocessorLanguage;
+import com.paradoxwebsolutions.assistant.preprocessors.PreprocessorLowercase;
+import com.paradoxwebsolutions.assistant.preprocessors.PreprocessorPOS;
+import com.paradoxwebsolutions.assistant.preprocessors.PreprocessorReplace;
+import com.paradoxwebsolutions.assistant.preprocessors.PreprocessorTokenizer;
+import com.paradoxwebsolutions.core.Config;
+import com.paradoxwebsolutions.core.GenericMap;
+import com.paradoxwebsolutions.core.ObjectFactory;
+import com.paradoxwebsolutions.core.ObjectInitializer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestPreprocessPipeline {
+
+    public static String quotes(final String in) {return in.replace('\'', '"');}
+
+    private static final ObjectFactory factory = new ObjectFactory();
+
+
+    /**
+     * Joins two token streams.
+     */
+    public static class Join extends Preprocessor {
+        @Override
+        public void preprocess(ClientSession session, GenericMap input) {
+            input.put("joined", String.join(" ", (String[]) input.get("masked")) + "|" + String.join(" ", (String[]) input.get("vowels")));
+        }
+
+        @Override
+        public Set<String> getInputs() {
+            return Set.of("masked", "vowels");
+        }
+
+        @Override
+        public Set<String> getOutputs() {
+            return Set.of("joined");
+        }
+    }
+
+
+    /**
+     * Creates a test assistant with a single regex categorizer on the given input.
+     */
+    private Assistant createAssistant(final String input) throws Exception {
+        Assistant assistant = new Assistant("test");
+
+        List<Preprocessor> preprocessors = new ArrayList<Preprocessor>();
+        preprocessors.add(new PreprocessorLowercase());
+        preprocessors.add(factory.fromJson(quotes("{'input': 'document', 'output': 'sentence'}"), PreprocessorCopy.class));
+        preprocessors.add(new PreprocessorTokenizer());
+        assistant.setPreprocessors(preprocessors);
+
+        Categorizers categorizers = new Categorizers();
+        categorizers.put("regex", factory.fromJson(quotes("{'input': '" + input + "'}"), CategorizerRegex.class));
+        assistant.setCategorizers(categorizers);
+
+        return assistant;
+    }
+
+
+    /**
+     * Unpruned pipelines run every preprocessor
+     */
+    @Test public void testPreprocessPipelineNoPrune() throws Exception {
+        Assistant assistant = createAssistant("sentence");
+        ClientSession session = new ClientSession(new SessionData("test", "user"), assistant);
+
+        Input input = new PreprocessPipeline(assistant, "chat").preprocess(session, "Hello There");
+
+        assertEquals("Sentence output produced", "hello there", input.get("sentence"));
+        assertTrue("Token output produced", input.containsKey("tokens"));
+    }
+
+
+    /**
+     * Pruned pipelines only run preprocessors whose outputs are used
+     */
+    @Test public void testPreprocessPipelinePrune() throws Exception {
+        Assistant assistant = createAssistant("sentence");
+        ClientSession session = new ClientSession(new SessionData("test", "user"), assistant);
+
+        Input input = new PreprocessPipeline(assistant, "chat", true).preprocess(session, "Hello There");
+
+        assertEquals("Sentence output produced", "hello there", input.get("sentence"));
+        assertFalse("Unused token output pruned", input.containsKey("tokens"));
+    }
+
+
+    /**
+     * Preprocessors feeding required outputs are kept
+     */
+    @Test public void testPreprocessPipelinePruneDependencies() throws Exception {
+        Assistant assistant = createAssistant("tokens");
+        ClientSession session = new ClientSession(new SessionData("test", "user"), assistant);
+
+        Input input = new PreprocessPipeline(assistant, "chat", true).preprocess(session, "Hello There");
+
+        assertArrayEquals("Token output produced", new String[] {"hello", "there"}, (String[]) input.get("tokens"));
+        assertFalse("Unused sentence output pruned", input.containsKey("sentence"));
+    }
+
+
+    /**
+     * Parallel pipelines produce the same output as sequential pipelines
+     */
+    @Test public void testPreprocessPipelineParallel() throws Exception {
+        Assistant assistant = createAssistant("tokens");
+        ClientSession session = new ClientSession(new SessionData("test", "user"), assistant);
+
+        PreprocessPipeline pipeline = new PreprocessPipeline(assistant, "chat");
+        Input sequential = pipeline.preprocess(session, "Hello There");
+
+        pipeline.setParallel(true);
+        Input parallel = pipeline.preprocess(session, "Hello There");
+
+        assertEquals("Same outputs produced", sequential.keySet(), parallel.keySet());
+        assertEquals("Sentence output produced", "hello there", parallel.get("sentence"));
+        assertEquals("Document output produced", "hello there", parallel.get("document"));
+        assertArrayEquals("Token output produced", new String[] {"hello", "there"}, (String[]) parallel.get("tokens"));
+    }
+
+
+
+    /**
+     * Stages using the session language wait for language detection
+     */
+    @Test public void testPreprocessPipelinePlanLanguage() throws Exception {
+        Assistant assistant = new Assistant("test");
+
+        List<Preprocessor> preprocessors = new ArrayList<Preprocessor>();
+        preprocessors.add(factory.fromJson(quotes("{'input': 'document', 'output': 'language'}"), PreprocessorLanguage.class));
+        preprocessors.add(new PreprocessorTokenizer());
+        preprocessors.add(new PreprocessorPOS());
+        preprocessors.add(factory.fromJson(quotes("{'language': 'en', 'output': 'pos_en'}"), PreprocessorPOS.class));
+        assistant.setPreprocessors(preprocessors);
+
+        PreprocessPipeline pipeline = new PreprocessPipeline(assistant, "chat");
+        pipeline.setParallel(true);
+
+        assertArrayEquals("Tokenizer is independent of language detection", new int[] {}, pipeline.getDependencies(1));
+        assertArrayEquals("Session language POS waits for language detection", new int[] {0, 1}, pipeline.getDependencies(2));
+        assertArrayEquals("Fixed language POS only waits for tokens", new int[] {1}, pipeline.getDependencies(3));
+    }
+
+
+
+    /**
+     * Independent branches reading the same tokens run concurrently without affecting each other
+     */
+    @Test public void testPreprocessPipelineParallelBranches() throws Exception {
+        Assistant assistant = new Assistant("test");
+
+        List<Preprocessor> preprocessors = new ArrayList<Preprocessor>();
+        preprocessors.add(new PreprocessorTokenizer());
+        preprocessors.add(factory.fromJson(quotes("{'output': 'masked', 'replacements': {'[0-9]': '#'}}"), PreprocessorReplace.class));
+        preprocessors.add(factory.fromJson(quotes("{'output': 'vowels', 'replacements': {'[aeiou]': '*'}}"), PreprocessorReplace.class));
+        preprocessors.add(new Join());
+        for (Preprocessor preprocessor : preprocessors) new ObjectInitializer().initialize(preprocessor, assistant, new Config());
+        assistant.setPreprocessors(preprocessors);
+
+        PreprocessPipeline pipeline = new PreprocessPipeline(assistant, "chat");
+        pipeline.setParallel(true);
+
+        assertArrayEquals("First branch waits for tokens", new int[] {0}, pipeline.getDependencies(1));
+        assertArrayEquals("Second branch waits for tokens", new int[] {0}, pipeline.getDependencies(2));
+        assertArrayEquals("Join waits for both branches", new int[] {1, 2}, pipeline.getDependencies(3));
+
+        ClientSession session = new ClientSession(new SessionData("test", "user"), assistant);
+        for (int i = 0; i < 50; ++i) {
+            Input input = pipeline.preprocess(session, "order 66 is due");
+
+            assertArrayEquals("Tokens unchanged", new String[] {"order", "66", "is", "due"}, (String[]) input.get("tokens"));
+            assertArrayEquals("First branch output", new String[] {"order", "##", "is", "due"}, (String[]) input.get("masked"));
+            assertArrayEquals("Second branch output", new String[] {"*rd*r", "66", "*s", "d**"}, (String[]) input.get("vowels"));
+            assertEquals("Join output", "order ## is due|*rd*r 66 *s d**", input.get("joined"));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.paradoxwebsolutions.assistant.categorizers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+public class TestLookupTable {
+
+    /**
+     * Keys are found after compiling and reloading, and keys trained for more than one intent are dropped
+     */
+    @Test public void testLookup() throws Exception {
+        CategorizerLookup categorizer = new CategorizerLookup();
+
+        LookupTable.Builder builder = new LookupTable.Builder();
+        builder.add(categorizer.key("hello there"), "greeting");
+        builder.add(categorizer.key(new String[] {"What's", "the", "weather", "like"}), "get_weather");
+        builder.add(categorizer.key("thanks"), "thank_you");
+        builder.add(categorizer.key("thanks"), "goodbye");
+        for (int i = 0; i < 100; ++i) builder.add(categorizer.key("filler " + i), "filler");
+
+        assertEquals("Conflicts", 1, builder.getConflicts().size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        builder.write(new DataOutputStream(bytes));
+        LookupTable table = LookupTable.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals("Size", 102, table.size());
+        assertEquals("Document match", "greeting", table.get(categorizer.key("  Hello\tthere ")));
+        assertEquals("Token match", "get_weather", table.get(categorizer.key("what's the weather like")));
+        assertEquals("Filler match", "filler", table.get(categorizer.key("filler 99")));
+        assertNull("Conflict excluded", table.get(categorizer.key("thanks")));
+        assertNull("No match", table.get(categorizer.key("hello")));
+    }
+}
@@ -0,0 +1,50 @@
+package com.paradoxwebsolutions.assistant.categorizers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+
+public class TestPatternAutomaton {
+
+    /**
+     * The automaton reports the same matches as matching each pattern individually
+     */
+    @Test public void testMatchesPatterns() {
+
+        String[] regexes = new String[] {
+            "hello", "hi+\\b", "^(good )?(morning|evening)$", "[a-c]{2,3}x?", "what.*time", "(?:ab|a)c",
+            "\\d+\\s*(am|pm)", "[^\\sa-m]+$", "(\\w)\\1", "bye|goodbye|see ya", "(?i)joke", "a*?b", "", "x{0}y"
+        };
+
+        Map<String, String[]> expressions = new LinkedHashMap<String, String[]>();
+        for (int i = 0; i < regexes.length; ++i) expressions.put("intent" + i, new String[] {regexes[i]});
+        PatternAutomaton automaton = new PatternAutomaton(expressions);
+
+        List<String> inputs = new ArrayList<String>(List.of(
+            "hello there", "hiii", "hii there", "good morning", "evening\n", "good evening!", "abcx", "what is the time",
+            "ac", "abc", "12 pm", "7am", "nope", "bb", "see ya", "JOKE", "aaab", "y", "", "\u00e9t\u00e9 \ud83d\ude00"
+        ));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 500; ++i) {
+            StringBuilder input = new StringBuilder();
+            for (int n = random.nextInt(8); n > 0; --n) input.append("abcmxyz hi12\n".charAt(random.nextInt(13)));
+            inputs.add(input.toString());
+        }
+
+        for (String input : inputs) {
+            List<String> expected = new ArrayList<String>();
+            for (int i = 0; i < regexes.length; ++i) {
+                if (Pattern.compile(regexes[i]).matcher(input).lookingAt()) expected.add("intent" + i);
+            }
+            assertEquals("Matches for '" + input + "'", expected, automaton.match(input));
+        }
+    }
+}
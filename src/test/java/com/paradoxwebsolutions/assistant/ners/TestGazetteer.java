@@ -0,0 +1,42 @@
+package com.paradoxwebsolutions.assistant.ners;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+
+public class TestGazetteer {
+
+    /**
+     * Entries are found leftmost-longest, ignoring case, after compiling and reloading
+     */
+    @Test public void testFind() throws Exception {
+
+        Gazetteer.Builder builder = new Gazetteer.Builder(true);
+        builder.add("city", "New York".split(" "));
+        builder.add("city", "New York City".split(" "));
+        builder.add("city", "York".split(" "));
+        builder.add("team", "City Rovers".split(" "));
+        builder.add("product", "York Peppermint Pattie".split(" "));
+        assertFalse("Duplicate rejected", builder.add("team", "new york".split(" ")));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        builder.write(new DataOutputStream(bytes));
+        Gazetteer gazetteer = Gazetteer.load(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        String[] input = "I flew to new york city to see city rovers and ate a york peppermint".split(" ");
+        List<int[]> matches = gazetteer.find(input);
+
+        assertEquals("Match count", 3, matches.size());
+        assertArrayEquals("Longest match", new int[] {3, 6, 0}, matches.get(0));
+        assertEquals("Team match", "team", gazetteer.getEntity(matches.get(1)[2]));
+        assertArrayEquals("Partial entry falls back to shorter entry", new int[] {13, 14, 0}, matches.get(2));
+    }
+}
@@ -0,0 +1,145 @@
+package com.paradoxwebsolutions.assistant.ners;
+
+import com.paradoxwebsolutions.assistant.Assistant;
+import com.paradoxwebsolutions.assistant.ClientSession;
+import com.paradoxwebsolutions.assistant.Input;
+import com.paradoxwebsolutions.assistant.SessionData;
+import com.paradoxwebsolutions.core.ObjectFactory;
+import com.paradoxwebsolutions.core.StringMap;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+public class TestNERRegex {
+
+    public static String quotes(final String in) {return in.replace('\'', '"');}
+
+    private static final ObjectFactory factory = new ObjectFactory();
+
+    private static final ClientSession session = new ClientSession(new SessionData("test", "user"), new Assistant("test"));
+
+    private static final String PARAMETERS = "{'[0-9]+': 'number', '[0-9]+%': 'number', '\\\\$[0-9]+(\\\\.[0-9]+)?': 'amount', "
+        + "'(?i)order': 'keyword', 'ref-[a-z]+': 'reference', '^x+': 'marker', 'cat|dog': 'pet'}";
+
+
+
+    /**
+     * Creates a regex NER from json configuration.
+     */
+    private static NERRegex create(final String input, final boolean prefilter) throws Exception {
+        NERRegex ner = factory.fromJson(quotes("{'input': '" + input + "', 'prefilter': " + prefilter + ", 'parameters': " + PARAMETERS + "}"), NERRegex.class);
+        ner.init();
+        return ner;
+    }
+
+
+    /**
+     * Extracts entities from a document, as tokens or as a single document.
+     */
+    private static StringMap extract(final NERRegex ner, final String input, final String text) throws Exception {
+        Input data = new Input(text);
+        data.put("tokens", text.split(" "));
+
+        StringMap entities = new StringMap();
+        ner.getEntities(session, data, entities);
+        return entities;
+    }
+
+
+
+    /**
+     * The last match wins - in input order, then configuration order
+     */
+    @Test public void testLastMatch() throws Exception {
+        for (String input : new String[] {"tokens", "document"}) {
+            NERRegex ner = create(input, true);
+
+            assertEquals("Last in input order (" + input + ")", "9", extract(ner, input, "take 7 and 9").get("number"));
+            assertEquals("Last in configuration order (" + input + ")", "50%", extract(ner, input, "up 50%").get("number"));
+            assertEquals("Later match wins (" + input + ")", "3", extract(ner, input, "up 50% then 3").get("number"));
+            assertEquals("Later match wins over configuration order (" + input + ")", "50%", extract(ner, input, "up 3 then 50%").get("number"));
+            assertEquals("Case insensitive (" + input + ")", "ORDER", extract(ner, input, "ORDER 5").get("keyword"));
+        }
+
+        assertEquals("Anchored to each token", "xx", extract(create("tokens", true), "tokens", "a xx").get("marker"));
+        assertNull("Anchored to the document", extract(create("document", true), "document", "a xx").get("marker"));
+    }
+
+
+
+    /**
+     * Literal prefixes are found for simple expressions only
+     */
+    @Test public void testLiteralPrefix() throws Exception {
+        assertEquals("Plain literal", "order", NERRegex.literalPrefix("order"));
+        assertEquals("Escaped punctuation", "#", NERRegex.literalPrefix("\\#\\d+"));
+        assertEquals("Escaped dot", ".com", NERRegex.literalPrefix("\\.com"));
+        assertEquals("Quantified last char (+)", "ab", NERRegex.literalPrefix("abc+"));
+        assertEquals("Quantified last char (?)", "a", NERRegex.literalPrefix("ab?"));
+        assertEquals("Quantified last char ({)", "re", NERRegex.literalPrefix("ref{2}"));
+        assertEquals("Leading anchor", "order", NERRegex.literalPrefix("^order"));
+        assertEquals("Prefix before a group", "ref-", NERRegex.literalPrefix("ref-[a-z]+"));
+
+        assertNull("Quantified only char", NERRegex.literalPrefix("x+"));
+        assertNull("Escaped character class", NERRegex.literalPrefix("\\d+"));
+        assertNull("Alternation", NERRegex.literalPrefix("cat|dog"));
+        assertNull("Alternation after a literal", NERRegex.literalPrefix("order(s|ed)"));
+        assertNull("Inline flags", NERRegex.literalPrefix("(?i)order"));
+        assertNull("Wildcard", NERRegex.literalPrefix(".*"));
+    }
+
+
+
+    /**
+     * Prefiltered and unfiltered runs find identical entities
+     */
+    @Test public void testPrefilter() throws Exception {
+        String[] texts = {
+            "take 7 and 9",
+            "order 50% then 3",
+            "ORDER ref-abc for $20.50",
+            "my cat and dog",
+            "xx marks ref- the spot",
+            "nothing here"
+        };
+
+        for (String input : new String[] {"tokens", "document"}) {
+            NERRegex filtered = create(input, true);
+            NERRegex unfiltered = create(input, false);
+
+            for (String text : texts) {
+                assertEquals("Same entities for '" + text + "' (" + input + ")", extract(unfiltered, input, text), extract(filtered, input, text));
+            }
+        }
+    }
+
+
+
+    /**
+     * The prefix automaton finds every literal contained in an input, including overlapping ones
+     */
+    @Test public void testPrefixAutomaton() throws Exception {
+        String[] literals = {"he", null, "she", "his", "hers", "ref-", "e"};
+        NERRegex.PrefixAutomaton automaton = new NERRegex.PrefixAutomaton(literals);
+
+        String[][] cases = {
+            {"ushers", "he,she,hers,e"},
+            {"this",   "his"},
+            {"xref-1", "ref-,e"},
+            {"refer",  "e"},
+            {"",       ""},
+            {"abc",    ""}
+        };
+
+        for (String[] test : cases) {
+            boolean[] found = new boolean[literals.length];
+            automaton.scan(test[0], found);
+
+            StringBuilder result = new StringBuilder();
+            for (int i = 0; i < found.length; ++i) if (found[i]) result.append(result.length() > 0 ? "," : "").append(literals[i]);
+            assertEquals("Literals in '" + test[0] + "'", test[1], result.toString());
+        }
+    }
+}
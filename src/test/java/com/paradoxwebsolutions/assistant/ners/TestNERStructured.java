@@ -0,0 +1,52 @@
+package com.paradoxwebsolutions.assistant.ners;
+
+import com.paradoxwebsolutions.core.StringMap;
+
+import java.time.LocalDate;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+
+public class TestNERStructured {
+
+    /* A wednesday */
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 10, 14);
+
+
+
+    /**
+     * Values are recognized and normalized
+     */
+    @Test public void testExtract() throws Exception {
+        NERStructured ner = new NERStructured();
+        ner.init();
+
+        assertEquals("Relative day", "2026-10-15", extract(ner, "what is the weather like Tomorrow").get("date"));
+        assertEquals("Weekday", "2026-10-16", extract(ner, "next friday at 3pm").get("date"));
+        assertEquals("Time", "15:00", extract(ner, "next friday at 3pm").get("time"));
+        assertEquals("Day offset", "2026-10-17", extract(ner, "in 3 days").get("date"));
+        assertEquals("Past calendar date", "2027-03-03", extract(ner, "the 3rd of march").get("date"));
+        assertEquals("Calendar date with year", "2026-12-25", extract(ner, "december 25 , 2026").get("date"));
+        assertEquals("Date range", "2026-10-17/2026-10-18", extract(ner, "anything on this weekend").get("date"));
+        assertEquals("Time range", "15:00/17:00", extract(ner, "between 3 and 5pm").get("time"));
+        assertEquals("Time words", "18:30", extract(ner, "half past six in the evening").get("time"));
+        assertEquals("Number words", "121", extract(ner, "a hundred and twenty one tickets").get("number"));
+        assertEquals("Decimal number", "1250.5", extract(ner, "it costs 1,250.50").get("number"));
+        assertEquals("Ordinal", "21", extract(ner, "the twenty-first").get("ordinal"));
+
+        StringMap entities = extract(ner, "one two");
+        assertEquals("Separate numbers", "2", entities.get("number"));
+        assertNull("Bare number is not a time", extract(ner, "I have 3 cats").get("time"));
+    }
+
+
+
+    private static StringMap extract(final NERStructured ner, final String text) {
+        StringMap entities = new StringMap();
+        ner.extract(text.split(" "), TODAY, entities, null);
+        return entities;
+    }
+}
@@ -0,0 +1,67 @@
+package com.paradoxwebsolutions.assistant.preprocessors;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import opennlp.tools.lemmatizer.DictionaryLemmatizer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestLemmaDictionary {
+
+    private static final String dict =
+        "running\tVBG\trun\n" +
+        "ran\tVBD\trun\n" +
+        "runs\tVBZ\trun\n" +
+        "runs\tNNS\trun\n" +
+        "mice\tNNS\tmouse#mice\n" +
+        "the\tDT\tthe\n" +
+        "Paris\tNNP\tParis\n" +
+        "caf\u00e9\tNN\tcaf\u00e9\n";
+
+    private static final String[] tokens = {"Running", "ran", "runs", "runs", "mice", "the", "Paris", "caf\u00e9", "dog"};
+    private static final String[] tags   = {"VBG",     "VBD", "VBZ",  "NNS",  "NNS",  "DT",  "NNP",   "NN",   "NN"};
+
+
+    /**
+     * Lookups match the OpenNLP dictionary lemmatizer
+     */
+    @Test public void testLemmaDictionaryLookup() throws Exception {
+        byte[] source = dict.getBytes(StandardCharsets.UTF_8);
+        LemmaDictionary lemmas = LemmaDictionary.load(new ByteArrayInputStream(source), null, "test");
+        String[] expected = new DictionaryLemmatizer(new ByteArrayInputStream(source)).lemmatize(tokens, tags);
+
+        for (int i = 0; i < tokens.length; ++i) {
+            String lemma = lemmas.lemmatize(tokens[i], tags[i]);
+            assertEquals("Lemma for " + tokens[i], expected[i], lemma == null ? "O" : lemma);
+        }
+        assertNull("Unknown tag", lemmas.lemmatize("runs", "XX"));
+    }
+
+
+    /**
+     * Compiled dictionaries are cached and reused
+     */
+    @Test public void testLemmaDictionaryCache() throws Exception {
+        byte[] source = dict.getBytes(StandardCharsets.UTF_8);
+        File dir = Files.createTempDirectory("lemmas").toFile();
+
+        try {
+            LemmaDictionary first = LemmaDictionary.load(new ByteArrayInputStream(source), dir, "test");
+            assertEquals("Compiled file created", 1, dir.listFiles().length);
+
+            LemmaDictionary second = LemmaDictionary.load(new ByteArrayInputStream(source), dir, "test");
+            assertEquals("Compiled file reused", 1, dir.listFiles().length);
+            assertEquals("Same size", first.size(), second.size());
+            assertEquals("Mapped lookup", "mouse", second.lemmatize("mice", "NNS"));
+        }
+        finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+}
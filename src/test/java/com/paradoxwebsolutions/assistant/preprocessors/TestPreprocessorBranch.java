@@ -0,0 +1,75 @@
+package com.paradoxwebsolutions.assistant.preprocessors;
+
+import com.paradoxwebsolutions.assistant.AssistantFactory;
+import com.paradoxwebsolutions.assistant.ClientSession;
+import com.paradoxwebsolutions.assistant.Preprocessor;
+import com.paradoxwebsolutions.assistant.SessionData;
+import com.paradoxwebsolutions.core.GenericMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestPreprocessorBranch {
+
+    public static String quotes(final String in) {return in.replace('\'', '"');}
+
+    private static final AssistantFactory factory = new AssistantFactory(TestPreprocessorBranch.class.getClassLoader());
+    private static final String   branch  = quotes(
+        "{'type': 'com.paradoxwebsolutions.assistant.preprocessors.PreprocessorBranch'," +
+        " 'languages': {" +
+        "   'en': [{'type': 'com.paradoxwebsolutions.assistant.preprocessors.PreprocessorLowercase', 'input': 'document', 'output': 'out'}]," +
+        "   'fr': [{'type': 'com.paradoxwebsolutions.assistant.preprocessors.PreprocessorCopy', 'input': 'document', 'output': 'out', 'pipelines': ['train']}]" +
+        " }," +
+        " 'default': [{'type': 'com.paradoxwebsolutions.assistant.preprocessors.PreprocessorCopy', 'input': 'document', 'output': 'out'}]" +
+        "}");
+
+
+    /**
+     * Runs the branch for a given session language.
+     */
+    private GenericMap process(final PreprocessorBranch proc, final String language) throws Exception {
+        SessionData data = new SessionData("test", "user");
+        data.setLanguage(language);
+
+        GenericMap input = new GenericMap();
+        input.put("document", "Hello There");
+        proc.preprocess(new ClientSession(data, null), input);
+        return input;
+    }
+
+
+    /**
+     * Branch selection on the session language
+     */
+    @Test public void testPreprocessorBranchLanguage() throws Exception {
+        PreprocessorBranch proc = (PreprocessorBranch) factory.fromJson(branch, Preprocessor.class);
+
+        assertEquals("English branch used", "hello there", process(proc, "en").get("out"));
+        assertEquals("French branch used", "Hello There", process(proc, "fr").get("out"));
+        assertEquals("Default branch used", "Hello There", process(proc, "de").get("out"));
+    }
+
+
+    /**
+     * Branch steps are filtered by pipeline
+     */
+    @Test public void testPreprocessorBranchPipeline() throws Exception {
+        PreprocessorBranch proc = ((PreprocessorBranch) factory.fromJson(branch, Preprocessor.class)).forPipelineSteps("chat");
+
+        assertEquals("English branch used", "hello there", process(proc, "en").get("out"));
+        assertFalse("French train step not run", process(proc, "fr").containsKey("out"));
+    }
+
+
+    /**
+     * Branch inputs and outputs
+     */
+    @Test public void testPreprocessorBranchIO() throws Exception {
+        PreprocessorBranch proc = (PreprocessorBranch) factory.fromJson(branch, Preprocessor.class);
+
+        assertTrue("Output declared", proc.getOutputs().contains("out"));
+        assertTrue("Input declared", proc.getInputs().contains("document"));
+        assertTrue("Session language declared", proc.getInputs().contains(Preprocessor.SESSION_LANGUAGE));
+    }
+}
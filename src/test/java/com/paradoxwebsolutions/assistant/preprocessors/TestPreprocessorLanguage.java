@@ -0,0 +1,157 @@
+package com.paradoxwebsolutions.assistant.preprocessors;
+
+import com.paradoxwebsolutions.assistant.ClientSession;
+import com.paradoxwebsolutions.assistant.SessionData;
+import com.paradoxwebsolutions.core.ObjectFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.tools.langdetect.Language;
+import opennlp.tools.langdetect.LanguageDetector;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestPreprocessorLanguage {
+
+    public static String quotes(final String in) {return in.replace('\'', '"');}
+
+    private static final ObjectFactory factory = new ObjectFactory();
+
+
+    /**
+     * Language detector returning a fixed prediction, and recording the inputs checked.
+     */
+    private static class Detector implements LanguageDetector {
+        private final List<String> checked = new ArrayList<String>();
+        private Language language;
+
+        Detector(final String lang, final double confidence) {
+            this.language = new Language(lang, confidence);
+        }
+
+        @Override public Language[] predictLanguages(final CharSequence content) {return new Language[] {predictLanguage(content)};}
+        @Override public String[] getSupportedLanguages() {return new String[] {"en", "fr"};}
+
+        @Override public Language predictLanguage(final CharSequence content) {
+            checked.add(content.toString());
+            return language;
+        }
+    }
+
+
+    /**
+     * Creates a language preprocessor from json configuration, using a given detector.
+     */
+    private static PreprocessorLanguage create(final String json, final Detector detector) throws Exception {
+        PreprocessorLanguage proc = factory.fromJson(quotes(json), PreprocessorLanguage.class);
+        proc.detector = detector;
+        return proc;
+    }
+
+
+
+    /**
+     * By default every input is checked, however short or repetitive
+     */
+    @Test public void testPreprocessorLanguageDefault() throws Exception {
+        Detector detector = new Detector("fr", 0.99);
+        PreprocessorLanguage proc = create("{}", detector);
+        ClientSession session = new ClientSession(new SessionData("test", "user"), null);
+
+        for (int i = 0; i < 5; ++i) assertEquals("Language detected", "fr", proc.preprocess(session, "bonjour"));
+        assertEquals("Short input checked", "fr", proc.preprocess(session, "oui"));
+        assertEquals("Every input checked", 6, detector.checked.size());
+    }
+
+
+
+    /**
+     * Inputs below the minimum length use the session language without detection
+     */
+    @Test public void testPreprocessorLanguageShortInput() throws Exception {
+        Detector detector = new Detector("fr", 0.99);
+        PreprocessorLanguage proc = create("{'minLength': 10}", detector);
+        SessionData data = new SessionData("test", "user");
+        ClientSession session = new ClientSession(data, null);
+
+        assertEquals("Session language used", "en", proc.preprocess(session, "oui"));
+        assertTrue("Short input not checked", detector.checked.isEmpty());
+
+        assertEquals("Long input detected", "fr", proc.preprocess(session, "bonjour tout le monde"));
+        assertEquals("Detected language used", "fr", proc.preprocess(session, "oui"));
+        assertEquals("Session language set", "fr", data.getLanguage());
+        assertEquals("Only the long input checked", 1, detector.checked.size());
+    }
+
+
+
+    /**
+     * After enough confident detections the session language is reused, unless the input is long
+     */
+    @Test public void testPreprocessorLanguageSticky() throws Exception {
+        Detector detector = new Detector("fr", 0.99);
+        PreprocessorLanguage proc = create("{'stickyCount': 2, 'redetectLength': 40}", detector);
+        SessionData data = new SessionData("test", "user");
+        ClientSession session = new ClientSession(data, null);
+
+        proc.preprocess(session, "bonjour le monde");
+        proc.preprocess(session, "le monde bonjour");
+        assertEquals("Consecutive detections counted", 2, data.getLanguageDetections());
+        assertEquals("Detected until sticky", 2, detector.checked.size());
+
+        assertEquals("Session language reused", "fr", proc.preprocess(session, "monde bonjour le"));
+        assertEquals("Known words not checked", 2, detector.checked.size());
+
+        proc.preprocess(session, "bonjour le monde bonjour le monde bonjour le monde");
+        assertEquals("Long input checked", 3, detector.checked.size());
+    }
+
+
+
+    /**
+     * A sticky session language is checked again when too many words are unknown in it
+     */
+    @Test public void testPreprocessorLanguageOOV() throws Exception {
+        Detector detector = new Detector("fr", 0.99);
+        PreprocessorLanguage proc = create("{'stickyCount': 2, 'oovThreshold': 0.5}", detector);
+        SessionData data = new SessionData("test", "user");
+        ClientSession session = new ClientSession(data, null);
+
+        proc.preprocess(session, "bonjour le monde");
+        proc.preprocess(session, "bonjour le monde");
+
+        assertEquals("Some unknown words accepted", "fr", proc.preprocess(session, "bonjour le chat"));
+        assertEquals("Not checked below threshold", 2, detector.checked.size());
+
+        detector.language = new Language("en", 0.99);
+        assertEquals("Unknown words checked", "en", proc.preprocess(session, "hello big world"));
+        assertEquals("Checked above threshold", 3, detector.checked.size());
+        assertEquals("Detections restarted for the new language", 1, data.getLanguageDetections());
+        assertEquals("Session language changed", "en", data.getLanguage());
+    }
+
+
+
+    /**
+     * Low confidence detections use the default language and reset the detection count
+     */
+    @Test public void testPreprocessorLanguageLowConfidence() throws Exception {
+        Detector detector = new Detector("fr", 0.99);
+        PreprocessorLanguage proc = create("{'stickyCount': 2}", detector);
+        SessionData data = new SessionData("test", "user");
+        ClientSession session = new ClientSession(data, null);
+
+        proc.preprocess(session, "bonjour le monde");
+        detector.language = new Language("fr", 0.5);
+        assertEquals("Default language", "en", proc.preprocess(session, "bonjour le monde"));
+        assertEquals("Detections reset", 0, data.getLanguageDetections());
+
+        detector.language = new Language("fr", 0.99);
+        proc.preprocess(session, "bonjour le monde");
+        proc.preprocess(session, "bonjour le monde");
+        assertEquals("Detected again after reset", 4, detector.checked.size());
+    }
+}
@@ -0,0 +1,161 @@
+package com.paradoxwebsolutions.assistant.preprocessors;
+
+import com.paradoxwebsolutions.assistant.ModelRegistry;
+import com.paradoxwebsolutions.core.Config;
+import com.paradoxwebsolutions.core.Logger;
+import com.paradoxwebsolutions.core.ObjectFactory;
+import com.paradoxwebsolutions.core.ObjectInitializer;
+import com.paradoxwebsolutions.core.ResourceAPI;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import opennlp.tools.ml.AbstractTrainer;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSSample;
+import opennlp.tools.postag.POSTaggerFactory;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.util.ObjectStreamUtils;
+import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.model.ModelUtil;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestPreprocessorPOS {
+
+    public static String quotes(final String in) {return in.replace('\'', '"');}
+
+    private static final ObjectFactory factory = new ObjectFactory();
+
+    private static final String[] sentences = {
+        "I_PRP want_VBP to_TO book_VB a_DT flight_NN",
+        "she_PRP booked_VBD the_DT flights_NNS",
+        "the_DT flight_NN is_VBZ late_JJ",
+        "we_PRP are_VBP flying_VBG to_TO London_NNP"
+    };
+
+    private static final String[][] inputs = {
+        {"I", "want", "a", "flight"},
+        {"she", "booked", "the", "flight"},
+        {"the", "flights", "are", "late"},
+        {"we", "want", "to", "book", "the", "late", "flight", "to", "London"}
+    };
+
+    /** The serialized POS model */
+
+    private static byte[] content;
+
+    /** The POS model */
+
+    private static POSModel model;
+
+
+
+    @BeforeClass public static void train() throws Exception {
+        List<POSSample> samples = new ArrayList<POSSample>();
+        for (int i = 0; i < 10; ++i) for (String sentence : sentences) samples.add(POSSample.parse(sentence));
+
+        TrainingParameters params = ModelUtil.createDefaultTrainingParameters();
+        params.put(TrainingParameters.CUTOFF_PARAM, 1);
+        params.put(AbstractTrainer.VERBOSE_PARAM, false);
+        model = POSTaggerME.train("en", ObjectStreamUtils.createObjectStream(samples), params, new POSTaggerFactory());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        model.serialize(out);
+        content = out.toByteArray();
+    }
+
+
+    /**
+     * Creates and initializes a POS preprocessor loading the model from a given resource.
+     */
+    private static PreprocessorPOS create(final String json, final ResourceAPI resource) throws Exception {
+        PreprocessorPOS proc = factory.fromJson(quotes(json), PreprocessorPOS.class);
+        new ObjectInitializer().initialize(proc, resource, new Config(), new Logger("test"));
+        return proc;
+    }
+
+
+
+    /**
+     * Pooled and cached tagging gives the same tags as a fresh tagger, when tagging concurrently
+     */
+    @Test public void testPreprocessorPOSConcurrent() throws Exception {
+        ResourceAPI resource = (name) -> new ByteArrayInputStream(content);
+        PreprocessorPOS proc = create("{'language': 'en', 'cacheSize': 2}", resource);
+
+        String[][] expected = new String[inputs.length][];
+        for (int i = 0; i < inputs.length; ++i) expected[i] = new POSTaggerME(model).tag(inputs[i]);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (int i = 0; i < 32; ++i) {
+                final int shift = i;
+                results.add(executor.submit(() -> {
+                    for (int n = 0; n < 100; ++n) {
+                        int j = (n + shift) % inputs.length;
+                        assertArrayEquals("Same tags", expected[j], (String[]) proc.preprocess(null, inputs[j]));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) result.get();
+        }
+        finally {
+            executor.shutdown();
+            ModelRegistry.release(resource);
+        }
+    }
+
+
+
+    /**
+     * Cached tags are not changed by callers modifying the returned tags
+     */
+    @Test public void testPreprocessorPOSCacheCopy() throws Exception {
+        ResourceAPI resource = (name) -> new ByteArrayInputStream(content);
+        PreprocessorPOS proc = create("{'language': 'en'}", resource);
+
+        try {
+            String[] expected = new POSTaggerME(model).tag(inputs[0]);
+
+            ((String[]) proc.preprocess(null, inputs[0]))[0] = "XX";
+            assertArrayEquals("Cached tags unchanged", expected, (String[]) proc.preprocess(null, inputs[0]));
+            ((String[]) proc.preprocess(null, inputs[0]))[0] = "XX";
+            assertArrayEquals("Cached tags unchanged when reused", expected, (String[]) proc.preprocess(null, inputs[0]));
+        }
+        finally {
+            ModelRegistry.release(resource);
+        }
+    }
+
+
+
+    /**
+     * Models are owned by the resource they were loaded from, and shared until all owners are released
+     */
+    @Test public void testPreprocessorPOSRelease() throws Exception {
+        ResourceAPI first = (name) -> new ByteArrayInputStream(content);
+        ResourceAPI second = (name) -> new ByteArrayInputStream(content);
+        int size = ModelRegistry.size();
+
+        create("{'language': 'en'}", first);
+        create("{'language': 'en'}", second);
+        assertEquals("Model shared", size + 1, ModelRegistry.size());
+
+        ModelRegistry.release(first);
+        assertEquals("Model kept for the remaining owner", size + 1, ModelRegistry.size());
+
+        ModelRegistry.release(second);
+        assertEquals("Model released", size, ModelRegistry.size());
+    }
+}
@@ -0,0 +1,75 @@
+package com.paradoxwebsolutions.assistant.preprocessors;
+
+import com.paradoxwebsolutions.core.ObjectFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import opennlp.tools.stemmer.PorterStemmer;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestPreprocessorStemmer {
+
+    public static String quotes(final String in) {return in.replace('\'', '"');}
+
+    private static final ObjectFactory factory = new ObjectFactory();
+
+    private static final String[] words = {
+        "running", "runs", "ran", "connection", "connected", "connecting", "generalization", "happiness",
+        "flights", "booking", "booked", "cancelled", "cancellation", "relational", "conditional", "hopeful"
+    };
+
+
+
+    /**
+     * Stems are the same as the OpenNLP stemmer, when stemming concurrently and across cache generations
+     */
+    @Test public void testPreprocessorStemmerConcurrent() throws Exception {
+        PreprocessorStemmer proc = factory.fromJson(quotes("{'cacheSize': 5}"), PreprocessorStemmer.class);
+
+        String[] expected = new String[words.length];
+        for (int i = 0; i < words.length; ++i) expected[i] = new PorterStemmer().stem(words[i]);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+            for (int i = 0; i < 64; ++i) {
+                final int shift = i;
+                results.add(executor.submit(() -> {
+                    String[] stems = new String[words.length];
+                    for (int n = 0; n < 200; ++n) {
+                        String[] rotated = new String[words.length];
+                        for (int j = 0; j < words.length; ++j) rotated[j] = words[(j + shift + n) % words.length];
+
+                        String[] output = (String[]) proc.preprocess(null, rotated);
+                        for (int j = 0; j < words.length; ++j) stems[(j + shift + n) % words.length] = output[j];
+                    }
+                    return stems;
+                }));
+            }
+
+            for (Future<String[]> result : results) assertArrayEquals("Same stems", expected, result.get());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+
+
+    /**
+     * The stem cache is not serialized with the assistant
+     */
+    @Test public void testPreprocessorStemmerSerialize() throws Exception {
+        PreprocessorStemmer proc = factory.fromJson(quotes("{}"), PreprocessorStemmer.class);
+        proc.preprocess(null, words);
+
+        assertFalse("Cache not serialized", factory.toJson(proc).contains("connect"));
+    }
+}
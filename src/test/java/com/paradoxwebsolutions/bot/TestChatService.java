@@ -0,0 +1,97 @@
+package com.paradoxwebsolutions.bot;
+
+import com.paradoxwebsolutions.assistant.ClientResponse;
+import com.paradoxwebsolutions.core.ApplicationError;
+import com.paradoxwebsolutions.core.ObjectFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestChatService {
+
+    private static final ObjectFactory factory = new ObjectFactory();
+
+
+    /**
+     * Returns a client response with the given utterances.
+     */
+    private static ClientResponse utterances(final String... texts) {
+        ClientResponse response = new ClientResponse();
+        for (String text : texts) response.utter(text);
+        return response;
+    }
+
+
+    /**
+     * Creates an executor with a single named thread.
+     */
+    private static ExecutorService executor(final String name) {
+        return Executors.newSingleThreadExecutor((r) -> new Thread(r, name));
+    }
+
+
+
+    /**
+     * Input is processed on the service executor, not on the thread that completed the preceding action
+     */
+    @Test public void testAppendReplyExecutor() throws Exception {
+        ExecutorService executor = executor("chat-executor");
+        List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+
+        try {
+            CompletableFuture<ClientResponse> welcome = new CompletableFuture<ClientResponse>();
+            CompletableFuture<ClientResponse> result = ChatService.appendReply(welcome, () -> {
+                threads.add(Thread.currentThread().getName());
+                return CompletableFuture.completedFuture(utterances("reply"));
+            }, executor).toCompletableFuture();
+
+            Thread timer = new Thread(() -> welcome.complete(utterances("welcome back")), "action-timer");
+            timer.start();
+            timer.join();
+
+            assertEquals("Responses combined", factory.toJson(utterances("welcome back", "reply")), factory.toJson(result.get(5, TimeUnit.SECONDS)));
+            assertEquals("Input processed on the executor", List.of("chat-executor"), threads);
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+
+
+    /**
+     * A missing reply leaves the action response as is, and processing errors fail the stage
+     */
+    @Test public void testAppendReplyResults() throws Exception {
+        ExecutorService executor = executor("chat-executor");
+
+        try {
+            ClientResponse welcome = ChatService.appendReply(CompletableFuture.completedFuture(utterances("welcome back")),
+                () -> CompletableFuture.completedFuture(null), executor).toCompletableFuture().get(5, TimeUnit.SECONDS);
+            assertEquals("Action response only", factory.toJson(utterances("welcome back")), factory.toJson(welcome));
+
+            ApplicationError error = new ApplicationError("failed");
+            try {
+                ChatService.appendReply(CompletableFuture.completedFuture(utterances("welcome back")),
+                    () -> {throw error;}, executor).toCompletableFuture().get(5, TimeUnit.SECONDS);
+                fail("Error not passed on");
+            }
+            catch (ExecutionException x) {
+                assertSame("Processing error passed on", error, x.getCause());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.paradoxwebsolutions.core;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestAsyncLogHandler {
+
+    /**
+     * All records are written when blocking, and full logs are rolled over
+     */
+    @Test public void testBlockingRollOver() throws Exception {
+        File dir = Files.createTempDirectory("logs").toFile();
+
+        try {
+            AsyncLogHandler handler = new AsyncLogHandler(new CustomLogHandler(dir.getPath() + File.separator + "test.log", 2000, 10), 16, AsyncLogHandler.Overflow.BLOCK);
+            for (int i = 0; i < 200; ++i) handler.publish(new LogRecord(Level.INFO, "message " + i));
+            handler.close();
+
+            long lines = 0;
+            for (File file : dir.listFiles()) lines += Files.readAllLines(file.toPath()).size();
+
+            assertEquals("Nothing dropped", 0, handler.getDropped());
+            assertEquals("All records written", 200, lines);
+            assertTrue("Logs rolled over", dir.listFiles().length > 1);
+        }
+        finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+
+
+    /**
+     * Debug records are dropped, and counted, when the buffer is full
+     */
+    @Test public void testDropDebug() throws Exception {
+        File dir = Files.createTempDirectory("logs").toFile();
+
+        try {
+            AsyncLogHandler handler = new AsyncLogHandler(new CustomLogHandler(dir.getPath() + File.separator + "test.log", 0, 10), 4, AsyncLogHandler.Overflow.DROP_DEBUG);
+            for (int i = 0; i < 1000; ++i) handler.publish(new LogRecord(Level.FINE, "debug " + i));
+            handler.publish(new LogRecord(Level.INFO, "info"));
+            handler.close();
+
+            String log = new String(Files.readAllBytes(new File(dir, "test.log").toPath()));
+            assertTrue("Records dropped", handler.getDropped() > 0);
+            assertTrue("Info record written", log.contains("info"));
+            assertTrue("Drops reported", log.contains("log records dropped"));
+        }
+        finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+
+
+    /**
+     * Reconfiguring a logger closes the handlers (and writer threads) created for it
+     */
+    @Test public void testReconfigureCloses() throws Exception {
+        File dir = Files.createTempDirectory("logs").toFile();
+
+        try {
+            Properties properties = new Properties();
+            properties.setProperty("dir", dir.getPath());
+            Config config = new Config().load(properties);
+
+            long writers = writers();
+            new Logger("reconfigure", config).info("first");
+            assertEquals("Writer thread started", writers + 1, writers());
+
+            new Logger("reconfigure", config).info("second");
+            assertEquals("Previous writer thread stopped", writers + 1, writers());
+
+            new Logger("reconfigure", null);
+            assertEquals("All writer threads stopped", writers, writers());
+        }
+        finally {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+    }
+
+
+    /**
+     * Returns the number of live log writer threads.
+     */
+    private static long writers() {
+        return Thread.getAllStackTraces().keySet().stream().filter((t) -> t.isAlive() && t.getName().equals("log-writer")).count();
+    }
+}
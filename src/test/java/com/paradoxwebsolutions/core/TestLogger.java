@@ -0,0 +1,128 @@
+package com.paradoxwebsolutions.core;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestLogger {
+
+
+    /**
+     * Handler recording the messages logged.
+     */
+    private static class Recorder extends Handler {
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override public void publish(final LogRecord record) {messages.add(record.getMessage());}
+        @Override public void flush() {}
+        @Override public void close() {}
+    }
+
+
+    /**
+     * Message argument counting the number of times it is formatted.
+     */
+    private static class Counted {
+        int count = 0;
+
+        @Override public String toString() {
+            ++count;
+            return "counted";
+        }
+    }
+
+
+    /**
+     * Configures a named logger to write to a directory at a given level, recording the messages logged.
+     */
+    private static Recorder configure(final String name, final File dir, final String level) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("dir", dir.getPath());
+        properties.setProperty("async", "false");
+        properties.setProperty("level", level);
+        new Logger(name, new Config().load(properties));
+
+        Recorder recorder = new Recorder();
+        java.util.logging.Logger.getLogger(name).addHandler(recorder);
+        return recorder;
+    }
+
+
+    /**
+     * Deletes a log directory.
+     */
+    private static void delete(final File dir) {
+        for (File file : dir.listFiles()) file.delete();
+        dir.delete();
+    }
+
+
+
+    /**
+     * Supplier and format messages are only built if they will be output
+     */
+    @Test public void testLoggerDeferred() throws Exception {
+        File dir = Files.createTempDirectory("logs").toFile();
+
+        try {
+            Recorder recorder = configure("deferred", dir, "INFO");
+            Logger logger = new Logger("deferred");
+            Counted counted = new Counted();
+            int[] supplied = {0};
+
+            logger.debug("debug %s", counted);
+            logger.debug(() -> "debug " + ++supplied[0]);
+            logger.trace("trace %s", counted);
+            logger.trace(() -> "trace " + ++supplied[0]);
+            assertEquals("Formats not built", 0, counted.count);
+            assertEquals("Suppliers not called", 0, supplied[0]);
+            assertTrue("Nothing logged", recorder.messages.isEmpty());
+
+            logger.info("info %s %d", counted, 1);
+            logger.info(() -> "info " + ++supplied[0]);
+            assertEquals("Format built", 1, counted.count);
+            assertEquals("Supplier called", 1, supplied[0]);
+            assertEquals("Messages logged", List.of("info counted 1", "info 1"), recorder.messages);
+        }
+        finally {
+            new Logger("deferred", null);
+            delete(dir);
+        }
+    }
+
+
+
+    /**
+     * Shared loggers are returned for the same name, and reflect later configuration
+     */
+    @Test public void testLoggerShared() throws Exception {
+        File dir = Files.createTempDirectory("logs").toFile();
+
+        try {
+            configure("shared", dir, "INFO");
+            Logger logger = Logger.get("shared");
+            assertSame("Same instance", logger, Logger.get("shared"));
+            assertNotSame("Different names", logger, Logger.get("other"));
+            assertFalse("Debug not output", logger.isLoggable(Logger.DEBUG));
+
+            Recorder recorder = configure("shared", dir, "FINE");
+            assertTrue("Debug output after reconfiguration", Logger.get("shared").isLoggable(Logger.DEBUG));
+
+            Logger.get("shared").debug("debug %d", 1);
+            assertEquals("Reconfigured handlers used", List.of("debug 1"), recorder.messages);
+        }
+        finally {
+            new Logger("shared", null);
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.paradoxwebsolutions.core;
+
+import com.paradoxwebsolutions.core.annotations.Init;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+
+public class TestObjectInitializer {
+
+    public static class Child {
+        public Object argument;
+        public String thread;
+
+        @Init(concurrent = true)
+        public void init(CharSequence value) {
+            argument = value;
+            thread = Thread.currentThread().getName();
+        }
+    }
+
+    public static class Parent {
+        public Object argument;
+        private List<Child> children = new ArrayList<Child>();
+        private Child[] array = {new Child()};
+
+        @Init
+        public void init(Object value, StringBuilder builder) {
+            argument = value;
+        }
+    }
+
+    public static class Loader {
+        private Map<String, Loader> children = new HashMap<String, Loader>();
+        private transient Map<String, Object> loaded = new HashMap<String, Object>();
+        private transient Child state = new Child();
+
+        @Init(concurrent = true)
+        public void init(CharSequence value) {
+            for (int i = 0; i < 10000; ++i) loaded.put(value + "-" + i, new Object());
+        }
+    }
+
+
+    /**
+     * Arguments bind to parameters by type, and object trees are fully initialized
+     */
+    @Test public void testObjectInitializer() throws Exception {
+        Parent parent = new Parent();
+        for (int i = 0; i < 10; ++i) parent.children.add(new Child());
+
+        StringBuilder builder = new StringBuilder();
+        new ObjectInitializer().initialize(parent, "value", builder);
+
+        assertEquals("First matching argument used", "value", parent.argument);
+        assertEquals("Array element initialized", "value", parent.array[0].argument);
+        for (Child child : parent.children) {
+            assertEquals("Collection element initialized", "value", child.argument);
+            assertNotEquals("Concurrent initialization", Thread.currentThread().getName(), child.thread);
+        }
+    }
+
+
+    /**
+     * Concurrent initialization methods can fill transient state while the rest of the tree is scanned
+     */
+    @Test public void testConcurrentTree() throws Exception {
+        for (int run = 0; run < 10; ++run) {
+            Loader root = new Loader();
+            for (int i = 0; i < 8; ++i) {
+                Loader child = new Loader();
+                for (int j = 0; j < 8; ++j) child.children.put("leaf-" + j, new Loader());
+                root.children.put("child-" + i, child);
+            }
+
+            new ObjectInitializer().initialize(root, "value");
+
+            assertEquals("Root loaded", 10000, root.loaded.size());
+            assertNull("Transient fields not scanned", root.state.argument);
+            for (Loader child : root.children.values()) {
+                assertEquals("Child loaded", 10000, child.loaded.size());
+                for (Loader leaf : child.children.values()) assertEquals("Leaf loaded", 10000, leaf.loaded.size());
+            }
+        }
+    }
+
+
+
+    /**
+     * Missing arguments are reported
+     */
+    @Test(expected = ApplicationError.class)
+    public void testObjectInitializerMissingArgument() throws Exception {
+        new ObjectInitializer().initialize(new Parent(), "value");
+    }
+}
@@ -0,0 +1,59 @@
+package com.paradoxwebsolutions.expression;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+
+
+public class TestCompiledExpression {
+
+    /**
+     * Evaluates an expression, returning the result or the error message.
+     */
+    private static Object evaluate(Expression e, ExpressionContext context) {
+        try {
+            return e.eval(context);
+        }
+        catch (ExpressionError x) {
+            return "error: " + x.getMessage();
+        }
+    }
+
+
+    /**
+     * Compiled expressions give the same results and errors as parsed expressions
+     */
+    @Test public void testCompiledMatchesInterpreted() throws ExpressionError {
+
+        String[] expressions = new String[] {
+            "count > 3",
+            "count + 1 >= limit",
+            "count * 2 - limit / 2",
+            "ratio < 0.5 or count == 2",
+            "name == \"alex\" and !missing",
+            "name != \"sam\" and count <= 4",
+            "count / zero",
+            "name > 3",
+            "name == count",
+            "missing + 1",
+            "(count + ratio) * 2",
+            "count in [1, 2, 3]"
+        };
+
+        ExpressionContext context = new ExpressionContext();
+        context.set("count", 2);
+        context.set("limit", 5);
+        context.set("zero", 0);
+        context.set("ratio", 0.25);
+        context.set("name", "alex");
+
+        Parser parser = new Parser();
+        for (String expression : expressions) {
+            Expression parsed = parser.parse(expression);
+            CompiledExpression compiled = CompiledExpression.compile(parsed);
+
+            Object expected = evaluate(parsed, context);
+            assertEquals(expression, expected, evaluate(compiled, context));
+            if (!(expected instanceof String)) assertEquals(expression, Operators.toBoolean(expected), compiled.test(context));
+        }
+    }
+}
@@ -3,6 +3,8 @@ package com.paradoxwebsolutions.expression;
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
 
 public class TestParser {
 
@@ -315,4 +317,94 @@ public class TestParser {
         assertEquals("Expression result value is correct", result, false);
     }
 
-}
\ No newline at end of file
+
+    /**
+     * Test regular expression matching with constant and dynamic patterns
+     */
+    @Test public void testMatches() throws ExpressionError {
+
+        Functions.registerStringFunctions();
+        Parser parser = new Parser();
+        ExpressionContext context = new ExpressionContext();
+        context.set("email", "someone@example.com");
+        context.set("regex", "^[^@]+@example");
+
+        assertEquals("Constant pattern matches", true, parser.parse("email =~ \"^[^@]+@[^@]+$\"").eval(context));
+        assertEquals("Constant pattern does not match", false, parser.parse("email matches \"^x\"").eval(context));
+        assertEquals("Dynamic pattern matches", true, parser.parse("email =~ regex").eval(context));
+
+        try {
+            parser.parse("email =~ \"[a-\"");
+            fail("Invalid constant pattern accepted");
+        }
+        catch (ExpressionError x) {
+        }
+    }
+
+
+    /**
+     * Test constant subexpressions and boolean identities are simplified
+     */
+    @Test public void testSimplification() throws ExpressionError {
+
+        Parser parser = new Parser();
+        ExpressionContext context = new ExpressionContext();
+        context.set("name", "b");
+
+        assertEquals("Arithmetic folded", "40", parser.parse("(6 * 7) - 2").toString());
+        assertEquals("Function folded", "false", parser.parse("not(true)").toString());
+        assertEquals("False 'and' decided", "false", parser.parse("false and name").toString());
+        assertEquals("True 'or' decided", "true", parser.parse("name or true").toString());
+        assertEquals("Context values not folded", "name + 1", parser.parse("name + (3 - 2)").toString());
+
+        assertEquals("Constant list lookup", true, parser.parse("name in [\"a\", \"b\"]").eval(context));
+        assertEquals("Constant list lookup", false, parser.parse("name in [\"c\", 1]").eval(context));
+        assertEquals("Dynamic list lookup", true, parser.parse("name in [\"a\", name]").eval(context));
+    }
+
+
+    /**
+     * Test known variables are resolved to context slots
+     */
+    @Test public void testVariableSlots() throws ExpressionError {
+
+        ExpressionContext context = new ExpressionContext() {
+            @Override
+            public Object get(int slot, String name) {
+                return slot >= 0 ? "slot" + slot : get(name);
+            }
+        };
+        context.set("other", "named");
+
+        Parser parser = new Parser("first", "second");
+        assertEquals("First slot", "slot0", parser.parse("first").eval(context));
+        assertEquals("Second slot", "slot1", parser.parse("second").eval(context));
+        assertEquals("Unresolved name", "named", parser.parse("other").eval(context));
+        assertEquals("Compiled slot", "slot1", CompiledExpression.compile(parser.parse("second")).eval(context));
+    }
+
+
+    /**
+     * Test tokenization of unspaced expressions and quoted strings, and caching of parsed expressions
+     */
+    @Test public void testTokenizer() throws ExpressionError {
+
+        Parser parser = new Parser();
+        ExpressionContext context = new ExpressionContext();
+        context.set("count", 4);
+
+        assertEquals("Unspaced operators", true, parser.parse("(count+1)*2>=10 and count!=3").eval(context));
+        assertEquals("Quoted strings kept whole", "x, (y) == z", parser.parse("\"x, (y) == z\"").eval(context));
+        assertEquals("Escaped quotes", "say \\\"hi\\\"", parser.parse("\"say \\\"hi\\\"\"").eval(context));
+        assertEquals("Power operator", 16.0, Operators.toFloat(parser.parse("2^count").eval(context)), 0.0);
+        assertEquals("Float constant", 0.5, parser.parse("1.0/2").eval(context));
+        assertSame("Cached expression", parser.parse("count > 3"), parser.parse("count > 3"));
+
+        try {
+            parser.parse("name == \"open");
+            fail("Unterminated string accepted");
+        }
+        catch (ExpressionError x) {
+        }
+    }
+}